@@ -0,0 +1,127 @@
+package net.inecat.dynmapads.benchmark;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.data.MarkerStorage;
+import net.inecat.dynmapads.metrics.PluginMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Deterministic marker data for the benchmarks. The same count always gives
+ * the same markers, so results are comparable between runs.
+ * <p>
+ * About a fifth as many owners as markers; a third of the markers are
+ * pending with a Discord message ID, a third are commercial and a third are
+ * ads, half of which have expired. Names and descriptions contain characters
+ * that HTML escaping and marker ID sanitising have to rewrite.
+ */
+public final class BenchmarkFixtures {
+    private static final long SEED = 20240601L;
+    private static final String[] WORDS = {"Café", "Shop", "<Market>", "Tom's", "\"Forge\"", "屋台", "Bank & Co",
+            "Inn", "Mine_Supply", "Fish-Bar"};
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * A plugin stand-in with a temporary data folder and a quiet logger.
+     * It reports itself as disabled, so storage saves run on the calling
+     * thread instead of the I/O executor, and keeps markers in markers.yml.
+     */
+    public static DynmapAdsPlugin plugin() throws IOException {
+        File dataFolder = Files.createTempDirectory("dynmapads-bench").toFile();
+        Logger logger = Logger.getLogger("DynmapAds-Benchmark");
+        logger.setLevel(Level.WARNING);
+
+        ConfigManager configManager = mock(ConfigManager.class);
+        when(configManager.isSharedStorage()).thenReturn(false);
+
+        DynmapAdsPlugin plugin = mock(DynmapAdsPlugin.class);
+        when(plugin.getConfigManager()).thenReturn(configManager);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(logger);
+        when(plugin.getMetrics()).thenReturn(new PluginMetrics());
+        return plugin;
+    }
+
+    /**
+     * Delete a data folder created by {@link #plugin()}.
+     */
+    public static void cleanUp(DynmapAdsPlugin plugin) throws IOException {
+        try (Stream<Path> paths = Files.walk(plugin.getDataFolder().toPath())) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Owners used by {@link #markers(int)} for the given count.
+     */
+    public static List<UUID> owners(int count) {
+        Random random = new Random(SEED);
+        List<UUID> owners = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, count / 5); i++) {
+            owners.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return owners;
+    }
+
+    /**
+     * Generate markers.
+     */
+    public static List<MarkerData> markers(int count) {
+        List<UUID> owners = owners(count);
+        Random random = new Random(SEED + count);
+        LocalDateTime now = LocalDateTime.now();
+        List<MarkerData> markers = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            String shopName = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                    + " " + i;
+            MarkerData data = new MarkerData(shopName, owners.get(random.nextInt(owners.size())), "world",
+                    random.nextInt(20000) - 10000, 64 + random.nextInt(64), random.nextInt(20000) - 10000,
+                    "Open daily & selling <everything> at " + WORDS[random.nextInt(WORDS.length)]);
+            data.setOwnerName("Player" + random.nextInt(owners.size()));
+
+            switch (i % 3) {
+                case 0 -> data.setDiscordMessageId(String.valueOf(1_000_000_000_000_000_000L + i));
+                case 1 -> data.setStatus(MarkerStatus.COMMERCIAL);
+                default -> {
+                    data.setStatus(MarkerStatus.ADS);
+                    data.setPrMessage("Today only: 50% off at \"" + shopName + "\"!");
+                    data.setAdsEndTime(random.nextBoolean() ? now.minusDays(1) : now.plusDays(7));
+                }
+            }
+            markers.add(data);
+        }
+        return markers;
+    }
+
+    /**
+     * Fill a storage with generated markers and write markers.yml once.
+     */
+    public static List<MarkerData> populate(MarkerStorage storage, int count) {
+        List<MarkerData> markers = markers(count);
+        storage.batch(() -> markers.forEach(storage::addMarker), null);
+        return markers;
+    }
+}
@@ -0,0 +1,30 @@
+package net.inecat.dynmapads.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler attached, so every result
+ * also reports the allocation rate per operation.
+ * <p>
+ * Takes the usual JMH command line options. Maven passes them as one
+ * argument, so they are split on whitespace here.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        String[] options = String.join(" ", args).trim().split("\\s+");
+        if (options.length == 1 && options[0].isEmpty()) {
+            options = new String[0];
+        }
+
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(options))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,89 @@
+package net.inecat.dynmapads.commands;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.benchmark.BenchmarkFixtures;
+import net.inecat.dynmapads.data.MarkerStorage;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Shop name completion, which runs on every keystroke while a player types
+ * a /mapmarker command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+EnableDynamicAgentLoading")
+public class TabCompleteBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int markerCount;
+
+    private DynmapAdsPlugin plugin;
+    private MapMarkerTabCompleter completer;
+    private Player admin;
+    private Player owner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        plugin = BenchmarkFixtures.plugin();
+        MarkerStorage storage = new MarkerStorage(plugin);
+        BenchmarkFixtures.populate(storage, markerCount);
+        when(plugin.getMarkerStorage()).thenReturn(storage);
+        completer = new MapMarkerTabCompleter(plugin);
+
+        admin = mock(Player.class);
+        when(admin.hasPermission("mapmarker.admin")).thenReturn(true);
+
+        UUID ownerUUID = BenchmarkFixtures.owners(markerCount).get(0);
+        owner = mock(Player.class);
+        when(owner.getUniqueId()).thenReturn(ownerUUID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.cleanUp(plugin);
+    }
+
+    @Benchmark
+    public List<String> adsAsAdmin() {
+        return completer.onTabComplete(admin, null, "mapmarker", new String[]{"ads", "Ca"});
+    }
+
+    @Benchmark
+    public List<String> adsAsOwner() {
+        return completer.onTabComplete(owner, null, "mapmarker", new String[]{"ads", ""});
+    }
+
+    @Benchmark
+    public List<String> deleteAsOwner() {
+        return completer.onTabComplete(owner, null, "mapmarker", new String[]{"delete", "Sh"});
+    }
+
+    @Benchmark
+    public List<String> teleport() {
+        return completer.onTabComplete(admin, null, "mapmarker", new String[]{"tp", "Ca"});
+    }
+}
@@ -0,0 +1,97 @@
+package net.inecat.dynmapads.data;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.benchmark.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and saving markers.yml, and the indexed lookups the listeners and
+ * commands use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+EnableDynamicAgentLoading")
+public class MarkerStorageBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int markerCount;
+
+    private DynmapAdsPlugin plugin;
+    private MarkerStorage storage;
+    private String[] messageIds;
+    private UUID[] owners;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        plugin = BenchmarkFixtures.plugin();
+        storage = new MarkerStorage(plugin);
+        List<MarkerData> markers = BenchmarkFixtures.populate(storage, markerCount);
+
+        messageIds = markers.stream()
+                .map(MarkerData::getDiscordMessageId)
+                .filter(Objects::nonNull)
+                .toArray(String[]::new);
+        owners = BenchmarkFixtures.owners(markerCount).toArray(UUID[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.cleanUp(plugin);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MarkerStorage load() {
+        MarkerStorage loaded = new MarkerStorage(plugin);
+        loaded.load();
+        return loaded;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void save() {
+        storage.save();
+    }
+
+    @Benchmark
+    public MarkerData getByDiscordMessageId() {
+        return storage.getByDiscordMessageId(messageIds[next++ % messageIds.length]);
+    }
+
+    @Benchmark
+    public List<MarkerData> getByOwner() {
+        return storage.getByOwner(owners[next++ % owners.length]);
+    }
+
+    @Benchmark
+    public List<MarkerData> getByStatus() {
+        return storage.getByStatus(MarkerStatus.ADS);
+    }
+
+    @Benchmark
+    public List<MarkerData> getExpiredAds() {
+        return storage.getExpiredAds();
+    }
+}
@@ -0,0 +1,57 @@
+package net.inecat.dynmapads.dynmap;
+
+import net.inecat.dynmapads.benchmark.BenchmarkFixtures;
+import net.inecat.dynmapads.data.MarkerData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Popup HTML and marker IDs for every marker, the work a full Dynmap
+ * refresh does on the main thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkerHtmlBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int markerCount;
+
+    private List<MarkerData> markers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        markers = BenchmarkFixtures.markers(markerCount);
+    }
+
+    @Benchmark
+    public void buildHtml(Blackhole blackhole) {
+        for (MarkerData data : markers) {
+            blackhole.consume(DynmapManager.buildHtml(data, data.getOwnerName(), true));
+        }
+    }
+
+    @Benchmark
+    public void sanitizeMarkerId(Blackhole blackhole) {
+        for (MarkerData data : markers) {
+            blackhole.consume(DynmapManager.sanitizeMarkerId(data.getShopName()));
+        }
+    }
+}
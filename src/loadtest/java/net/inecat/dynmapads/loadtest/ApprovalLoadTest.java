@@ -0,0 +1,241 @@
+package net.inecat.dynmapads.loadtest;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.discord.ButtonListener;
+import net.inecat.dynmapads.discord.ReactionPoller;
+import net.inecat.dynmapads.discord.gateway.DiscordUser;
+import net.inecat.dynmapads.metrics.Histogram;
+import net.inecat.dynmapads.metrics.Metric;
+import net.milkbowl.vault.economy.Economy;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.ServicePriority;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offline load test of the Discord approval pipeline.
+ * Runs the plugin on MockBukkit with {@link InMemoryDiscordGateway}: players
+ * apply with /mapmarker commercial, the requests are posted by the outbox
+ * through DiscordManager, and simulated moderators decide over a time window.
+ * Decisions reach ApprovalService through buttons, reaction events or the
+ * reaction polling task, which runs every 100 ticks. Failed and rate limited
+ * sends are retried by the outbox. Measures the time from each request to its
+ * delivery, and from each click or reaction to the marker being decided.
+ *
+ * <p>Run with {@code mvn -Ploadtest compile exec:java -Dexec.args="--applications 2000 --mode buttons"}.
+ */
+public final class ApprovalLoadTest {
+    private static final String APPROVAL_CHANNEL_ID = "approval";
+    private static final String ADS_CHANNEL_ID = "ads";
+
+    private ApprovalLoadTest() {
+    }
+
+    /**
+     * What the harness knows about one application.
+     */
+    private static final class Application {
+        private final String shopName;
+        private final long submittedAt;
+        private long decisionTick = -1;
+        private long reactedAt;
+        private boolean approve;
+
+        private Application(String shopName, long submittedAt) {
+            this.shopName = shopName;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int applications = Integer.parseInt(options.getOrDefault("applications", "2000"));
+        long tickMillis = Long.parseLong(options.getOrDefault("tick-ms", "50"));
+        long reactionWindowMillis = Long.parseLong(options.getOrDefault("reaction-window-ms", "30000"));
+        // buttons, events (reaction events) or polling
+        String mode = options.getOrDefault("mode", "polling");
+        boolean buttons = mode.equals("buttons");
+        long timeoutMillis = Long.parseLong(options.getOrDefault("timeout-ms", "600000"));
+        double approveRate = Double.parseDouble(options.getOrDefault("approve-rate", "0.8"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        InMemoryDiscordGateway gateway = new InMemoryDiscordGateway(new InMemoryDiscordGateway.Settings(
+                Long.parseLong(options.getOrDefault("latency-min-ms", "20")),
+                Long.parseLong(options.getOrDefault("latency-max-ms", "150")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0.01")),
+                Double.parseDouble(options.getOrDefault("rate-limit-rate", "0.02")),
+                Long.parseLong(options.getOrDefault("retry-after-ms", "1000")),
+                seed));
+        gateway.setDeliverEvents(mode.equals("events"));
+        FakeEconomy economy = new FakeEconomy(1_000_000_000,
+                Long.parseLong(options.getOrDefault("economy-latency-ms", "5")));
+        FakeDynmap dynmap = new FakeDynmap();
+
+        // Server with the plugins the plugin depends on
+        ServerMock server = MockBukkit.mock();
+        server.addSimpleWorld("world");
+        Plugin vault = MockBukkit.createMockPlugin("Vault");
+        MockBukkit.createMockPlugin("dynmap");
+        MockBukkit.createMockPlugin("DiscordSRV");
+        server.getServicesManager().register(Economy.class, economy.economy(), vault, ServicePriority.Normal);
+
+        HarnessPlugin.install(gateway, dynmap.markerAPI());
+        DynmapAdsPlugin plugin = MockBukkit.load(HarnessPlugin.class);
+        configure(plugin, gateway, buttons);
+
+        // Every application goes through the real command, economy and outbox
+        System.out.println("Submitting " + applications + " applications...");
+        List<Application> open = new ArrayList<>();
+        List<PlayerMock> players = new ArrayList<>();
+        for (int i = 0; i < applications; i++) {
+            PlayerMock player = server.addPlayer("player" + i);
+            players.add(player);
+            String shopName = "shop-" + i;
+            open.add(new Application(shopName, System.nanoTime()));
+            player.performCommand("mapmarker commercial " + shopName + " 負荷試験の店舗です");
+        }
+
+        Random random = new Random(seed);
+        DiscordUser moderator = new DiscordUser("1", "moderator", false);
+        long windowTicks = reactionWindowMillis / tickMillis;
+        LatencyStats deliveryLatency = new LatencyStats();
+        LatencyStats approvalLatency = new LatencyStats();
+        int approved = 0;
+        int rejected = 0;
+        int lost = 0;
+        long callsBeforeDecisions = -1;
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (long tick = 0; !open.isEmpty() && System.currentTimeMillis() < deadline; tick++) {
+            long tickStart = System.nanoTime();
+            server.getScheduler().performOneTick();
+
+            for (var iterator = open.iterator(); iterator.hasNext(); ) {
+                Application application = iterator.next();
+                MarkerData data = plugin.getMarkerStorage().getMarker(application.shopName);
+                MarkerStatus status = data != null ? data.getStatus() : null;
+
+                if (status == MarkerStatus.PENDING) {
+                    String messageId = data.getDiscordMessageId();
+                    if (messageId == null) {
+                        continue;
+                    }
+                    if (application.decisionTick < 0) {
+                        deliveryLatency.record(System.nanoTime() - application.submittedAt);
+                        application.decisionTick = tick + (long) (random.nextDouble() * windowTicks);
+                        application.approve = random.nextDouble() < approveRate;
+                    } else if (application.decisionTick <= tick && application.reactedAt == 0) {
+                        // Moderators act once their client shows the buttons or reactions
+                        String buttonId = application.approve
+                                ? ButtonListener.APPROVE_BUTTON_ID : ButtonListener.REJECT_BUTTON_ID;
+                        String emoji = application.approve ? ReactionPoller.APPROVE_EMOJI : ReactionPoller.REJECT_EMOJI;
+                        boolean acted = buttons
+                                ? gateway.click(APPROVAL_CHANNEL_ID, messageId, buttonId, moderator)
+                                : gateway.react(APPROVAL_CHANNEL_ID, messageId, emoji, moderator);
+                        if (acted) {
+                            application.reactedAt = System.nanoTime();
+                        }
+                    }
+                    continue;
+                }
+
+                if (application.reactedAt != 0) {
+                    approvalLatency.record(System.nanoTime() - application.reactedAt);
+                    if (status == null) {
+                        rejected++;
+                    } else {
+                        approved++;
+                    }
+                    iterator.remove();
+                } else if (application.decisionTick >= 0) {
+                    // Decided or withdrawn without a moderator
+                    lost++;
+                    iterator.remove();
+                }
+            }
+
+            if (callsBeforeDecisions < 0 && open.stream().allMatch(application -> application.decisionTick >= 0)) {
+                callsBeforeDecisions = gateway.getRestCalls();
+            }
+            for (PlayerMock player : players) {
+                while (player.nextMessage() != null) {
+                    // Drop chat output so it does not pile up in the mock
+                }
+            }
+
+            long remaining = tickStart + TimeUnit.MILLISECONDS.toNanos(tickMillis) - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+
+        System.out.println("=== Approval load test ===");
+        System.out.println("Mode:              " + (buttons ? "buttons" : mode.equals("events")
+                ? "reaction events" : "reaction polling every 100 ticks"));
+        System.out.println("Applications:      " + applications);
+        System.out.println("Approved/rejected: " + approved + "/" + rejected);
+        System.out.println("Undecided:         " + open.size() + (lost > 0 ? " (" + lost + " lost)" : ""));
+        System.out.println("Request delivery:  " + deliveryLatency.summary());
+        System.out.println("Approval latency:  " + approvalLatency.summary());
+        long decisionCalls = callsBeforeDecisions < 0 ? 0 : gateway.getRestCalls() - callsBeforeDecisions;
+        System.out.println("REST calls:        " + gateway.getRestCalls() + " (" + decisionCalls
+                + " after every request was delivered)");
+        long cycles = 0;
+        for (Histogram.Snapshot snapshot : plugin.getMetrics().snapshots(Metric.POLL_CYCLE).values()) {
+            cycles += snapshot.count();
+        }
+        if (cycles > 0) {
+            for (Histogram.Snapshot snapshot : plugin.getMetrics().snapshots(Metric.POLL_REST_CALLS).values()) {
+                System.out.printf("REST calls/cycle:  p50=%d max=%d over %d cycles%n", snapshot.p50(),
+                        snapshot.max(), cycles);
+            }
+        }
+        System.out.println("Injected 429s:     " + gateway.getRateLimitedCount());
+        System.out.println("Injected errors:   " + gateway.getErrorCount());
+        System.out.println("Outbox pending:    " + plugin.getDiscordManager().getOutbox().size());
+
+        MockBukkit.unmock();
+        gateway.shutdown();
+    }
+
+    /**
+     * Point the Discord channels at the fake gateway, pick the approval mode
+     * and switch off the command rate limit, which would otherwise throttle
+     * the simulated players. The gateway reconnects, so Discord is initialized
+     * again with the approval mode.
+     */
+    private static void configure(DynmapAdsPlugin plugin, InMemoryDiscordGateway gateway, boolean buttons)
+            throws Exception {
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        config.set("discord.approval-channel-id", APPROVAL_CHANNEL_ID);
+        config.set("discord.ads-channel-id", ADS_CHANNEL_ID);
+        config.set("discord.approval-mode", buttons ? "buttons" : "reactions");
+        config.set("rate-limit.enabled", false);
+        config.save(file);
+        plugin.reloadConfiguration();
+        gateway.setReady(false);
+        gateway.setReady(true);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        return options;
+    }
+}
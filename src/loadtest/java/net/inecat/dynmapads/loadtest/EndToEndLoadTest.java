@@ -0,0 +1,287 @@
+package net.inecat.dynmapads.loadtest;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.discord.ButtonListener;
+import net.inecat.dynmapads.discord.gateway.DiscordUser;
+import net.inecat.dynmapads.metrics.Histogram;
+import net.inecat.dynmapads.metrics.Metric;
+import net.milkbowl.vault.economy.Economy;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.ServicePriority;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offline end-to-end load test of the whole plugin on MockBukkit.
+ * Simulated players run /mapmarker commercial, ads and delete; simulated
+ * moderators approve or reject through buttons on {@link InMemoryDiscordGateway};
+ * running ads are pushed past their end time so the expiration task reverts
+ * them. Vault and Dynmap are replaced by {@link FakeEconomy} and
+ * {@link FakeDynmap}. Reports command throughput, approval latency, main
+ * thread time per tick and heap growth.
+ *
+ * <p>Run with {@code mvn -Ploadtest compile exec:java
+ * -Dexec.mainClass=net.inecat.dynmapads.loadtest.EndToEndLoadTest -Dexec.args="--players 500"}.
+ */
+public final class EndToEndLoadTest {
+    private static final String APPROVAL_CHANNEL_ID = "approval";
+    private static final String ADS_CHANNEL_ID = "ads";
+    // Ticks a player waits after a command before acting on the same shop again
+    private static final int ACTION_COOLDOWN_TICKS = 40;
+
+    private EndToEndLoadTest() {
+    }
+
+    /**
+     * What the harness knows about one simulated player's current shop.
+     */
+    private static final class Shopper {
+        private final PlayerMock player;
+        private String shopName;
+        private int shopCount;
+        private boolean stored;
+        private long lastActionTick = -ACTION_COOLDOWN_TICKS;
+        private long submittedAt;
+        private long decisionTick = -1;
+        private long clickedAt;
+        private long adsSeenTick = -1;
+
+        private Shopper(PlayerMock player) {
+            this.player = player;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int players = Integer.parseInt(options.getOrDefault("players", "200"));
+        int ticks = Integer.parseInt(options.getOrDefault("ticks", "6000"));
+        long tickMillis = Long.parseLong(options.getOrDefault("tick-ms", "50"));
+        double actionsPerMinute = Double.parseDouble(options.getOrDefault("actions-per-minute", "2"));
+        int decisionWindowTicks = Integer.parseInt(options.getOrDefault("decision-window-ticks", "200"));
+        int adLifetimeTicks = Integer.parseInt(options.getOrDefault("ad-lifetime-ticks", "600"));
+        double approveRate = Double.parseDouble(options.getOrDefault("approve-rate", "0.8"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        InMemoryDiscordGateway gateway = new InMemoryDiscordGateway(new InMemoryDiscordGateway.Settings(
+                Long.parseLong(options.getOrDefault("latency-min-ms", "20")),
+                Long.parseLong(options.getOrDefault("latency-max-ms", "150")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0.01")),
+                Double.parseDouble(options.getOrDefault("rate-limit-rate", "0.02")),
+                Long.parseLong(options.getOrDefault("retry-after-ms", "1000")),
+                seed));
+        FakeEconomy economy = new FakeEconomy(1_000_000_000,
+                Long.parseLong(options.getOrDefault("economy-latency-ms", "5")));
+        FakeDynmap dynmap = new FakeDynmap();
+
+        // Server with the plugins the plugin depends on
+        ServerMock server = MockBukkit.mock();
+        server.addSimpleWorld("world");
+        Plugin vault = MockBukkit.createMockPlugin("Vault");
+        MockBukkit.createMockPlugin("dynmap");
+        MockBukkit.createMockPlugin("DiscordSRV");
+        server.getServicesManager().register(Economy.class, economy.economy(), vault, ServicePriority.Normal);
+
+        HarnessPlugin.install(gateway, dynmap.markerAPI());
+        DynmapAdsPlugin plugin = MockBukkit.load(HarnessPlugin.class);
+        configure(plugin);
+
+        List<Shopper> shoppers = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            shoppers.add(new Shopper(server.addPlayer("player" + i)));
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        Random random = new Random(seed);
+        DiscordUser moderator = new DiscordUser("1", "moderator", false);
+        double actionChance = actionsPerMinute / 1200.0;
+        LatencyStats tickTime = new LatencyStats();
+        LatencyStats deliveryLatency = new LatencyStats();
+        LatencyStats decisionLatency = new LatencyStats();
+        Map<String, Integer> issued = new HashMap<>();
+        int approved = 0;
+        int rejected = 0;
+        int expired = 0;
+
+        System.out.println("Simulating " + players + " players for " + ticks + " ticks...");
+        long runStart = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            long tickStart = System.nanoTime();
+
+            // Players act on the main thread, like command dispatch does
+            for (Shopper shopper : shoppers) {
+                if (tick - shopper.lastActionTick >= ACTION_COOLDOWN_TICKS && random.nextDouble() < actionChance) {
+                    String command = act(plugin, shopper, random);
+                    if (command != null) {
+                        shopper.lastActionTick = tick;
+                        issued.merge(command, 1, Integer::sum);
+                    }
+                }
+            }
+            server.getScheduler().performOneTick();
+            tickTime.record(System.nanoTime() - tickStart);
+
+            // Moderators, expirations and bookkeeping are not part of the tick
+            for (Shopper shopper : shoppers) {
+                MarkerData data = shopper.shopName != null
+                        ? plugin.getMarkerStorage().getMarker(shopper.shopName) : null;
+                MarkerStatus status = data != null ? data.getStatus() : null;
+
+                if (status == MarkerStatus.PENDING && data.getDiscordMessageId() != null) {
+                    if (shopper.decisionTick < 0) {
+                        deliveryLatency.record(System.nanoTime() - shopper.submittedAt);
+                        shopper.decisionTick = tick + random.nextInt(Math.max(1, decisionWindowTicks));
+                    } else if (shopper.decisionTick <= tick && shopper.clickedAt == 0) {
+                        shopper.clickedAt = System.nanoTime();
+                        gateway.click(APPROVAL_CHANNEL_ID, data.getDiscordMessageId(),
+                                random.nextDouble() < approveRate
+                                        ? ButtonListener.APPROVE_BUTTON_ID : ButtonListener.REJECT_BUTTON_ID,
+                                moderator);
+                    }
+                } else if (shopper.clickedAt != 0) {
+                    decisionLatency.record(System.nanoTime() - shopper.clickedAt);
+                    shopper.clickedAt = 0;
+                    if (status == null) {
+                        rejected++;
+                    } else {
+                        approved++;
+                    }
+                }
+
+                if (status == MarkerStatus.ADS) {
+                    if (shopper.adsSeenTick < 0) {
+                        shopper.adsSeenTick = tick;
+                    } else if (tick - shopper.adsSeenTick == adLifetimeTicks) {
+                        data.setAdsEndTime(LocalDateTime.now().minusMinutes(1));
+                        plugin.getMarkerStorage().updateMarker(data);
+                    }
+                } else if (shopper.adsSeenTick >= 0) {
+                    if (status == MarkerStatus.COMMERCIAL) {
+                        expired++;
+                    }
+                    shopper.adsSeenTick = -1;
+                }
+                if (status != null) {
+                    shopper.stored = true;
+                } else if (shopper.stored) {
+                    shopper.shopName = null;
+                    shopper.stored = false;
+                }
+
+                while (shopper.player.nextMessage() != null) {
+                    // Drop chat output so it does not pile up in the mock
+                }
+            }
+
+            long remaining = tickStart + TimeUnit.MILLISECONDS.toNanos(tickMillis) - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+        double seconds = (System.nanoTime() - runStart) / 1e9;
+
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        System.out.println("=== End-to-end load test ===");
+        System.out.printf("Players:            %d over %d ticks (%.1fs)%n", players, ticks, seconds);
+        int totalIssued = issued.values().stream().mapToInt(Integer::intValue).sum();
+        System.out.printf("Commands issued:    %d (%.1f/s) %s%n", totalIssued, totalIssued / seconds, issued);
+        long completed = 0;
+        for (Map.Entry<String, Histogram.Snapshot> entry
+                : plugin.getMetrics().snapshots(Metric.COMMAND_COMPLETION).entrySet()) {
+            Histogram.Snapshot snapshot = entry.getValue();
+            completed += snapshot.count();
+            System.out.printf("  %-8s completed n=%d p50=%.1fms p99=%.1fms max=%.1fms%n", entry.getKey(),
+                    snapshot.count(), snapshot.p50() / 1e6, snapshot.p99() / 1e6, snapshot.max() / 1e6);
+        }
+        System.out.printf("Commands completed: %d (%.1f/s)%n", completed, completed / seconds);
+        System.out.println("Approved/rejected:  " + approved + "/" + rejected + ", ads expired: " + expired);
+        System.out.println("Request delivery:   " + deliveryLatency.summary());
+        System.out.println("Decision latency:   " + decisionLatency.summary());
+        System.out.println("Main thread/tick:   " + tickTime.summary());
+        long overruns = plugin.getMetrics().counts(Metric.TICK_OVERRUNS).values().stream()
+                .mapToLong(Long::longValue).sum();
+        System.out.println("Tick budget overruns: " + overruns);
+        System.out.println("Economy calls:      " + economy.getCalls());
+        System.out.println("Dynmap markers:     " + dynmap.markerCount() + " (" + dynmap.getMutations()
+                + " mutations)");
+        System.out.println("Discord REST calls: " + gateway.getRestCalls() + " (429s: "
+                + gateway.getRateLimitedCount() + ", errors: " + gateway.getErrorCount() + ")");
+        System.out.printf("Heap after GC:      %.1f MB -> %.1f MB (%+.1f MB)%n", heapBefore / 1048576.0,
+                heapAfter / 1048576.0, (heapAfter - heapBefore) / 1048576.0);
+
+        MockBukkit.unmock();
+        gateway.shutdown();
+    }
+
+    /**
+     * Point the Discord channels at the fake gateway and switch off the
+     * command rate limit, which would otherwise throttle the simulated players.
+     */
+    private static void configure(DynmapAdsPlugin plugin) throws Exception {
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        config.set("discord.approval-channel-id", APPROVAL_CHANNEL_ID);
+        config.set("discord.ads-channel-id", ADS_CHANNEL_ID);
+        config.set("rate-limit.enabled", false);
+        config.save(file);
+        plugin.reloadConfiguration();
+    }
+
+    /**
+     * Run the next command of a player's shop lifecycle: apply for a shop,
+     * advertise an approved one, or delete it.
+     *
+     * @return the subcommand that was run, or null if the player waited
+     */
+    private static String act(DynmapAdsPlugin plugin, Shopper shopper, Random random) {
+        if (shopper.shopName == null) {
+            shopper.shopName = shopper.player.getName() + "-shop" + shopper.shopCount++;
+            shopper.submittedAt = System.nanoTime();
+            shopper.decisionTick = -1;
+            shopper.player.performCommand("mapmarker commercial " + shopper.shopName + " 負荷試験の店舗です");
+            return "commercial";
+        }
+
+        MarkerData data = plugin.getMarkerStorage().getMarker(shopper.shopName);
+        if (data == null || data.getStatus() == MarkerStatus.PENDING) {
+            return null;
+        }
+        if (data.getStatus() == MarkerStatus.COMMERCIAL && random.nextDouble() < 0.5) {
+            shopper.player.performCommand("mapmarker ads " + shopper.shopName + " 1 本日限定セール");
+            return "ads";
+        }
+        if (random.nextDouble() < 0.2) {
+            shopper.player.performCommand("mapmarker delete " + shopper.shopName);
+            return "delete";
+        }
+        return null;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,131 @@
+package net.inecat.dynmapads.loadtest;
+
+import org.dynmap.markers.Marker;
+import org.dynmap.markers.MarkerAPI;
+import org.dynmap.markers.MarkerIcon;
+import org.dynmap.markers.MarkerSet;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory Dynmap marker API for offline load testing. Marker sets keep
+ * their markers in maps, so lookups and deletions behave like Dynmap's
+ * without rendering anything. Only the methods the plugin uses are
+ * implemented; the rest return defaults.
+ */
+public class FakeDynmap {
+    private final Map<String, Map<String, Marker>> sets = new ConcurrentHashMap<>();
+    private final Map<String, MarkerSet> setProxies = new ConcurrentHashMap<>();
+    private final AtomicLong mutations = new AtomicLong();
+    private final MarkerIcon defaultIcon = proxy(MarkerIcon.class, (method, args) -> switch (method.getName()) {
+        case "getMarkerIconID", "getMarkerIconLabel" -> "default";
+        default -> null;
+    });
+    private final MarkerAPI markerAPI = proxy(MarkerAPI.class, (method, args) -> switch (method.getName()) {
+        case "getMarkerSet" -> setProxies.get((String) args[0]);
+        case "createMarkerSet" -> createSet((String) args[0]);
+        case "getMarkerIcon" -> defaultIcon;
+        case "getMarkerSets" -> Set.copyOf(setProxies.values());
+        default -> null;
+    });
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(Method method, Object[] args);
+    }
+
+    /**
+     * The marker API handed to the plugin.
+     */
+    public MarkerAPI markerAPI() {
+        return markerAPI;
+    }
+
+    /**
+     * Number of markers currently in all sets.
+     */
+    public int markerCount() {
+        return sets.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Number of marker creations, deletions and description updates.
+     */
+    public long getMutations() {
+        return mutations.get();
+    }
+
+    private MarkerSet createSet(String setId) {
+        Map<String, Marker> markers = new ConcurrentHashMap<>();
+        sets.put(setId, markers);
+        MarkerSet set = proxy(MarkerSet.class, (method, args) -> switch (method.getName()) {
+            case "getMarkerSetID" -> setId;
+            case "createMarker" -> createMarker(markers, (String) args[0], (String) args[1]);
+            case "findMarker" -> markers.get((String) args[0]);
+            case "getMarkers" -> Set.copyOf(markers.values());
+            default -> null;
+        });
+        setProxies.put(setId, set);
+        return set;
+    }
+
+    private Marker createMarker(Map<String, Marker> markers, String markerId, String label) {
+        if (markers.containsKey(markerId)) {
+            return null;
+        }
+        Marker marker = proxy(Marker.class, (method, args) -> switch (method.getName()) {
+            case "getMarkerID" -> markerId;
+            case "getLabel" -> label;
+            case "setDescription" -> {
+                mutations.incrementAndGet();
+                yield null;
+            }
+            case "deleteMarker" -> {
+                markers.remove(markerId);
+                mutations.incrementAndGet();
+                yield null;
+            }
+            default -> null;
+        });
+        markers.put(markerId, marker);
+        mutations.incrementAndGet();
+        return marker;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    Object result = switch (method.getName()) {
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> type.getSimpleName() + "@" + System.identityHashCode(proxy);
+                        default -> handler.invoke(method, args);
+                    };
+                    return result != null ? result : defaultValue(method.getReturnType());
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        return null;
+    }
+}
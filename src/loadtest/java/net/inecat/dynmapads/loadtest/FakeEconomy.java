@@ -0,0 +1,113 @@
+package net.inecat.dynmapads.loadtest;
+
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory Vault economy for offline load testing. Every account starts
+ * with the same balance, and each call blocks for a fixed latency to stand in
+ * for a database-backed economy plugin. Only the OfflinePlayer methods the
+ * plugin uses are implemented; the rest return defaults.
+ */
+public final class FakeEconomy {
+    private final double startingBalance;
+    private final long latencyNanos;
+    private final Map<UUID, Double> balances = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final Economy economy;
+
+    public FakeEconomy(double startingBalance, long latencyMillis) {
+        this.startingBalance = startingBalance;
+        this.latencyNanos = latencyMillis * 1_000_000L;
+        this.economy = (Economy) Proxy.newProxyInstance(Economy.class.getClassLoader(),
+                new Class<?>[] {Economy.class}, (proxy, method, args) -> invoke(method, args));
+    }
+
+    /**
+     * The Vault service to register.
+     */
+    public Economy economy() {
+        return economy;
+    }
+
+    /**
+     * Number of balance calls made by the plugin.
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    private Object invoke(Method method, Object[] args) {
+        if (args != null && args.length > 0 && args[0] instanceof OfflinePlayer player) {
+            double amount = args[args.length - 1] instanceof Double value ? value : 0;
+            return switch (method.getName()) {
+                case "getBalance" -> balance(player.getUniqueId());
+                case "has" -> balance(player.getUniqueId()) >= amount;
+                case "withdrawPlayer" -> transfer(player.getUniqueId(), -amount);
+                case "depositPlayer" -> transfer(player.getUniqueId(), amount);
+                case "hasAccount", "createPlayerAccount" -> true;
+                default -> defaultValue(method.getReturnType());
+            };
+        }
+
+        return switch (method.getName()) {
+            case "getName", "toString" -> "FakeEconomy";
+            case "isEnabled" -> true;
+            case "currencyNamePlural", "currencyNameSingular" -> "円";
+            case "format" -> String.format("%.0f円", (Double) args[0]);
+            case "hashCode" -> System.identityHashCode(this);
+            case "equals" -> args[0] == economy;
+            default -> defaultValue(method.getReturnType());
+        };
+    }
+
+    private double balance(UUID id) {
+        simulateLatency();
+        return balances.getOrDefault(id, startingBalance);
+    }
+
+    private EconomyResponse transfer(UUID id, double delta) {
+        simulateLatency();
+        synchronized (balances) {
+            double current = balances.getOrDefault(id, startingBalance);
+            if (current + delta < 0) {
+                return new EconomyResponse(Math.abs(delta), current, EconomyResponse.ResponseType.FAILURE,
+                        "Insufficient funds");
+            }
+            balances.put(id, current + delta);
+            return new EconomyResponse(Math.abs(delta), current + delta, EconomyResponse.ResponseType.SUCCESS, null);
+        }
+    }
+
+    private void simulateLatency() {
+        calls.incrementAndGet();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == EconomyResponse.class) {
+            return new EconomyResponse(0, 0, EconomyResponse.ResponseType.NOT_IMPLEMENTED, "Not implemented");
+        }
+        return null;
+    }
+}
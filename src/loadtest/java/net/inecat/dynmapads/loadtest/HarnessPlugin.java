@@ -0,0 +1,32 @@
+package net.inecat.dynmapads.loadtest;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.discord.gateway.DiscordGateway;
+import org.dynmap.markers.MarkerAPI;
+
+/**
+ * The plugin with Discord and Dynmap replaced by in-memory fakes. MockBukkit
+ * creates the instance itself, so the fakes are installed beforehand.
+ */
+public class HarnessPlugin extends DynmapAdsPlugin {
+    private static volatile DiscordGateway gateway;
+    private static volatile MarkerAPI markerAPI;
+
+    /**
+     * Set the fakes used by the next plugin instance that is enabled.
+     */
+    static void install(DiscordGateway discordGateway, MarkerAPI dynmapMarkerAPI) {
+        gateway = discordGateway;
+        markerAPI = dynmapMarkerAPI;
+    }
+
+    @Override
+    protected DiscordGateway createDiscordGateway() {
+        return gateway;
+    }
+
+    @Override
+    protected MarkerAPI findMarkerAPI() {
+        return markerAPI;
+    }
+}
@@ -0,0 +1,352 @@
+package net.inecat.dynmapads.loadtest;
+
+import net.inecat.dynmapads.discord.gateway.ButtonEvent;
+import net.inecat.dynmapads.discord.gateway.DiscordButton;
+import net.inecat.dynmapads.discord.gateway.DiscordEmbed;
+import net.inecat.dynmapads.discord.gateway.DiscordGateway;
+import net.inecat.dynmapads.discord.gateway.DiscordGatewayException;
+import net.inecat.dynmapads.discord.gateway.DiscordMessage;
+import net.inecat.dynmapads.discord.gateway.DiscordUser;
+import net.inecat.dynmapads.discord.gateway.ReactionEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Deterministic in-memory Discord gateway for offline load testing.
+ * Every REST call draws its latency and fault from a seeded random source,
+ * so a run with the same settings issues the same faults in the same order.
+ */
+public class InMemoryDiscordGateway implements DiscordGateway {
+    private static final DiscordUser BOT_USER = new DiscordUser("0", "DynmapAds", true);
+
+    private final Settings settings;
+    private final Random random;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong nextId = new AtomicLong(1_000_000_000L);
+    private final Map<String, Map<String, FakeMessage>> channels = new ConcurrentHashMap<>();
+    private final AtomicLong restCalls = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile Runnable readyHandler;
+    private volatile Consumer<ReactionEvent> reactionHandler;
+    private volatile Predicate<ButtonEvent> buttonHandler;
+    private volatile boolean deliverEvents = true;
+    private volatile boolean ready = true;
+
+    /**
+     * Fault and latency injection settings.
+     *
+     * @param minLatencyMillis lower bound of simulated REST latency
+     * @param maxLatencyMillis upper bound of simulated REST latency
+     * @param errorRate        probability of a generic failure per call
+     * @param rateLimitRate    probability of a 429 per call
+     * @param retryAfterMillis retry-after reported with injected 429s
+     * @param seed             seed for all random decisions
+     */
+    public record Settings(long minLatencyMillis, long maxLatencyMillis, double errorRate, double rateLimitRate,
+            long retryAfterMillis, long seed) {
+    }
+
+    private static final class FakeMessage {
+        private final String id;
+        private final String content;
+        private volatile DiscordEmbed embed;
+        private volatile List<DiscordButton> buttons = List.of();
+        private final Map<String, List<DiscordUser>> reactions = new LinkedHashMap<>();
+
+        private FakeMessage(String id, String content, DiscordEmbed embed) {
+            this.id = id;
+            this.content = content;
+            this.embed = embed;
+        }
+
+        private synchronized DiscordMessage snapshot() {
+            List<DiscordMessage.Reaction> counts = new ArrayList<>();
+            reactions.forEach((emoji, users) -> counts.add(new DiscordMessage.Reaction(emoji, users.size())));
+            return new DiscordMessage(id, true, content, counts);
+        }
+
+        private synchronized boolean addReaction(String emoji, DiscordUser user) {
+            List<DiscordUser> users = reactions.computeIfAbsent(emoji, k -> new ArrayList<>());
+            if (users.stream().anyMatch(u -> u.id().equals(user.id()))) {
+                return false;
+            }
+            users.add(user);
+            return true;
+        }
+
+        private synchronized List<DiscordUser> users(String emoji) {
+            return List.copyOf(reactions.getOrDefault(emoji, List.of()));
+        }
+    }
+
+    public InMemoryDiscordGateway(Settings settings) {
+        this.settings = settings;
+        this.random = new Random(settings.seed());
+        this.scheduler = Executors.newScheduledThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "fake-discord");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Simulate Discord going down or coming back. Coming back runs the ready
+     * handler, like a reconnect.
+     */
+    public void setReady(boolean ready) {
+        boolean wasReady = this.ready;
+        this.ready = ready;
+        Runnable handler = readyHandler;
+        if (ready && !wasReady && handler != null) {
+            handler.run();
+        }
+    }
+
+    /**
+     * Simulate DiscordSRV not forwarding reaction events when false.
+     */
+    public void setDeliverEvents(boolean deliverEvents) {
+        this.deliverEvents = deliverEvents;
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessage(String channelId, String content) {
+        return call(() -> store(channelId, new FakeMessage(newId(), content, null)));
+    }
+
+    @Override
+    public CompletableFuture<String> sendEmbed(String channelId, DiscordEmbed embed, List<DiscordButton> buttons) {
+        return call(() -> {
+            FakeMessage message = new FakeMessage(newId(), null, embed);
+            message.buttons = List.copyOf(buttons);
+            return store(channelId, message);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> setButtons(String channelId, String messageId, List<DiscordButton> buttons) {
+        return call(() -> {
+            require(channelId, messageId).buttons = List.copyOf(buttons);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> editEmbed(String channelId, String messageId, DiscordEmbed embed) {
+        return call(() -> {
+            require(channelId, messageId).embed = embed;
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMessage(String channelId, String messageId) {
+        return call(() -> {
+            channel(channelId).remove(messageId);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> pinMessage(String channelId, String messageId) {
+        return call(() -> {
+            require(channelId, messageId);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<DiscordMessage> fetchMessage(String channelId, String messageId) {
+        return call(() -> require(channelId, messageId).snapshot());
+    }
+
+    @Override
+    public CompletableFuture<List<DiscordMessage>> fetchHistory(String channelId, int limit) {
+        return call(() -> channel(channelId).values().stream()
+                .sorted(Comparator.comparing((FakeMessage m) -> Long.parseLong(m.id)).reversed())
+                .limit(limit)
+                .map(FakeMessage::snapshot)
+                .toList());
+    }
+
+    @Override
+    public CompletableFuture<Void> addReaction(String channelId, String messageId, String emoji) {
+        return call(() -> {
+            require(channelId, messageId).addReaction(emoji, BOT_USER);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<DiscordUser>> fetchReactionUsers(String channelId, String messageId,
+            String emoji) {
+        return call(() -> require(channelId, messageId).users(emoji));
+    }
+
+    @Override
+    public void setReadyHandler(Runnable handler) {
+        this.readyHandler = handler;
+    }
+
+    @Override
+    public void setReactionHandler(Consumer<ReactionEvent> handler) {
+        this.reactionHandler = handler;
+    }
+
+    @Override
+    public boolean setButtonHandler(Predicate<ButtonEvent> handler) {
+        this.buttonHandler = handler;
+        return true;
+    }
+
+    /**
+     * Click a button as a moderator. The interaction is delivered after one
+     * simulated round trip, like a real gateway event.
+     *
+     * @return false if the message or button does not exist
+     */
+    public boolean click(String channelId, String messageId, String buttonId, DiscordUser user) {
+        FakeMessage message = channel(channelId).get(messageId);
+        if (message == null || message.buttons.stream().noneMatch(b -> b.id().equals(buttonId))) {
+            return false;
+        }
+
+        Predicate<ButtonEvent> handler = buttonHandler;
+        if (handler != null) {
+            scheduler.schedule(() -> handler.test(new ButtonEvent(channelId, messageId, buttonId, user)),
+                    nextLatency(), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Add a reaction as a moderator, as if clicked in the Discord client.
+     * Does not count as a REST call of the plugin.
+     *
+     * @return false if the message does not exist
+     */
+    public boolean react(String channelId, String messageId, String emoji, DiscordUser user) {
+        FakeMessage message = channel(channelId).get(messageId);
+        if (message == null || !message.addReaction(emoji, user)) {
+            return false;
+        }
+
+        Consumer<ReactionEvent> handler = reactionHandler;
+        if (deliverEvents && handler != null) {
+            scheduler.schedule(() -> handler.accept(new ReactionEvent(channelId, messageId, emoji, user)),
+                    nextLatency(), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Number of messages currently stored in a channel.
+     */
+    public int messageCount(String channelId) {
+        return channel(channelId).size();
+    }
+
+    public long getRestCalls() {
+        return restCalls.get();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * Stop the latency simulation threads.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> operation) {
+        restCalls.incrementAndGet();
+
+        long latency;
+        double roll;
+        synchronized (random) {
+            latency = nextLatencyLocked();
+            roll = random.nextDouble();
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            if (!ready) {
+                errors.incrementAndGet();
+                future.completeExceptionally(new DiscordGatewayException("Gateway offline"));
+            } else if (roll < settings.rateLimitRate()) {
+                rateLimited.incrementAndGet();
+                future.completeExceptionally(DiscordGatewayException.rateLimited(settings.retryAfterMillis()));
+            } else if (roll < settings.rateLimitRate() + settings.errorRate()) {
+                errors.incrementAndGet();
+                future.completeExceptionally(new DiscordGatewayException("Injected failure"));
+            } else {
+                try {
+                    future.complete(operation.get());
+                } catch (DiscordGatewayException e) {
+                    errors.incrementAndGet();
+                    future.completeExceptionally(e);
+                }
+            }
+        }, latency, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private long nextLatency() {
+        synchronized (random) {
+            return nextLatencyLocked();
+        }
+    }
+
+    private long nextLatencyLocked() {
+        long span = settings.maxLatencyMillis() - settings.minLatencyMillis();
+        return settings.minLatencyMillis() + (span > 0 ? (long) (random.nextDouble() * span) : 0);
+    }
+
+    private String newId() {
+        return Long.toString(nextId.incrementAndGet());
+    }
+
+    private String store(String channelId, FakeMessage message) {
+        channel(channelId).put(message.id, message);
+        return message.id;
+    }
+
+    private Map<String, FakeMessage> channel(String channelId) {
+        return channels.computeIfAbsent(channelId, k -> new ConcurrentHashMap<>());
+    }
+
+    private FakeMessage require(String channelId, String messageId) {
+        FakeMessage message = channel(channelId).get(messageId);
+        if (message == null) {
+            throw DiscordGatewayException.notFound("Unknown message: " + messageId, null);
+        }
+        return message;
+    }
+}
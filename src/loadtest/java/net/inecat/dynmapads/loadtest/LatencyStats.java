@@ -0,0 +1,49 @@
+package net.inecat.dynmapads.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples and reports percentiles.
+ */
+public class LatencyStats {
+    private long[] samples = new long[1024];
+    private int count;
+
+    /**
+     * Record a sample in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Get a percentile in milliseconds.
+     *
+     * @param percentile value between 0 and 100
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1_000_000.0;
+    }
+
+    /**
+     * Format p50/p90/p99/p99.9/max on one line.
+     */
+    public String summary() {
+        return String.format("n=%d p50=%.1fms p90=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms",
+                count(), percentileMillis(50), percentileMillis(90), percentileMillis(99),
+                percentileMillis(99.9), percentileMillis(100));
+    }
+}
@@ -1,18 +1,43 @@
 package net.inecat.dynmapads;
 
-import github.scarsz.discordsrv.DiscordSRV;
-import github.scarsz.discordsrv.api.Subscribe;
-import github.scarsz.discordsrv.api.events.DiscordReadyEvent;
+import net.inecat.dynmapads.admin.BulkJobRunner;
+import net.inecat.dynmapads.audit.AuditLog;
+import net.inecat.dynmapads.auction.AdAuction;
+import net.inecat.dynmapads.commands.CommandPipeline;
+import net.inecat.dynmapads.commands.CommandRateLimiter;
 import net.inecat.dynmapads.commands.MapMarkerCommand;
 import net.inecat.dynmapads.commands.MapMarkerTabCompleter;
 import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.LeaderLease;
 import net.inecat.dynmapads.data.MarkerStorage;
+import net.inecat.dynmapads.data.OwnerNameCache;
+import net.inecat.dynmapads.data.SharedDocuments;
 import net.inecat.dynmapads.discord.DiscordManager;
+import net.inecat.dynmapads.discord.gateway.DiscordGateway;
+import net.inecat.dynmapads.discord.gateway.DiscordSrvGateway;
 import net.inecat.dynmapads.dynmap.DynmapManager;
 import net.inecat.dynmapads.economy.EconomyManager;
+import net.inecat.dynmapads.economy.EconomyPipeline;
+import net.inecat.dynmapads.economy.EscrowManager;
+import net.inecat.dynmapads.economy.RevenueAggregator;
+import net.inecat.dynmapads.metrics.MetricsExporter;
+import net.inecat.dynmapads.metrics.PluginMetrics;
+import net.inecat.dynmapads.metrics.TickWatchdog;
 import net.inecat.dynmapads.tasks.AdExpirationTask;
+import net.inecat.dynmapads.tasks.IoExecutor;
+import net.inecat.dynmapads.tasks.OutboxRetryTask;
+import net.inecat.dynmapads.tasks.PluginScheduler;
 import net.inecat.dynmapads.tasks.ReactionPollingTask;
+import net.inecat.dynmapads.tasks.ShutdownCoordinator;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.dynmap.DynmapAPI;
+import org.dynmap.markers.MarkerAPI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Main plugin class for DynmapAdsPlugin.
@@ -21,23 +46,65 @@ import org.bukkit.plugin.java.JavaPlugin;
  * with Discord approval and Vault economy integration.
  */
 public class DynmapAdsPlugin extends JavaPlugin {
-    private ConfigManager configManager;
+    private volatile ConfigManager configManager;
+    private final PluginMetrics metrics = new PluginMetrics();
+    private MetricsExporter metricsExporter;
+    private TickWatchdog tickWatchdog;
+    private AuditLog auditLog;
+    private PluginScheduler pluginScheduler;
+    private IoExecutor ioExecutor;
+    private ShutdownCoordinator shutdownCoordinator;
     private MarkerStorage markerStorage;
+    private LeaderLease leaderLease;
+    private SharedDocuments sharedDocuments;
+    private OwnerNameCache ownerNameCache;
     private EconomyManager economyManager;
+    private EconomyPipeline economyPipeline;
+    private EscrowManager escrowManager;
+    private RevenueAggregator revenueAggregator;
+    private AdAuction adAuction;
     private DynmapManager dynmapManager;
     private DiscordManager discordManager;
+    private CommandRateLimiter rateLimiter;
+    private CommandPipeline commandPipeline;
     private AdExpirationTask expirationTask;
-    private ReactionPollingTask pollingTask;
+    private BulkJobRunner bulkJobRunner;
+    private final List<PluginScheduler.Task> timers = new ArrayList<>();
 
     @Override
     public void onEnable() {
+        pluginScheduler = new PluginScheduler(this);
+
         // Initialize config
-        configManager = new ConfigManager(this);
-        configManager.load();
+        try {
+            configManager = ConfigManager.load(this);
+        } catch (IOException | InvalidConfigurationException e) {
+            getLogger().severe("Failed to load config.yml: " + e.getMessage() + " Disabling plugin.");
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        ioExecutor = new IoExecutor(this);
+        tickWatchdog = new TickWatchdog(this);
+        auditLog = new AuditLog(this);
+        auditLog.start();
+        shutdownCoordinator = new ShutdownCoordinator(this);
+        shutdownCoordinator.reportPrevious();
 
         // Initialize marker storage
         markerStorage = new MarkerStorage(this);
-        markerStorage.load();
+        if (!markerStorage.load()) {
+            getLogger().severe("Failed to load markers from the shared store! Disabling plugin.");
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+        if (configManager.isSharedStorage()) {
+            leaderLease = new LeaderLease(this);
+            leaderLease.start();
+            sharedDocuments = new SharedDocuments(this);
+        }
+        ownerNameCache = new OwnerNameCache(this, configManager.getOwnerNameCacheSize());
+        getServer().getPluginManager().registerEvents(ownerNameCache, this);
 
         // Setup economy
         economyManager = new EconomyManager(this);
@@ -46,22 +113,40 @@ public class DynmapAdsPlugin extends JavaPlugin {
             getServer().getPluginManager().disablePlugin(this);
             return;
         }
+        revenueAggregator = new RevenueAggregator(this);
+        revenueAggregator.load();
+        revenueAggregator.start();
+        economyPipeline = new EconomyPipeline(this, economyManager);
+        economyPipeline.load();
+        escrowManager = new EscrowManager(this, economyPipeline);
+        escrowManager.load();
+        adAuction = new AdAuction(this);
+        adAuction.load();
+        economyPipeline.reconcileCharges();
 
         // Setup Dynmap
         dynmapManager = new DynmapManager(this);
-        if (!dynmapManager.setup()) {
+        if (!dynmapManager.setup(findMarkerAPI())) {
             getLogger().severe("Failed to setup Dynmap! Disabling plugin.");
             getServer().getPluginManager().disablePlugin(this);
             return;
         }
+        markerStorage.startChangeFeed();
 
         // Setup Discord (via DiscordSRV)
-        discordManager = new DiscordManager(this);
-        DiscordSRV.api.subscribe(this);
+        discordManager = new DiscordManager(this, createDiscordGateway());
+        discordManager.getOutbox().load();
+        if (configManager.isDashboardEnabled()) {
+            discordManager.getDashboard().start();
+        }
+        if (configManager.isAdsDigestEnabled()) {
+            discordManager.getAdsDigest().start();
+        }
+        discordManager.getGateway().setReadyHandler(this::onDiscordReady);
 
         // Check if DiscordSRV is already ready (plugin might have loaded after
         // DiscordSRV connected)
-        if (github.scarsz.discordsrv.util.DiscordUtil.getJda() != null) {
+        if (discordManager.getGateway().isReady()) {
             getLogger().info("DiscordSRV is already connected, initializing Discord integration immediately...");
             discordManager.initialize();
         } else {
@@ -69,6 +154,8 @@ public class DynmapAdsPlugin extends JavaPlugin {
         }
 
         // Register commands
+        rateLimiter = new CommandRateLimiter(this);
+        commandPipeline = new CommandPipeline(this);
         MapMarkerCommand commandExecutor = new MapMarkerCommand(this);
         MapMarkerTabCompleter tabCompleter = new MapMarkerTabCompleter(this);
 
@@ -77,66 +164,290 @@ public class DynmapAdsPlugin extends JavaPlugin {
             getCommand("mapmarker").setTabCompleter(tabCompleter);
         }
 
+        // Check the plugin's main thread time at the end of every tick
+        timers.add(pluginScheduler.runGlobalTimer(tickWatchdog::endTick, 1L, 1L));
+
+        // Evict idle rate limit buckets every minute
+        timers.add(pluginScheduler.runGlobalTimer(rateLimiter::evictIdle, 1200L, 1200L));
+
         // Start expiration task (runs every minute = 1200 ticks)
         expirationTask = new AdExpirationTask(this);
-        expirationTask.runTaskTimer(this, 1200L, 1200L);
+        timers.add(pluginScheduler.runGlobalTimer(() -> tickWatchdog.measure("ad-expiration", expirationTask),
+                1200L, 1200L));
+
+        // Settle ad slot auctions; with shared storage there are no slots and this only
+        // starts bids left over from file storage, which every server keeps itself
+        long settleTicks = configManager.getAdsAuctionSettleIntervalSeconds() * 20L;
+        timers.add(pluginScheduler.runGlobalTimer(() -> tickWatchdog.measure("ad-auction", adAuction::settle),
+                settleTicks, settleTicks));
+
+        // Resume unfinished bulk admin jobs
+        bulkJobRunner = new BulkJobRunner(this);
+        bulkJobRunner.load();
+        bulkJobRunner.start();
 
         // Start reaction polling task (runs every 5 seconds = 100 ticks)
-        pollingTask = new ReactionPollingTask(this);
-        pollingTask.runTaskTimerAsynchronously(this, 100L, 100L);
+        ReactionPollingTask pollingTask = new ReactionPollingTask(this);
+        timers.add(pluginScheduler.runGlobalTimer(() -> ioExecutor.run("reaction-poll", pollingTask), 100L, 100L));
         getLogger().info("Reaction polling task started (every 5 seconds).");
 
+        // Start outbox retry task (runs every 5 seconds = 100 ticks)
+        OutboxRetryTask outboxTask = new OutboxRetryTask(this);
+        timers.add(pluginScheduler.runGlobalTimer(() -> ioExecutor.run("outbox-retry", outboxTask), 100L, 100L));
+
+        // Publish metrics for Prometheus if configured
+        metricsExporter = new MetricsExporter(this);
+        metricsExporter.start();
+
         getLogger().info("DynmapAdsPlugin enabled successfully!");
     }
 
     @Override
     public void onDisable() {
+        // Refuse new commands, decisions and Discord sends
+        if (shutdownCoordinator != null) {
+            shutdownCoordinator.begin();
+        }
+
         // Cancel scheduled tasks
-        if (expirationTask != null) {
-            expirationTask.cancel();
+        for (PluginScheduler.Task timer : timers) {
+            timer.cancel();
+        }
+        timers.clear();
+        if (leaderLease != null) {
+            leaderLease.stop();
+        }
+        if (metricsExporter != null) {
+            metricsExporter.stop();
         }
-        if (pollingTask != null) {
-            pollingTask.cancel();
+
+        // Pay out released fees still waiting for a batch
+        if (escrowManager != null) {
+            escrowManager.flush();
+        }
+
+        // Finish commands, transactions and deliveries that are in flight
+        if (shutdownCoordinator != null) {
+            shutdownCoordinator.drain();
         }
 
-        // Shutdown Discord
+        // Shutdown Discord and keep undelivered sends for the next start
         if (discordManager != null) {
+            discordManager.getGateway().setReadyHandler(null);
             discordManager.shutdown();
+            discordManager.getOutbox().save();
+            if (configManager.isDashboardEnabled()) {
+                discordManager.getDashboard().stop();
+            }
+            if (configManager.isAdsDigestEnabled()) {
+                discordManager.getAdsDigest().stop();
+            }
         }
 
-        // Unsubscribe from DiscordSRV
-        DiscordSRV.api.unsubscribe(this);
+        // Persist open bids, escrow, the ledger and the revenue totals
+        if (adAuction != null) {
+            adAuction.save();
+        }
+        if (escrowManager != null) {
+            escrowManager.save();
+        }
+        if (economyPipeline != null) {
+            economyPipeline.shutdown();
+        }
+        if (revenueAggregator != null) {
+            revenueAggregator.stop();
+        }
+
+        // Write the audit events of everything above
+        if (auditLog != null) {
+            auditLog.stop();
+        }
 
-        // Save data
+        // Let background writes finish; saves from here on run inline
+        if (ioExecutor != null) {
+            ioExecutor.shutdown();
+        }
+
+        // Save data last, then the progress of bulk jobs that it includes
         if (markerStorage != null) {
             markerStorage.save();
+            markerStorage.close();
+        }
+        if (sharedDocuments != null) {
+            sharedDocuments.close();
+        }
+        if (bulkJobRunner != null) {
+            bulkJobRunner.stop();
         }
 
         getLogger().info("DynmapAdsPlugin disabled.");
     }
 
+    /**
+     * Re-read config.yml and the messages and swap in the new configuration
+     * as a whole. If the file cannot be read the running configuration stays.
+     *
+     * @return settings that only take effect after a restart but were changed
+     */
+    public List<String> reloadConfiguration() throws IOException, InvalidConfigurationException {
+        ConfigManager previous = configManager;
+        ConfigManager next = ConfigManager.load(this);
+        configManager = next;
+
+        // Start or stop the Discord features that were switched
+        if (discordManager != null) {
+            if (next.isDashboardEnabled() != previous.isDashboardEnabled()) {
+                if (next.isDashboardEnabled()) {
+                    discordManager.getDashboard().start();
+                } else {
+                    discordManager.getDashboard().stop();
+                }
+            }
+            if (next.isAdsDigestEnabled() != previous.isAdsDigestEnabled()) {
+                if (next.isAdsDigestEnabled()) {
+                    discordManager.getAdsDigest().start();
+                } else {
+                    discordManager.getAdsDigest().stop();
+                }
+            }
+        }
+
+        // Rebind the metrics exporters if their settings changed
+        if (metricsExporter != null && metricsExporterChanged(previous, next)) {
+            metricsExporter.stop();
+            metricsExporter.start();
+        }
+
+        // Marker sets are created when Dynmap is set up
+        List<String> restartRequired = new ArrayList<>();
+        if (!next.getCommercialMarkerSet().equals(previous.getCommercialMarkerSet())) {
+            restartRequired.add("dynmap.commercial-marker-set");
+        }
+        if (!next.getAdsMarkerSet().equals(previous.getAdsMarkerSet())) {
+            restartRequired.add("dynmap.ads-marker-set");
+        }
+        if (next.isSharedStorage() != previous.isSharedStorage()
+                || !next.getSharedStorageUrl().equals(previous.getSharedStorageUrl())
+                || !next.getSharedStorageTablePrefix().equals(previous.getSharedStorageTablePrefix())
+                || next.getSharedStorageLeaseSeconds() != previous.getSharedStorageLeaseSeconds()) {
+            restartRequired.add("storage");
+        }
+        if (next.getAdsAuctionSettleIntervalSeconds() != previous.getAdsAuctionSettleIntervalSeconds()) {
+            restartRequired.add("ads.auction.settle-interval-seconds");
+        }
+        getLogger().info("Configuration reloaded (locale: " + next.getLocale() + ").");
+        return restartRequired;
+    }
+
+    private static boolean metricsExporterChanged(ConfigManager previous, ConfigManager next) {
+        return previous.isMetricsHttpEnabled() != next.isMetricsHttpEnabled()
+                || !previous.getMetricsHttpBind().equals(next.getMetricsHttpBind())
+                || previous.getMetricsHttpPort() != next.getMetricsHttpPort()
+                || !previous.getMetricsTextfile().equals(next.getMetricsTextfile())
+                || previous.getMetricsTextfileIntervalSeconds() != next.getMetricsTextfileIntervalSeconds();
+    }
+
     /**
      * Called when DiscordSRV's JDA is ready.
      */
-    @Subscribe
-    public void onDiscordReady(DiscordReadyEvent event) {
+    private void onDiscordReady() {
         getLogger().info("DiscordSRV is ready, initializing Discord integration...");
         discordManager.initialize();
     }
 
+    /**
+     * Gateway for all Discord operations. Offline harnesses override this
+     * to run without DiscordSRV.
+     */
+    protected DiscordGateway createDiscordGateway() {
+        return new DiscordSrvGateway(getLogger());
+    }
+
+    /**
+     * Dynmap's marker API, or null if Dynmap is missing. Offline harnesses
+     * override this to run without Dynmap.
+     */
+    protected MarkerAPI findMarkerAPI() {
+        Plugin dynmapPlugin = getServer().getPluginManager().getPlugin("dynmap");
+        if (dynmapPlugin == null) {
+            getLogger().severe("Dynmap not found!");
+            return null;
+        }
+        return ((DynmapAPI) dynmapPlugin).getMarkerAPI();
+    }
+
+    /**
+     * Whether this server runs the background tasks that only one server
+     * sharing the marker store may run. Always true with file storage.
+     */
+    public boolean isLeader() {
+        return leaderLease == null || leaderLease.isLeader();
+    }
+
     // Getters for managers
     public ConfigManager getConfigManager() {
         return configManager;
     }
 
+    public PluginScheduler getPluginScheduler() {
+        return pluginScheduler;
+    }
+
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+
+    public TickWatchdog getTickWatchdog() {
+        return tickWatchdog;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public IoExecutor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    public ShutdownCoordinator getShutdownCoordinator() {
+        return shutdownCoordinator;
+    }
+
     public MarkerStorage getMarkerStorage() {
         return markerStorage;
     }
 
+    /**
+     * Get the documents shared with the other servers, or null with file storage.
+     */
+    public SharedDocuments getSharedDocuments() {
+        return sharedDocuments;
+    }
+
+    public OwnerNameCache getOwnerNameCache() {
+        return ownerNameCache;
+    }
+
     public EconomyManager getEconomyManager() {
         return economyManager;
     }
 
+    public EconomyPipeline getEconomyPipeline() {
+        return economyPipeline;
+    }
+
+    public EscrowManager getEscrowManager() {
+        return escrowManager;
+    }
+
+    public RevenueAggregator getRevenueAggregator() {
+        return revenueAggregator;
+    }
+
+    public AdAuction getAdAuction() {
+        return adAuction;
+    }
+
     public DynmapManager getDynmapManager() {
         return dynmapManager;
     }
@@ -144,4 +455,20 @@ public class DynmapAdsPlugin extends JavaPlugin {
     public DiscordManager getDiscordManager() {
         return discordManager;
     }
+
+    public CommandRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public CommandPipeline getCommandPipeline() {
+        return commandPipeline;
+    }
+
+    public AdExpirationTask getExpirationTask() {
+        return expirationTask;
+    }
+
+    public BulkJobRunner getBulkJobRunner() {
+        return bulkJobRunner;
+    }
 }
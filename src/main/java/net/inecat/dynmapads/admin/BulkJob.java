@@ -0,0 +1,131 @@
+package net.inecat.dynmapads.admin;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A bulk admin operation over a fixed set of shops, taken when the job was
+ * submitted. Shops are processed in order and removed from the remaining
+ * queue as they are done.
+ */
+public class BulkJob {
+    private final int id;
+    private final BulkJobType type;
+    private final List<String> args;
+    private final UUID requesterUUID;
+    private final String requesterName;
+    private final long createdAt;
+    private final int total;
+    private final Deque<String> remaining;
+    private int processed;
+    private int changed;
+    private int failed;
+    private long lastReportAt;
+
+    public BulkJob(int id, BulkJobType type, List<String> args, UUID requesterUUID, String requesterName,
+            Collection<String> shopNames) {
+        this(id, type, args, requesterUUID, requesterName, System.currentTimeMillis(), shopNames.size(),
+                shopNames, 0, 0, 0);
+    }
+
+    public BulkJob(int id, BulkJobType type, List<String> args, UUID requesterUUID, String requesterName,
+            long createdAt, int total, Collection<String> remaining, int processed, int changed, int failed) {
+        this.id = id;
+        this.type = type;
+        this.args = List.copyOf(args);
+        this.requesterUUID = requesterUUID;
+        this.requesterName = requesterName;
+        this.createdAt = createdAt;
+        this.total = total;
+        this.remaining = new ArrayDeque<>(remaining);
+        this.processed = processed;
+        this.changed = changed;
+        this.failed = failed;
+        this.lastReportAt = System.currentTimeMillis();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public BulkJobType getType() {
+        return type;
+    }
+
+    public List<String> getArgs() {
+        return args;
+    }
+
+    public UUID getRequesterUUID() {
+        return requesterUUID;
+    }
+
+    public String getRequesterName() {
+        return requesterName;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public Deque<String> getRemaining() {
+        return remaining;
+    }
+
+    public int getProcessed() {
+        return processed;
+    }
+
+    public int getChanged() {
+        return changed;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getLastReportAt() {
+        return lastReportAt;
+    }
+
+    public void setLastReportAt(long lastReportAt) {
+        this.lastReportAt = lastReportAt;
+    }
+
+    public boolean isDone() {
+        return remaining.isEmpty();
+    }
+
+    /**
+     * Record the outcome of one shop.
+     */
+    public void recordProcessed(boolean wasChanged, boolean wasFailed) {
+        processed++;
+        if (wasChanged) {
+            changed++;
+        }
+        if (wasFailed) {
+            failed++;
+        }
+    }
+
+    /**
+     * Short description such as "relocate-world world -> world_new".
+     */
+    public String describe() {
+        if (type == BulkJobType.RELOCATE_WORLD && args.size() == 2) {
+            return type.getCommandName() + " " + args.get(0) + " -> " + args.get(1);
+        }
+        if (type == BulkJobType.PURGE_OWNER && args.size() == 2) {
+            return type.getCommandName() + " " + args.get(1);
+        }
+        return type.getCommandName();
+    }
+}
@@ -0,0 +1,335 @@
+package net.inecat.dynmapads.admin;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.audit.AuditEventType;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.economy.EconomyPipeline;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs bulk admin operations a slice at a time on the main thread, spending
+ * at most the configured budget per tick. Each slice is committed with a
+ * single marker storage save, and the job progress in jobs.yml is written
+ * only after that save, so a restart resumes from the last committed slice.
+ * Every operation checks the current state of a shop before changing it, so
+ * redoing part of a slice after a crash is harmless.
+ */
+public class BulkJobRunner {
+    private final DynmapAdsPlugin plugin;
+    private final File dataFile;
+    private final Map<Integer, BulkJob> jobs;
+    private int nextId;
+    private long snapshotSeq;
+    private long writtenSeq;
+    private PluginScheduler.Task task;
+
+    public BulkJobRunner(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "jobs.yml");
+        this.jobs = new LinkedHashMap<>();
+        this.nextId = 1;
+    }
+
+    /**
+     * Load unfinished jobs from file.
+     */
+    public void load() {
+        jobs.clear();
+
+        if (!dataFile.exists()) {
+            return;
+        }
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+        nextId = Math.max(1, config.getInt("next-id", 1));
+        ConfigurationSection jobsSection = config.getConfigurationSection("jobs");
+
+        if (jobsSection == null) {
+            return;
+        }
+
+        for (String key : jobsSection.getKeys(false)) {
+            ConfigurationSection section = jobsSection.getConfigurationSection(key);
+            if (section == null)
+                continue;
+
+            try {
+                String requester = section.getString("requester-uuid");
+                BulkJob job = new BulkJob(
+                        Integer.parseInt(key),
+                        BulkJobType.valueOf(section.getString("type", "")),
+                        section.getStringList("args"),
+                        requester != null ? UUID.fromString(requester) : null,
+                        section.getString("requester-name", "Unknown"),
+                        section.getLong("created-at"),
+                        section.getInt("total"),
+                        section.getStringList("remaining"),
+                        section.getInt("processed"),
+                        section.getInt("changed"),
+                        section.getInt("failed"));
+                jobs.put(job.getId(), job);
+                nextId = Math.max(nextId, job.getId() + 1);
+                plugin.getLogger().info("Resuming bulk job #" + job.getId() + " (" + job.describe() + "): "
+                        + job.getRemaining().size() + " shops left");
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to load bulk job: " + key + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Start processing jobs every tick.
+     */
+    public void start() {
+        if (task == null) {
+            task = plugin.getPluginScheduler().runGlobalTimer(this::tick, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stop processing and write the progress of unfinished jobs. Call after
+     * marker storage has been saved.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        write(++snapshotSeq, snapshot());
+    }
+
+    /**
+     * Submit a job. The set of shops is taken now; shops added later are not
+     * part of the job.
+     */
+    public BulkJob submit(BulkJobType type, List<String> args, Player requester) {
+        BulkJob job = new BulkJob(nextId++, type, args, requester.getUniqueId(), requester.getName(),
+                selectTargets(type, args));
+        jobs.put(job.getId(), job);
+        plugin.getLogger().info("Bulk job #" + job.getId() + " (" + job.describe() + ") submitted by "
+                + requester.getName() + ": " + job.getTotal() + " shops");
+        persistAsync();
+        return job;
+    }
+
+    /**
+     * Cancel a job. Shops already processed stay processed.
+     *
+     * @return the cancelled job, or null if no such job is running
+     */
+    public BulkJob cancel(int id) {
+        BulkJob job = jobs.remove(id);
+        if (job != null) {
+            plugin.getLogger().info("Bulk job #" + id + " cancelled after " + job.getProcessed() + "/"
+                    + job.getTotal() + " shops");
+            persistAsync();
+        }
+        return job;
+    }
+
+    /**
+     * Unfinished jobs in the order they will run.
+     */
+    public List<BulkJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    private List<String> selectTargets(BulkJobType type, List<String> args) {
+        List<String> targets = new ArrayList<>();
+        for (String shopName : plugin.getMarkerStorage().getAllShopNames()) {
+            MarkerData data = plugin.getMarkerStorage().getMarker(shopName);
+            if (data != null && matches(type, args, data)) {
+                targets.add(shopName);
+            }
+        }
+        targets.sort(String.CASE_INSENSITIVE_ORDER);
+        return targets;
+    }
+
+    private static boolean matches(BulkJobType type, List<String> args, MarkerData data) {
+        return switch (type) {
+            case PURGE_OWNER -> data.getOwnerUUID().toString().equals(args.get(0));
+            case EXPIRE_ALL -> data.getStatus() == MarkerStatus.ADS;
+            case APPROVE_ALL_PENDING -> data.getStatus() == MarkerStatus.PENDING;
+            case RELOCATE_WORLD -> data.getWorld().equals(args.get(0));
+        };
+    }
+
+    private void tick() {
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        // Jobs run one after another in submission order
+        BulkJob job = jobs.values().iterator().next();
+        long deadline = System.nanoTime() + plugin.getConfigManager().getBulkTickBudgetMillis() * 1_000_000L;
+        AtomicReference<String> committed = new AtomicReference<>();
+
+        plugin.getMarkerStorage().batch(() -> {
+            // Always make progress, even if a single shop takes longer than the budget
+            do {
+                processNext(job);
+            } while (!job.isDone() && System.nanoTime() < deadline);
+
+            if (job.isDone()) {
+                jobs.remove(job.getId());
+            }
+            committed.set(snapshot());
+        }, afterSave(committed));
+
+        long now = System.currentTimeMillis();
+        if (job.isDone()) {
+            report(job, true);
+        } else if (now - job.getLastReportAt() >= plugin.getConfigManager().getBulkProgressIntervalSeconds() * 1000L) {
+            job.setLastReportAt(now);
+            report(job, false);
+        }
+    }
+
+    private void processNext(BulkJob job) {
+        String shopName = job.getRemaining().poll();
+        MarkerData data = plugin.getMarkerStorage().getMarker(shopName);
+        if (data == null || !matches(job.getType(), job.getArgs(), data)) {
+            // Changed by someone else since the job was submitted
+            job.recordProcessed(false, false);
+            return;
+        }
+
+        try {
+            apply(job, data);
+            job.recordProcessed(true, false);
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("Bulk job #" + job.getId() + " failed on " + shopName + ": " + e.getMessage());
+            job.recordProcessed(false, true);
+        }
+    }
+
+    private void apply(BulkJob job, MarkerData data) {
+        switch (job.getType()) {
+            case PURGE_OWNER -> {
+                if (data.getStatus() == MarkerStatus.PENDING) {
+                    // Release the held fee and withdraw the request from Discord
+                    plugin.getEscrowManager().release(EconomyPipeline.commercialChargeId(data));
+                    plugin.getDiscordManager().cancelApprovalRequest(data,
+                            plugin.getConfigManager().text("cancel-reason-bulk", "player", job.getRequesterName()));
+                } else {
+                    plugin.getDynmapManager().deleteMarker(data);
+                }
+                plugin.getMarkerStorage().removeMarker(data.getShopName());
+                plugin.getAuditLog().record(AuditEventType.DELETED, data, job.getRequesterName(),
+                        "job", job.getId());
+            }
+            case EXPIRE_ALL -> plugin.getExpirationTask().expireAd(data);
+            case APPROVE_ALL_PENDING -> plugin.getDiscordManager().getApprovalService()
+                    .decide(data, true, job.getRequesterName());
+            case RELOCATE_WORLD -> {
+                MarkerData moved = data.withWorld(job.getArgs().get(1));
+                if (data.getStatus() == MarkerStatus.COMMERCIAL || data.getStatus() == MarkerStatus.ADS) {
+                    String ownerName = plugin.getOwnerNameCache().getName(data);
+                    plugin.getDynmapManager().deleteMarker(data);
+                    if (moved.getStatus() == MarkerStatus.ADS) {
+                        plugin.getDynmapManager().createAdsMarker(moved, ownerName);
+                    } else {
+                        plugin.getDynmapManager().createCommercialMarker(moved, ownerName);
+                    }
+                }
+                plugin.getMarkerStorage().updateMarker(moved);
+            }
+        }
+    }
+
+    private void report(BulkJob job, boolean finished) {
+        ConfigManager config = plugin.getConfigManager();
+        String message = config.message(finished ? "job-finished" : "job-progress",
+                "id", job.getId(), "job", job.describe(), "processed", job.getProcessed(), "total", job.getTotal(),
+                "changed", job.getChanged(), "failed", job.getFailed());
+
+        plugin.getLogger().info("Bulk job #" + job.getId() + (finished ? " finished: " : " progress: ")
+                + job.getProcessed() + "/" + job.getTotal() + " (changed " + job.getChanged()
+                + ", failed " + job.getFailed() + ")");
+
+        Player requester = job.getRequesterUUID() != null ? Bukkit.getPlayer(job.getRequesterUUID()) : null;
+        if (requester != null) {
+            plugin.getPluginScheduler().message(requester, message);
+        }
+    }
+
+    /**
+     * Serialize all unfinished jobs. Must be called on the main thread.
+     */
+    private String snapshot() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("next-id", nextId);
+        ConfigurationSection jobsSection = config.createSection("jobs");
+
+        for (BulkJob job : jobs.values()) {
+            ConfigurationSection section = jobsSection.createSection(String.valueOf(job.getId()));
+            section.set("type", job.getType().name());
+            section.set("args", job.getArgs());
+            if (job.getRequesterUUID() != null) {
+                section.set("requester-uuid", job.getRequesterUUID().toString());
+            }
+            section.set("requester-name", job.getRequesterName());
+            section.set("created-at", job.getCreatedAt());
+            section.set("total", job.getTotal());
+            section.set("processed", job.getProcessed());
+            section.set("changed", job.getChanged());
+            section.set("failed", job.getFailed());
+            section.set("remaining", new ArrayList<>(job.getRemaining()));
+        }
+        return config.saveToString();
+    }
+
+    private Runnable afterSave(AtomicReference<String> committed) {
+        long seq = ++snapshotSeq;
+        return () -> write(seq, committed.get());
+    }
+
+    private void persistAsync() {
+        long seq = ++snapshotSeq;
+        String content = snapshot();
+        if (!plugin.isEnabled()) {
+            write(seq, content);
+            return;
+        }
+        plugin.getIoExecutor().run("jobs-save", () -> write(seq, content));
+    }
+
+    /**
+     * Write a snapshot, replacing the file atomically. Snapshots older than
+     * the last one written are dropped, since saves may finish out of order.
+     */
+    private synchronized void write(long seq, String content) {
+        if (seq <= writtenSeq) {
+            return;
+        }
+        writtenSeq = seq;
+
+        File tempFile = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+        try {
+            Files.writeString(tempFile.toPath(), content, StandardCharsets.UTF_8);
+            Files.move(tempFile.toPath(), dataFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save bulk jobs: " + e.getMessage());
+        }
+    }
+}
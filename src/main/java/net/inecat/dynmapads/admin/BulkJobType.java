@@ -0,0 +1,28 @@
+package net.inecat.dynmapads.admin;
+
+/**
+ * Kinds of bulk admin operations.
+ */
+public enum BulkJobType {
+    /** Delete every marker of one owner. Args: owner UUID. */
+    PURGE_OWNER("purge-owner"),
+    /** End every running advertisement now. */
+    EXPIRE_ALL("expire-all"),
+    /** Approve every pending application. */
+    APPROVE_ALL_PENDING("approve-all-pending"),
+    /** Move markers from one world to another. Args: from, to. */
+    RELOCATE_WORLD("relocate-world");
+
+    private final String commandName;
+
+    BulkJobType(String commandName) {
+        this.commandName = commandName;
+    }
+
+    /**
+     * Subcommand name used by /mapmarker admin.
+     */
+    public String getCommandName() {
+        return commandName;
+    }
+}
@@ -0,0 +1,412 @@
+package net.inecat.dynmapads.auction;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.audit.AuditEventType;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.economy.EscrowHold;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of concurrent ads per world, or per square region of a
+ * world, and auctions the slots when more shops want them than there are.
+ * <p>
+ * While a slot group has room and nobody is bidding, /mapmarker ads starts
+ * an ad at the flat fee as before. Otherwise shops bid a price per day, paid
+ * up front and held in escrow. Bids wait in a priority queue per slot group,
+ * highest price first and earlier bids first on ties. A periodic settlement
+ * pass awards every free slot to the best bids, refunds the bids that lost,
+ * and starts the winning ads with a single storage write. Bids are sealed by
+ * default; in an ascending auction a new bid must beat the bids currently
+ * holding the slots by a minimum increment. Winners pay their own bid.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class AdAuction {
+    private static final Comparator<AdBid> RANK = Comparator.comparingInt(AdBid::getAmountPerDay).reversed()
+            .thenComparingLong(AdBid::getPlacedAt);
+
+    private final DynmapAdsPlugin plugin;
+    private final File dataFile;
+    private final Map<String, PriorityQueue<AdBid>> bidsBySlot;
+    private final Map<String, AdBid> bidsByShop;
+    private final AtomicBoolean saveQueued;
+
+    public AdAuction(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "bids.yml");
+        this.bidsBySlot = new HashMap<>();
+        this.bidsByShop = new HashMap<>();
+        this.saveQueued = new AtomicBoolean();
+    }
+
+    /**
+     * Load open bids from file. Bids whose escrow hold is no longer held were
+     * already settled or refunded before a restart and are dropped. Held bids
+     * missing from the file, because the server stopped before bids.yml was
+     * written, are refunded. Must be called after escrow is loaded.
+     */
+    public void load() {
+        bidsBySlot.clear();
+        bidsByShop.clear();
+        loadFile();
+
+        for (EscrowHold hold : plugin.getEscrowManager().getHeldBids()) {
+            AdBid bid = bidsByShop.get(hold.getShopName());
+            if (bid == null || !bid.getChargeId().equals(hold.getChargeId())) {
+                plugin.getLogger().warning("[Auction] Refunding the held bid " + hold.getChargeId() + " of "
+                        + hold.getShopName() + ": it was not saved with the open bids.");
+                plugin.getEscrowManager().release(hold.getChargeId());
+            }
+        }
+    }
+
+    private void loadFile() {
+        if (!dataFile.exists()) {
+            return;
+        }
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+        ConfigurationSection bidsSection = config.getConfigurationSection("bids");
+        if (bidsSection == null) {
+            return;
+        }
+
+        for (String key : bidsSection.getKeys(false)) {
+            ConfigurationSection section = bidsSection.getConfigurationSection(key);
+            if (section == null)
+                continue;
+
+            try {
+                AdBid bid = new AdBid(
+                        section.getString("charge-id", key),
+                        section.getString("shop-name"),
+                        UUID.fromString(section.getString("owner-uuid", "")),
+                        section.getString("slot"),
+                        section.getInt("amount-per-day"),
+                        section.getInt("days"),
+                        section.getString("pr-message"),
+                        section.getLong("placed-at"));
+                EscrowHold hold = plugin.getEscrowManager().getHold(bid.getChargeId());
+                if (hold != null && hold.getState() == EscrowHold.State.HELD) {
+                    add(bid);
+                }
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to load bid: " + key + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Save open bids to file.
+     */
+    public synchronized void save() {
+        YamlConfiguration config = new YamlConfiguration();
+        ConfigurationSection bidsSection = config.createSection("bids");
+
+        int index = 0;
+        for (AdBid bid : snapshot()) {
+            ConfigurationSection section = bidsSection.createSection(String.valueOf(index++));
+            section.set("charge-id", bid.getChargeId());
+            section.set("shop-name", bid.getShopName());
+            section.set("owner-uuid", bid.getOwnerUUID().toString());
+            section.set("slot", bid.getSlot());
+            section.set("amount-per-day", bid.getAmountPerDay());
+            section.set("days", bid.getDays());
+            if (bid.getPrMessage() != null) {
+                section.set("pr-message", bid.getPrMessage());
+            }
+            section.set("placed-at", bid.getPlacedAt());
+        }
+
+        try {
+            config.save(dataFile);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save bids: " + e.getMessage());
+        }
+    }
+
+    private List<AdBid> snapshot() {
+        synchronized (bidsByShop) {
+            return new ArrayList<>(bidsByShop.values());
+        }
+    }
+
+    /**
+     * Queue a save on a worker thread, coalescing repeated requests.
+     */
+    private void saveAsync() {
+        if (!plugin.isEnabled()) {
+            save();
+            return;
+        }
+        if (saveQueued.compareAndSet(false, true)) {
+            plugin.getIoExecutor().run("bids-save", () -> {
+                saveQueued.set(false);
+                save();
+            });
+        }
+    }
+
+    /**
+     * Slot group a shop's ad counts against: its world, or the square region
+     * of its world if a region size is configured.
+     */
+    public String slotOf(MarkerData data) {
+        int regionSize = plugin.getConfigManager().getAdsSlotRegionSize();
+        if (regionSize <= 0) {
+            return data.getWorld();
+        }
+        return data.getWorld() + ":" + Math.floorDiv((long) Math.floor(data.getX()), regionSize)
+                + ":" + Math.floorDiv((long) Math.floor(data.getZ()), regionSize);
+    }
+
+    /**
+     * Concurrent ads allowed in the slot group of a shop, or 0 if unlimited.
+     */
+    public int capacity(MarkerData data) {
+        return plugin.getConfigManager().getAdsSlots(data.getWorld());
+    }
+
+    /**
+     * Whether an ad for the shop can start now at the flat fee: its slot
+     * group is unlimited, or has room and no bids waiting.
+     */
+    public boolean canStartNow(MarkerData data) {
+        int capacity = capacity(data);
+        if (capacity <= 0) {
+            return true;
+        }
+        String slot = slotOf(data);
+        PriorityQueue<AdBid> queue = bidsBySlot.get(slot);
+        if (queue != null && !queue.isEmpty()) {
+            return false;
+        }
+        return countAds().getOrDefault(slot, 0) < capacity;
+    }
+
+    /**
+     * Lowest price per day a new bid for the shop must offer. The flat fee
+     * is the reserve price; in an ascending auction the bid must also beat
+     * the bids that would take every slot of the group by the increment.
+     */
+    public int minimumBid(MarkerData data) {
+        ConfigManager config = plugin.getConfigManager();
+        int reserve = config.getAdsFeePerDay();
+        int capacity = capacity(data);
+        PriorityQueue<AdBid> queue = bidsBySlot.get(slotOf(data));
+        if (!config.isAdsAuctionAscending() || capacity <= 0 || queue == null) {
+            return reserve;
+        }
+
+        List<AdBid> others = new ArrayList<>();
+        for (AdBid bid : queue) {
+            if (!bid.getShopName().equals(data.getShopName())) {
+                others.add(bid);
+            }
+        }
+        if (others.size() < capacity) {
+            return reserve;
+        }
+        others.sort(RANK);
+        return Math.max(reserve, others.get(capacity - 1).getAmountPerDay() + config.getAdsAuctionMinIncrement());
+    }
+
+    /**
+     * Open bid for a shop, or null.
+     */
+    public AdBid getBid(String shopName) {
+        return bidsByShop.get(shopName);
+    }
+
+    /**
+     * Add a bid whose amount is already held in escrow.
+     *
+     * @return the bid it replaces, whose hold the caller must release, or null
+     */
+    public AdBid place(AdBid bid) {
+        AdBid replaced = bidsByShop.get(bid.getShopName());
+        if (replaced != null) {
+            remove(replaced);
+        }
+        add(bid);
+        saveAsync();
+        return replaced;
+    }
+
+    private void add(AdBid bid) {
+        bidsBySlot.computeIfAbsent(bid.getSlot(), slot -> new PriorityQueue<>(RANK)).add(bid);
+        synchronized (bidsByShop) {
+            bidsByShop.put(bid.getShopName(), bid);
+        }
+    }
+
+    private void remove(AdBid bid) {
+        PriorityQueue<AdBid> queue = bidsBySlot.get(bid.getSlot());
+        if (queue != null) {
+            queue.remove(bid);
+            if (queue.isEmpty()) {
+                bidsBySlot.remove(bid.getSlot());
+            }
+        }
+        synchronized (bidsByShop) {
+            bidsByShop.remove(bid.getShopName(), bid);
+        }
+    }
+
+    /**
+     * Award free slots to the best bids of every group and refund the rest.
+     * Bids in a group without a free slot keep waiting until they time out.
+     */
+    public void settle() {
+        if (bidsBySlot.isEmpty()) {
+            return;
+        }
+
+        long expiresBefore = System.currentTimeMillis()
+                - plugin.getConfigManager().getAdsAuctionBidTimeoutHours() * 3_600_000L;
+        Map<String, Integer> used = countAds();
+        List<AdBid> winners = new ArrayList<>();
+        List<AdBid> outbid = new ArrayList<>();
+        List<AdBid> expired = new ArrayList<>();
+        List<AdBid> cancelled = new ArrayList<>();
+
+        for (Iterator<Map.Entry<String, PriorityQueue<AdBid>>> it = bidsBySlot.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, PriorityQueue<AdBid>> entry = it.next();
+            PriorityQueue<AdBid> queue = entry.getValue();
+
+            // Drop bids whose shop was deleted, moved or advertised meanwhile
+            queue.removeIf(bid -> {
+                if (!isValid(bid)) {
+                    cancelled.add(bid);
+                    return true;
+                }
+                return false;
+            });
+            if (queue.isEmpty()) {
+                it.remove();
+                continue;
+            }
+
+            int capacity = capacity(plugin.getMarkerStorage().getMarker(queue.peek().getShopName()));
+            int free = capacity <= 0 ? queue.size() : capacity - used.getOrDefault(entry.getKey(), 0);
+            int awarded = 0;
+            while (awarded < free && !queue.isEmpty()) {
+                winners.add(queue.poll());
+                awarded++;
+            }
+
+            if (awarded > 0) {
+                outbid.addAll(queue);
+                queue.clear();
+            } else {
+                queue.removeIf(bid -> {
+                    if (bid.getPlacedAt() < expiresBefore) {
+                        expired.add(bid);
+                        return true;
+                    }
+                    return false;
+                });
+            }
+            if (queue.isEmpty()) {
+                it.remove();
+            }
+        }
+
+        if (winners.isEmpty() && outbid.isEmpty() && expired.isEmpty() && cancelled.isEmpty()) {
+            return;
+        }
+        synchronized (bidsByShop) {
+            for (List<AdBid> settled : List.of(winners, outbid, expired, cancelled)) {
+                settled.forEach(bid -> bidsByShop.remove(bid.getShopName(), bid));
+            }
+        }
+
+        // One storage write for every ad started in this pass
+        plugin.getMarkerStorage().batch(() -> winners.forEach(this::award), null);
+        outbid.forEach(bid -> refund(bid, "bid-outbid"));
+        expired.forEach(bid -> refund(bid, "bid-expired"));
+        cancelled.forEach(bid -> refund(bid, "bid-cancelled"));
+        saveAsync();
+
+        plugin.getLogger().info("[Auction] Settled bids: " + winners.size() + " won, " + outbid.size()
+                + " outbid, " + expired.size() + " expired, " + cancelled.size() + " cancelled.");
+    }
+
+    private boolean isValid(AdBid bid) {
+        MarkerData data = plugin.getMarkerStorage().getMarker(bid.getShopName());
+        return data != null
+                && data.isOwner(bid.getOwnerUUID())
+                && data.getStatus() == MarkerStatus.COMMERCIAL
+                && slotOf(data).equals(bid.getSlot());
+    }
+
+    private void award(AdBid bid) {
+        MarkerData data = plugin.getMarkerStorage().getMarker(bid.getShopName());
+        String ownerName = plugin.getOwnerNameCache().getName(data);
+
+        // Keep the held bid; a bid whose money was already returned wins nothing
+        if (!plugin.getEscrowManager().settle(bid.getChargeId())) {
+            plugin.getLogger().warning("[Auction] Not starting the ad of " + bid.getShopName()
+                    + ": its bid is no longer held in escrow.");
+            return;
+        }
+
+        data.setStatus(MarkerStatus.ADS);
+        data.setAdsEndTime(LocalDateTime.now().plusDays(bid.getDays()));
+        data.setPrMessage(bid.getPrMessage());
+        plugin.getMarkerStorage().updateMarker(data);
+        plugin.getAuditLog().record(AuditEventType.AD_STARTED, data, ownerName,
+                "days", bid.getDays(), "fee", bid.getTotal(), "bid", bid.getAmountPerDay());
+        plugin.getDynmapManager().moveToAds(data, ownerName);
+
+        Player owner = Bukkit.getPlayer(bid.getOwnerUUID());
+        if (owner != null) {
+            plugin.getPluginScheduler().message(owner, plugin.getConfigManager().message("bid-won",
+                    "shop", data.getShopName(), "days", bid.getDays()));
+        }
+        plugin.getIoExecutor().run("ads-notify",
+                () -> plugin.getDiscordManager().sendAdsNotification(data, ownerName, bid.getDays()));
+    }
+
+    private void refund(AdBid bid, String messageKey) {
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+        plugin.getEscrowManager().release(bid.getChargeId()).thenAccept(result -> {
+            Player owner = Bukkit.getPlayer(bid.getOwnerUUID());
+            if (result.success() && owner != null) {
+                ConfigManager config = plugin.getConfigManager();
+                scheduler.message(owner, config.message(messageKey, "shop", bid.getShopName(),
+                        "amount", bid.getTotal(), "currency", config.getCurrencyName()));
+            }
+        });
+    }
+
+    /**
+     * Number of running ads per slot group.
+     */
+    private Map<String, Integer> countAds() {
+        Map<String, Integer> used = new HashMap<>();
+        for (MarkerData data : plugin.getMarkerStorage().getByStatus(MarkerStatus.ADS)) {
+            used.merge(slotOf(data), 1, Integer::sum);
+        }
+        return used;
+    }
+}
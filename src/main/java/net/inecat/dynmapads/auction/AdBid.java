@@ -0,0 +1,72 @@
+package net.inecat.dynmapads.auction;
+
+import java.util.UUID;
+
+/**
+ * Sealed or open bid for an ad slot. The full amount is charged when the bid
+ * is placed and held in escrow until the bid wins or is refunded.
+ */
+public class AdBid {
+    private final String chargeId;
+    private final String shopName;
+    private final UUID ownerUUID;
+    private final String slot;
+    private final int amountPerDay;
+    private final int days;
+    private final String prMessage;
+    private final long placedAt;
+
+    public AdBid(String chargeId, String shopName, UUID ownerUUID, String slot, int amountPerDay, int days,
+            String prMessage, long placedAt) {
+        this.chargeId = chargeId;
+        this.shopName = shopName;
+        this.ownerUUID = ownerUUID;
+        this.slot = slot;
+        this.amountPerDay = amountPerDay;
+        this.days = days;
+        this.prMessage = prMessage;
+        this.placedAt = placedAt;
+    }
+
+    public String getChargeId() {
+        return chargeId;
+    }
+
+    public String getShopName() {
+        return shopName;
+    }
+
+    public UUID getOwnerUUID() {
+        return ownerUUID;
+    }
+
+    /**
+     * Slot group the bid competes in, see {@link AdAuction#slotOf}.
+     */
+    public String getSlot() {
+        return slot;
+    }
+
+    public int getAmountPerDay() {
+        return amountPerDay;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * Amount charged for the bid.
+     */
+    public long getTotal() {
+        return (long) amountPerDay * days;
+    }
+
+    public String getPrMessage() {
+        return prMessage;
+    }
+
+    public long getPlacedAt() {
+        return placedAt;
+    }
+}
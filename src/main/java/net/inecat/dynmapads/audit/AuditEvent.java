@@ -0,0 +1,96 @@
+package net.inecat.dynmapads.audit;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One lifecycle event of a marker, written as one line of JSON.
+ *
+ * @param timeMillis when the event happened
+ * @param type       what happened
+ * @param shopName   the shop it happened to
+ * @param ownerUUID  owner of the shop, or null if unknown
+ * @param actor      player or moderator who caused it, or null for the plugin itself
+ * @param details    event specific values such as days or amount, in insertion order
+ */
+public record AuditEvent(long timeMillis, AuditEventType type, String shopName, UUID ownerUUID, String actor,
+        Map<String, Object> details) {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+    /**
+     * Serialize to a single JSON line without the line break.
+     */
+    public String toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("time", OffsetDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault())
+                .format(TIME_FORMAT));
+        json.addProperty("event", type.getId());
+        json.addProperty("shop", shopName);
+        if (ownerUUID != null) {
+            json.addProperty("owner", ownerUUID.toString());
+        }
+        if (actor != null) {
+            json.addProperty("actor", actor);
+        }
+        for (Map.Entry<String, Object> detail : details.entrySet()) {
+            Object value = detail.getValue();
+            if (value instanceof Number number) {
+                json.addProperty(detail.getKey(), number);
+            } else if (value instanceof Boolean bool) {
+                json.addProperty(detail.getKey(), bool);
+            } else if (value != null) {
+                json.addProperty(detail.getKey(), value.toString());
+            }
+        }
+        return json.toString();
+    }
+
+    /**
+     * Parse a line written by {@link #toJson()}.
+     *
+     * @return the event, or null if the line is not a valid event
+     */
+    public static AuditEvent fromJson(String line) {
+        try {
+            JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+            AuditEventType type = AuditEventType.fromId(json.get("event").getAsString());
+            if (type == null) {
+                return null;
+            }
+
+            Map<String, Object> details = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+                switch (entry.getKey()) {
+                    case "time", "event", "shop", "owner", "actor" -> {
+                    }
+                    default -> {
+                        JsonPrimitive value = entry.getValue().getAsJsonPrimitive();
+                        details.put(entry.getKey(), value.isNumber() ? value.getAsNumber()
+                                : value.isBoolean() ? (Object) value.getAsBoolean() : value.getAsString());
+                    }
+                }
+            }
+
+            return new AuditEvent(
+                    OffsetDateTime.parse(json.get("time").getAsString(), TIME_FORMAT).toInstant().toEpochMilli(),
+                    type,
+                    json.get("shop").getAsString(),
+                    json.has("owner") ? UUID.fromString(json.get("owner").getAsString()) : null,
+                    json.has("actor") ? json.get("actor").getAsString() : null,
+                    Collections.unmodifiableMap(details));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.inecat.dynmapads.audit;
+
+/**
+ * Lifecycle events of a marker recorded in the audit log.
+ */
+public enum AuditEventType {
+    CREATED,
+    APPROVED,
+    REJECTED,
+    BID_PLACED,
+    AD_STARTED,
+    EXPIRED,
+    DELETED,
+    REFUNDED;
+
+    /**
+     * Name used in the JSONL files and message keys, such as "ad_started".
+     */
+    public String getId() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Look up a type by its id.
+     *
+     * @return the type, or null if unknown
+     */
+    public static AuditEventType fromId(String id) {
+        for (AuditEventType type : values()) {
+            if (type.getId().equals(id)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
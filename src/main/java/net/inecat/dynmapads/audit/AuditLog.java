@@ -0,0 +1,268 @@
+package net.inecat.dynmapads.audit;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Structured audit log of marker lifecycle events. Events are put on a
+ * lock-free ring buffer by the thread that caused them and written once a
+ * second by a background writer to audit/audit.jsonl, one JSON object per
+ * line. The file is rotated by size and age into gzip-compressed archives.
+ * The writer also keeps the most recent events of each shop in memory for
+ * /mapmarker history, rebuilt from the current file on start.
+ */
+public class AuditLog {
+    private static final String CURRENT_FILE = "audit.jsonl";
+    private static final String ARCHIVE_PREFIX = "audit-";
+    private static final String ARCHIVE_SUFFIX = ".jsonl.gz";
+    private static final DateTimeFormatter ARCHIVE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final DynmapAdsPlugin plugin;
+    private final File directory;
+    private final File currentFile;
+    private final AuditRingBuffer buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final Map<String, Deque<AuditEvent>> recent;
+    private long openedAt;
+    private PluginScheduler.Task writer;
+
+    public AuditLog(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "audit");
+        this.currentFile = new File(directory, CURRENT_FILE);
+        this.buffer = new AuditRingBuffer(plugin.getConfigManager().getAuditBufferSize());
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Deque<AuditEvent>> eldest) {
+                return size() > plugin.getConfigManager().getAuditHistoryShops();
+            }
+        };
+    }
+
+    /**
+     * Rebuild the history index from the current file and start the writer.
+     */
+    public void start() {
+        if (!directory.exists() && !directory.mkdirs()) {
+            plugin.getLogger().warning("Failed to create " + directory.getPath());
+        }
+        openedAt = System.currentTimeMillis();
+        if (currentFile.exists()) {
+            try {
+                openedAt = Files.readAttributes(currentFile.toPath(), BasicFileAttributes.class)
+                        .creationTime().toMillis();
+            } catch (IOException e) {
+                openedAt = currentFile.lastModified();
+            }
+            loadRecent();
+        }
+        writer = plugin.getPluginScheduler().runAsyncTimer(() -> {
+            if (flushing.compareAndSet(false, true)) {
+                plugin.getIoExecutor().run("audit-flush", this::flush)
+                        .whenComplete((ignored, error) -> flushing.set(false));
+            }
+        }, 20L, 20L);
+    }
+
+    /**
+     * Stop the writer and write everything still buffered.
+     */
+    public void stop() {
+        if (writer != null) {
+            writer.cancel();
+            writer = null;
+        }
+        flush();
+    }
+
+    /**
+     * Record an event for a marker. Safe to call from any thread; never
+     * blocks on the file.
+     *
+     * @param actor   player or moderator name, or null for the plugin itself
+     * @param details detail names and values in pairs, such as "days", 7
+     */
+    public void record(AuditEventType type, MarkerData data, String actor, Object... details) {
+        record(type, data.getShopName(), data.getOwnerUUID(), actor, details);
+    }
+
+    /**
+     * Record an event for a shop. Safe to call from any thread; never
+     * blocks on the file.
+     *
+     * @param actor   player or moderator name, or null for the plugin itself
+     * @param details detail names and values in pairs, such as "days", 7
+     */
+    public void record(AuditEventType type, String shopName, UUID ownerUUID, String actor, Object... details) {
+        if (!plugin.getConfigManager().isAuditEnabled()) {
+            return;
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < details.length; i += 2) {
+            values.put(String.valueOf(details[i]), details[i + 1]);
+        }
+        AuditEvent event = new AuditEvent(System.currentTimeMillis(), type, shopName, ownerUUID, actor,
+                Collections.unmodifiableMap(values));
+        if (!buffer.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Recent events of a shop, newest first. Events reach the index when
+     * they are written, so the last second may be missing.
+     */
+    public List<AuditEvent> history(String shopName) {
+        synchronized (recent) {
+            Deque<AuditEvent> events = recent.get(shopName);
+            if (events == null) {
+                return List.of();
+            }
+            List<AuditEvent> newestFirst = new ArrayList<>(events);
+            Collections.reverse(newestFirst);
+            return newestFirst;
+        }
+    }
+
+    /**
+     * Write buffered events, rotating the file first if it is due.
+     */
+    public synchronized void flush() {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            plugin.getLogger().warning("[Audit] Buffer full, dropped " + lost + " events.");
+        }
+
+        rotateIfDue();
+        List<AuditEvent> events = new ArrayList<>();
+        buffer.drain(events::add);
+        if (events.isEmpty()) {
+            return;
+        }
+
+        for (AuditEvent event : events) {
+            index(event);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(currentFile.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (AuditEvent event : events) {
+                writer.write(event.toJson());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("[Audit] Failed to write " + currentFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void index(AuditEvent event) {
+        int limit = plugin.getConfigManager().getAuditHistoryPerShop();
+        synchronized (recent) {
+            Deque<AuditEvent> events = recent.computeIfAbsent(event.shopName(), k -> new ArrayDeque<>());
+            events.addLast(event);
+            while (events.size() > limit) {
+                events.removeFirst();
+            }
+        }
+    }
+
+    private void loadRecent() {
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(currentFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                AuditEvent event = AuditEvent.fromJson(line);
+                if (event != null) {
+                    index(event);
+                } else {
+                    skipped++;
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("[Audit] Failed to read " + currentFile.getName() + ": " + e.getMessage());
+        }
+        if (skipped > 0) {
+            plugin.getLogger().warning("[Audit] Skipped " + skipped + " unreadable lines in " + currentFile.getName());
+        }
+    }
+
+    private void rotateIfDue() {
+        ConfigManager config = plugin.getConfigManager();
+        long now = System.currentTimeMillis();
+        long length = currentFile.length();
+        boolean tooLarge = length >= config.getAuditMaxFileSizeMb() * 1024L * 1024L;
+        boolean tooOld = now - openedAt >= config.getAuditRotateHours() * 3_600_000L;
+        if (!tooLarge && !tooOld) {
+            return;
+        }
+        if (length == 0) {
+            openedAt = now;
+            return;
+        }
+
+        File archive = new File(directory, ARCHIVE_PREFIX + LocalDateTime.now().format(ARCHIVE_TIME) + ARCHIVE_SUFFIX);
+        for (int i = 1; archive.exists(); i++) {
+            archive = new File(directory, ARCHIVE_PREFIX + LocalDateTime.now().format(ARCHIVE_TIME) + "-" + i
+                    + ARCHIVE_SUFFIX);
+        }
+
+        try (InputStream in = Files.newInputStream(currentFile.toPath());
+                OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive.toPath()))) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            plugin.getLogger().severe("[Audit] Failed to rotate " + currentFile.getName() + ": " + e.getMessage());
+            return;
+        }
+        if (!currentFile.delete()) {
+            plugin.getLogger().warning("[Audit] Failed to delete " + currentFile.getName() + " after rotation");
+        }
+        openedAt = now;
+        pruneArchives(config.getAuditMaxFiles());
+    }
+
+    private void pruneArchives(int keep) {
+        File[] archives = directory.listFiles((dir, name) -> name.startsWith(ARCHIVE_PREFIX)
+                && name.endsWith(ARCHIVE_SUFFIX));
+        if (archives == null || archives.length <= keep) {
+            return;
+        }
+        // Archive names sort by time
+        Arrays.sort(archives, (a, b) -> a.getName().compareTo(b.getName()));
+        for (int i = 0; i < archives.length - keep; i++) {
+            if (!archives[i].delete()) {
+                plugin.getLogger().warning("[Audit] Failed to delete old archive " + archives[i].getName());
+            }
+        }
+    }
+}
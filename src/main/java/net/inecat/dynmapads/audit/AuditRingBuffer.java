@@ -0,0 +1,70 @@
+package net.inecat.dynmapads.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue with many producers and one consumer. Producers
+ * claim a slot with a compare-and-set on the tail and publish the event into
+ * it; the consumer takes published events in order and frees their slots.
+ * A full buffer rejects the event instead of blocking the caller.
+ */
+final class AuditRingBuffer {
+    private final AtomicReferenceArray<AuditEvent> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param minCapacity rounded up to a power of two
+     */
+    AuditRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Add an event from any thread.
+     *
+     * @return false if the buffer is full
+     */
+    boolean offer(AuditEvent event) {
+        while (true) {
+            long position = tail.get();
+            if (position - head >= slots.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(position, position + 1)) {
+                slots.set((int) (position & mask), event);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take all published events in order. Only one thread may drain at a
+     * time. Stops early at a slot that is claimed but not yet published; the
+     * event is taken by the next drain.
+     *
+     * @return the number of events taken
+     */
+    int drain(Consumer<AuditEvent> consumer) {
+        int count = 0;
+        long position = head;
+        while (true) {
+            int index = (int) (position & mask);
+            AuditEvent event = slots.get(index);
+            if (event == null) {
+                break;
+            }
+            slots.set(index, null);
+            position++;
+            head = position;
+            consumer.accept(event);
+            count++;
+        }
+        return count;
+    }
+}
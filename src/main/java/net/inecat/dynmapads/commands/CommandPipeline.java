@@ -0,0 +1,110 @@
+package net.inecat.dynmapads.commands;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.metrics.Metric;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs /mapmarker commands as a chain of timed stages. Validation runs inline
+ * on the main thread against in-memory data, persistence and Discord queueing
+ * run on the plugin's I/O executor with its task timeout, and only stages
+ * that touch the Bukkit or Dynmap API hop back to the main thread (the
+ * global region on Folia).
+ * A stage returning null ends the chain; later stages are skipped.
+ * Stage times are recorded in {@link Metric#COMMAND_STAGE}, labelled
+ * "command/stage".
+ */
+public class CommandPipeline {
+    private final DynmapAdsPlugin plugin;
+    private final Executor mainThread;
+
+    public CommandPipeline(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.mainThread = plugin.getPluginScheduler().globalExecutor();
+    }
+
+    /**
+     * Start a command execution.
+     */
+    public Execution start(String command) {
+        return new Execution(command);
+    }
+
+    /**
+     * One run of a command through the pipeline.
+     */
+    public final class Execution {
+        private final String command;
+        private final long startNanos;
+
+        private Execution(String command) {
+            this.command = command;
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Run validation inline on the calling (main) thread.
+         */
+        public <T> T validate(Supplier<T> validation) {
+            return timed("validate", validation);
+        }
+
+        /**
+         * Start an economy transaction. The stage covers the time until the
+         * transaction completes.
+         */
+        public <T> CompletableFuture<T> economy(Supplier<CompletableFuture<T>> transaction) {
+            long start = System.nanoTime();
+            return timed("economy-submit", transaction).whenComplete((result, error) ->
+                    plugin.getMetrics().recordSince(Metric.COMMAND_STAGE, command + "/economy", start));
+        }
+
+        /**
+         * Continue on the main thread, for Bukkit and Dynmap API calls.
+         */
+        public <T, R> CompletableFuture<R> onMain(String stage, CompletableFuture<T> previous, Function<T, R> action) {
+            return previous.thenApplyAsync(value -> value == null ? null : timed(stage, () -> action.apply(value)),
+                    mainThread);
+        }
+
+        /**
+         * Continue on an I/O thread, for storage writes and Discord queueing.
+         * The stage is interrupted if it runs longer than the I/O task timeout.
+         */
+        public <T, R> CompletableFuture<R> onWorker(String stage, CompletableFuture<T> previous,
+                Function<T, R> action) {
+            return previous.thenCompose(value -> value == null ? CompletableFuture.<R>completedFuture(null)
+                    : plugin.getIoExecutor().supply("command:" + command + "/" + stage,
+                            () -> timed(stage, () -> action.apply(value))));
+        }
+
+        /**
+         * Record the total time of the command and log failures of any stage.
+         * Shutdown waits for the chain to complete.
+         *
+         * @param subject what the command acts on, for the log if shutdown abandons it
+         */
+        public void finish(String subject, CompletableFuture<?> last) {
+            plugin.getShutdownCoordinator().track("/mapmarker " + command + " " + subject, last);
+            last.whenComplete((result, error) -> {
+                plugin.getMetrics().recordSince(Metric.COMMAND_COMPLETION, command, startNanos);
+                if (error != null) {
+                    plugin.getLogger().warning("/mapmarker " + command + " failed: " + error.getMessage());
+                }
+            });
+        }
+
+        private <T> T timed(String stage, Supplier<T> action) {
+            long start = System.nanoTime();
+            try {
+                return plugin.getTickWatchdog().measure("command:" + command + "/" + stage, action);
+            } finally {
+                plugin.getMetrics().recordSince(Metric.COMMAND_STAGE, command + "/" + stage, start);
+            }
+        }
+    }
+}
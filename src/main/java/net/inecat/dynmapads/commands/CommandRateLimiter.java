@@ -0,0 +1,116 @@
+package net.inecat.dynmapads.commands;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token-bucket limiter for /mapmarker, with one bucket per player and one
+ * shared by all players. A bucket that has refilled completely is the same as
+ * a new one, so idle buckets are evicted without losing anything.
+ */
+public class CommandRateLimiter {
+    private final DynmapAdsPlugin plugin;
+    private final Map<UUID, Bucket> playerBuckets;
+    private final Bucket globalBucket;
+
+    /**
+     * Token bucket with lazy refill.
+     */
+    private static final class Bucket {
+        private double tokens;
+        private long lastRefillNanos;
+
+        Bucket(double capacity, long now) {
+            this.tokens = capacity;
+            this.lastRefillNanos = now;
+        }
+
+        private void refill(double capacity, double tokensPerNano, long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+        }
+
+        /**
+         * Take one token.
+         *
+         * @return 0 if a token was taken, otherwise nanoseconds until one is available
+         */
+        synchronized long tryAcquire(double capacity, double tokensPerNano, long now) {
+            refill(capacity, tokensPerNano, now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        synchronized void giveBack(double capacity) {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized boolean isFull(double capacity, double tokensPerNano, long now) {
+            refill(capacity, tokensPerNano, now);
+            return tokens >= capacity;
+        }
+    }
+
+    public CommandRateLimiter(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.playerBuckets = new ConcurrentHashMap<>();
+        this.globalBucket = new Bucket(plugin.getConfigManager().getRateLimitGlobalBurst(), System.nanoTime());
+    }
+
+    /**
+     * Take a token for a command run by a player.
+     *
+     * @return 0 if the command may run, otherwise milliseconds to wait
+     */
+    public long tryAcquire(UUID playerUUID) {
+        ConfigManager config = plugin.getConfigManager();
+        if (!config.isRateLimitEnabled()) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        double playerCapacity = config.getRateLimitPlayerBurst();
+        double playerRate = perNano(config.getRateLimitPlayerPerMinute());
+        Bucket bucket = playerBuckets.computeIfAbsent(playerUUID, uuid -> new Bucket(playerCapacity, now));
+
+        long waitNanos = bucket.tryAcquire(playerCapacity, playerRate, now);
+        if (waitNanos > 0) {
+            return toMillis(waitNanos);
+        }
+
+        waitNanos = globalBucket.tryAcquire(config.getRateLimitGlobalBurst(),
+                perNano(config.getRateLimitGlobalPerMinute()), now);
+        if (waitNanos > 0) {
+            // The player did not get to run anything, so they keep their token
+            bucket.giveBack(playerCapacity);
+            return toMillis(waitNanos);
+        }
+        return 0;
+    }
+
+    /**
+     * Drop buckets of players who have been idle long enough to refill.
+     */
+    public void evictIdle() {
+        ConfigManager config = plugin.getConfigManager();
+        long now = System.nanoTime();
+        double capacity = config.getRateLimitPlayerBurst();
+        double rate = perNano(config.getRateLimitPlayerPerMinute());
+        playerBuckets.values().removeIf(bucket -> bucket.isFull(capacity, rate, now));
+    }
+
+    private static double perNano(int perMinute) {
+        return perMinute / 60_000_000_000.0;
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, (nanos + 999_999) / 1_000_000);
+    }
+}
@@ -1,22 +1,63 @@
 package net.inecat.dynmapads.commands;
 
 import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.admin.BulkJob;
+import net.inecat.dynmapads.admin.BulkJobRunner;
+import net.inecat.dynmapads.admin.BulkJobType;
+import net.inecat.dynmapads.audit.AuditEvent;
+import net.inecat.dynmapads.audit.AuditEventType;
+import net.inecat.dynmapads.auction.AdAuction;
+import net.inecat.dynmapads.auction.AdBid;
 import net.inecat.dynmapads.config.ConfigManager;
 import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerFilter;
+import net.inecat.dynmapads.data.MarkerPage;
 import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.discord.DiscordManager;
+import net.inecat.dynmapads.economy.EconomyPipeline;
+import net.inecat.dynmapads.economy.RevenueAggregator;
+import net.inecat.dynmapads.economy.TransactionKind;
+import net.inecat.dynmapads.economy.TransactionResult;
+import net.inecat.dynmapads.metrics.Histogram;
+import net.inecat.dynmapads.metrics.Metric;
+import net.inecat.dynmapads.metrics.PluginMetrics;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.World;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Main command executor for /mapmarker command.
  */
 public class MapMarkerCommand implements CommandExecutor {
     private static final String ADMIN_PERMISSION = "mapmarker.admin";
+    private static final Pattern PERIOD_PATTERN = Pattern.compile("(\\d{1,4})([hd])");
+    private static final DateTimeFormatter HISTORY_TIME_FORMAT = DateTimeFormatter.ofPattern("M/d HH:mm");
+    private static final LegacyComponentSerializer LEGACY = LegacyComponentSerializer.legacySection();
 
     private final DynmapAdsPlugin plugin;
 
@@ -27,34 +68,132 @@ public class MapMarkerCommand implements CommandExecutor {
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (!(sender instanceof Player player)) {
-            sender.sendMessage(plugin.getConfigManager().getPrefix() + plugin.getConfigManager().getPlayerOnly());
+            sender.sendMessage(plugin.getConfigManager().message("player-only"));
             return true;
         }
 
+        if (plugin.getShutdownCoordinator().isShuttingDown()) {
+            player.sendMessage(plugin.getConfigManager().message("shutting-down"));
+            return true;
+        }
+
+        // Throttle command spam before any economy, Discord or storage work
+        if (!player.hasPermission(ADMIN_PERMISSION)) {
+            long waitMillis = plugin.getRateLimiter().tryAcquire(player.getUniqueId());
+            if (waitMillis > 0) {
+                player.sendMessage(plugin.getConfigManager().message("rate-limited",
+                        "seconds", (waitMillis + 999) / 1000));
+                return true;
+            }
+        }
+
         if (args.length < 1) {
             sendUsage(player);
             return true;
         }
 
         String subCommand = args[0].toLowerCase();
+        long start = System.nanoTime();
+        boolean handled = plugin.getTickWatchdog().measure("command:" + subCommand,
+                () -> dispatch(player, subCommand, args));
+        if (handled) {
+            plugin.getMetrics().recordSince(Metric.COMMAND, subCommand, start);
+        }
 
+        return true;
+    }
+
+    /**
+     * Run a subcommand.
+     *
+     * @return false if the subcommand is unknown
+     */
+    private boolean dispatch(Player player, String subCommand, String[] args) {
         switch (subCommand) {
             case "commercial" -> handleCommercial(player, args);
             case "ads" -> handleAds(player, args);
+            case "bid" -> handleBid(player, args);
             case "delete" -> handleDelete(player, args);
-            default -> sendUsage(player);
+            case "revenue" -> handleRevenue(player, args);
+            case "spend" -> handleSpend(player);
+            case "list" -> handleList(player, args);
+            case "tp" -> handleTeleport(player, args);
+            case "stats" -> handleStats(player, args);
+            case "history" -> handleHistory(player, args);
+            // Bulk jobs are driven from the global region on Folia
+            case "admin" -> plugin.getPluginScheduler().globalExecutor().execute(() -> handleAdmin(player, args));
+            case "reload" -> handleReload(player);
+            default -> {
+                sendUsage(player);
+                return false;
+            }
         }
-
         return true;
     }
 
     private void handleCommercial(Player player, String[] args) {
         ConfigManager config = plugin.getConfigManager();
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+        CommandPipeline.Execution run = plugin.getCommandPipeline().start("commercial");
+
+        MarkerData data = run.validate(() -> validateCommercial(player, args));
+        if (data == null) {
+            return;
+        }
+
+        // Withdraw fee off the main thread
+        int fee = config.getCommercialFee();
+        String chargeId = EconomyPipeline.newKey(TransactionKind.COMMERCIAL_FEE);
+        CompletableFuture<TransactionResult> charged = run.economy(() -> plugin.getEconomyPipeline().charge(
+                player, TransactionKind.COMMERCIAL_FEE, fee, chargeId, "commercial:" + data.getShopName()));
+
+        // Claim the name on the main thread, where every other command runs too
+        CompletableFuture<MarkerData> claimed = run.onMain("apply", charged, result -> {
+            if (!result.success()) {
+                scheduler.message(player, config.message("insufficient-funds",
+                        "amount", fee, "currency", config.getCurrencyName()));
+                return null;
+            }
+
+            // Another application may have taken the name while the fee was being charged
+            if (plugin.getMarkerStorage().exists(data.getShopName())) {
+                refund(player.getUniqueId(), fee, chargeId, data.getShopName(), "duplicate");
+                scheduler.message(player, config.message("shop-exists", "shop", data.getShopName()));
+                return null;
+            }
+
+            // Hold the fee until the application is decided, then store the application
+            data.setChargeId(chargeId);
+            plugin.getEscrowManager().hold(chargeId, data, fee);
+            plugin.getMarkerStorage().batch(() -> plugin.getMarkerStorage().addMarker(data),
+                    () -> plugin.getEconomyPipeline().claim(chargeId));
+            plugin.getAuditLog().record(AuditEventType.CREATED, data, player.getName(), "fee", fee);
+
+            scheduler.message(player, config.message("fee-paid",
+                    "amount", fee, "currency", config.getCurrencyName()));
+            scheduler.message(player, config.message("commercial-pending", "shop", data.getShopName()));
+            if (!plugin.getDiscordManager().isReady()) {
+                scheduler.message(player, config.message("commercial-queued-offline"));
+            }
+            return data;
+        });
+
+        // Queue the Discord approval request.
+        // The outbox keeps retrying while Discord is unavailable, so no refund is needed.
+        String playerName = player.getName();
+        run.finish(data.getShopName() + " by " + playerName, run.onWorker("notify", claimed, stored -> {
+            plugin.getDiscordManager().requestApproval(stored, playerName);
+            return stored;
+        }));
+    }
+
+    private MarkerData validateCommercial(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
 
         // /mapmarker commercial <店名> <説明>
         if (args.length < 3) {
-            player.sendMessage(config.getPrefix() + config.getUsageCommercial());
-            return;
+            player.sendMessage(config.message("usage-commercial"));
+            return null;
         }
 
         String shopName = args[1];
@@ -62,28 +201,11 @@ public class MapMarkerCommand implements CommandExecutor {
 
         // Check if shop name already exists
         if (plugin.getMarkerStorage().exists(shopName)) {
-            player.sendMessage(config.formatMessage(config.getShopExists(), "%shop%", shopName));
-            return;
-        }
-
-        // Check balance
-        int fee = config.getCommercialFee();
-        if (!plugin.getEconomyManager().hasBalance(player, fee)) {
-            player.sendMessage(config.formatMessage(config.getInsufficientFunds(),
-                    "%amount%", String.valueOf(fee),
-                    "%currency%", config.getCurrencyName()));
-            return;
+            player.sendMessage(config.message("shop-exists", "shop", shopName));
+            return null;
         }
 
-        // Withdraw fee
-        if (!plugin.getEconomyManager().withdraw(player, fee)) {
-            player.sendMessage(config.formatMessage(config.getInsufficientFunds(),
-                    "%amount%", String.valueOf(fee),
-                    "%currency%", config.getCurrencyName()));
-            return;
-        }
-
-        // Create marker data
+        // Create marker data at the command location
         MarkerData data = new MarkerData(
                 shopName,
                 player.getUniqueId(),
@@ -92,39 +214,93 @@ public class MapMarkerCommand implements CommandExecutor {
                 player.getLocation().getY(),
                 player.getLocation().getZ(),
                 description);
+        data.setOwnerName(player.getName());
+        return data;
+    }
 
-        // Notify player about the payment
-        final int chargedFee = fee;
-        player.sendMessage(config.getPrefix() + "§e" + chargedFee + " " + config.getCurrencyName() + "§aを支払いました。");
-
-        // Send Discord approval request
-        plugin.getDiscordManager().sendApprovalRequest(data, player.getName())
-                .thenAccept(messageId -> {
-                    data.setDiscordMessageId(messageId);
-                    plugin.getMarkerStorage().addMarker(data);
-
-                    plugin.getServer().getScheduler().runTask(plugin, () -> {
-                        player.sendMessage(config.formatMessage(config.getCommercialPending(), "%shop%", shopName));
-                    });
-                })
-                .exceptionally(error -> {
-                    // Refund on error
-                    plugin.getEconomyManager().deposit(player, chargedFee);
-                    plugin.getServer().getScheduler().runTask(plugin, () -> {
-                        player.sendMessage(config.getPrefix() + "§cDiscord通知の送信に失敗しました。§e" + chargedFee + " "
-                                + config.getCurrencyName() + "§cを返金しました。");
-                    });
-                    return null;
-                });
+    /**
+     * Validated arguments of /mapmarker ads.
+     */
+    private record AdsRequest(MarkerData data, int days, String prMessage) {
     }
 
     private void handleAds(Player player, String[] args) {
         ConfigManager config = plugin.getConfigManager();
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+        CommandPipeline.Execution run = plugin.getCommandPipeline().start("ads");
+
+        AdsRequest request = run.validate(() -> validateAds(player, args));
+        if (request == null) {
+            return;
+        }
+
+        // Withdraw fee off the main thread
+        MarkerData data = request.data();
+        String shopName = data.getShopName();
+        int days = request.days();
+        int totalFee = config.getAdsFeePerDay() * days;
+        String chargeId = EconomyPipeline.newKey(TransactionKind.ADS_FEE);
+        CompletableFuture<TransactionResult> charged = run.economy(() -> plugin.getEconomyPipeline().charge(
+                player, TransactionKind.ADS_FEE, totalFee, chargeId, "ads:" + shopName));
+
+        // Update the marker and Dynmap on the main thread
+        String ownerName = player.getName();
+        CompletableFuture<MarkerData> started = run.onMain("apply", charged, result -> {
+            if (!result.success()) {
+                scheduler.message(player, config.message("insufficient-funds",
+                        "amount", totalFee, "currency", config.getCurrencyName()));
+                return null;
+            }
+
+            // The shop may have been deleted or advertised while the fee was being charged
+            if (plugin.getMarkerStorage().getMarker(shopName) != data || data.getStatus() != MarkerStatus.COMMERCIAL) {
+                refund(player.getUniqueId(), totalFee, chargeId, shopName, "ads-aborted");
+                scheduler.message(player, config.message("ads-state-changed",
+                        "amount", totalFee, "currency", config.getCurrencyName()));
+                return null;
+            }
+
+            // Another ad may have taken the last slot meanwhile
+            if (!plugin.getAdAuction().canStartNow(data)) {
+                refund(player.getUniqueId(), totalFee, chargeId, shopName, "ads-aborted");
+                scheduler.message(player, config.message("ads-slot-taken",
+                        "amount", totalFee, "currency", config.getCurrencyName()));
+                return null;
+            }
+
+            // Notify player about the payment
+            scheduler.message(player, config.message("ads-fee-paid",
+                    "amount", totalFee, "currency", config.getCurrencyName(), "days", days));
+
+            // Update marker data
+            data.setStatus(MarkerStatus.ADS);
+            data.setAdsEndTime(LocalDateTime.now().plusDays(days));
+            data.setPrMessage(request.prMessage());
+            plugin.getMarkerStorage().batch(() -> plugin.getMarkerStorage().updateMarker(data),
+                    () -> plugin.getEconomyPipeline().claim(chargeId));
+            plugin.getAuditLog().record(AuditEventType.AD_STARTED, data, ownerName, "days", days, "fee", totalFee);
+
+            // Move marker to ads set
+            plugin.getDynmapManager().moveToAds(data, ownerName);
+
+            scheduler.message(player, config.message("ads-started", "shop", shopName, "days", days));
+            return data;
+        });
+
+        // Send Discord notification
+        run.finish(shopName + " by " + ownerName, run.onWorker("notify", started, advertised -> {
+            plugin.getDiscordManager().sendAdsNotification(advertised, ownerName, days);
+            return advertised;
+        }));
+    }
+
+    private AdsRequest validateAds(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
 
         // /mapmarker ads <店名> <期間(日)> [宣伝文句]
         if (args.length < 3) {
-            player.sendMessage(config.getPrefix() + config.getUsageAds());
-            return;
+            player.sendMessage(config.message("usage-ads"));
+            return null;
         }
 
         String shopName = args[1];
@@ -133,12 +309,12 @@ public class MapMarkerCommand implements CommandExecutor {
         try {
             days = Integer.parseInt(args[2]);
             if (days <= 0) {
-                player.sendMessage(config.getPrefix() + "§c期間は1日以上を指定してください。");
-                return;
+                player.sendMessage(config.message("ads-invalid-days"));
+                return null;
             }
         } catch (NumberFormatException e) {
-            player.sendMessage(config.getPrefix() + config.getUsageAds());
-            return;
+            player.sendMessage(config.message("usage-ads"));
+            return null;
         }
 
         String prMessage = args.length > 3 ? String.join(" ", Arrays.copyOfRange(args, 3, args.length)) : null;
@@ -146,73 +322,216 @@ public class MapMarkerCommand implements CommandExecutor {
         // Check if shop exists
         MarkerData data = plugin.getMarkerStorage().getMarker(shopName);
         if (data == null) {
-            player.sendMessage(config.formatMessage(config.getShopNotFound(), "%shop%", shopName));
-            return;
+            player.sendMessage(config.message("shop-not-found", "shop", shopName));
+            return null;
         }
 
         // Check ownership
         if (!canManage(player, data)) {
-            player.sendMessage(config.getPrefix() + config.getNotOwner());
-            return;
+            player.sendMessage(config.message("not-owner"));
+            return null;
         }
 
         // Check if already ads or pending
         if (data.getStatus() == MarkerStatus.PENDING) {
-            player.sendMessage(config.getPrefix() + "§cこの店舗はまだ承認されていません。");
-            return;
+            player.sendMessage(config.message("ads-not-approved"));
+            return null;
         }
 
         if (data.getStatus() == MarkerStatus.ADS) {
-            player.sendMessage(config.getPrefix() + "§cこの店舗は既に広告中です。");
-            return;
+            player.sendMessage(config.message("ads-already-running"));
+            return null;
         }
 
-        // Calculate fee
-        int totalFee = config.getAdsFeePerDay() * days;
-        if (!plugin.getEconomyManager().hasBalance(player, totalFee)) {
-            player.sendMessage(config.formatMessage(config.getInsufficientFunds(),
-                    "%amount%", String.valueOf(totalFee),
-                    "%currency%", config.getCurrencyName()));
-            return;
+        // A full slot group, or one with bids waiting, is auctioned
+        if (!plugin.getAdAuction().canStartNow(data)) {
+            player.sendMessage(config.message("ads-slots-full",
+                    "amount", plugin.getAdAuction().minimumBid(data), "currency", config.getCurrencyName()));
+            return null;
         }
 
-        // Withdraw fee
-        if (!plugin.getEconomyManager().withdraw(player, totalFee)) {
-            player.sendMessage(config.formatMessage(config.getInsufficientFunds(),
-                    "%amount%", String.valueOf(totalFee),
-                    "%currency%", config.getCurrencyName()));
+        return new AdsRequest(data, days, prMessage);
+    }
+
+    /**
+     * Validated arguments of /mapmarker bid.
+     */
+    private record BidRequest(MarkerData data, int days, int amountPerDay, String prMessage) {
+    }
+
+    private void handleBid(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+        AdAuction auction = plugin.getAdAuction();
+        CommandPipeline.Execution run = plugin.getCommandPipeline().start("bid");
+
+        BidRequest request = run.validate(() -> validateBid(player, args));
+        if (request == null) {
             return;
         }
 
-        // Notify player about the payment
-        player.sendMessage(
-                config.getPrefix() + "§e" + totalFee + " " + config.getCurrencyName() + "§aを支払いました。（" + days + "日間）");
+        // Withdraw the whole bid off the main thread; it is held until the auction is settled
+        MarkerData data = request.data();
+        String shopName = data.getShopName();
+        long total = (long) request.amountPerDay() * request.days();
+        String chargeId = EconomyPipeline.newKey(TransactionKind.ADS_FEE);
+        CompletableFuture<TransactionResult> charged = run.economy(() -> plugin.getEconomyPipeline().charge(
+                player, TransactionKind.ADS_FEE, total, chargeId, "bid:" + shopName));
+
+        CompletableFuture<AdBid> placed = run.onMain("apply", charged, result -> {
+            if (!result.success()) {
+                scheduler.message(player, config.message("insufficient-funds",
+                        "amount", total, "currency", config.getCurrencyName()));
+                return null;
+            }
 
-        // Update marker data
-        data.setStatus(MarkerStatus.ADS);
-        data.setAdsEndTime(LocalDateTime.now().plusDays(days));
-        data.setPrMessage(prMessage);
-        plugin.getMarkerStorage().updateMarker(data);
+            // The shop may have changed, or been outbid in an ascending auction, while the bid was being charged
+            if (plugin.getMarkerStorage().getMarker(shopName) != data || data.getStatus() != MarkerStatus.COMMERCIAL) {
+                refund(player.getUniqueId(), total, chargeId, shopName, "bid-aborted");
+                scheduler.message(player, config.message("ads-state-changed",
+                        "amount", total, "currency", config.getCurrencyName()));
+                return null;
+            }
+            int minimum = auction.minimumBid(data);
+            if (request.amountPerDay() < minimum) {
+                refund(player.getUniqueId(), total, chargeId, shopName, "bid-aborted");
+                scheduler.message(player, config.message("bid-too-low",
+                        "amount", minimum, "currency", config.getCurrencyName()));
+                return null;
+            }
 
-        // Move marker to ads set
-        String ownerName = player.getName();
-        plugin.getDynmapManager().moveToAds(data, ownerName);
+            plugin.getEscrowManager().hold(chargeId, data, total);
+            AdBid bid = new AdBid(chargeId, shopName, data.getOwnerUUID(), auction.slotOf(data),
+                    request.amountPerDay(), request.days(), request.prMessage(), System.currentTimeMillis());
+            AdBid replaced = auction.place(bid);
+            if (replaced != null) {
+                // The earlier bid of the shop is returned with the next refund batch
+                plugin.getEscrowManager().release(replaced.getChargeId());
+            }
+            plugin.getAuditLog().record(AuditEventType.BID_PLACED, data, player.getName(),
+                    "days", request.days(), "bid", request.amountPerDay(), "fee", total);
+
+            scheduler.message(player, config.message("bid-placed", "shop", shopName,
+                    "amount", request.amountPerDay(), "days", request.days(), "total", total,
+                    "currency", config.getCurrencyName()));
+            return bid;
+        });
+        run.finish(shopName + " by " + player.getName(), placed);
+    }
 
-        // Send Discord notification
-        plugin.getDiscordManager().sendAdsNotification(data, ownerName, days);
+    private BidRequest validateBid(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
+
+        // /mapmarker bid <店名> <期間(日)> <1日あたりの入札額> [宣伝文句]
+        if (args.length < 4) {
+            player.sendMessage(config.message("usage-bid"));
+            return null;
+        }
+
+        String shopName = args[1];
+        int days;
+        int amountPerDay;
+        try {
+            days = Integer.parseInt(args[2]);
+            amountPerDay = Integer.parseInt(args[3]);
+        } catch (NumberFormatException e) {
+            player.sendMessage(config.message("usage-bid"));
+            return null;
+        }
+        if (days <= 0) {
+            player.sendMessage(config.message("ads-invalid-days"));
+            return null;
+        }
+
+        String prMessage = args.length > 4 ? String.join(" ", Arrays.copyOfRange(args, 4, args.length)) : null;
+
+        MarkerData data = plugin.getMarkerStorage().getMarker(shopName);
+        if (data == null) {
+            player.sendMessage(config.message("shop-not-found", "shop", shopName));
+            return null;
+        }
+        if (!canManage(player, data)) {
+            player.sendMessage(config.message("not-owner"));
+            return null;
+        }
+        if (data.getStatus() == MarkerStatus.PENDING) {
+            player.sendMessage(config.message("ads-not-approved"));
+            return null;
+        }
+        if (data.getStatus() == MarkerStatus.ADS) {
+            player.sendMessage(config.message("ads-already-running"));
+            return null;
+        }
+
+        // Without a cap there is nothing to auction
+        AdAuction auction = plugin.getAdAuction();
+        if (auction.capacity(data) <= 0) {
+            player.sendMessage(config.message("bid-not-needed"));
+            return null;
+        }
+        int minimum = auction.minimumBid(data);
+        if (amountPerDay < minimum) {
+            player.sendMessage(config.message("bid-too-low", "amount", minimum, "currency", config.getCurrencyName()));
+            return null;
+        }
 
-        player.sendMessage(config.formatMessage(config.getAdsStarted(),
-                "%shop%", shopName,
-                "%days%", String.valueOf(days)));
+        return new BidRequest(data, days, amountPerDay, prMessage);
     }
 
     private void handleDelete(Player player, String[] args) {
         ConfigManager config = plugin.getConfigManager();
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+        CommandPipeline.Execution run = plugin.getCommandPipeline().start("delete");
+
+        MarkerData data = run.validate(() -> validateDelete(player, args));
+        if (data == null) {
+            return;
+        }
+
+        String shopName = data.getShopName();
+        boolean pending = data.getStatus() == MarkerStatus.PENDING;
+
+        // Remove the marker on the main thread
+        CompletableFuture<MarkerData> removed = run.onMain("apply", CompletableFuture.completedFuture(data), target -> {
+            if (pending) {
+                // Release the held fee
+                plugin.getEscrowManager().release(EconomyPipeline.commercialChargeId(target)).thenAccept(result -> {
+                    if (result.success()) {
+                        scheduler.message(player, config.message("pending-refunded",
+                                "amount", String.format("%.0f", result.amount()),
+                                "currency", config.getCurrencyName()));
+                    }
+                });
+            } else {
+                // Delete from Dynmap (only if not PENDING)
+                plugin.getDynmapManager().deleteMarker(target);
+            }
+
+            // Delete from storage
+            plugin.getMarkerStorage().removeMarker(shopName);
+            plugin.getAuditLog().record(AuditEventType.DELETED, target, player.getName());
+
+            scheduler.message(player, config.message("shop-deleted", "shop", shopName));
+            return target;
+        });
+
+        // Delete Discord message, or drop the request if it was never delivered
+        String reason = config.text("cancel-reason-player", "player", player.getName());
+        run.finish(shopName + " by " + player.getName(), run.onWorker("notify", removed, target -> {
+            if (pending) {
+                plugin.getDiscordManager().cancelApprovalRequest(target, reason);
+            }
+            return target;
+        }));
+    }
+
+    private MarkerData validateDelete(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
 
         // /mapmarker delete <店名>
         if (args.length < 2) {
-            player.sendMessage(config.getPrefix() + config.getUsageDelete());
-            return;
+            player.sendMessage(config.message("usage-delete"));
+            return null;
         }
 
         String shopName = args[1];
@@ -220,39 +539,446 @@ public class MapMarkerCommand implements CommandExecutor {
         // Check if shop exists
         MarkerData data = plugin.getMarkerStorage().getMarker(shopName);
         if (data == null) {
-            player.sendMessage(config.formatMessage(config.getShopNotFound(), "%shop%", shopName));
-            return;
+            player.sendMessage(config.message("shop-not-found", "shop", shopName));
+            return null;
         }
 
         // Check ownership
         if (!canManage(player, data)) {
-            player.sendMessage(config.getPrefix() + config.getNotOwner());
+            player.sendMessage(config.message("not-owner"));
+            return null;
+        }
+
+        return data;
+    }
+
+    private void handleList(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
+        boolean admin = player.hasPermission(ADMIN_PERMISSION);
+
+        // /mapmarker list [mine|all|ads|pending] [ページ] [カーソル]
+        String scope = args.length > 1 ? args[1].toLowerCase() : "mine";
+        MarkerFilter filter = switch (scope) {
+            case "mine" -> MarkerFilter.OWNER;
+            case "all" -> admin ? MarkerFilter.ALL : MarkerFilter.APPROVED;
+            case "ads" -> MarkerFilter.ADS;
+            case "pending" -> admin ? MarkerFilter.PENDING : null;
+            default -> null;
+        };
+        if (filter == null) {
+            player.sendMessage(scope.equals("pending")
+                    ? config.message("no-permission")
+                    : config.message("usage-list", "scopes", admin ? "mine|all|ads|pending" : "mine|all|ads"));
             return;
         }
 
-        // Refund and delete Discord message if PENDING
-        if (data.getStatus() == MarkerStatus.PENDING) {
-            int refundAmount = config.getCommercialFee();
-            plugin.getEconomyManager().deposit(player, refundAmount);
-            player.sendMessage(config.getPrefix() + "§a承認待ち店舗のため、§e" + refundAmount + " " + config.getCurrencyName()
-                    + "§aを返金しました。");
-
-            // Delete Discord message
-            String messageId = data.getDiscordMessageId();
-            if (messageId != null && !messageId.isEmpty()) {
-                plugin.getDiscordManager().deleteApprovalMessage(messageId, shopName, player.getName() + "が申請を取り消しました");
+        int pageNumber = 1;
+        if (args.length > 2) {
+            if (!args[2].matches("\\d{1,6}") || Integer.parseInt(args[2]) == 0) {
+                player.sendMessage(config.message("list-invalid-page"));
+                return;
+            }
+            pageNumber = Integer.parseInt(args[2]);
+        }
+
+        // Page links carry the neighbouring shop name, so following them never walks earlier pages
+        int size = config.getListPageSize();
+        MarkerPage page;
+        String cursor = args.length > 3 ? args[3] : "";
+        if (cursor.startsWith("after:")) {
+            page = plugin.getMarkerStorage().getPage(filter, player.getUniqueId(), cursor.substring(6), false, size);
+        } else if (cursor.startsWith("before:")) {
+            page = plugin.getMarkerStorage().getPage(filter, player.getUniqueId(), cursor.substring(7), true, size);
+        } else {
+            page = plugin.getMarkerStorage().getPage(filter, player.getUniqueId(), pageNumber, size);
+        }
+
+        player.sendMessage(config.message("list-header", "scope", scope, "page", pageNumber));
+        if (page.markers().isEmpty()) {
+            player.sendMessage(config.text("list-empty"));
+            return;
+        }
+        for (MarkerData data : page.markers()) {
+            player.sendMessage(formatListEntry(config, data, admin));
+        }
+
+        if (page.hasPrevious() || page.hasNext()) {
+            Component navigation = LEGACY.deserialize("§7  ");
+            if (page.hasPrevious()) {
+                String command = "/mapmarker list " + scope + " " + Math.max(1, pageNumber - 1)
+                        + " before:" + page.previousCursor();
+                navigation = navigation.append(LEGACY.deserialize(config.text("list-previous"))
+                        .clickEvent(ClickEvent.runCommand(command)));
+            }
+            if (page.hasNext()) {
+                String command = "/mapmarker list " + scope + " " + (pageNumber + 1) + " after:" + page.nextCursor();
+                if (page.hasPrevious()) {
+                    navigation = navigation.append(LEGACY.deserialize(config.text("list-separator")));
+                }
+                navigation = navigation.append(LEGACY.deserialize(config.text("list-next"))
+                        .clickEvent(ClickEvent.runCommand(command)));
             }
+            player.sendMessage(navigation);
+        }
+    }
+
+    private Component formatListEntry(ConfigManager config, MarkerData data, boolean admin) {
+        String ownerName = plugin.getOwnerNameCache().getName(data);
+        String status = switch (data.getStatus()) {
+            case PENDING -> config.text("list-status-pending");
+            case COMMERCIAL -> config.text("list-status-commercial");
+            case ADS -> config.text("list-status-ads");
+        };
+
+        String hover = "§f" + data.getDescription();
+        if (data.getPrMessage() != null && !data.getPrMessage().isEmpty()) {
+            hover += "\n§d" + data.getPrMessage();
         }
 
-        // Delete from Dynmap (only if not PENDING)
-        if (data.getStatus() != MarkerStatus.PENDING) {
-            plugin.getDynmapManager().deleteMarker(data);
+        Component entry = LEGACY.deserialize(config.text("list-entry", "shop", data.getShopName(), "status", status,
+                "owner", ownerName, "world", data.getWorld(), "x", Math.round(data.getX()),
+                "y", Math.round(data.getY()), "z", Math.round(data.getZ())))
+                .hoverEvent(HoverEvent.showText(LEGACY.deserialize(hover)));
+
+        String mapUrl = DiscordManager.formatMapUrl(data.getWorld(), data.getX(), data.getY(), data.getZ());
+        entry = entry.append(LEGACY.deserialize(config.text("list-map-link"))
+                .clickEvent(ClickEvent.openUrl(mapUrl))
+                .hoverEvent(HoverEvent.showText(LEGACY.deserialize(config.text("list-map-hover")))));
+        if (admin) {
+            entry = entry.append(LEGACY.deserialize(config.text("list-teleport-link"))
+                    .clickEvent(ClickEvent.runCommand("/mapmarker tp " + data.getShopName()))
+                    .hoverEvent(HoverEvent.showText(LEGACY.deserialize(config.text("list-teleport-hover")))));
         }
+        return entry;
+    }
 
-        // Delete from storage
-        plugin.getMarkerStorage().removeMarker(shopName);
+    private void handleTeleport(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
 
-        player.sendMessage(config.formatMessage(config.getShopDeleted(), "%shop%", shopName));
+        // /mapmarker tp <店名>
+        if (!player.hasPermission(ADMIN_PERMISSION)) {
+            player.sendMessage(config.message("no-permission"));
+            return;
+        }
+        if (args.length < 2) {
+            player.sendMessage(config.message("usage-tp"));
+            return;
+        }
+
+        MarkerData data = plugin.getMarkerStorage().getMarker(args[1]);
+        if (data == null) {
+            player.sendMessage(config.message("shop-not-found", "shop", args[1]));
+            return;
+        }
+        World world = Bukkit.getWorld(data.getWorld());
+        if (world == null) {
+            player.sendMessage(config.message("world-not-found", "world", data.getWorld()));
+            return;
+        }
+
+        player.teleportAsync(new Location(world, data.getX(), data.getY(), data.getZ())).thenAccept(success -> {
+            if (success) {
+                player.sendMessage(config.message("teleported", "shop", data.getShopName()));
+            }
+        });
+    }
+
+    private void handleStats(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
+
+        // /mapmarker stats [reset]
+        if (!player.hasPermission(ADMIN_PERMISSION)) {
+            player.sendMessage(config.message("no-permission"));
+            return;
+        }
+
+        PluginMetrics metrics = plugin.getMetrics();
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            metrics.reset();
+            player.sendMessage(config.message("stats-reset"));
+            return;
+        }
+
+        player.sendMessage(config.message("stats-header"));
+        int lines = 0;
+        for (Metric metric : Metric.values()) {
+            if (metric.getKind() == Metric.Kind.COUNTER) {
+                for (Map.Entry<String, Long> count : metrics.counts(metric).entrySet()) {
+                    player.sendMessage(config.text("stats-counter", "metric", statName(metric, count.getKey()),
+                            "value", count.getValue()));
+                    lines++;
+                }
+                continue;
+            }
+            for (Map.Entry<String, Histogram.Snapshot> entry : metrics.snapshots(metric).entrySet()) {
+                Histogram.Snapshot snapshot = entry.getValue();
+                String name = statName(metric, entry.getKey());
+                if (metric.getKind() == Metric.Kind.TIMER) {
+                    player.sendMessage(config.text("stats-timer", "metric", name, "count", snapshot.count(),
+                            "p50", millis(snapshot.p50()), "p99", millis(snapshot.p99()),
+                            "max", millis(snapshot.max())));
+                } else {
+                    player.sendMessage(config.text("stats-size", "metric", name, "count", snapshot.count(),
+                            "average", String.format("%.0f", snapshot.average()), "p99", snapshot.p99(),
+                            "max", snapshot.max()));
+                }
+                lines++;
+            }
+        }
+        if (lines == 0) {
+            player.sendMessage(config.text("stats-empty"));
+        }
+    }
+
+    private static String statName(Metric metric, String labelValue) {
+        return labelValue.isEmpty() ? metric.getDisplayName() : metric.getDisplayName() + " [" + labelValue + "]";
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+
+    private void handleHistory(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
+
+        // /mapmarker history <店名>
+        if (args.length < 2) {
+            player.sendMessage(config.message("usage-history"));
+            return;
+        }
+
+        String shopName = args[1];
+        List<AuditEvent> events = plugin.getAuditLog().history(shopName);
+        MarkerData data = plugin.getMarkerStorage().getMarker(shopName);
+        if (data == null && events.isEmpty()) {
+            player.sendMessage(config.message("shop-not-found", "shop", shopName));
+            return;
+        }
+
+        // Owners may see the history of their shops, also after deletion
+        boolean allowed = data != null ? canManage(player, data)
+                : player.hasPermission(ADMIN_PERMISSION)
+                        || events.stream().anyMatch(event -> player.getUniqueId().equals(event.ownerUUID()));
+        if (!allowed) {
+            player.sendMessage(config.message("not-owner"));
+            return;
+        }
+
+        player.sendMessage(config.message("history-header", "shop", shopName));
+        if (events.isEmpty()) {
+            player.sendMessage(config.text("history-empty"));
+            return;
+        }
+        for (AuditEvent event : events) {
+            List<Object> placeholders = new ArrayList<>(List.of("currency", config.getCurrencyName()));
+            for (Map.Entry<String, Object> detail : event.details().entrySet()) {
+                Object value = detail.getValue();
+                placeholders.add(detail.getKey());
+                placeholders.add(value instanceof Double || value instanceof Float
+                        ? String.format("%.0f", ((Number) value).doubleValue()) : value);
+            }
+            String time = Instant.ofEpochMilli(event.timeMillis()).atZone(ZoneId.systemDefault())
+                    .format(HISTORY_TIME_FORMAT);
+            player.sendMessage(config.text("history-entry",
+                    "time", time,
+                    "event", config.text("history-" + event.type().getId(), placeholders.toArray()),
+                    "actor", event.actor() != null ? event.actor() : config.text("history-system")));
+        }
+    }
+
+    private void handleReload(Player player) {
+        // /mapmarker reload
+        if (!player.hasPermission(ADMIN_PERMISSION)) {
+            player.sendMessage(plugin.getConfigManager().message("no-permission"));
+            return;
+        }
+
+        List<String> restartRequired;
+        try {
+            restartRequired = plugin.reloadConfiguration();
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().warning("Failed to reload config.yml: " + e.getMessage());
+            player.sendMessage(plugin.getConfigManager().message("reload-failed", "error", String.valueOf(e.getMessage())));
+            return;
+        }
+
+        // Answer in the new configuration
+        ConfigManager config = plugin.getConfigManager();
+        player.sendMessage(config.message("reloaded", "locale", config.getLocale()));
+        if (!restartRequired.isEmpty()) {
+            player.sendMessage(config.message("reload-restart-required", "settings", String.join(", ", restartRequired)));
+        }
+    }
+
+    private void handleAdmin(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+
+        // /mapmarker admin <操作> [引数...]
+        if (!player.hasPermission(ADMIN_PERMISSION)) {
+            scheduler.message(player, config.message("no-permission"));
+            return;
+        }
+        if (args.length < 2) {
+            sendAdminUsage(player);
+            return;
+        }
+
+        BulkJobRunner runner = plugin.getBulkJobRunner();
+        switch (args[1].toLowerCase()) {
+            case "purge-owner" -> {
+                if (args.length < 3) {
+                    sendAdminUsage(player);
+                    return;
+                }
+                OfflinePlayer owner = resolvePlayer(args[2]);
+                if (owner == null) {
+                    scheduler.message(player, config.message("player-not-found", "player", args[2]));
+                    return;
+                }
+                String ownerName = owner.getName() != null ? owner.getName() : args[2];
+                submitJob(player, BulkJobType.PURGE_OWNER, List.of(owner.getUniqueId().toString(), ownerName));
+            }
+            case "expire-all" -> submitJob(player, BulkJobType.EXPIRE_ALL, List.of());
+            case "approve-all-pending" -> submitJob(player, BulkJobType.APPROVE_ALL_PENDING, List.of());
+            case "relocate-world" -> {
+                if (args.length < 4) {
+                    sendAdminUsage(player);
+                    return;
+                }
+                if (Bukkit.getWorld(args[3]) == null) {
+                    scheduler.message(player, config.message("world-not-found", "world", args[3]));
+                    return;
+                }
+                if (args[2].equals(args[3])) {
+                    scheduler.message(player, config.message("relocate-same-world"));
+                    return;
+                }
+                submitJob(player, BulkJobType.RELOCATE_WORLD, List.of(args[2], args[3]));
+            }
+            case "jobs" -> {
+                List<BulkJob> jobs = runner.getJobs();
+                scheduler.message(player, config.message("jobs-header"));
+                if (jobs.isEmpty()) {
+                    scheduler.message(player, config.text("jobs-empty"));
+                }
+                for (BulkJob job : jobs) {
+                    scheduler.message(player, config.text("jobs-entry", "id", job.getId(), "job", job.describe(),
+                            "processed", job.getProcessed(), "total", job.getTotal(),
+                            "requester", job.getRequesterName()));
+                }
+            }
+            case "cancel" -> {
+                if (args.length < 3 || !args[2].matches("\\d{1,9}")) {
+                    sendAdminUsage(player);
+                    return;
+                }
+                BulkJob job = runner.cancel(Integer.parseInt(args[2]));
+                if (job == null) {
+                    scheduler.message(player, config.message("job-not-running", "id", args[2]));
+                    return;
+                }
+                scheduler.message(player, config.message("job-cancelled",
+                        "id", job.getId(), "processed", job.getProcessed(), "total", job.getTotal()));
+            }
+            default -> sendAdminUsage(player);
+        }
+    }
+
+    private void submitJob(Player player, BulkJobType type, List<String> jobArgs) {
+        ConfigManager config = plugin.getConfigManager();
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+        BulkJob job = plugin.getBulkJobRunner().submit(type, jobArgs, player);
+        if (job.getTotal() == 0) {
+            scheduler.message(player, config.message("job-no-targets", "id", job.getId()));
+            return;
+        }
+        scheduler.message(player, config.message("job-started", "id", job.getId(), "job", job.describe(),
+                "total", job.getTotal()));
+    }
+
+    private static OfflinePlayer resolvePlayer(String nameOrUuid) {
+        try {
+            return Bukkit.getOfflinePlayer(UUID.fromString(nameOrUuid));
+        } catch (IllegalArgumentException e) {
+            return Bukkit.getOfflinePlayerIfCached(nameOrUuid);
+        }
+    }
+
+    private void sendAdminUsage(Player player) {
+        plugin.getPluginScheduler().message(player, plugin.getConfigManager().message("usage-bulk"));
+    }
+
+    private void handleRevenue(Player player, String[] args) {
+        ConfigManager config = plugin.getConfigManager();
+
+        // /mapmarker revenue [期間]
+        if (!player.hasPermission(ADMIN_PERMISSION)) {
+            player.sendMessage(config.message("no-permission"));
+            return;
+        }
+
+        String period = args.length > 1 ? args[1].toLowerCase() : "7d";
+        Matcher matcher = PERIOD_PATTERN.matcher(period);
+        if (!matcher.matches() || Integer.parseInt(matcher.group(1)) <= 0) {
+            player.sendMessage(config.message("revenue-invalid-period",
+                    "max-hours", RevenueAggregator.HOURLY_RETENTION, "max-days", RevenueAggregator.DAILY_RETENTION));
+            return;
+        }
+
+        int amount = Integer.parseInt(matcher.group(1));
+        boolean hours = matcher.group(2).equals("h");
+        int limit = hours ? RevenueAggregator.HOURLY_RETENTION : RevenueAggregator.DAILY_RETENTION;
+        if (amount > limit) {
+            player.sendMessage(config.message("revenue-period-too-long", "limit", limit + (hours ? "h" : "d")));
+            return;
+        }
+
+        RevenueAggregator.Totals totals = hours
+                ? plugin.getRevenueAggregator().getLastHours(amount)
+                : plugin.getRevenueAggregator().getLastDays(amount);
+
+        player.sendMessage(config.message(hours ? "revenue-header-hours" : "revenue-header-days", "amount", amount));
+        sendTotals(player, config, "revenue", totals);
+        player.sendMessage(config.text("revenue-net", "amount", formatAmount(totals.getNet()),
+                "currency", config.getCurrencyName()));
+    }
+
+    private void handleSpend(Player player) {
+        ConfigManager config = plugin.getConfigManager();
+
+        // /mapmarker spend
+        RevenueAggregator.Totals totals = plugin.getRevenueAggregator().getPlayerTotals(player.getUniqueId());
+
+        player.sendMessage(config.message("spend-header"));
+        sendTotals(player, config, "spend", totals);
+        player.sendMessage(config.text("spend-total", "amount", formatAmount(totals.getNet()),
+                "currency", config.getCurrencyName()));
+    }
+
+    private static void sendTotals(Player player, ConfigManager config, String report, RevenueAggregator.Totals totals) {
+        String currency = config.getCurrencyName();
+        player.sendMessage(config.text(report + "-commercial", "amount", formatAmount(totals.getCommercialFees()),
+                "currency", currency, "count", totals.getCommercialCount()));
+        player.sendMessage(config.text(report + "-ads", "amount", formatAmount(totals.getAdsFees()),
+                "currency", currency, "count", totals.getAdsCount()));
+        player.sendMessage(config.text(report + "-refunds", "amount", formatAmount(totals.getRefunds()),
+                "currency", currency, "count", totals.getRefundCount()));
+    }
+
+    private static String formatAmount(double amount) {
+        return String.format("%,.0f", amount);
+    }
+
+    private CompletableFuture<TransactionResult> refund(UUID playerUUID, double amount, String chargeId,
+            String shopName, String cause) {
+        return plugin.getEconomyPipeline().refund(playerUUID, amount, EconomyPipeline.refundKey(chargeId),
+                cause + ":" + shopName).whenComplete((result, error) -> {
+                    if (result != null && result.success()) {
+                        plugin.getAuditLog().record(AuditEventType.REFUNDED, shopName, playerUUID, null,
+                                "amount", amount, "cause", cause);
+                    }
+                });
     }
 
     private boolean canManage(Player player, MarkerData data) {
@@ -261,9 +987,9 @@ public class MapMarkerCommand implements CommandExecutor {
 
     private void sendUsage(Player player) {
         ConfigManager config = plugin.getConfigManager();
-        player.sendMessage(config.getPrefix() + "§e使用法:");
-        player.sendMessage("§7  /mapmarker commercial <店名> <説明>");
-        player.sendMessage("§7  /mapmarker ads <店名> <期間(日)> [宣伝文句]");
-        player.sendMessage("§7  /mapmarker delete <店名>");
+        player.sendMessage(config.message("usage"));
+        if (player.hasPermission(ADMIN_PERMISSION)) {
+            player.sendMessage(config.text("usage-admin"));
+        }
     }
 }
@@ -2,6 +2,8 @@ package net.inecat.dynmapads.commands;
 
 import net.inecat.dynmapads.DynmapAdsPlugin;
 import net.inecat.dynmapads.data.MarkerData;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
@@ -15,7 +17,10 @@ import java.util.stream.Collectors;
  */
 public class MapMarkerTabCompleter implements TabCompleter {
     private static final String ADMIN_PERMISSION = "mapmarker.admin";
-    private static final List<String> SUBCOMMANDS = Arrays.asList("commercial", "ads", "delete");
+    private static final List<String> SUBCOMMANDS = Arrays.asList("commercial", "ads", "bid", "delete",
+            "spend", "list", "history");
+    private static final List<String> ADMIN_OPERATIONS = Arrays.asList("purge-owner", "expire-all",
+            "approve-all-pending", "relocate-world", "jobs", "cancel");
 
     private final DynmapAdsPlugin plugin;
 
@@ -31,7 +36,15 @@ public class MapMarkerTabCompleter implements TabCompleter {
 
         if (args.length == 1) {
             // Subcommand completion
-            return SUBCOMMANDS.stream()
+            List<String> subcommands = new ArrayList<>(SUBCOMMANDS);
+            if (player.hasPermission(ADMIN_PERMISSION)) {
+                subcommands.add("tp");
+                subcommands.add("revenue");
+                subcommands.add("stats");
+                subcommands.add("admin");
+                subcommands.add("reload");
+            }
+            return subcommands.stream()
                     .filter(sub -> sub.toLowerCase().startsWith(args[0].toLowerCase()))
                     .collect(Collectors.toList());
         }
@@ -58,17 +71,86 @@ public class MapMarkerTabCompleter implements TabCompleter {
                     return Collections.singletonList("[宣伝文句]");
                 }
             }
-            case "delete" -> {
+            case "bid" -> {
+                if (args.length == 2) {
+                    return getManageableShopNames(player, args[1]);
+                } else if (args.length == 3) {
+                    return Arrays.asList("1", "3", "7", "14", "30");
+                } else if (args.length == 4) {
+                    return Collections.singletonList("<1日あたりの入札額>");
+                } else if (args.length == 5) {
+                    return Collections.singletonList("[宣伝文句]");
+                }
+            }
+            case "delete", "history" -> {
                 if (args.length == 2) {
                     // Shop name - show owned shops (or all for admins)
                     return getManageableShopNames(player, args[1]);
                 }
             }
+            case "list" -> {
+                if (args.length == 2) {
+                    List<String> scopes = new ArrayList<>(Arrays.asList("mine", "all", "ads"));
+                    if (player.hasPermission(ADMIN_PERMISSION)) {
+                        scopes.add("pending");
+                    }
+                    return scopes.stream()
+                            .filter(scope -> scope.startsWith(args[1].toLowerCase()))
+                            .collect(Collectors.toList());
+                }
+            }
+            case "tp" -> {
+                if (args.length == 2 && player.hasPermission(ADMIN_PERMISSION)) {
+                    return plugin.getMarkerStorage().getAllShopNames().stream()
+                            .filter(name -> name.toLowerCase().startsWith(args[1].toLowerCase()))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+            }
+            case "stats" -> {
+                if (args.length == 2 && player.hasPermission(ADMIN_PERMISSION)) {
+                    return Collections.singletonList("reset");
+                }
+            }
+            case "admin" -> {
+                if (player.hasPermission(ADMIN_PERMISSION)) {
+                    return completeAdmin(args);
+                }
+            }
+            case "revenue" -> {
+                if (args.length == 2 && player.hasPermission(ADMIN_PERMISSION)) {
+                    return Arrays.asList("24h", "7d", "30d", "365d");
+                }
+            }
         }
 
         return Collections.emptyList();
     }
 
+    private List<String> completeAdmin(String[] args) {
+        if (args.length == 2) {
+            return ADMIN_OPERATIONS.stream()
+                    .filter(op -> op.startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
+
+        String operation = args[1].toLowerCase();
+        String prefix = args[args.length - 1].toLowerCase();
+        List<String> candidates = Collections.emptyList();
+        if (operation.equals("purge-owner") && args.length == 3) {
+            candidates = Bukkit.getOnlinePlayers().stream().map(Player::getName).collect(Collectors.toList());
+        } else if (operation.equals("relocate-world") && (args.length == 3 || args.length == 4)) {
+            candidates = Bukkit.getWorlds().stream().map(World::getName).collect(Collectors.toList());
+        } else if (operation.equals("cancel") && args.length == 3) {
+            candidates = plugin.getBulkJobRunner().getJobs().stream()
+                    .map(job -> String.valueOf(job.getId()))
+                    .collect(Collectors.toList());
+        }
+        return candidates.stream()
+                .filter(candidate -> candidate.toLowerCase().startsWith(prefix))
+                .collect(Collectors.toList());
+    }
+
     private List<String> getManageableShopNames(Player player, String prefix) {
         Set<String> shopNames;
 
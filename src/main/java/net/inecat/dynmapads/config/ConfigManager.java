@@ -1,92 +1,214 @@
 package net.inecat.dynmapads.config;
 
 import net.inecat.dynmapads.DynmapAdsPlugin;
-import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * Manages plugin configuration.
+ * Immutable snapshot of config.yml and the messages of the configured locale.
+ * A reload builds a new instance and the plugin swaps it in, so code that
+ * keeps one instance for the length of an operation sees consistent values.
  */
-public class ConfigManager {
-    private final DynmapAdsPlugin plugin;
-    private FileConfiguration config;
-
+public final class ConfigManager {
     // Discord settings
-    private String approvalChannelId;
-    private String adsChannelId;
+    private final String approvalChannelId;
+    private final String adsChannelId;
+    private final boolean buttonApprovalEnabled;
+    private final int outboxRetryBaseSeconds;
+    private final boolean dashboardEnabled;
+    private final int dashboardSlaHours;
+    private final int dashboardMinEditIntervalSeconds;
+    private final int dashboardDebounceSeconds;
+    private final boolean adsDigestEnabled;
+    private final int adsDigestWindowHours;
+    private final int adsDigestExpiringWithinHours;
+    private final int adsDigestEntriesPerPage;
+    private final int outboxRetryMaxSeconds;
+    private final int outboxMaxAttempts;
 
     // Economy settings
-    private int commercialFee;
-    private int adsFeePerDay;
-    private String currencyName;
+    private final int commercialFee;
+    private final int adsFeePerDay;
+    private final String currencyName;
+    private final int ledgerRetentionDays;
+
+    // Rate limit settings
+    private final boolean rateLimitEnabled;
+    private final int rateLimitPlayerBurst;
+    private final int rateLimitPlayerPerMinute;
+    private final int rateLimitGlobalBurst;
+    private final int rateLimitGlobalPerMinute;
+    private final int bulkTickBudgetMillis;
+    private final int bulkProgressIntervalSeconds;
+    private final int listPageSize;
+    private final int ownerNameCacheSize;
+    private final int ioTaskTimeoutSeconds;
+    private final int ioShutdownTimeoutSeconds;
+    private final int shutdownDrainTimeoutSeconds;
+
+    // Metrics settings
+    private final boolean metricsHttpEnabled;
+    private final String metricsHttpBind;
+    private final int metricsHttpPort;
+    private final String metricsTextfile;
+    private final int metricsTextfileIntervalSeconds;
+    private final boolean watchdogEnabled;
+    private final int watchdogTickBudgetMillis;
+    private final int watchdogWarnIntervalSeconds;
+    private final boolean auditEnabled;
+    private final int auditBufferSize;
+    private final int auditMaxFileSizeMb;
+    private final int auditRotateHours;
+    private final int auditMaxFiles;
+    private final int auditHistoryPerShop;
+    private final int auditHistoryShops;
+    private final boolean sharedStorage;
+    private final String sharedStorageUrl;
+    private final String sharedStorageUser;
+    private final String sharedStoragePassword;
+    private final String sharedStorageTablePrefix;
+    private final int sharedStoragePollIntervalTicks;
+    private final int sharedStorageChangeRetention;
+    private final int sharedStorageLeaseSeconds;
+    private final int adsSlotsPerWorld;
+    private final Map<String, Integer> adsSlotsByWorld;
+    private final int adsSlotRegionSize;
+    private final boolean adsAuctionAscending;
+    private final int adsAuctionMinIncrement;
+    private final int adsAuctionSettleIntervalSeconds;
+    private final int adsAuctionBidTimeoutHours;
 
     // Dynmap settings
-    private String commercialMarkerSet;
-    private String adsMarkerSet;
+    private final String commercialMarkerSet;
+    private final String adsMarkerSet;
 
     // Messages
-    private String prefix;
-    private String noPermission;
-    private String playerOnly;
-    private String shopExists;
-    private String shopNotFound;
-    private String notOwner;
-    private String insufficientFunds;
-    private String commercialPending;
-    private String commercialApproved;
-    private String adsStarted;
-    private String adsExpired;
-    private String shopDeleted;
-    private String usageCommercial;
-    private String usageAds;
-    private String usageDelete;
-
-    public ConfigManager(DynmapAdsPlugin plugin) {
-        this.plugin = plugin;
-    }
-
-    public void load() {
+    private final String locale;
+    private final MessageBundle messages;
+    private final String prefix;
+
+    /**
+     * Read config.yml and the message bundle from disk.
+     *
+     * @throws InvalidConfigurationException if config.yml is not valid YAML
+     */
+    public static ConfigManager load(DynmapAdsPlugin plugin) throws IOException, InvalidConfigurationException {
         plugin.saveDefaultConfig();
-        plugin.reloadConfig();
-        config = plugin.getConfig();
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(new File(plugin.getDataFolder(), "config.yml"));
+        return new ConfigManager(plugin, config);
+    }
 
+    private ConfigManager(DynmapAdsPlugin plugin, FileConfiguration config) {
         // Discord
         approvalChannelId = config.getString("discord.approval-channel-id", "");
         adsChannelId = config.getString("discord.ads-channel-id", "786582642455478273");
+        buttonApprovalEnabled = !"reactions".equalsIgnoreCase(config.getString("discord.approval-mode", "buttons"));
+        outboxRetryBaseSeconds = Math.max(1, config.getInt("discord.outbox.retry-base-seconds", 5));
+        outboxRetryMaxSeconds = Math.max(outboxRetryBaseSeconds,
+                config.getInt("discord.outbox.retry-max-seconds", 300));
+        outboxMaxAttempts = Math.max(0, config.getInt("discord.outbox.max-attempts", 100));
+        dashboardEnabled = config.getBoolean("discord.dashboard.enabled", true);
+        dashboardSlaHours = Math.max(1, config.getInt("discord.dashboard.sla-hours", 24));
+        dashboardMinEditIntervalSeconds = Math.max(1, config.getInt("discord.dashboard.min-edit-interval-seconds", 10));
+        dashboardDebounceSeconds = Math.max(0, config.getInt("discord.dashboard.debounce-seconds", 2));
+        adsDigestEnabled = config.getBoolean("discord.ads-digest.enabled", false);
+        adsDigestWindowHours = Math.max(1, config.getInt("discord.ads-digest.window-hours", 24));
+        adsDigestExpiringWithinHours = Math.max(0, config.getInt("discord.ads-digest.expiring-within-hours", 24));
+        adsDigestEntriesPerPage = Math.max(1, config.getInt("discord.ads-digest.entries-per-page", 15));
 
         // Economy
         commercialFee = config.getInt("economy.commercial-fee", 10000);
         adsFeePerDay = config.getInt("economy.ads-fee-per-day", 30000);
         currencyName = config.getString("economy.currency-name", "ine");
+        ledgerRetentionDays = Math.max(1, config.getInt("economy.ledger-retention-days", 30));
+
+        // Rate limit
+        rateLimitEnabled = config.getBoolean("rate-limit.enabled", true);
+        rateLimitPlayerBurst = Math.max(1, config.getInt("rate-limit.player-burst", 5));
+        rateLimitPlayerPerMinute = Math.max(1, config.getInt("rate-limit.player-per-minute", 10));
+        rateLimitGlobalBurst = Math.max(1, config.getInt("rate-limit.global-burst", 40));
+        rateLimitGlobalPerMinute = Math.max(1, config.getInt("rate-limit.global-per-minute", 120));
+
+        // Bulk admin jobs
+        bulkTickBudgetMillis = Math.max(1, config.getInt("bulk-jobs.tick-budget-ms", 5));
+        bulkProgressIntervalSeconds = Math.max(1, config.getInt("bulk-jobs.progress-interval-seconds", 10));
+
+        // Listing
+        listPageSize = Math.max(1, Math.min(50, config.getInt("list.page-size", 10)));
+        ownerNameCacheSize = Math.max(1, config.getInt("owner-names.cache-size", 1000));
+
+        // Background I/O
+        ioTaskTimeoutSeconds = Math.max(1, config.getInt("io.task-timeout-seconds", 30));
+        ioShutdownTimeoutSeconds = Math.max(1, config.getInt("io.shutdown-timeout-seconds", 10));
+        shutdownDrainTimeoutSeconds = Math.max(1, config.getInt("shutdown.drain-timeout-seconds", 15));
+
+        // Metrics
+        metricsHttpEnabled = config.getBoolean("metrics.http.enabled", false);
+        metricsHttpBind = config.getString("metrics.http.bind", "127.0.0.1");
+        metricsHttpPort = config.getInt("metrics.http.port", 9464);
+        metricsTextfile = config.getString("metrics.textfile.path", "");
+        metricsTextfileIntervalSeconds = Math.max(1, config.getInt("metrics.textfile.interval-seconds", 15));
+        watchdogEnabled = config.getBoolean("watchdog.enabled", true);
+        watchdogTickBudgetMillis = Math.max(1, config.getInt("watchdog.tick-budget-ms", 10));
+        watchdogWarnIntervalSeconds = Math.max(1, config.getInt("watchdog.warn-interval-seconds", 60));
+        auditEnabled = config.getBoolean("audit.enabled", true);
+        auditBufferSize = Math.max(16, config.getInt("audit.buffer-size", 8192));
+        auditMaxFileSizeMb = Math.max(1, config.getInt("audit.max-file-size-mb", 10));
+        auditRotateHours = Math.max(1, config.getInt("audit.rotate-hours", 24));
+        auditMaxFiles = Math.max(1, config.getInt("audit.max-files", 30));
+        auditHistoryPerShop = Math.max(1, config.getInt("audit.history-per-shop", 20));
+        auditHistoryShops = Math.max(1, config.getInt("audit.history-shops", 5000));
+
+        // Storage
+        sharedStorage = "shared".equalsIgnoreCase(config.getString("storage.type", "file"));
+        sharedStorageUrl = config.getString("storage.shared.url", "");
+        sharedStorageUser = config.getString("storage.shared.user", "");
+        sharedStoragePassword = config.getString("storage.shared.password", "");
+        String tablePrefix = config.getString("storage.shared.table-prefix", "dynmapads_");
+        sharedStorageTablePrefix = tablePrefix.matches("[A-Za-z0-9_]*") ? tablePrefix : "dynmapads_";
+        sharedStoragePollIntervalTicks = Math.max(1, config.getInt("storage.shared.poll-interval-ticks", 40));
+        sharedStorageChangeRetention = Math.max(100, config.getInt("storage.shared.change-retention", 10000));
+        sharedStorageLeaseSeconds = Math.max(3, config.getInt("storage.shared.lease-seconds", 15));
+
+        // Ad slots and auction
+        int slotsPerWorld = Math.max(0, config.getInt("ads.slots.per-world", 0));
+        Map<String, Integer> slotsByWorld = new HashMap<>();
+        ConfigurationSection worldsSection = config.getConfigurationSection("ads.slots.worlds");
+        if (worldsSection != null) {
+            for (String world : worldsSection.getKeys(false)) {
+                slotsByWorld.put(world, Math.max(0, worldsSection.getInt(world)));
+            }
+        }
+        if (sharedStorage && (slotsPerWorld > 0 || slotsByWorld.values().stream().anyMatch(slots -> slots > 0))) {
+            // Bids and escrow are kept per server, so servers sharing the markers cannot agree on the slots
+            plugin.getLogger().warning("ads.slots is ignored with shared storage; ads are not limited.");
+            slotsByWorld.clear();
+            slotsPerWorld = 0;
+        }
+        adsSlotsPerWorld = slotsPerWorld;
+        adsSlotsByWorld = Map.copyOf(slotsByWorld);
+        adsSlotRegionSize = Math.max(0, config.getInt("ads.slots.region-size", 0));
+        adsAuctionAscending = "ascending".equalsIgnoreCase(config.getString("ads.auction.type", "sealed"));
+        adsAuctionMinIncrement = Math.max(1, config.getInt("ads.auction.min-increment", 1000));
+        adsAuctionSettleIntervalSeconds = Math.max(10, config.getInt("ads.auction.settle-interval-seconds", 300));
+        adsAuctionBidTimeoutHours = Math.max(1, config.getInt("ads.auction.bid-timeout-hours", 24));
 
         // Dynmap
         commercialMarkerSet = config.getString("dynmap.commercial-marker-set", "commercial");
         adsMarkerSet = config.getString("dynmap.ads-marker-set", "ads");
 
         // Messages
-        prefix = colorize(config.getString("messages.prefix", "&8[&6DynmapAds&8] &r"));
-        noPermission = colorize(config.getString("messages.no-permission", "&c権限がありません。"));
-        playerOnly = colorize(config.getString("messages.player-only", "&cこのコマンドはプレイヤーのみ実行可能です。"));
-        shopExists = colorize(config.getString("messages.shop-exists", "&cその店名は既に使用されています: &e%shop%"));
-        shopNotFound = colorize(config.getString("messages.shop-not-found", "&c店舗が見つかりません: &e%shop%"));
-        notOwner = colorize(config.getString("messages.not-owner", "&cあなたはこの店舗のオーナーではありません。"));
-        insufficientFunds = colorize(
-                config.getString("messages.insufficient-funds", "&c残高が不足しています。必要額: &e%amount% %currency%"));
-        commercialPending = colorize(
-                config.getString("messages.commercial-pending", "&a商業施設「&e%shop%&a」の申請を送信しました。Discord承認をお待ちください。"));
-        commercialApproved = colorize(
-                config.getString("messages.commercial-approved", "&a商業施設「&e%shop%&a」が承認され、Dynmapに登録されました！"));
-        adsStarted = colorize(config.getString("messages.ads-started", "&a広告「&e%shop%&a」を &e%days%日間 &a掲載開始しました！"));
-        adsExpired = colorize(config.getString("messages.ads-expired", "&e広告「&6%shop%&e」の掲載期間が終了しました。"));
-        shopDeleted = colorize(config.getString("messages.shop-deleted", "&a店舗「&e%shop%&a」を削除しました。"));
-        usageCommercial = colorize(
-                config.getString("messages.usage-commercial", "&c使用法: /mapmarker commercial <店名> <説明>"));
-        usageAds = colorize(config.getString("messages.usage-ads", "&c使用法: /mapmarker ads <店名> <期間(日)> [宣伝文句]"));
-        usageDelete = colorize(config.getString("messages.usage-delete", "&c使用法: /mapmarker delete <店名>"));
-    }
-
-    private String colorize(String text) {
-        return ChatColor.translateAlternateColorCodes('&', text);
+        locale = config.getString("locale", MessageBundle.DEFAULT_LOCALE);
+        messages = MessageBundle.load(plugin, locale, config.getConfigurationSection("messages"));
+        prefix = messages.get("prefix").render();
     }
 
     // Getters
@@ -98,6 +220,54 @@ public class ConfigManager {
         return adsChannelId;
     }
 
+    public boolean isButtonApprovalEnabled() {
+        return buttonApprovalEnabled;
+    }
+
+    public int getOutboxRetryBaseSeconds() {
+        return outboxRetryBaseSeconds;
+    }
+
+    public int getOutboxRetryMaxSeconds() {
+        return outboxRetryMaxSeconds;
+    }
+
+    public int getOutboxMaxAttempts() {
+        return outboxMaxAttempts;
+    }
+
+    public boolean isDashboardEnabled() {
+        return dashboardEnabled;
+    }
+
+    public int getDashboardSlaHours() {
+        return dashboardSlaHours;
+    }
+
+    public int getDashboardMinEditIntervalSeconds() {
+        return dashboardMinEditIntervalSeconds;
+    }
+
+    public int getDashboardDebounceSeconds() {
+        return dashboardDebounceSeconds;
+    }
+
+    public boolean isAdsDigestEnabled() {
+        return adsDigestEnabled;
+    }
+
+    public int getAdsDigestWindowHours() {
+        return adsDigestWindowHours;
+    }
+
+    public int getAdsDigestExpiringWithinHours() {
+        return adsDigestExpiringWithinHours;
+    }
+
+    public int getAdsDigestEntriesPerPage() {
+        return adsDigestEntriesPerPage;
+    }
+
     public int getCommercialFee() {
         return commercialFee;
     }
@@ -110,80 +280,208 @@ public class ConfigManager {
         return currencyName;
     }
 
-    public String getCommercialMarkerSet() {
-        return commercialMarkerSet;
+    public int getLedgerRetentionDays() {
+        return ledgerRetentionDays;
     }
 
-    public String getAdsMarkerSet() {
-        return adsMarkerSet;
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
     }
 
-    public String getPrefix() {
-        return prefix;
+    public int getRateLimitPlayerBurst() {
+        return rateLimitPlayerBurst;
     }
 
-    public String getNoPermission() {
-        return noPermission;
+    public int getRateLimitPlayerPerMinute() {
+        return rateLimitPlayerPerMinute;
     }
 
-    public String getPlayerOnly() {
-        return playerOnly;
+    public int getRateLimitGlobalBurst() {
+        return rateLimitGlobalBurst;
     }
 
-    public String getShopExists() {
-        return shopExists;
+    public int getRateLimitGlobalPerMinute() {
+        return rateLimitGlobalPerMinute;
     }
 
-    public String getShopNotFound() {
-        return shopNotFound;
+    public int getBulkTickBudgetMillis() {
+        return bulkTickBudgetMillis;
     }
 
-    public String getNotOwner() {
-        return notOwner;
+    public int getBulkProgressIntervalSeconds() {
+        return bulkProgressIntervalSeconds;
     }
 
-    public String getInsufficientFunds() {
-        return insufficientFunds;
+    public int getListPageSize() {
+        return listPageSize;
     }
 
-    public String getCommercialPending() {
-        return commercialPending;
+    public int getOwnerNameCacheSize() {
+        return ownerNameCacheSize;
     }
 
-    public String getCommercialApproved() {
-        return commercialApproved;
+    public int getIoTaskTimeoutSeconds() {
+        return ioTaskTimeoutSeconds;
     }
 
-    public String getAdsStarted() {
-        return adsStarted;
+    public int getIoShutdownTimeoutSeconds() {
+        return ioShutdownTimeoutSeconds;
     }
 
-    public String getAdsExpired() {
-        return adsExpired;
+    public int getShutdownDrainTimeoutSeconds() {
+        return shutdownDrainTimeoutSeconds;
     }
 
-    public String getShopDeleted() {
-        return shopDeleted;
+    public boolean isMetricsHttpEnabled() {
+        return metricsHttpEnabled;
     }
 
-    public String getUsageCommercial() {
-        return usageCommercial;
+    public String getMetricsHttpBind() {
+        return metricsHttpBind;
     }
 
-    public String getUsageAds() {
-        return usageAds;
+    public int getMetricsHttpPort() {
+        return metricsHttpPort;
     }
 
-    public String getUsageDelete() {
-        return usageDelete;
+    public String getMetricsTextfile() {
+        return metricsTextfile;
     }
 
-    // Message formatting helpers
-    public String formatMessage(String message, String... replacements) {
-        String result = prefix + message;
-        for (int i = 0; i < replacements.length - 1; i += 2) {
-            result = result.replace(replacements[i], replacements[i + 1]);
-        }
-        return result;
+    public int getMetricsTextfileIntervalSeconds() {
+        return metricsTextfileIntervalSeconds;
+    }
+
+    public boolean isWatchdogEnabled() {
+        return watchdogEnabled;
+    }
+
+    public int getWatchdogTickBudgetMillis() {
+        return watchdogTickBudgetMillis;
+    }
+
+    public int getWatchdogWarnIntervalSeconds() {
+        return watchdogWarnIntervalSeconds;
+    }
+
+    public boolean isAuditEnabled() {
+        return auditEnabled;
+    }
+
+    public int getAuditBufferSize() {
+        return auditBufferSize;
+    }
+
+    public int getAuditMaxFileSizeMb() {
+        return auditMaxFileSizeMb;
+    }
+
+    public int getAuditRotateHours() {
+        return auditRotateHours;
+    }
+
+    public int getAuditMaxFiles() {
+        return auditMaxFiles;
+    }
+
+    public int getAuditHistoryPerShop() {
+        return auditHistoryPerShop;
+    }
+
+    public int getAuditHistoryShops() {
+        return auditHistoryShops;
+    }
+
+    public boolean isSharedStorage() {
+        return sharedStorage;
+    }
+
+    public String getSharedStorageUrl() {
+        return sharedStorageUrl;
+    }
+
+    public String getSharedStorageUser() {
+        return sharedStorageUser;
+    }
+
+    public String getSharedStoragePassword() {
+        return sharedStoragePassword;
+    }
+
+    public String getSharedStorageTablePrefix() {
+        return sharedStorageTablePrefix;
+    }
+
+    public int getSharedStoragePollIntervalTicks() {
+        return sharedStoragePollIntervalTicks;
+    }
+
+    public int getSharedStorageChangeRetention() {
+        return sharedStorageChangeRetention;
+    }
+
+    public int getSharedStorageLeaseSeconds() {
+        return sharedStorageLeaseSeconds;
+    }
+
+    /**
+     * Concurrent ads allowed per slot group in a world, or 0 if unlimited.
+     */
+    public int getAdsSlots(String world) {
+        return adsSlotsByWorld.getOrDefault(world, adsSlotsPerWorld);
+    }
+
+    public int getAdsSlotRegionSize() {
+        return adsSlotRegionSize;
+    }
+
+    public boolean isAdsAuctionAscending() {
+        return adsAuctionAscending;
+    }
+
+    public int getAdsAuctionMinIncrement() {
+        return adsAuctionMinIncrement;
+    }
+
+    public int getAdsAuctionSettleIntervalSeconds() {
+        return adsAuctionSettleIntervalSeconds;
+    }
+
+    public int getAdsAuctionBidTimeoutHours() {
+        return adsAuctionBidTimeoutHours;
+    }
+
+    public String getCommercialMarkerSet() {
+        return commercialMarkerSet;
+    }
+
+    public String getAdsMarkerSet() {
+        return adsMarkerSet;
+    }
+
+    public String getLocale() {
+        return locale;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Render a message with the prefix.
+     *
+     * @param placeholders placeholder names and values in pairs, such as "shop", name
+     */
+    public String message(String key, Object... placeholders) {
+        return prefix + messages.get(key).render(placeholders);
+    }
+
+    /**
+     * Render a message without the prefix, for follow-up lines.
+     *
+     * @param placeholders placeholder names and values in pairs, such as "shop", name
+     */
+    public String text(String key, Object... placeholders) {
+        return messages.get(key).render(placeholders);
     }
 }
@@ -0,0 +1,89 @@
+package net.inecat.dynmapads.config;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled messages of one locale. The bundle shipped in the jar provides
+ * every key, the copy in the data folder (lang/&lt;locale&gt;.yml) may change
+ * them, and the messages section of config.yml overrides both.
+ */
+public final class MessageBundle {
+    public static final String DEFAULT_LOCALE = "ja";
+
+    private final Map<String, MessageTemplate> templates;
+
+    private MessageBundle(Map<String, MessageTemplate> templates) {
+        this.templates = templates;
+    }
+
+    /**
+     * Load and compile the messages of a locale.
+     */
+    public static MessageBundle load(DynmapAdsPlugin plugin, String locale, ConfigurationSection overrides) {
+        String path = "lang/" + locale + ".yml";
+        if (!isBundled(plugin, path)) {
+            plugin.getLogger().warning("Unknown locale '" + locale + "', using " + DEFAULT_LOCALE);
+            path = "lang/" + DEFAULT_LOCALE + ".yml";
+        }
+
+        Map<String, MessageTemplate> templates = new HashMap<>();
+        try (InputStream bundled = plugin.getResource(path)) {
+            if (bundled != null) {
+                addAll(templates, YamlConfiguration.loadConfiguration(
+                        new InputStreamReader(bundled, StandardCharsets.UTF_8)));
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to read bundled messages " + path + ": " + e.getMessage());
+        }
+
+        File file = new File(plugin.getDataFolder(), path);
+        if (!file.exists()) {
+            plugin.saveResource(path, false);
+        }
+        addAll(templates, YamlConfiguration.loadConfiguration(file));
+
+        if (overrides != null) {
+            addAll(templates, overrides);
+        }
+        return new MessageBundle(Map.copyOf(templates));
+    }
+
+    private static boolean isBundled(DynmapAdsPlugin plugin, String path) {
+        try (InputStream bundled = plugin.getResource(path)) {
+            return bundled != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void addAll(Map<String, MessageTemplate> templates, ConfigurationSection section) {
+        for (String key : section.getKeys(false)) {
+            // A list is a message of several lines
+            String source = section.isList(key)
+                    ? String.join("\n", section.getStringList(key))
+                    : section.getString(key);
+            if (source != null) {
+                templates.put(key, MessageTemplate.compile(ChatColor.translateAlternateColorCodes('&', source)));
+            }
+        }
+    }
+
+    /**
+     * Get the template of a message. Unknown keys render as the key itself.
+     */
+    public MessageTemplate get(String key) {
+        MessageTemplate template = templates.get(key);
+        return template != null ? template : MessageTemplate.compile(key);
+    }
+}
@@ -0,0 +1,100 @@
+package net.inecat.dynmapads.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message compiled once into literal text and %name% placeholders, so
+ * rendering is a single pass over the segments instead of one replace per
+ * placeholder. A % that does not start a placeholder is kept as is.
+ */
+public final class MessageTemplate {
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, String[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compile a message. Placeholder names are letters, digits and hyphens.
+     */
+    public static MessageTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            int end = c == '%' ? placeholderEnd(source, i + 1) : -1;
+            if (end < 0) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            placeholders.add(source.substring(i + 1, end));
+            i = end + 1;
+        }
+        literals.add(literal.toString());
+
+        return new MessageTemplate(literals.toArray(new String[0]), placeholders.toArray(new String[0]));
+    }
+
+    private static int placeholderEnd(String source, int start) {
+        int i = start;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '%') {
+                return i > start ? i : -1;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '-') {
+                return -1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Render the message.
+     *
+     * @param values placeholder names and values in pairs, such as "shop", name;
+     *               placeholders without a value are left in the output
+     */
+    public String render(Object... values) {
+        if (placeholders.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder result = new StringBuilder(literalLength + placeholders.length * 16);
+        for (int i = 0; i < placeholders.length; i++) {
+            result.append(literals[i]);
+            Object value = lookup(placeholders[i], values);
+            if (value != null) {
+                result.append(value);
+            } else {
+                result.append('%').append(placeholders[i]).append('%');
+            }
+        }
+        return result.append(literals[placeholders.length]).toString();
+    }
+
+    private static Object lookup(String name, Object[] values) {
+        for (int i = 0; i < values.length - 1; i += 2) {
+            if (name.equals(values[i])) {
+                return values[i + 1];
+            }
+        }
+        return null;
+    }
+}
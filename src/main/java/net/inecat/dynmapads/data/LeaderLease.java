@@ -0,0 +1,216 @@
+package net.inecat.dynmapads.data;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Elects one of the servers sharing a marker store to run the background
+ * tasks that must not run twice, such as polling Discord for approvals and
+ * expiring ads.
+ * <p>
+ * The leader holds a lease row in the shared database and bumps its renewal
+ * counter three times per lease. The other servers take the lease over once
+ * they have seen the row unchanged for a whole lease, timed by their own
+ * clock, so clocks need not agree between machines. The leader stops acting
+ * a lease after the start of its last successful renewal, which is before
+ * any other server can take over. On a clean shutdown the lease is released
+ * and taken over at the next check.
+ */
+public class LeaderLease {
+    private static final String LEASE_NAME = "background-tasks";
+
+    private final DynmapAdsPlugin plugin;
+    private final String nodeId;
+    private final String table;
+    private final long leaseNanos;
+    private final AtomicBoolean renewing = new AtomicBoolean();
+    private Connection connection;
+    private volatile boolean leader;
+    private volatile long leaderUntil;
+    private String seenHolder;
+    private long seenRenewals = -1;
+    private long seenSince;
+    private PluginScheduler.Task renewer;
+
+    public LeaderLease(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.nodeId = UUID.randomUUID().toString();
+        this.table = plugin.getConfigManager().getSharedStorageTablePrefix() + "leases";
+        this.leaseNanos = TimeUnit.SECONDS.toNanos(plugin.getConfigManager().getSharedStorageLeaseSeconds());
+    }
+
+    /**
+     * Whether this server holds the lease and may run the singleton tasks.
+     */
+    public boolean isLeader() {
+        return leader && System.nanoTime() - leaderUntil < 0;
+    }
+
+    /**
+     * Create the lease table if it is missing and start contending.
+     */
+    public void start() {
+        try {
+            try (Statement statement = connection().createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " ("
+                        + "name VARCHAR(64) NOT NULL PRIMARY KEY, "
+                        + "holder VARCHAR(36) NOT NULL, "
+                        + "renewals BIGINT NOT NULL, "
+                        + "term BIGINT NOT NULL)");
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("[Leader] Failed to create the lease table: " + e.getMessage());
+        }
+        long intervalTicks = Math.max(1L, plugin.getConfigManager().getSharedStorageLeaseSeconds() * 20L / 3);
+        renewer = plugin.getPluginScheduler().runAsyncTimer(() -> {
+            // A renewal stuck on the database must not pile up more of them
+            if (renewing.compareAndSet(false, true)) {
+                plugin.getIoExecutor().run("leader-lease", this::renew)
+                        .whenComplete((ignored, error) -> renewing.set(false));
+            }
+        }, 1L, intervalTicks);
+    }
+
+    /**
+     * Stop contending and hand the lease over if this server holds it.
+     */
+    public synchronized void stop() {
+        if (renewer != null) {
+            renewer.cancel();
+            renewer = null;
+        }
+        if (leader) {
+            leader = false;
+            try (PreparedStatement statement = connection().prepareStatement("UPDATE " + table
+                    + " SET holder = '', renewals = renewals + 1 WHERE name = ? AND holder = ?")) {
+                statement.setString(1, LEASE_NAME);
+                statement.setString(2, nodeId);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                plugin.getLogger().warning("[Leader] Failed to release the lease: " + e.getMessage());
+            }
+        }
+        disconnect();
+    }
+
+    private synchronized void renew() {
+        long attempt = System.nanoTime();
+        try {
+            if (leader) {
+                if (extend()) {
+                    leaderUntil = attempt + leaseNanos;
+                } else {
+                    leader = false;
+                    plugin.getLogger().warning("[Leader] Another server took over the lease.");
+                }
+                return;
+            }
+            contend(attempt);
+        } catch (SQLException e) {
+            // A leader that cannot renew keeps acting only until its lease runs out
+            plugin.getLogger().warning("[Leader] Failed to renew the lease: " + e.getMessage());
+            disconnect();
+        }
+    }
+
+    private boolean extend() throws SQLException {
+        try (PreparedStatement statement = connection().prepareStatement("UPDATE " + table
+                + " SET renewals = renewals + 1 WHERE name = ? AND holder = ?")) {
+            statement.setString(1, LEASE_NAME);
+            statement.setString(2, nodeId);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    private void contend(long attempt) throws SQLException {
+        String holder;
+        long renewals;
+        long term;
+        try (PreparedStatement statement = connection().prepareStatement("SELECT holder, renewals, term FROM "
+                + table + " WHERE name = ?")) {
+            statement.setString(1, LEASE_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    claimNew(attempt);
+                    return;
+                }
+                holder = rs.getString("holder");
+                renewals = rs.getLong("renewals");
+                term = rs.getLong("term");
+            }
+        }
+
+        if (!holder.equals(seenHolder) || renewals != seenRenewals) {
+            seenHolder = holder;
+            seenRenewals = renewals;
+            seenSince = attempt;
+            if (!holder.isEmpty()) {
+                return;
+            }
+        } else if (attempt - seenSince < leaseNanos) {
+            return;
+        }
+
+        // Released, or not renewed for a whole lease
+        try (PreparedStatement statement = connection().prepareStatement("UPDATE " + table
+                + " SET holder = ?, renewals = 0, term = term + 1 WHERE name = ? AND holder = ? AND renewals = ?")) {
+            statement.setString(1, nodeId);
+            statement.setString(2, LEASE_NAME);
+            statement.setString(3, holder);
+            statement.setLong(4, renewals);
+            if (statement.executeUpdate() == 1) {
+                becomeLeader(attempt, term + 1);
+            }
+        }
+    }
+
+    private void claimNew(long attempt) throws SQLException {
+        try (PreparedStatement statement = connection().prepareStatement("INSERT INTO " + table
+                + " (name, holder, renewals, term) VALUES (?, ?, 0, 1)")) {
+            statement.setString(1, LEASE_NAME);
+            statement.setString(2, nodeId);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            // Another server claimed it first
+            return;
+        }
+        becomeLeader(attempt, 1);
+    }
+
+    private void becomeLeader(long attempt, long term) {
+        leaderUntil = attempt + leaseNanos;
+        leader = true;
+        seenHolder = null;
+        seenRenewals = -1;
+        plugin.getLogger().info("[Leader] This server now runs the background tasks (term " + term + ").");
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection != null && connection.isValid(5)) {
+            return connection;
+        }
+        disconnect();
+        connection = SharedMarkerStore.connect(plugin);
+        return connection;
+    }
+
+    private void disconnect() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Broken connections often fail to close too
+            }
+            connection = null;
+        }
+    }
+}
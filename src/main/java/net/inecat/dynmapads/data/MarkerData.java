@@ -18,6 +18,9 @@ public class MarkerData {
     private LocalDateTime adsEndTime;
     private String prMessage;
     private String discordMessageId;
+    private LocalDateTime createdAt;
+    private String chargeId;
+    private String ownerName;
 
     public MarkerData(String shopName, UUID ownerUUID, String world, double x, double y, double z, String description) {
         this.shopName = shopName;
@@ -31,6 +34,7 @@ public class MarkerData {
         this.adsEndTime = null;
         this.prMessage = null;
         this.discordMessageId = null;
+        this.createdAt = LocalDateTime.now();
     }
 
     // Full constructor for loading from storage
@@ -110,6 +114,61 @@ public class MarkerData {
         this.discordMessageId = discordMessageId;
     }
 
+    /**
+     * Time the application was submitted, or null for markers created before
+     * this was recorded.
+     */
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Ledger key of the commercial fee paid for this marker, or null for
+     * markers created before fees were journaled.
+     */
+    public String getChargeId() {
+        return chargeId;
+    }
+
+    public void setChargeId(String chargeId) {
+        this.chargeId = chargeId;
+    }
+
+    /**
+     * Last known name of the owner, or null for markers stored before names
+     * were kept.
+     */
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public void setOwnerName(String ownerName) {
+        this.ownerName = ownerName;
+    }
+
+    /**
+     * Copy of this marker, for handing to another thread.
+     */
+    public MarkerData copy() {
+        return withWorld(world);
+    }
+
+    /**
+     * Copy of this marker placed in another world at the same coordinates.
+     */
+    public MarkerData withWorld(String newWorld) {
+        MarkerData copy = new MarkerData(shopName, ownerUUID, newWorld, x, y, z, description, status, adsEndTime,
+                prMessage, discordMessageId);
+        copy.setCreatedAt(createdAt);
+        copy.setChargeId(chargeId);
+        copy.setOwnerName(ownerName);
+        return copy;
+    }
+
     public boolean isOwner(UUID uuid) {
         return ownerUUID.equals(uuid);
     }
@@ -0,0 +1,17 @@
+package net.inecat.dynmapads.data;
+
+/**
+ * Sets of markers that can be listed page by page.
+ */
+public enum MarkerFilter {
+    /** Markers of one owner, in any status. */
+    OWNER,
+    /** Every marker. */
+    ALL,
+    /** Approved markers (COMMERCIAL or ADS). */
+    APPROVED,
+    /** Running advertisements. */
+    ADS,
+    /** Applications waiting for approval. */
+    PENDING
+}
@@ -0,0 +1,27 @@
+package net.inecat.dynmapads.data;
+
+import java.util.List;
+
+/**
+ * One page of a marker listing in shop name order.
+ *
+ * @param markers     markers on this page
+ * @param hasPrevious whether markers exist before the first one
+ * @param hasNext     whether markers exist after the last one
+ */
+public record MarkerPage(List<MarkerData> markers, boolean hasPrevious, boolean hasNext) {
+
+    /**
+     * Cursor for the page after this one.
+     */
+    public String nextCursor() {
+        return markers.isEmpty() ? null : markers.get(markers.size() - 1).getShopName();
+    }
+
+    /**
+     * Cursor for the page before this one.
+     */
+    public String previousCursor() {
+        return markers.isEmpty() ? null : markers.get(0).getShopName();
+    }
+}
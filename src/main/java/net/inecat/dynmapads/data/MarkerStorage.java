@@ -1,39 +1,160 @@
 package net.inecat.dynmapads.data;
 
 import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.metrics.Metric;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
- * Handles persistence of marker data to markers.yml.
+ * Handles persistence of marker data to markers.yml, or to a
+ * {@link SharedMarkerStore} when several servers share their markers.
+ * Lookups by owner and Discord message ID are served from in-memory indexes,
+ * and changes are written to disk asynchronously from copies taken on the
+ * main thread, so the writer never reads a marker while it changes. Listings are served from
+ * sorted indexes kept up to date on every change, so a page costs the same
+ * however many markers exist.
  */
-public class MarkerStorage {
+public final class MarkerStorage {
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+    /**
+     * Order of shop names in listings: case-insensitive, ties broken by the exact name.
+     */
+    public static final Comparator<String> NAME_ORDER = String.CASE_INSENSITIVE_ORDER
+            .thenComparing(Comparator.naturalOrder());
+
     private final DynmapAdsPlugin plugin;
     private final File dataFile;
     private final Map<String, MarkerData> markers;
+    private final Map<UUID, NavigableSet<String>> ownerIndex;
+    private final Map<MarkerFilter, NavigableSet<String>> sortedIndex;
+    private final Map<String, MarkerStatus> indexedStatus;
+    private final Map<String, String> messageIndex;
+    private final Map<String, String> indexedMessageIds;
+    private final AtomicBoolean saveQueued;
+    private final Queue<Runnable> afterSave;
+    private final SharedMarkerStore shared;
+    private final Set<String> dirty;
+    private final Map<String, MarkerData> fileCopies;
+    private final Object saveLock;
+    private Snapshot pendingSave;
+    private volatile Map<String, MarkerData> writing;
+    private int batchDepth;
+
+    /**
+     * Markers copied for a save: every marker when saving to file, or the
+     * changed ones, null if deleted, for the shared store. The callbacks run
+     * once the copies are written.
+     */
+    private record Snapshot(Map<String, MarkerData> markers, List<Runnable> callbacks) {
+    }
 
     public MarkerStorage(DynmapAdsPlugin plugin) {
         this.plugin = plugin;
         this.dataFile = new File(plugin.getDataFolder(), "markers.yml");
         this.markers = new ConcurrentHashMap<>();
+        this.ownerIndex = new ConcurrentHashMap<>();
+        this.sortedIndex = new EnumMap<>(MarkerFilter.class);
+        for (MarkerFilter filter : MarkerFilter.values()) {
+            if (filter != MarkerFilter.OWNER) {
+                sortedIndex.put(filter, new ConcurrentSkipListSet<>(NAME_ORDER));
+            }
+        }
+        this.indexedStatus = new ConcurrentHashMap<>();
+        this.messageIndex = new ConcurrentHashMap<>();
+        this.indexedMessageIds = new ConcurrentHashMap<>();
+        this.saveQueued = new AtomicBoolean();
+        this.afterSave = new ConcurrentLinkedQueue<>();
+        this.shared = plugin.getConfigManager().isSharedStorage() ? new SharedMarkerStore(plugin, this) : null;
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.fileCopies = new HashMap<>();
+        this.saveLock = new Object();
     }
 
     /**
-     * Load all markers from file.
+     * Load all markers from file, or from the shared store. The first time
+     * an empty shared store is used, markers.yml is copied into it.
+     *
+     * @return false if the shared store cannot be reached
      */
-    public void load() {
+    public boolean load() {
+        long start = System.nanoTime();
         markers.clear();
+        ownerIndex.clear();
+        sortedIndex.values().forEach(Set::clear);
+        indexedStatus.clear();
+        messageIndex.clear();
+        indexedMessageIds.clear();
+        fileCopies.clear();
+
+        if (shared == null) {
+            loadFile();
+            dirty.addAll(markers.keySet());
+            plugin.getMetrics().recordSince(Metric.STORAGE_LOAD, "", start);
+            plugin.getLogger().info("Loaded " + markers.size() + " markers from storage.");
+            return true;
+        }
 
+        try {
+            shared.open();
+            for (MarkerData data : shared.loadAll()) {
+                markers.put(data.getShopName(), data);
+                index(data);
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("[SharedStore] Failed to load markers: " + e.getMessage());
+            return false;
+        }
+        if (markers.isEmpty() && dataFile.exists()) {
+            loadFile();
+            dirty.addAll(markers.keySet());
+            save();
+            plugin.getLogger().info("Copied " + markers.size() + " markers from " + dataFile.getName()
+                    + " into the shared store.");
+        }
+        plugin.getMetrics().recordSince(Metric.STORAGE_LOAD, "", start);
+        plugin.getLogger().info("Loaded " + markers.size() + " markers from the shared store.");
+        return true;
+    }
+
+    /**
+     * Show the approved markers on Dynmap and start applying changes made on
+     * other servers. Does nothing unless the store is shared. Must be called
+     * on the main thread once Dynmap is set up.
+     */
+    public void startChangeFeed() {
+        if (shared == null) {
+            return;
+        }
+        for (MarkerData data : markers.values()) {
+            shared.showOnMap(data);
+        }
+        shared.startFeed();
+    }
+
+    /**
+     * Stop applying changes from other servers and disconnect from the
+     * shared store. Call after the final save.
+     */
+    public void close() {
+        if (shared != null) {
+            shared.close();
+        }
+    }
+
+    private void loadFile() {
         if (!dataFile.exists()) {
             return;
         }
@@ -70,23 +191,132 @@ public class MarkerStorage {
 
                 MarkerData data = new MarkerData(shopName, ownerUUID, world, x, y, z,
                         description, status, adsEndTime, prMessage, discordMessageId);
+
+                String createdAtStr = markerSection.getString("created-at");
+                if (createdAtStr != null && !createdAtStr.isEmpty()) {
+                    data.setCreatedAt(LocalDateTime.parse(createdAtStr, DATE_FORMAT));
+                }
+                data.setChargeId(markerSection.getString("charge-id"));
+                data.setOwnerName(markerSection.getString("owner-name"));
                 markers.put(shopName, data);
+                index(data);
             } catch (Exception e) {
                 plugin.getLogger().warning("Failed to load marker: " + shopName + " - " + e.getMessage());
             }
         }
+    }
 
-        plugin.getLogger().info("Loaded " + markers.size() + " markers from storage.");
+    /**
+     * Save all markers to file, or the changed ones to the shared store,
+     * blocking until the write completes. Must be called on the main thread.
+     */
+    public synchronized void save() {
+        Snapshot snapshot = snapshot();
+        synchronized (saveLock) {
+            snapshot = merge(pendingSave, snapshot);
+            pendingSave = null;
+        }
+        write(snapshot);
     }
 
     /**
-     * Save all markers to file.
+     * Write the snapshot queued by {@link #saveAsync()}, if it was not
+     * written yet. Runs on a worker thread.
      */
-    public void save() {
+    private synchronized void savePending() {
+        Snapshot snapshot;
+        synchronized (saveLock) {
+            snapshot = pendingSave;
+            pendingSave = null;
+        }
+        if (snapshot != null) {
+            write(snapshot);
+        }
+    }
+
+    /**
+     * Copy the markers to save and take the callbacks waiting for them.
+     * Only changed shops are copied again; in file mode the unchanged ones
+     * reuse the copies of earlier saves, which are never modified.
+     * Must be called on the main thread.
+     */
+    private Snapshot snapshot() {
+        Map<String, MarkerData> copies = new HashMap<>();
+        for (String shopName : new ArrayList<>(dirty)) {
+            dirty.remove(shopName);
+            MarkerData data = markers.get(shopName);
+            copies.put(shopName, data != null ? data.copy() : null);
+        }
+        if (shared == null) {
+            for (Map.Entry<String, MarkerData> entry : copies.entrySet()) {
+                if (entry.getValue() != null) {
+                    fileCopies.put(entry.getKey(), entry.getValue());
+                } else {
+                    fileCopies.remove(entry.getKey());
+                }
+            }
+            copies = new HashMap<>(fileCopies);
+        }
+        return new Snapshot(copies, drainAfterSave());
+    }
+
+    /**
+     * Fold a snapshot that was not written yet into a newer one.
+     */
+    private Snapshot merge(Snapshot older, Snapshot newer) {
+        if (older == null) {
+            return newer;
+        }
+        if (shared != null) {
+            // The newer snapshot only holds the shops changed since the older one
+            for (Map.Entry<String, MarkerData> entry : older.markers().entrySet()) {
+                if (!newer.markers().containsKey(entry.getKey())) {
+                    newer.markers().put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        newer.callbacks().addAll(0, older.callbacks());
+        return newer;
+    }
+
+    private void write(Snapshot snapshot) {
+        boolean written;
+        writing = snapshot.markers();
+        try {
+            written = shared != null ? writeShared(snapshot.markers()) : writeFile(snapshot.markers().values());
+        } finally {
+            writing = null;
+        }
+        if (written) {
+            snapshot.callbacks().forEach(Runnable::run);
+        } else {
+            retryCallbacks(snapshot.callbacks());
+        }
+    }
+
+    /**
+     * Hand the callbacks of a failed write to the next save, since the
+     * changes they wait for are not stored yet.
+     */
+    private void retryCallbacks(List<Runnable> callbacks) {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        synchronized (saveLock) {
+            if (pendingSave != null) {
+                pendingSave.callbacks().addAll(0, callbacks);
+                return;
+            }
+        }
+        afterSave.addAll(callbacks);
+    }
+
+    private boolean writeFile(Collection<MarkerData> copies) {
+        long start = System.nanoTime();
         YamlConfiguration config = new YamlConfiguration();
         ConfigurationSection markersSection = config.createSection("markers");
 
-        for (MarkerData data : markers.values()) {
+        for (MarkerData data : copies) {
             ConfigurationSection markerSection = markersSection.createSection(data.getShopName());
             markerSection.set("owner-uuid", data.getOwnerUUID().toString());
             markerSection.set("world", data.getWorld());
@@ -105,13 +335,242 @@ public class MarkerStorage {
             if (data.getDiscordMessageId() != null) {
                 markerSection.set("discord-message-id", data.getDiscordMessageId());
             }
+            if (data.getCreatedAt() != null) {
+                markerSection.set("created-at", data.getCreatedAt().format(DATE_FORMAT));
+            }
+            if (data.getChargeId() != null) {
+                markerSection.set("charge-id", data.getChargeId());
+            }
+            if (data.getOwnerName() != null) {
+                markerSection.set("owner-name", data.getOwnerName());
+            }
         }
 
         try {
             config.save(dataFile);
+            plugin.getMetrics().recordSince(Metric.STORAGE_SAVE, "", start);
+            plugin.getMetrics().record(Metric.STORAGE_SAVE_BYTES, dataFile.length());
+            return true;
         } catch (IOException e) {
             plugin.getLogger().severe("Failed to save markers: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean writeShared(Map<String, MarkerData> changes) {
+        if (changes.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            shared.write(changes);
+            plugin.getMetrics().recordSince(Metric.STORAGE_SAVE, "", start);
+            return true;
+        } catch (SQLException e) {
+            // Written shops are copied and written again at the same version
+            dirty.addAll(changes.keySet());
+            plugin.getLogger().severe("[SharedStore] Failed to save markers: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Whether a shop has changes that are not in the shared store yet.
+     */
+    boolean isDirty(String shopName) {
+        if (dirty.contains(shopName)) {
+            return true;
+        }
+        Map<String, MarkerData> inFlight = writing;
+        if (inFlight != null && inFlight.containsKey(shopName)) {
+            return true;
+        }
+        synchronized (saveLock) {
+            return pendingSave != null && pendingSave.markers().containsKey(shopName);
+        }
+    }
+
+    /**
+     * Replace a shop with its copy from the shared store, or remove it,
+     * without writing it back. Must be called on the main thread.
+     *
+     * @param data the shared copy, or null if the shop was deleted
+     * @return the replaced marker, or null
+     */
+    MarkerData replace(String shopName, MarkerData data) {
+        MarkerData previous = data != null ? markers.put(shopName, data) : markers.remove(shopName);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (data != null) {
+            index(data);
         }
+        return previous;
+    }
+
+    /**
+     * Copy the markers and queue a save of the copy on a worker thread.
+     * Requests made while one is queued are coalesced into the latest copy.
+     * Must be called on the main thread.
+     */
+    public void saveAsync() {
+        if (batchDepth > 0) {
+            return;
+        }
+        if (!plugin.isEnabled()) {
+            save();
+            return;
+        }
+        Snapshot snapshot = snapshot();
+        synchronized (saveLock) {
+            pendingSave = merge(pendingSave, snapshot);
+        }
+        if (saveQueued.compareAndSet(false, true)) {
+            plugin.getIoExecutor().run("markers-save", () -> {
+                saveQueued.set(false);
+                savePending();
+            });
+        }
+    }
+
+    /**
+     * Apply several changes with a single save afterwards. Must be called on
+     * the main thread.
+     *
+     * @param afterSave run on the saving thread once the changes are on disk, or null;
+     *                  held back until a later save succeeds if writing fails
+     */
+    public void batch(Runnable changes, Runnable afterSave) {
+        batchDepth++;
+        try {
+            changes.run();
+        } finally {
+            batchDepth--;
+        }
+        if (afterSave != null) {
+            this.afterSave.add(afterSave);
+        }
+        saveAsync();
+    }
+
+    private List<Runnable> drainAfterSave() {
+        List<Runnable> callbacks = new ArrayList<>();
+        Runnable callback;
+        while ((callback = afterSave.poll()) != null) {
+            callbacks.add(callback);
+        }
+        return callbacks;
+    }
+
+    private void index(MarkerData data) {
+        ownerIndex.computeIfAbsent(data.getOwnerUUID(), uuid -> new ConcurrentSkipListSet<>(NAME_ORDER))
+                .add(data.getShopName());
+
+        // Markers are updated in place, so the previous status comes from the index
+        MarkerStatus previousStatus = indexedStatus.put(data.getShopName(), data.getStatus());
+        if (previousStatus != data.getStatus()) {
+            if (previousStatus != null) {
+                statusIndex(previousStatus).forEach(index -> index.remove(data.getShopName()));
+            }
+            statusIndex(data.getStatus()).forEach(index -> index.add(data.getShopName()));
+        }
+        sortedIndex.get(MarkerFilter.ALL).add(data.getShopName());
+
+        String previous = indexedMessageIds.remove(data.getShopName());
+        if (previous != null) {
+            messageIndex.remove(previous, data.getShopName());
+        }
+        String messageId = data.getDiscordMessageId();
+        if (messageId != null && !messageId.isEmpty()) {
+            messageIndex.put(messageId, data.getShopName());
+            indexedMessageIds.put(data.getShopName(), messageId);
+        }
+    }
+
+    private void unindex(MarkerData data) {
+        Set<String> owned = ownerIndex.get(data.getOwnerUUID());
+        if (owned != null) {
+            owned.remove(data.getShopName());
+        }
+        MarkerStatus status = indexedStatus.remove(data.getShopName());
+        if (status != null) {
+            statusIndex(status).forEach(index -> index.remove(data.getShopName()));
+        }
+        sortedIndex.get(MarkerFilter.ALL).remove(data.getShopName());
+        String messageId = indexedMessageIds.remove(data.getShopName());
+        if (messageId != null) {
+            messageIndex.remove(messageId, data.getShopName());
+        }
+    }
+
+    private List<NavigableSet<String>> statusIndex(MarkerStatus status) {
+        return switch (status) {
+            case PENDING -> List.of(sortedIndex.get(MarkerFilter.PENDING));
+            case COMMERCIAL -> List.of(sortedIndex.get(MarkerFilter.APPROVED));
+            case ADS -> List.of(sortedIndex.get(MarkerFilter.APPROVED), sortedIndex.get(MarkerFilter.ADS));
+        };
+    }
+
+    private NavigableSet<String> sortedIndex(MarkerFilter filter, UUID ownerUUID) {
+        if (filter == MarkerFilter.OWNER) {
+            NavigableSet<String> owned = ownerIndex.get(ownerUUID);
+            return owned != null ? owned : Collections.emptyNavigableSet();
+        }
+        return sortedIndex.get(filter);
+    }
+
+    /**
+     * Get the page of a listing that starts after (or, going backwards, ends
+     * before) a cursor. The cursor is a shop name and need not exist any more.
+     *
+     * @param ownerUUID owner for {@link MarkerFilter#OWNER}, ignored otherwise
+     * @param cursor    shop name to continue from, or null for the first page
+     * @param backward  whether to return the page before the cursor
+     */
+    public MarkerPage getPage(MarkerFilter filter, UUID ownerUUID, String cursor, boolean backward, int size) {
+        NavigableSet<String> index = sortedIndex(filter, ownerUUID);
+        if (cursor == null) {
+            return collectPage(index, index.iterator(), false, size);
+        }
+        if (backward) {
+            return collectPage(index, index.headSet(cursor, false).descendingIterator(), true, size);
+        }
+        return collectPage(index, index.tailSet(cursor, false).iterator(), false, size);
+    }
+
+    /**
+     * Get a listing page by number, starting at 1. The cost grows with the
+     * page number, not with the number of markers; following cursors from
+     * the previous page is cheaper.
+     */
+    public MarkerPage getPage(MarkerFilter filter, UUID ownerUUID, int pageNumber, int size) {
+        NavigableSet<String> index = sortedIndex(filter, ownerUUID);
+        Iterator<String> names = index.iterator();
+        for (long skip = (long) (pageNumber - 1) * size; skip > 0 && names.hasNext(); skip--) {
+            names.next();
+        }
+        return collectPage(index, names, false, size);
+    }
+
+    private MarkerPage collectPage(NavigableSet<String> index, Iterator<String> names, boolean backward, int size) {
+        List<MarkerData> page = new ArrayList<>(size);
+        while (page.size() < size && names.hasNext()) {
+            // Skip names removed while walking the index
+            MarkerData data = markers.get(names.next());
+            if (data != null) {
+                page.add(data);
+            }
+        }
+
+        if (backward) {
+            Collections.reverse(page);
+        }
+        if (page.isEmpty()) {
+            return new MarkerPage(page, false, false);
+        }
+        return new MarkerPage(page,
+                index.lower(page.get(0).getShopName()) != null,
+                index.higher(page.get(page.size() - 1).getShopName()) != null);
     }
 
     /**
@@ -119,7 +578,9 @@ public class MarkerStorage {
      */
     public void addMarker(MarkerData data) {
         markers.put(data.getShopName(), data);
-        save();
+        index(data);
+        markDirty(data.getShopName());
+        saveAsync();
     }
 
     /**
@@ -128,7 +589,9 @@ public class MarkerStorage {
     public boolean removeMarker(String shopName) {
         MarkerData removed = markers.remove(shopName);
         if (removed != null) {
-            save();
+            unindex(removed);
+            markDirty(shopName);
+            saveAsync();
             return true;
         }
         return false;
@@ -152,37 +615,69 @@ public class MarkerStorage {
      * Get a marker by Discord message ID.
      */
     public MarkerData getByDiscordMessageId(String messageId) {
-        return markers.values().stream()
-                .filter(m -> messageId.equals(m.getDiscordMessageId()))
-                .findFirst()
-                .orElse(null);
+        String shopName = messageIndex.get(messageId);
+        return shopName != null ? markers.get(shopName) : null;
     }
 
     /**
      * Get all markers owned by a player.
      */
     public List<MarkerData> getByOwner(UUID ownerUUID) {
-        return markers.values().stream()
-                .filter(m -> m.getOwnerUUID().equals(ownerUUID))
+        Set<String> owned = ownerIndex.get(ownerUUID);
+        if (owned == null) {
+            return new ArrayList<>();
+        }
+        return owned.stream()
+                .map(markers::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
     /**
-     * Get all markers with a specific status.
+     * Store a new owner name on all markers of that owner. Must be called on
+     * the main thread.
+     */
+    public void updateOwnerName(UUID ownerUUID, String ownerName) {
+        boolean changed = false;
+        for (MarkerData data : getByOwner(ownerUUID)) {
+            if (!ownerName.equals(data.getOwnerName())) {
+                data.setOwnerName(ownerName);
+                markDirty(data.getShopName());
+                changed = true;
+            }
+        }
+        if (changed) {
+            saveAsync();
+        }
+    }
+
+    /**
+     * Get all markers with a specific status, in listing order. Only the
+     * markers in the status index are visited.
      */
     public List<MarkerData> getByStatus(MarkerStatus status) {
-        return markers.values().stream()
-                .filter(m -> m.getStatus() == status)
-                .collect(Collectors.toList());
+        MarkerFilter filter = switch (status) {
+            case PENDING -> MarkerFilter.PENDING;
+            case COMMERCIAL -> MarkerFilter.APPROVED;
+            case ADS -> MarkerFilter.ADS;
+        };
+        List<MarkerData> result = new ArrayList<>();
+        for (String shopName : sortedIndex.get(filter)) {
+            MarkerData data = markers.get(shopName);
+            if (data != null && data.getStatus() == status) {
+                result.add(data);
+            }
+        }
+        return result;
     }
 
     /**
      * Get all expired ads.
      */
     public List<MarkerData> getExpiredAds() {
-        return markers.values().stream()
-                .filter(MarkerData::isAdsExpired)
-                .collect(Collectors.toList());
+        List<MarkerData> result = getByStatus(MarkerStatus.ADS);
+        result.removeIf(data -> !data.isAdsExpired());
+        return result;
     }
 
     /**
@@ -196,10 +691,7 @@ public class MarkerStorage {
      * Get all approved shop names (COMMERCIAL or ADS).
      */
     public Set<String> getApprovedShopNames() {
-        return markers.values().stream()
-                .filter(m -> m.getStatus() == MarkerStatus.COMMERCIAL || m.getStatus() == MarkerStatus.ADS)
-                .map(MarkerData::getShopName)
-                .collect(Collectors.toSet());
+        return new HashSet<>(sortedIndex.get(MarkerFilter.APPROVED));
     }
 
     /**
@@ -207,6 +699,12 @@ public class MarkerStorage {
      */
     public void updateMarker(MarkerData data) {
         markers.put(data.getShopName(), data);
-        save();
+        index(data);
+        markDirty(data.getShopName());
+        saveAsync();
+    }
+
+    private void markDirty(String shopName) {
+        dirty.add(shopName);
     }
 }
@@ -0,0 +1,107 @@
+package net.inecat.dynmapads.data;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Names of marker owners for Dynmap popups and Discord messages, so lookups
+ * on the main thread never touch the server's profile cache or disk.
+ * Names come from online players, from the name stored with each marker, and
+ * for older markers without one from a lookup on a worker thread. Joining
+ * players refresh their name. The cache keeps the most recently used names.
+ */
+public class OwnerNameCache implements Listener {
+    private static final String UNKNOWN = "Unknown";
+
+    private final DynmapAdsPlugin plugin;
+    private final Map<UUID, String> names;
+    private final Set<UUID> resolving;
+
+    public OwnerNameCache(DynmapAdsPlugin plugin, int capacity) {
+        this.plugin = plugin;
+        this.names = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.resolving = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Get the owner name of a marker without blocking. If the name is not
+     * known yet, "Unknown" is returned and the name is looked up in the
+     * background for the next call.
+     */
+    public String getName(MarkerData data) {
+        UUID ownerUUID = data.getOwnerUUID();
+        String name = getCached(ownerUUID);
+        if (name != null) {
+            return name;
+        }
+
+        Player online = Bukkit.getPlayer(ownerUUID);
+        if (online != null) {
+            put(ownerUUID, online.getName());
+            return online.getName();
+        }
+        if (data.getOwnerName() != null) {
+            put(ownerUUID, data.getOwnerName());
+            return data.getOwnerName();
+        }
+
+        resolveAsync(ownerUUID);
+        return UNKNOWN;
+    }
+
+    private synchronized String getCached(UUID ownerUUID) {
+        return names.get(ownerUUID);
+    }
+
+    private synchronized void put(UUID ownerUUID, String name) {
+        names.put(ownerUUID, name);
+    }
+
+    private void resolveAsync(UUID ownerUUID) {
+        if (!plugin.isEnabled() || !resolving.add(ownerUUID)) {
+            return;
+        }
+        plugin.getIoExecutor().run("owner-name", () -> {
+            try {
+                String name = Bukkit.getOfflinePlayer(ownerUUID).getName();
+                if (name != null) {
+                    plugin.getPluginScheduler().runGlobal(() -> update(ownerUUID, name));
+                }
+            } finally {
+                resolving.remove(ownerUUID);
+            }
+        });
+    }
+
+    /**
+     * Remember a name and store it with the owner's markers. Must be called
+     * on the main thread (global region on Folia).
+     */
+    public void update(UUID ownerUUID, String name) {
+        put(ownerUUID, name);
+        plugin.getMarkerStorage().updateOwnerName(ownerUUID, name);
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        // On Folia this runs on the player's region, not where markers are updated
+        UUID playerUUID = event.getPlayer().getUniqueId();
+        String name = event.getPlayer().getName();
+        plugin.getPluginScheduler().runGlobal(() -> update(playerUUID, name));
+    }
+}
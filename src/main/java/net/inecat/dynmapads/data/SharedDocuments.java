@@ -0,0 +1,149 @@
+package net.inecat.dynmapads.data;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.UnaryOperator;
+
+/**
+ * Small named documents kept in the shared database next to the markers,
+ * for state that every server sharing the markers must see the same, such
+ * as the approval dashboard and the ads digest window.
+ * <p>
+ * Each document is a text with a version. An update reads the document,
+ * changes it and writes it back only if the version is still the one read;
+ * if another server wrote in between, the update is retried on the new
+ * text. All methods block on the database and must be called on an I/O
+ * thread.
+ */
+public class SharedDocuments {
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final DynmapAdsPlugin plugin;
+    private final String table;
+    private Connection connection;
+    private boolean tableCreated;
+
+    public SharedDocuments(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.table = plugin.getConfigManager().getSharedStorageTablePrefix() + "documents";
+    }
+
+    /**
+     * Read a document.
+     *
+     * @return its text, or null if it was never written
+     */
+    public synchronized String read(String name) throws SQLException {
+        try (PreparedStatement statement = connection().prepareStatement("SELECT content FROM " + table
+                + " WHERE name = ?")) {
+            statement.setString(1, name);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString("content") : null;
+            }
+        } catch (SQLException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Change a document. The change may run more than once if other servers
+     * write the document at the same time, so it must only compute the new
+     * text from the one it is given.
+     *
+     * @param change gets the current text, or null if the document was never
+     *               written, and returns the new text
+     * @return the text written
+     */
+    public synchronized String update(String name, UnaryOperator<String> change) throws SQLException {
+        try {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                String content = null;
+                long version = -1;
+                try (PreparedStatement statement = connection().prepareStatement("SELECT content, version FROM "
+                        + table + " WHERE name = ?")) {
+                    statement.setString(1, name);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        if (rs.next()) {
+                            content = rs.getString("content");
+                            version = rs.getLong("version");
+                        }
+                    }
+                }
+
+                String updated = change.apply(content);
+                if (version < 0 ? insert(name, updated) : replace(name, updated, version)) {
+                    return updated;
+                }
+            }
+        } catch (SQLException e) {
+            disconnect();
+            throw e;
+        }
+        throw new SQLException("Document " + name + " kept changing on other servers");
+    }
+
+    private boolean insert(String name, String content) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + table
+                + " (name, content, version) VALUES (?, ?, 1)")) {
+            statement.setString(1, name);
+            statement.setString(2, content);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            // Another server created it first; a broken connection fails the next read
+            return false;
+        }
+    }
+
+    private boolean replace(String name, String content, long version) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE " + table
+                + " SET content = ?, version = version + 1 WHERE name = ? AND version = ?")) {
+            statement.setString(1, content);
+            statement.setString(2, name);
+            statement.setLong(3, version);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Disconnect from the database.
+     */
+    public synchronized void close() {
+        disconnect();
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection != null && connection.isValid(5)) {
+            return connection;
+        }
+        disconnect();
+        connection = SharedMarkerStore.connect(plugin);
+        if (!tableCreated) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " ("
+                        + "name VARCHAR(64) NOT NULL PRIMARY KEY, "
+                        + "content TEXT NOT NULL, "
+                        + "version BIGINT NOT NULL)");
+            }
+            tableCreated = true;
+        }
+        return connection;
+    }
+
+    private void disconnect() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Broken connections often fail to close too
+            }
+            connection = null;
+        }
+    }
+}
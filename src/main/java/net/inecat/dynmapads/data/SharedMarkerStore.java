@@ -0,0 +1,591 @@
+package net.inecat.dynmapads.data;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.dynmap.DynmapManager;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Marker table shared by several servers through a SQL database (SQLite for
+ * a single machine or tests, MySQL/MariaDB across machines; Paper ships both
+ * drivers).
+ * <p>
+ * Every write takes the next number of a single-row sequence inside its
+ * transaction, stores it as the row's version and appends it to a change
+ * table. Writers hold the sequence row until they commit, so changes become
+ * visible in sequence order and a reader that remembers the last number it
+ * saw never misses one. Updates and deletes only succeed against the version
+ * this server last saw; if another server got there first the write is
+ * dropped and the shared copy is taken instead.
+ * <p>
+ * Each server polls the change table and applies the shops changed by other
+ * servers to its in-memory indexes and Dynmap sets, one shop at a time.
+ */
+public class SharedMarkerStore {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final int FEED_BATCH = 500;
+    private static final String COLUMNS = "shop_name, owner_uuid, owner_name, world, x, y, z, description, status, "
+            + "ads_end_time, pr_message, discord_message_id, created_at, charge_id, version";
+
+    private final DynmapAdsPlugin plugin;
+    private final MarkerStorage storage;
+    private final String nodeId;
+    private final String markersTable;
+    private final String changesTable;
+    private final String sequenceTable;
+    private final Map<String, Long> versions;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private Connection connection;
+    private volatile long lastSeq;
+    private PluginScheduler.Task poller;
+
+    /**
+     * A shop changed on another server: its current row, or null if it was
+     * deleted, and the sequence number of the change.
+     */
+    private record Delta(String shopName, MarkerData data, long version) {
+    }
+
+    SharedMarkerStore(DynmapAdsPlugin plugin, MarkerStorage storage) {
+        this.plugin = plugin;
+        this.storage = storage;
+        // Only has to tell this server's changes apart until it restarts
+        this.nodeId = UUID.randomUUID().toString();
+        String prefix = plugin.getConfigManager().getSharedStorageTablePrefix();
+        this.markersTable = prefix + "markers";
+        this.changesTable = prefix + "changes";
+        this.sequenceTable = prefix + "sequence";
+        this.versions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Connect and create the tables if they are missing.
+     */
+    synchronized void open() throws SQLException {
+        connection();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + markersTable + " ("
+                    + "shop_name VARCHAR(191) NOT NULL PRIMARY KEY, "
+                    + "owner_uuid CHAR(36) NOT NULL, "
+                    + "owner_name VARCHAR(64), "
+                    + "world VARCHAR(191) NOT NULL, "
+                    + "x DOUBLE NOT NULL, y DOUBLE NOT NULL, z DOUBLE NOT NULL, "
+                    + "description TEXT NOT NULL, "
+                    + "status VARCHAR(16) NOT NULL, "
+                    + "ads_end_time VARCHAR(32), "
+                    + "pr_message TEXT, "
+                    + "discord_message_id VARCHAR(32), "
+                    + "created_at VARCHAR(32), "
+                    + "charge_id VARCHAR(191), "
+                    + "version BIGINT NOT NULL)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + changesTable + " ("
+                    + "seq BIGINT NOT NULL PRIMARY KEY, "
+                    + "shop_name VARCHAR(191) NOT NULL, "
+                    + "deleted SMALLINT NOT NULL, "
+                    + "node VARCHAR(36) NOT NULL, "
+                    + "changed_at BIGINT NOT NULL)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + sequenceTable + " ("
+                    + "id INT NOT NULL PRIMARY KEY, "
+                    + "value BIGINT NOT NULL)");
+        }
+
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + sequenceTable)) {
+            if (rs.next() && rs.getLong(1) > 0) {
+                return;
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO " + sequenceTable + " (id, value) VALUES (1, 0)");
+        } catch (SQLException e) {
+            // Another server created it at the same time
+        }
+    }
+
+    /**
+     * Read every shop and remember the sequence number they are current to.
+     */
+    synchronized List<MarkerData> loadAll() throws SQLException {
+        connection();
+        long seq = currentSeq();
+        List<MarkerData> rows = new ArrayList<>();
+        versions.clear();
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT " + COLUMNS + " FROM " + markersTable)) {
+            while (rs.next()) {
+                try {
+                    rows.add(readRow(rs));
+                    versions.put(rs.getString("shop_name"), rs.getLong("version"));
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    plugin.getLogger().warning("[SharedStore] Failed to load marker: " + rs.getString("shop_name")
+                            + " - " + e.getMessage());
+                }
+            }
+        }
+        // Changes committed after the sequence was read are in the rows too and are skipped by version
+        lastSeq = seq;
+        return rows;
+    }
+
+    /**
+     * Write copies of the changed shops, null for deleted ones, taken on the
+     * main thread. Shops that were changed by another server since this one
+     * last saw them are not written; the shared copy is applied instead.
+     */
+    synchronized void write(Map<String, MarkerData> changes) throws SQLException {
+        connection();
+        for (Map.Entry<String, MarkerData> change : changes.entrySet()) {
+            String shopName = change.getKey();
+            MarkerData data = change.getValue();
+            Long known = versions.get(shopName);
+            if (data == null && known == null) {
+                continue;
+            }
+
+            boolean written;
+            connection.setAutoCommit(false);
+            try {
+                long seq = nextSeq();
+                if (data == null) {
+                    written = delete(shopName, known);
+                } else if (known == null) {
+                    written = insert(data, seq);
+                } else {
+                    written = update(data, known, seq);
+                }
+                if (written) {
+                    appendChange(seq, shopName, data == null);
+                    connection.commit();
+                    if (data == null) {
+                        versions.remove(shopName, known);
+                    } else {
+                        versions.put(shopName, seq);
+                    }
+                } else {
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            if (!written) {
+                plugin.getLogger().warning("[SharedStore] " + shopName
+                        + " was changed on another server first; keeping the shared copy.");
+                Delta delta = fetch(shopName);
+                if (delta != null) {
+                    plugin.getPluginScheduler().runGlobal(() -> apply(delta, true));
+                }
+            }
+        }
+    }
+
+    /**
+     * Start polling the change table.
+     */
+    void startFeed() {
+        long interval = plugin.getConfigManager().getSharedStoragePollIntervalTicks();
+        poller = plugin.getPluginScheduler().runAsyncTimer(() -> {
+            // Skip a round while the last poll still runs, e.g. on a hung connection
+            if (polling.compareAndSet(false, true)) {
+                plugin.getIoExecutor().run("shared-store-poll", this::poll)
+                        .whenComplete((ignored, error) -> polling.set(false));
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Stop polling and close the connection. Writes after this reconnect.
+     */
+    synchronized void close() {
+        if (poller != null) {
+            poller.cancel();
+            poller = null;
+        }
+        disconnect();
+    }
+
+    /**
+     * Read the changes made since the last poll and queue the current rows
+     * of the shops other servers changed for the main thread.
+     */
+    private synchronized void poll() {
+        try {
+            connection();
+            List<Delta> deltas = new ArrayList<>();
+            boolean more = true;
+            while (more) {
+                more = readChanges(deltas);
+            }
+            prune();
+            if (!deltas.isEmpty()) {
+                plugin.getPluginScheduler().runGlobal(() -> deltas.forEach(delta -> apply(delta, false)));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().warning("[SharedStore] Failed to read the change feed: " + e.getMessage());
+            disconnect();
+        }
+    }
+
+    /**
+     * Read one batch of the change table, or everything if this server fell
+     * so far behind that the changes it needs were pruned.
+     *
+     * @return whether there may be more changes
+     */
+    private boolean readChanges(List<Delta> deltas) throws SQLException {
+        Map<String, Long> changed = new LinkedHashMap<>();
+        Map<String, Boolean> deleted = new LinkedHashMap<>();
+        long first = -1;
+        long last = lastSeq;
+        int read = 0;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT seq, shop_name, deleted, node FROM "
+                + changesTable + " WHERE seq > ? ORDER BY seq LIMIT " + FEED_BATCH)) {
+            statement.setLong(1, lastSeq);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    long seq = rs.getLong("seq");
+                    if (first < 0) {
+                        first = seq;
+                    }
+                    last = seq;
+                    read++;
+                    if (!nodeId.equals(rs.getString("node"))) {
+                        String shopName = rs.getString("shop_name");
+                        changed.remove(shopName);
+                        changed.put(shopName, seq);
+                        deleted.put(shopName, rs.getInt("deleted") != 0);
+                    }
+                }
+            }
+        }
+
+        if (first > lastSeq + 1) {
+            plugin.getLogger().warning("[SharedStore] Changes " + (lastSeq + 1) + " to " + (first - 1)
+                    + " were pruned before this server read them; comparing every shop.");
+            resync(deltas);
+            return false;
+        }
+
+        for (Map.Entry<String, Long> entry : changed.entrySet()) {
+            String shopName = entry.getKey();
+            Delta delta = deleted.get(shopName) ? new Delta(shopName, null, entry.getValue()) : fetch(shopName);
+            if (delta != null) {
+                deltas.add(delta);
+            }
+        }
+        lastSeq = last;
+        return read == FEED_BATCH;
+    }
+
+    /**
+     * Compare every shared row with what this server has seen.
+     */
+    private void resync(List<Delta> deltas) throws SQLException {
+        long seq = currentSeq();
+        Map<String, Long> seen = new HashMap<>(versions);
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT " + COLUMNS + " FROM " + markersTable)) {
+            while (rs.next()) {
+                String shopName = rs.getString("shop_name");
+                long version = rs.getLong("version");
+                Long known = seen.remove(shopName);
+                if (known == null || version > known) {
+                    Delta delta = readDelta(rs);
+                    if (delta != null) {
+                        deltas.add(delta);
+                    }
+                }
+            }
+        }
+        for (String shopName : seen.keySet()) {
+            deltas.add(new Delta(shopName, null, seq));
+        }
+        lastSeq = seq;
+    }
+
+    /**
+     * Apply a change from another server. Runs on the main thread.
+     *
+     * @param force apply even if this server has an unsaved change to the shop
+     */
+    private void apply(Delta delta, boolean force) {
+        String shopName = delta.shopName();
+        if (!force && storage.isDirty(shopName)) {
+            // The pending write will find the newer version and take it then
+            return;
+        }
+        Long known = versions.get(shopName);
+        if (!force && known != null && delta.version() <= known) {
+            return;
+        }
+        if (delta.data() != null) {
+            versions.put(shopName, delta.version());
+        } else {
+            versions.remove(shopName);
+        }
+
+        MarkerData previous = storage.replace(shopName, delta.data());
+        plugin.getEscrowManager().onRemoteChange(previous, delta.data());
+        boolean queueChanged = (previous != null && previous.getStatus() == MarkerStatus.PENDING)
+                || (delta.data() != null && delta.data().getStatus() == MarkerStatus.PENDING);
+        if (queueChanged && plugin.getDiscordManager() != null) {
+            // Applications made or withdrawn elsewhere show on the leader's dashboard
+            plugin.getDiscordManager().onQueueChanged();
+        }
+        DynmapManager dynmap = plugin.getDynmapManager();
+        if (dynmap == null) {
+            return;
+        }
+        if (previous != null && previous.getStatus() != MarkerStatus.PENDING) {
+            dynmap.deleteMarker(previous);
+        }
+        if (delta.data() != null) {
+            showOnMap(delta.data());
+        }
+    }
+
+    /**
+     * Create the Dynmap marker of an approved shop. Creating a marker that
+     * already exists does nothing.
+     */
+    void showOnMap(MarkerData data) {
+        DynmapManager dynmap = plugin.getDynmapManager();
+        switch (data.getStatus()) {
+            case COMMERCIAL -> dynmap.createCommercialMarker(data, plugin.getOwnerNameCache().getName(data));
+            case ADS -> dynmap.createAdsMarker(data, plugin.getOwnerNameCache().getName(data));
+            case PENDING -> {
+            }
+        }
+    }
+
+    /**
+     * Read the current row of a shop, or null if it cannot be parsed.
+     */
+    private Delta fetch(String shopName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + COLUMNS + " FROM "
+                + markersTable + " WHERE shop_name = ?")) {
+            statement.setString(1, shopName);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return readDelta(rs);
+                }
+            }
+        }
+        return new Delta(shopName, null, currentSeq());
+    }
+
+    /**
+     * Read the row at the cursor, or log and skip it if it cannot be parsed,
+     * so one bad row does not stall the change feed.
+     */
+    private Delta readDelta(ResultSet rs) throws SQLException {
+        String shopName = rs.getString("shop_name");
+        try {
+            return new Delta(shopName, readRow(rs), rs.getLong("version"));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            plugin.getLogger().warning("[SharedStore] Skipping unreadable marker: " + shopName
+                    + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean insert(MarkerData data, long seq) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + markersTable + " ("
+                + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            statement.setString(1, data.getShopName());
+            bindValues(statement, data, 2);
+            statement.setLong(15, seq);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            if (exists(data.getShopName())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private boolean update(MarkerData data, long known, long seq) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE " + markersTable
+                + " SET owner_uuid = ?, owner_name = ?, world = ?, x = ?, y = ?, z = ?, description = ?, "
+                + "status = ?, ads_end_time = ?, pr_message = ?, discord_message_id = ?, created_at = ?, "
+                + "charge_id = ?, version = ? WHERE shop_name = ? AND version = ?")) {
+            bindValues(statement, data, 1);
+            statement.setLong(14, seq);
+            statement.setString(15, data.getShopName());
+            statement.setLong(16, known);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    private boolean delete(String shopName, long known) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + markersTable
+                + " WHERE shop_name = ? AND version = ?")) {
+            statement.setString(1, shopName);
+            statement.setLong(2, known);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    private boolean exists(String shopName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM " + markersTable
+                + " WHERE shop_name = ?")) {
+            statement.setString(1, shopName);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Bind every column but the shop name and version, starting at the given index.
+     */
+    private static void bindValues(PreparedStatement statement, MarkerData data, int index) throws SQLException {
+        statement.setString(index, data.getOwnerUUID().toString());
+        setNullable(statement, index + 1, data.getOwnerName());
+        statement.setString(index + 2, data.getWorld());
+        statement.setDouble(index + 3, data.getX());
+        statement.setDouble(index + 4, data.getY());
+        statement.setDouble(index + 5, data.getZ());
+        statement.setString(index + 6, data.getDescription());
+        statement.setString(index + 7, data.getStatus().name());
+        setNullable(statement, index + 8, data.getAdsEndTime() != null
+                ? data.getAdsEndTime().format(DATE_FORMAT) : null);
+        setNullable(statement, index + 9, data.getPrMessage());
+        setNullable(statement, index + 10, data.getDiscordMessageId());
+        setNullable(statement, index + 11, data.getCreatedAt() != null
+                ? data.getCreatedAt().format(DATE_FORMAT) : null);
+        setNullable(statement, index + 12, data.getChargeId());
+    }
+
+    private static void setNullable(PreparedStatement statement, int index, String value) throws SQLException {
+        if (value != null) {
+            statement.setString(index, value);
+        } else {
+            statement.setNull(index, Types.VARCHAR);
+        }
+    }
+
+    private static MarkerData readRow(ResultSet rs) throws SQLException {
+        String adsEndTime = rs.getString("ads_end_time");
+        MarkerData data = new MarkerData(rs.getString("shop_name"), UUID.fromString(rs.getString("owner_uuid")),
+                rs.getString("world"), rs.getDouble("x"), rs.getDouble("y"), rs.getDouble("z"),
+                rs.getString("description"), MarkerStatus.valueOf(rs.getString("status")),
+                adsEndTime != null ? LocalDateTime.parse(adsEndTime, DATE_FORMAT) : null,
+                rs.getString("pr_message"), rs.getString("discord_message_id"));
+        String createdAt = rs.getString("created_at");
+        if (createdAt != null) {
+            data.setCreatedAt(LocalDateTime.parse(createdAt, DATE_FORMAT));
+        }
+        data.setChargeId(rs.getString("charge_id"));
+        data.setOwnerName(rs.getString("owner_name"));
+        return data;
+    }
+
+    /**
+     * Take the next sequence number. Holds the sequence row until the
+     * transaction ends, which orders concurrent writers.
+     */
+    private long nextSeq() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE " + sequenceTable + " SET value = value + 1 WHERE id = 1");
+        }
+        return currentSeq();
+    }
+
+    private long currentSeq() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT value FROM " + sequenceTable + " WHERE id = 1")) {
+            if (!rs.next()) {
+                throw new SQLException("Sequence row missing from " + sequenceTable);
+            }
+            return rs.getLong(1);
+        }
+    }
+
+    private void appendChange(long seq, String shopName, boolean deleted) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + changesTable
+                + " (seq, shop_name, deleted, node, changed_at) VALUES (?, ?, ?, ?, ?)")) {
+            statement.setLong(1, seq);
+            statement.setString(2, shopName);
+            statement.setInt(3, deleted ? 1 : 0);
+            statement.setString(4, nodeId);
+            statement.setLong(5, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Delete changes older than the retention. A server that has not read
+     * them yet compares every shop instead.
+     */
+    private void prune() throws SQLException {
+        long keepFrom = lastSeq - plugin.getConfigManager().getSharedStorageChangeRetention();
+        if (keepFrom <= 0) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + changesTable
+                + " WHERE seq <= ?")) {
+            statement.setLong(1, keepFrom);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * The open connection, reconnecting if it was closed or broke.
+     */
+    private Connection connection() throws SQLException {
+        if (connection != null && connection.isValid(5)) {
+            return connection;
+        }
+        disconnect();
+        connection = connect(plugin);
+        return connection;
+    }
+
+    /**
+     * Open a new connection to the shared database.
+     */
+    static Connection connect(DynmapAdsPlugin plugin) throws SQLException {
+        ConfigManager config = plugin.getConfigManager();
+        String url = config.getSharedStorageUrl();
+        if (url.isEmpty()) {
+            url = "jdbc:sqlite:" + new File(plugin.getDataFolder(), "shared.db").getAbsolutePath();
+        }
+        return DriverManager.getConnection(url, config.getSharedStorageUser(), config.getSharedStoragePassword());
+    }
+
+    private void disconnect() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Broken connections often fail to close too
+            }
+            connection = null;
+        }
+    }
+}
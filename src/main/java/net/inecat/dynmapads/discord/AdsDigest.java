@@ -0,0 +1,417 @@
+package net.inecat.dynmapads.discord;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.data.SharedDocuments;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects ad starts and expirations over a window and posts them to the ads
+ * channel as one digest instead of one message per ad.
+ * The current window is persisted to ads-digest.yml so a restart loses nothing.
+ * <p>
+ * With shared storage the window is a shared document that the leader
+ * publishes. Each server adds its events to it; ads-digest.yml then only
+ * keeps the events that could not be added yet.
+ */
+public class AdsDigest {
+    private static final String DOCUMENT = "ads-digest";
+    private static final long CHECK_INTERVAL_TICKS = 20L * 60;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("M/d HH:mm");
+    private static final int MAX_PAGE_LENGTH = 3500;
+
+    /**
+     * Kind of event collected in the digest.
+     */
+    public enum EventType {
+        STARTED,
+        EXPIRED
+    }
+
+    /**
+     * A single ad event in the current window.
+     */
+    public record Entry(EventType type, String shopName, String ownerName, int days, String prMessage,
+            String world, double x, double y, double z) {
+    }
+
+    private final DynmapAdsPlugin plugin;
+    private final DiscordManager discordManager;
+    private final File dataFile;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Object pushLock = new Object();
+    private final Object fileLock = new Object();
+    private final AtomicBoolean saveQueued = new AtomicBoolean();
+    private long changes;
+    private long written;
+    private long windowStart;
+    private PluginScheduler.Task checkTask;
+
+    public AdsDigest(DynmapAdsPlugin plugin, DiscordManager discordManager) {
+        this.plugin = plugin;
+        this.discordManager = discordManager;
+        this.dataFile = new File(plugin.getDataFolder(), "ads-digest.yml");
+    }
+
+    /**
+     * Load the current window and start checking for its end.
+     */
+    public void start() {
+        load();
+        checkTask = plugin.getPluginScheduler().runGlobalTimer(this::publishIfDue,
+                CHECK_INTERVAL_TICKS, CHECK_INTERVAL_TICKS);
+    }
+
+    /**
+     * Stop checking and persist the current window.
+     */
+    public void stop() {
+        if (checkTask != null) {
+            checkTask.cancel();
+            checkTask = null;
+        }
+        save();
+    }
+
+    private synchronized void load() {
+        entries.clear();
+        windowStart = System.currentTimeMillis();
+
+        if (!dataFile.exists()) {
+            return;
+        }
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+        windowStart = config.getLong("window-start", windowStart);
+        readEntries(config, entries);
+    }
+
+    private void readEntries(YamlConfiguration config, List<Entry> target) {
+        ConfigurationSection entriesSection = config.getConfigurationSection("entries");
+        if (entriesSection == null) {
+            return;
+        }
+
+        for (String key : entriesSection.getKeys(false)) {
+            ConfigurationSection section = entriesSection.getConfigurationSection(key);
+            if (section == null)
+                continue;
+
+            try {
+                target.add(new Entry(
+                        EventType.valueOf(section.getString("type", "")),
+                        section.getString("shop-name"),
+                        section.getString("owner-name"),
+                        section.getInt("days"),
+                        section.getString("pr-message"),
+                        section.getString("world"),
+                        section.getDouble("x"),
+                        section.getDouble("y"),
+                        section.getDouble("z")));
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to load ads digest entry: " + key + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Save the current window. The window is serialized under the monitor and
+     * written outside it; a write is skipped once a later one is on disk.
+     */
+    private void save() {
+        long change;
+        String content;
+        synchronized (this) {
+            content = write(windowStart, entries).saveToString();
+            change = ++changes;
+        }
+
+        synchronized (fileLock) {
+            if (change <= written) {
+                return;
+            }
+            try {
+                Files.writeString(dataFile.toPath(), content, StandardCharsets.UTF_8);
+                written = change;
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to save ads digest: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queue a save on a worker thread, coalescing repeated requests.
+     */
+    private void saveAsync() {
+        if (!plugin.isEnabled()) {
+            save();
+            return;
+        }
+        if (saveQueued.compareAndSet(false, true)) {
+            plugin.getIoExecutor().run("ads-digest-save", () -> {
+                saveQueued.set(false);
+                save();
+            });
+        }
+    }
+
+    private static YamlConfiguration write(long windowStart, List<Entry> entries) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("window-start", windowStart);
+        ConfigurationSection entriesSection = config.createSection("entries");
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            ConfigurationSection section = entriesSection.createSection(String.valueOf(i));
+            section.set("type", entry.type().name());
+            section.set("shop-name", entry.shopName());
+            section.set("owner-name", entry.ownerName());
+            section.set("days", entry.days());
+            if (entry.prMessage() != null) {
+                section.set("pr-message", entry.prMessage());
+            }
+            section.set("world", entry.world());
+            section.set("x", entry.x());
+            section.set("y", entry.y());
+            section.set("z", entry.z());
+        }
+        return config;
+    }
+
+    /**
+     * Record the start of an ad.
+     */
+    public void recordStarted(MarkerData data, String ownerName, int days) {
+        record(new Entry(EventType.STARTED, data.getShopName(), ownerName, days, data.getPrMessage(),
+                data.getWorld(), data.getX(), data.getY(), data.getZ()));
+    }
+
+    /**
+     * Record the end of an ad.
+     */
+    public void recordExpired(MarkerData data, String ownerName) {
+        record(new Entry(EventType.EXPIRED, data.getShopName(), ownerName, 0, null,
+                data.getWorld(), data.getX(), data.getY(), data.getZ()));
+    }
+
+    private void record(Entry entry) {
+        synchronized (this) {
+            entries.add(entry);
+        }
+        saveAsync();
+        SharedDocuments documents = plugin.getSharedDocuments();
+        if (documents != null) {
+            plugin.getIoExecutor().run("ads-digest-push", () -> push(documents, false));
+        }
+    }
+
+    /**
+     * Add the events recorded here to the shared window, and take the whole
+     * window if it has ended. Runs on an I/O thread.
+     *
+     * @param take whether to take the window if it has ended
+     * @return the events of the ended window, or null if it was not taken
+     */
+    private List<Entry> push(SharedDocuments documents, boolean take) {
+        // Serialized so events are never added twice by concurrent pushes
+        synchronized (pushLock) {
+            List<Entry> pushed;
+            synchronized (this) {
+                pushed = new ArrayList<>(entries);
+            }
+            long windowMillis = plugin.getConfigManager().getAdsDigestWindowHours() * 3_600_000L;
+            List<List<Entry>> taken = new ArrayList<>(1);
+            try {
+                documents.update(DOCUMENT, text -> {
+                    long now = System.currentTimeMillis();
+                    YamlConfiguration config = parse(text);
+                    long start = config.getLong("window-start", now);
+                    List<Entry> window = new ArrayList<>();
+                    readEntries(config, window);
+                    window.addAll(pushed);
+
+                    taken.clear();
+                    if (take && now - start >= windowMillis) {
+                        taken.add(window);
+                        return write(now, List.of()).saveToString();
+                    }
+                    return write(start, window).saveToString();
+                });
+            } catch (SQLException e) {
+                plugin.getLogger().warning("[SharedStore] Failed to update the ads digest, keeping "
+                        + pushed.size() + " events here: " + e.getMessage());
+                return null;
+            }
+
+            synchronized (this) {
+                entries.subList(0, pushed.size()).clear();
+            }
+            saveAsync();
+            return taken.isEmpty() ? null : taken.get(0);
+        }
+    }
+
+    private YamlConfiguration parse(String text) {
+        YamlConfiguration config = new YamlConfiguration();
+        if (text != null) {
+            try {
+                config.loadFromString(text);
+            } catch (InvalidConfigurationException e) {
+                plugin.getLogger().warning("Ignoring the unreadable shared ads digest: " + e.getMessage());
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Publish the digest if the window has ended. Only the leader publishes;
+     * with shared storage the window holds the events of every server, and
+     * the other servers retry adding the events they could not add yet.
+     */
+    public void publishIfDue() {
+        boolean leader = plugin.isLeader();
+        SharedDocuments documents = plugin.getSharedDocuments();
+        if (documents != null) {
+            synchronized (this) {
+                if (!leader && entries.isEmpty()) {
+                    return;
+                }
+            }
+            plugin.getIoExecutor().supply("ads-digest-publish", () -> push(documents, leader)).thenAccept(window -> {
+                if (window != null) {
+                    plugin.getPluginScheduler().runGlobal(() -> publish(window));
+                }
+            });
+            return;
+        }
+        if (!leader) {
+            return;
+        }
+        long windowMillis = plugin.getConfigManager().getAdsDigestWindowHours() * 3_600_000L;
+        if (System.currentTimeMillis() - windowStart >= windowMillis) {
+            publish();
+        }
+    }
+
+    /**
+     * Publish the digest for the current window through the outbox and start
+     * a new window. Must be called on the main thread.
+     */
+    public void publish() {
+        List<Entry> window;
+        synchronized (this) {
+            window = new ArrayList<>(entries);
+        }
+        publish(window);
+
+        synchronized (this) {
+            // Keep anything recorded while the pages were being built
+            entries.subList(0, window.size()).clear();
+            windowStart = System.currentTimeMillis();
+        }
+        saveAsync();
+    }
+
+    private void publish(List<Entry> window) {
+        ConfigManager config = plugin.getConfigManager();
+        List<String> lines = new ArrayList<>();
+        appendSection(lines, config.text("digest-started"), window, EventType.STARTED);
+        appendExpiring(lines);
+        appendSection(lines, config.text("digest-expired"), window, EventType.EXPIRED);
+
+        if (!lines.isEmpty()) {
+            List<String> pages = paginate(lines, config.getAdsDigestEntriesPerPage());
+            for (int i = 0; i < pages.size(); i++) {
+                String title = pages.size() > 1
+                        ? config.text("digest-title-page", "page", i + 1, "pages", pages.size())
+                        : config.text("digest-title");
+                discordManager.enqueueAdsDigestPage(title, pages.get(i), Color.YELLOW.getRGB());
+            }
+        }
+    }
+
+    private void appendSection(List<String> lines, String heading, List<Entry> window, EventType type) {
+        List<Entry> matching = window.stream().filter(entry -> entry.type() == type).toList();
+        if (matching.isEmpty()) {
+            return;
+        }
+
+        ConfigManager config = plugin.getConfigManager();
+        lines.add(config.text("digest-heading", "heading", heading, "count", matching.size()));
+        for (Entry entry : matching) {
+            StringBuilder line = new StringBuilder("• **").append(entry.shopName()).append("** — ")
+                    .append(entry.ownerName());
+            if (type == EventType.STARTED) {
+                line.append(config.text("digest-days", "days", entry.days()));
+                if (entry.prMessage() != null && !entry.prMessage().isEmpty()) {
+                    line.append("\n  ").append(entry.prMessage());
+                }
+            }
+            line.append(config.text("digest-map-link",
+                    "url", DiscordManager.formatMapUrl(entry.world(), entry.x(), entry.y(), entry.z())));
+            lines.add(line.toString());
+        }
+    }
+
+    private void appendExpiring(List<String> lines) {
+        ConfigManager config = plugin.getConfigManager();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime horizon = now.plusHours(config.getAdsDigestExpiringWithinHours());
+        List<MarkerData> expiring = plugin.getMarkerStorage().getByStatus(MarkerStatus.ADS).stream()
+                .filter(data -> data.getAdsEndTime() != null && data.getAdsEndTime().isBefore(horizon))
+                .sorted(Comparator.comparing(MarkerData::getAdsEndTime))
+                .toList();
+        if (expiring.isEmpty()) {
+            return;
+        }
+
+        lines.add(config.text("digest-heading", "heading", config.text("digest-expiring"), "count", expiring.size()));
+        for (MarkerData data : expiring) {
+            lines.add("• **" + data.getShopName() + "**"
+                    + config.text("digest-ends", "time", data.getAdsEndTime().format(DATE_FORMAT))
+                    + config.text("digest-map-link", "url",
+                            DiscordManager.formatMapUrl(data.getWorld(), data.getX(), data.getY(), data.getZ())));
+        }
+    }
+
+    /**
+     * Split lines into pages holding at most the given number of lines and
+     * staying within the embed description limit.
+     */
+    private static List<String> paginate(List<String> lines, int linesPerPage) {
+        List<String> pages = new ArrayList<>();
+        StringBuilder page = new StringBuilder();
+        int count = 0;
+        for (String line : lines) {
+            if (count > 0 && (count >= linesPerPage || page.length() + line.length() + 1 > MAX_PAGE_LENGTH)) {
+                pages.add(page.toString());
+                page.setLength(0);
+                count = 0;
+            }
+            page.append(line).append("\n");
+            count++;
+        }
+        if (count > 0) {
+            pages.add(page.toString());
+        }
+        return pages;
+    }
+}
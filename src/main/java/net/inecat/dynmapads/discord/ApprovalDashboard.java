@@ -0,0 +1,447 @@
+package net.inecat.dynmapads.discord;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.data.SharedDocuments;
+import net.inecat.dynmapads.discord.gateway.DiscordEmbed;
+import net.inecat.dynmapads.discord.gateway.DiscordGatewayException;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Single pinned message in the approval channel that shows the pending queue
+ * and today's decisions. Replaces one history embed per decision.
+ * Renders are debounced and edits are throttled, so bursts of decisions cost
+ * a single message edit.
+ * <p>
+ * With shared storage the message id and the counters are a shared document.
+ * Every server records its decisions there, and the leader re-reads it before
+ * each render, so a new leader keeps editing the same pinned message.
+ */
+public class ApprovalDashboard {
+    private static final String DOCUMENT = "dashboard";
+    private static final int MAX_LISTED_APPLICATIONS = 20;
+    private static final int MAX_RECENT_DECISIONS = 10;
+    private static final long REFRESH_INTERVAL_TICKS = 20L * 60 * 5;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * Kind of decision counted on the dashboard.
+     */
+    public enum Decision {
+        APPROVED("discord-decision-approved"),
+        REJECTED("discord-decision-rejected"),
+        CANCELLED("discord-decision-cancelled");
+
+        private final String labelKey;
+
+        Decision(String labelKey) {
+            this.labelKey = labelKey;
+        }
+
+        /**
+         * Message key of the label shown for this decision.
+         */
+        public String getLabelKey() {
+            return labelKey;
+        }
+    }
+
+    /**
+     * Message id, today's counters and the recent decisions.
+     */
+    private static class State {
+        private final LinkedList<String> recentDecisions = new LinkedList<>();
+        private String messageId;
+        private LocalDate countDate = LocalDate.now();
+        private int approvedToday;
+        private int rejectedToday;
+        private int cancelledToday;
+
+        static State load(YamlConfiguration config) {
+            State state = new State();
+            state.messageId = config.getString("message-id");
+            String date = config.getString("date");
+            if (date != null && !date.isEmpty()) {
+                state.countDate = LocalDate.parse(date);
+            }
+            state.approvedToday = config.getInt("approved");
+            state.rejectedToday = config.getInt("rejected");
+            state.cancelledToday = config.getInt("cancelled");
+            state.recentDecisions.addAll(config.getStringList("recent"));
+            return state;
+        }
+
+        YamlConfiguration save() {
+            YamlConfiguration config = new YamlConfiguration();
+            config.set("message-id", messageId);
+            config.set("date", countDate.toString());
+            config.set("approved", approvedToday);
+            config.set("rejected", rejectedToday);
+            config.set("cancelled", cancelledToday);
+            config.set("recent", new ArrayList<>(recentDecisions));
+            return config;
+        }
+
+        void record(Decision decision, String line) {
+            rollOverDay();
+            switch (decision) {
+                case APPROVED -> approvedToday++;
+                case REJECTED -> rejectedToday++;
+                case CANCELLED -> cancelledToday++;
+            }
+
+            recentDecisions.addFirst(line);
+            while (recentDecisions.size() > MAX_RECENT_DECISIONS) {
+                recentDecisions.removeLast();
+            }
+        }
+
+        void rollOverDay() {
+            LocalDate today = LocalDate.now();
+            if (!today.equals(countDate)) {
+                countDate = today;
+                approvedToday = 0;
+                rejectedToday = 0;
+                cancelledToday = 0;
+            }
+        }
+    }
+
+    private final DynmapAdsPlugin plugin;
+    private final DiscordManager discordManager;
+    private final File dataFile;
+    private final AtomicReference<String> pendingSave = new AtomicReference<>();
+    private final AtomicBoolean saveQueued = new AtomicBoolean();
+    private final Object fileLock = new Object();
+    private State state = new State();
+    private long lastEditMillis;
+    private boolean creating;
+    private boolean loading;
+    private PluginScheduler.Task scheduledRender;
+    private PluginScheduler.Task refreshTask;
+
+    public ApprovalDashboard(DynmapAdsPlugin plugin, DiscordManager discordManager) {
+        this.plugin = plugin;
+        this.discordManager = discordManager;
+        this.dataFile = new File(plugin.getDataFolder(), "dashboard.yml");
+    }
+
+    /**
+     * Load dashboard state and start the periodic refresh of application ages.
+     * Shared state is read by every render instead.
+     */
+    public void start() {
+        if (plugin.getSharedDocuments() == null) {
+            load();
+        }
+        refreshTask = plugin.getPluginScheduler().runGlobalTimer(this::requestRender,
+                REFRESH_INTERVAL_TICKS, REFRESH_INTERVAL_TICKS);
+    }
+
+    /**
+     * Stop refreshing and persist the state.
+     */
+    public void stop() {
+        if (refreshTask != null) {
+            refreshTask.cancel();
+            refreshTask = null;
+        }
+        if (scheduledRender != null) {
+            scheduledRender.cancel();
+            scheduledRender = null;
+        }
+        if (plugin.getSharedDocuments() == null) {
+            save();
+        }
+    }
+
+    private void load() {
+        if (dataFile.exists()) {
+            state = State.load(YamlConfiguration.loadConfiguration(dataFile));
+        }
+    }
+
+    /**
+     * Save a copy of the state taken on the calling thread and return once it
+     * is written.
+     */
+    private void save() {
+        pendingSave.set(state.save().saveToString());
+        writeFile();
+    }
+
+    /**
+     * Queue a save of a copy of the state on an I/O thread. Repeated requests
+     * are coalesced and only the latest copy is written. Must be called on
+     * the main thread.
+     */
+    private void saveAsync() {
+        if (!plugin.isEnabled()) {
+            save();
+            return;
+        }
+        pendingSave.set(state.save().saveToString());
+        if (saveQueued.compareAndSet(false, true)) {
+            plugin.getIoExecutor().run("dashboard-file-save", () -> {
+                saveQueued.set(false);
+                writeFile();
+            });
+        }
+    }
+
+    private void writeFile() {
+        synchronized (fileLock) {
+            String content = pendingSave.getAndSet(null);
+            if (content == null) {
+                // A later write already took the latest copy
+                return;
+            }
+            try {
+                Files.writeString(dataFile.toPath(), content, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to save approval dashboard: " + e.getMessage());
+            }
+        }
+    }
+
+    private State parse(String text) {
+        if (text == null) {
+            return new State();
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(text);
+        } catch (InvalidConfigurationException e) {
+            plugin.getLogger().warning("Ignoring the unreadable shared approval dashboard: " + e.getMessage());
+        }
+        return State.load(config);
+    }
+
+    /**
+     * Apply a change to the state and persist it on an I/O thread. With shared
+     * storage the change is applied to the shared document instead.
+     * Must be called on the main thread.
+     */
+    private void change(Consumer<State> change) {
+        change.accept(state);
+        SharedDocuments documents = plugin.getSharedDocuments();
+        if (documents == null) {
+            saveAsync();
+            return;
+        }
+        plugin.getIoExecutor().supply("dashboard-save", () -> documents.update(DOCUMENT, text -> {
+            State shared = parse(text);
+            change.accept(shared);
+            return shared.save().saveToString();
+        }));
+    }
+
+    /**
+     * Record a decision and schedule a re-render. Safe to call from any thread.
+     */
+    public void recordDecision(Decision decision, String shopName, String moderatorName) {
+        if (!plugin.getPluginScheduler().isGlobalThread()) {
+            plugin.getPluginScheduler().runGlobal(() -> recordDecision(decision, shopName, moderatorName));
+            return;
+        }
+
+        ConfigManager config = plugin.getConfigManager();
+        String line = config.text("dashboard-recent-entry", "time", LocalDateTime.now().format(TIME_FORMAT),
+                "decision", config.text(decision.getLabelKey()), "shop", shopName, "moderator", moderatorName);
+        change(shared -> shared.record(decision, line));
+        requestRender();
+    }
+
+    /**
+     * Schedule a render of the dashboard. Calls are debounced, and the edit is
+     * delayed until the minimum interval since the previous edit has passed.
+     * Safe to call from any thread.
+     */
+    public void requestRender() {
+        if (!plugin.getPluginScheduler().isGlobalThread()) {
+            plugin.getPluginScheduler().runGlobal(this::requestRender);
+            return;
+        }
+
+        // One server keeps the pinned dashboard up to date
+        if (scheduledRender != null || !plugin.isLeader()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long debounceMillis = plugin.getConfigManager().getDashboardDebounceSeconds() * 1000L;
+        long throttleMillis = plugin.getConfigManager().getDashboardMinEditIntervalSeconds() * 1000L;
+        long renderAt = Math.max(now + debounceMillis, lastEditMillis + throttleMillis);
+        long delayTicks = Math.max(1L, (renderAt - now + 49) / 50);
+
+        scheduledRender = plugin.getPluginScheduler().runGlobalLater(this::render, delayTicks);
+    }
+
+    private void render() {
+        scheduledRender = null;
+
+        if (!discordManager.isReady() || creating || loading || !plugin.isLeader()) {
+            return;
+        }
+
+        SharedDocuments documents = plugin.getSharedDocuments();
+        if (documents == null) {
+            draw();
+            return;
+        }
+
+        // Other servers record their decisions in the shared state, and may have posted the dashboard
+        loading = true;
+        plugin.getIoExecutor().supply("dashboard-load", () -> documents.read(DOCUMENT)).whenComplete((text, error) ->
+                plugin.getPluginScheduler().runGlobal(() -> {
+                    loading = false;
+                    if (error == null && discordManager.isReady() && plugin.isLeader()) {
+                        state = parse(text);
+                        draw();
+                    }
+                }));
+    }
+
+    private void draw() {
+        DiscordEmbed embed = buildEmbed();
+        String channelId = plugin.getConfigManager().getApprovalChannelId();
+        lastEditMillis = System.currentTimeMillis();
+
+        if (state.messageId == null) {
+            createMessage(channelId, embed);
+            return;
+        }
+
+        String currentId = state.messageId;
+        discordManager.getGateway().editEmbed(channelId, currentId, embed).exceptionally(error -> {
+            plugin.getLogger().warning("Failed to update approval dashboard: " + error.getMessage());
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (!(cause instanceof DiscordGatewayException gatewayError) || !gatewayError.isNotFound()) {
+                // Rate limits and outages pass; keep the pinned message and edit it again later
+                plugin.getPluginScheduler().runGlobal(this::requestRender);
+                return null;
+            }
+            // The dashboard was deleted by a moderator; post a new one
+            plugin.getPluginScheduler().runGlobal(() -> {
+                if (currentId.equals(state.messageId)) {
+                    change(shared -> {
+                        if (currentId.equals(shared.messageId)) {
+                            shared.messageId = null;
+                        }
+                    });
+                    requestRender();
+                }
+            });
+            return null;
+        });
+    }
+
+    private void createMessage(String channelId, DiscordEmbed embed) {
+        creating = true;
+        discordManager.getGateway().sendEmbed(channelId, embed).whenComplete((newId, error) ->
+                plugin.getPluginScheduler().runGlobal(() -> {
+                    creating = false;
+                    if (error != null) {
+                        plugin.getLogger().warning("Failed to post approval dashboard: " + error.getMessage());
+                        return;
+                    }
+                    change(shared -> shared.messageId = newId);
+                    discordManager.getGateway().pinMessage(channelId, newId).exceptionally(pinError -> {
+                        plugin.getLogger().warning("Failed to pin approval dashboard: " + pinError.getMessage());
+                        return null;
+                    });
+                }));
+    }
+
+    private DiscordEmbed buildEmbed() {
+        state.rollOverDay();
+
+        ConfigManager config = plugin.getConfigManager();
+        LocalDateTime now = LocalDateTime.now();
+        int slaHours = config.getDashboardSlaHours();
+        List<MarkerData> pending = plugin.getMarkerStorage().getByStatus(MarkerStatus.PENDING);
+        pending.sort(Comparator.comparing(MarkerData::getCreatedAt,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        StringBuilder queue = new StringBuilder();
+        int overdue = 0;
+        int listed = 0;
+        for (MarkerData data : pending) {
+            Duration age = data.getCreatedAt() != null ? Duration.between(data.getCreatedAt(), now) : null;
+            boolean breached = age != null && age.toHours() >= slaHours;
+            if (breached) {
+                overdue++;
+            }
+            if (listed >= MAX_LISTED_APPLICATIONS) {
+                continue;
+            }
+            listed++;
+
+            String ownerName = plugin.getOwnerNameCache().getName(data);
+            queue.append(breached ? "⚠️ " : "• ").append(config.text("dashboard-entry", "shop", data.getShopName(),
+                    "owner", ownerName, "age", age != null ? formatAge(age) : config.text("dashboard-age-unknown")));
+            if (data.getDiscordMessageId() == null) {
+                queue.append(config.text("dashboard-unsent"));
+            }
+            queue.append("\n");
+        }
+        if (pending.size() > listed) {
+            queue.append(config.text("dashboard-more", "count", pending.size() - listed)).append("\n");
+        }
+        if (pending.isEmpty()) {
+            queue.append(config.text("dashboard-empty"));
+        }
+
+        DiscordEmbed embed = new DiscordEmbed()
+                .setTitle(config.text("dashboard-title", "count", pending.size()))
+                .setColor(overdue > 0 ? Color.RED : pending.isEmpty() ? Color.GREEN : Color.ORANGE)
+                .setDescription(queue.toString())
+                .addField(config.text("dashboard-approved-today"), String.valueOf(state.approvedToday), true)
+                .addField(config.text("dashboard-rejected-today"), String.valueOf(state.rejectedToday), true)
+                .addField(config.text("dashboard-cancelled-today"), String.valueOf(state.cancelledToday), true)
+                .addField(config.text("dashboard-overdue", "hours", slaHours), String.valueOf(overdue), true)
+                .setFooter(config.text("dashboard-updated"))
+                .setTimestamp(Instant.now());
+
+        if (!state.recentDecisions.isEmpty()) {
+            embed.addField(config.text("dashboard-recent"), String.join("\n", state.recentDecisions), false);
+        }
+        return embed;
+    }
+
+    private String formatAge(Duration age) {
+        ConfigManager config = plugin.getConfigManager();
+        long hours = age.toHours();
+        if (hours >= 24) {
+            return config.text("dashboard-age-days", "days", hours / 24, "hours", hours % 24);
+        }
+        if (hours > 0) {
+            return config.text("dashboard-age-hours", "hours", hours, "minutes", age.toMinutesPart());
+        }
+        return config.text("dashboard-age-minutes", "minutes", Math.max(0, age.toMinutes()));
+    }
+}
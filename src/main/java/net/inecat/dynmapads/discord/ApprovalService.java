@@ -0,0 +1,145 @@
+package net.inecat.dynmapads.discord;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.audit.AuditEventType;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.economy.EconomyPipeline;
+import net.inecat.dynmapads.economy.EscrowManager;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+/**
+ * Applies moderator decisions to pending commercial facility applications.
+ * Shared by the reaction event listener and the polling task.
+ */
+public class ApprovalService {
+    private final DynmapAdsPlugin plugin;
+
+    public ApprovalService(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Apply a decision for an approval message. Must be called on the main
+     * thread. Messages that no longer belong to a pending application are
+     * ignored, so duplicate decisions are harmless.
+     *
+     * @return true if the decision was applied
+     */
+    public boolean decide(String messageId, boolean approve, String moderatorName) {
+        return decide(plugin.getMarkerStorage().getByDiscordMessageId(messageId), approve, moderatorName);
+    }
+
+    /**
+     * Apply a decision for a pending application, whether or not its approval
+     * request has reached Discord yet. Must be called on the main thread.
+     *
+     * @return true if the decision was applied
+     */
+    public boolean decide(MarkerData data, boolean approve, String moderatorName) {
+        if (data == null || data.getStatus() != MarkerStatus.PENDING) {
+            return false;
+        }
+
+        if (approve) {
+            plugin.getLogger().info("Approving " + data.getShopName() + " by " + moderatorName);
+            if (!approveMarker(data, moderatorName)) {
+                return false;
+            }
+        } else {
+            plugin.getLogger().info("Rejecting " + data.getShopName() + " by " + moderatorName);
+            rejectMarker(data, moderatorName);
+        }
+
+        // Delete the Discord message after processing, or drop the undelivered request
+        String messageId = data.getDiscordMessageId();
+        if (messageId != null && !messageId.isEmpty()) {
+            plugin.getDiscordManager().removeApprovalMessage(messageId);
+        } else {
+            plugin.getDiscordManager().getOutbox().cancelApprovalRequest(data.getShopName());
+        }
+        plugin.getDiscordManager().onQueueChanged();
+        return true;
+    }
+
+    /**
+     * Approve an application whose fee is still held.
+     *
+     * @return false if the fee was already returned or was never held
+     */
+    private boolean approveMarker(MarkerData data, String approverName) {
+        String ownerName = plugin.getOwnerNameCache().getName(data);
+
+        // Keep the held fee. With shared storage the server that charged it settles it when it sees the approval
+        EscrowManager escrow = plugin.getEscrowManager();
+        String chargeId = EconomyPipeline.commercialChargeId(data);
+        boolean heldElsewhere = plugin.getConfigManager().isSharedStorage() && escrow.getHold(chargeId) == null;
+        if (!heldElsewhere && !escrow.settle(chargeId)) {
+            plugin.getLogger().warning("Not approving " + data.getShopName()
+                    + ": its fee is no longer held in escrow. Reject the application instead.");
+            return false;
+        }
+
+        // Update status
+        data.setStatus(MarkerStatus.COMMERCIAL);
+        plugin.getMarkerStorage().updateMarker(data);
+        plugin.getAuditLog().record(AuditEventType.APPROVED, data, approverName);
+
+        // Create Dynmap marker
+        boolean created = plugin.getDynmapManager().createCommercialMarker(data, ownerName);
+
+        if (created) {
+            plugin.getLogger().info("Commercial marker approved: " + data.getShopName());
+
+            // Send history message to Discord
+            plugin.getDiscordManager().sendApprovalHistory(data.getShopName(), ownerName, approverName);
+
+            Player owner = Bukkit.getPlayer(data.getOwnerUUID());
+            if (owner != null) {
+                plugin.getPluginScheduler().message(owner,
+                        plugin.getConfigManager().message("commercial-approved", "shop", data.getShopName()));
+            }
+        } else {
+            plugin.getLogger().warning("Failed to create Dynmap marker: " + data.getShopName());
+        }
+        return true;
+    }
+
+    private void rejectMarker(MarkerData data, String rejectorName) {
+        String ownerName = plugin.getOwnerNameCache().getName(data);
+
+        // Remove from storage
+        plugin.getMarkerStorage().removeMarker(data.getShopName());
+        plugin.getAuditLog().record(AuditEventType.REJECTED, data, rejectorName);
+
+        // Send history message to Discord
+        plugin.getDiscordManager().sendRejectionHistory(data.getShopName(), ownerName, rejectorName);
+
+        // Release the held fee, then notify player if online. With shared storage the
+        // server that charged the fee refunds it when it sees the rejection
+        EscrowManager escrow = plugin.getEscrowManager();
+        String chargeId = EconomyPipeline.commercialChargeId(data);
+        boolean heldElsewhere = plugin.getConfigManager().isSharedStorage() && escrow.getHold(chargeId) == null;
+        escrow.release(chargeId).thenAccept(result -> {
+            String refundAmount = String.format("%.0f", result.amount());
+            String outcome;
+            if (result.success()) {
+                outcome = " (refunded " + refundAmount + ")";
+            } else if (heldElsewhere) {
+                outcome = " (refunded by the charging server)";
+            } else {
+                outcome = " (refund failed)";
+            }
+            plugin.getLogger().info("Commercial marker rejected: " + data.getShopName() + outcome);
+
+            Player player = Bukkit.getPlayer(data.getOwnerUUID());
+            if (result.success() && player != null) {
+                ConfigManager config = plugin.getConfigManager();
+                plugin.getPluginScheduler().message(player, config.message("commercial-rejected", "shop", data.getShopName(),
+                        "amount", refundAmount, "currency", config.getCurrencyName()));
+            }
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package net.inecat.dynmapads.discord;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.discord.gateway.ButtonEvent;
+import net.inecat.dynmapads.discord.gateway.DiscordButton;
+
+import java.util.List;
+
+/**
+ * Handles the Approve/Reject buttons on approval request messages.
+ */
+public class ButtonListener {
+    public static final String APPROVE_BUTTON_ID = "dynmapads:approve";
+    public static final String REJECT_BUTTON_ID = "dynmapads:reject";
+
+    /**
+     * Buttons attached to every approval request, labelled in the configured language.
+     */
+    public static List<DiscordButton> approvalButtons(ConfigManager config) {
+        return approvalButtons(config.text("discord-button-approve"), config.text("discord-button-reject"));
+    }
+
+    /**
+     * Buttons attached to every approval request, with the given labels.
+     */
+    public static List<DiscordButton> approvalButtons(String approveLabel, String rejectLabel) {
+        return List.of(
+                new DiscordButton(APPROVE_BUTTON_ID, approveLabel, DiscordButton.Style.SUCCESS),
+                new DiscordButton(REJECT_BUTTON_ID, rejectLabel, DiscordButton.Style.DANGER));
+    }
+
+    private final DynmapAdsPlugin plugin;
+
+    public ButtonListener(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Handle a button click delivered by the gateway.
+     *
+     * @return whether this server takes the click and the gateway should acknowledge it
+     */
+    public boolean onButtonClick(ButtonEvent event) {
+        boolean approve;
+        if (APPROVE_BUTTON_ID.equals(event.buttonId())) {
+            approve = true;
+        } else if (REJECT_BUTTON_ID.equals(event.buttonId())) {
+            approve = false;
+        } else {
+            return false;
+        }
+
+        if (event.user() != null && event.user().bot()) {
+            return false;
+        }
+
+        // Check if it's in the approval channel
+        String approvalChannelId = plugin.getConfigManager().getApprovalChannelId();
+        if (!event.channelId().equals(approvalChannelId)) {
+            return false;
+        }
+
+        String moderatorName = event.user() != null && event.user().name() != null
+                ? event.user().name()
+                : plugin.getConfigManager().text("discord-moderator");
+
+        // Decisions arriving during shutdown are left for the next start
+        if (plugin.getShutdownCoordinator().isShuttingDown()) {
+            return false;
+        }
+
+        // One server decides for all servers sharing the markers and answers the click
+        if (!plugin.isLeader()) {
+            return false;
+        }
+
+        // Run on the main thread (global region on Folia)
+        plugin.getPluginScheduler().runGlobal(() -> plugin.getTickWatchdog().measure("discord:button",
+                () -> plugin.getDiscordManager().getApprovalService().decide(event.messageId(), approve, moderatorName)));
+        return true;
+    }
+}
@@ -1,27 +1,111 @@
 package net.inecat.dynmapads.discord;
 
-import github.scarsz.discordsrv.dependencies.jda.api.EmbedBuilder;
-import github.scarsz.discordsrv.dependencies.jda.api.JDA;
-import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
-import github.scarsz.discordsrv.util.DiscordUtil;
 import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
 import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.discord.gateway.DiscordButton;
+import net.inecat.dynmapads.discord.gateway.DiscordEmbed;
+import net.inecat.dynmapads.discord.gateway.DiscordGateway;
 
 import java.awt.Color;
+import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
  * Manages Discord integration via DiscordSRV.
  */
-public class DiscordManager {
+public final class DiscordManager {
     private static final String MAP_URL_FORMAT = "https://map.1necat.net/?worldname=%s&mapname=flat&zoom=5&x=%.0f&y=%.0f&z=%.0f";
 
     private final DynmapAdsPlugin plugin;
+    private final DiscordGateway gateway;
+    private final DiscordOutbox outbox;
+    private final ApprovalService approvalService;
+    private final ReactionPoller reactionPoller;
+    private final ApprovalDashboard dashboard;
+    private final AdsDigest adsDigest;
     private ReactionListener reactionListener;
-    private boolean ready = false;
+    private ButtonListener buttonListener;
+    private volatile boolean buttonsActive = false;
+    private volatile boolean ready = false;
 
-    public DiscordManager(DynmapAdsPlugin plugin) {
+    public DiscordManager(DynmapAdsPlugin plugin, DiscordGateway gateway) {
         this.plugin = plugin;
+        this.gateway = gateway;
+        this.outbox = new DiscordOutbox(plugin, this);
+        this.approvalService = new ApprovalService(plugin);
+        this.reactionPoller = new ReactionPoller(gateway,
+                () -> plugin.getConfigManager().text("discord-moderator"));
+        this.dashboard = new ApprovalDashboard(plugin, this);
+        this.adsDigest = new AdsDigest(plugin, this);
+    }
+
+    /**
+     * Get the gateway used for all Discord operations.
+     */
+    public DiscordGateway getGateway() {
+        return gateway;
+    }
+
+    /**
+     * Get the durable outbox for pending Discord sends.
+     */
+    public DiscordOutbox getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * Get the service that applies approval decisions.
+     */
+    public ApprovalService getApprovalService() {
+        return approvalService;
+    }
+
+    /**
+     * Get the pinned approval queue dashboard.
+     */
+    public ApprovalDashboard getDashboard() {
+        return dashboard;
+    }
+
+    /**
+     * Get the digest that collects ad notifications when digest mode is enabled.
+     */
+    public AdsDigest getAdsDigest() {
+        return adsDigest;
+    }
+
+    /**
+     * Build the web map URL centered on the given location.
+     */
+    public static String formatMapUrl(String world, double x, double y, double z) {
+        return String.format(MAP_URL_FORMAT, world, x, y, z);
+    }
+
+    private static String formatLocation(MarkerData data) {
+        return String.format("%s: %.0f, %.0f, %.0f", data.getWorld(), data.getX(), data.getY(), data.getZ());
+    }
+
+    private boolean isDashboardEnabled() {
+        return plugin.getConfigManager().isDashboardEnabled();
+    }
+
+    /**
+     * Refresh the dashboard after the pending queue changed.
+     */
+    public void onQueueChanged() {
+        if (isDashboardEnabled()) {
+            dashboard.requestRender();
+        }
+    }
+
+    /**
+     * Get the poller that reads decisions from approval message reactions.
+     */
+    public ReactionPoller getReactionPoller() {
+        return reactionPoller;
     }
 
     /**
@@ -29,18 +113,38 @@ public class DiscordManager {
      * Should be called after DiscordSRV is ready.
      */
     public void initialize() {
-        JDA jda = getJda();
-        if (jda == null) {
+        if (!gateway.isReady()) {
             plugin.getLogger().warning("JDA is null - DiscordSRV may not be fully initialized");
             return;
         }
 
         // Register reaction listener
         reactionListener = new ReactionListener(plugin);
-        jda.addEventListener(reactionListener.getJdaListener());
+        gateway.setReactionHandler(reactionListener::onReaction);
+
+        // Register button listener; reaction polling remains as a fallback
+        buttonsActive = false;
+        if (plugin.getConfigManager().isButtonApprovalEnabled()) {
+            buttonListener = new ButtonListener(plugin);
+            buttonsActive = gateway.setButtonHandler(buttonListener::onButtonClick);
+            if (!buttonsActive) {
+                buttonListener = null;
+                plugin.getLogger().warning("Button approvals unavailable, falling back to reaction polling.");
+            }
+        }
         ready = true;
 
-        plugin.getLogger().info("Discord integration initialized.");
+        plugin.getLogger().info("Discord integration initialized (approval mode: "
+                + (buttonsActive ? "buttons" : "reactions") + ").");
+
+        if (buttonsActive) {
+            attachButtonsToPendingRequests();
+        }
+
+        onQueueChanged();
+
+        // Replay anything queued while Discord was unavailable
+        outbox.flush();
     }
 
     /**
@@ -48,32 +152,62 @@ public class DiscordManager {
      */
     public void shutdown() {
         if (reactionListener != null) {
-            JDA jda = getJda();
-            if (jda != null) {
-                jda.removeEventListener(reactionListener.getJdaListener());
-            }
+            gateway.setReactionHandler(null);
             reactionListener = null;
         }
+        if (buttonListener != null) {
+            gateway.setButtonHandler(null);
+            buttonListener = null;
+        }
+        buttonsActive = false;
         ready = false;
     }
 
+    /**
+     * Check if approvals are handled through buttons.
+     * When false, approval requests carry reactions and are polled.
+     */
+    public boolean isButtonApprovalActive() {
+        return buttonsActive;
+    }
+
+    /**
+     * Attach buttons to approval requests posted before buttons were enabled,
+     * so they no longer need reaction polling.
+     */
+    private void attachButtonsToPendingRequests() {
+        String channelId = plugin.getConfigManager().getApprovalChannelId();
+        List<DiscordButton> buttons = ButtonListener.approvalButtons(plugin.getConfigManager());
+        for (MarkerData data : plugin.getMarkerStorage().getByStatus(MarkerStatus.PENDING)) {
+            String messageId = data.getDiscordMessageId();
+            if (messageId == null || messageId.isEmpty()) {
+                continue;
+            }
+            gateway.setButtons(channelId, messageId, buttons).exceptionally(error -> {
+                plugin.getLogger().warning("Failed to attach approval buttons to " + data.getShopName() + ": "
+                        + error.getMessage());
+                return null;
+            });
+        }
+    }
+
     /**
      * Check if Discord is ready.
      */
     public boolean isReady() {
-        return ready && getJda() != null;
+        return ready && gateway.isReady();
     }
 
     /**
-     * Get JDA instance from DiscordSRV.
+     * Queue an approval request for a stored pending marker.
+     * The request is delivered as soon as Discord is reachable.
      */
-    private JDA getJda() {
-        try {
-            return DiscordUtil.getJda();
-        } catch (Exception e) {
-            plugin.getLogger().severe("Exception in getJda(): " + e.getMessage());
-            return null;
-        }
+    public void requestApproval(MarkerData data, String playerName) {
+        OutboxEntry entry = new OutboxEntry(OutboxEntry.Type.APPROVAL_REQUEST);
+        entry.setShopName(data.getShopName());
+        entry.setPlayerName(playerName);
+        outbox.enqueue(entry);
+        onQueueChanged();
     }
 
     /**
@@ -94,143 +228,228 @@ public class DiscordManager {
             return future;
         }
 
-        TextChannel channel = DiscordUtil.getTextChannelById(channelId);
-
-        if (channel == null) {
-            plugin.getLogger().severe("Channel not found for ID: " + channelId);
-            future.completeExceptionally(new IllegalStateException("Channel not found: " + channelId));
-            return future;
-        }
-
-        EmbedBuilder embed = new EmbedBuilder()
-                .setTitle("🏪 商業施設申請")
+        ConfigManager config = plugin.getConfigManager();
+        DiscordEmbed embed = new DiscordEmbed()
+                .setTitle(config.text("discord-approval-title"))
                 .setColor(Color.ORANGE)
-                .addField("店名", data.getShopName(), true)
-                .addField("申請者", playerName, true)
-                .addField("説明", data.getDescription(), false)
-                .addField("座標", String.format("%s: %.0f, %.0f, %.0f",
-                        data.getWorld(), data.getX(), data.getY(), data.getZ()), false)
-                .setFooter("✅ 承認 / ❌ 却下");
-
-        channel.sendMessageEmbeds(embed.build()).queue(
-                message -> {
-                    // Add approval reaction
-                    message.addReaction("✅").queue();
-                    // Add rejection reaction
-                    message.addReaction("❌").queue();
-                    future.complete(message.getId());
-                },
-                error -> {
+                .addField(config.text("discord-approval-shop"), data.getShopName(), true)
+                .addField(config.text("discord-approval-applicant"), playerName, true)
+                .addField(config.text("discord-approval-description"), data.getDescription(), false)
+                .addField(config.text("discord-approval-location"), formatLocation(data), false)
+                .setFooter(config.text(buttonsActive
+                        ? "discord-approval-footer-buttons"
+                        : "discord-approval-footer-reactions"));
+
+        if (buttonsActive) {
+            List<DiscordButton> buttons = ButtonListener.approvalButtons(config);
+            gateway.sendEmbed(channelId, embed, buttons).whenComplete((messageId, error) -> {
+                if (error != null) {
                     plugin.getLogger().severe("Failed to send message: " + error.getMessage());
                     future.completeExceptionally(error);
-                });
+                } else {
+                    future.complete(messageId);
+                }
+            });
+            return future;
+        }
+
+        gateway.sendEmbed(channelId, embed).whenComplete((messageId, error) -> {
+            if (error != null) {
+                plugin.getLogger().severe("Failed to send message: " + error.getMessage());
+                future.completeExceptionally(error);
+                return;
+            }
+            // Add approval and rejection reactions
+            addApprovalReaction(data, messageId, ReactionPoller.APPROVE_EMOJI);
+            addApprovalReaction(data, messageId, ReactionPoller.REJECT_EMOJI);
+            future.complete(messageId);
+        });
 
         return future;
     }
 
     /**
-     * Send advertisement notification to Discord.
+     * Add a reaction to an approval request, queueing a retry through the
+     * outbox if Discord refuses it.
      */
-    public void sendAdsNotification(MarkerData data, String playerName, int days) {
-        if (!isReady()) {
-            plugin.getLogger().warning("Discord not ready for ads notification");
-            return;
-        }
+    private void addApprovalReaction(MarkerData data, String messageId, String emoji) {
+        String channelId = plugin.getConfigManager().getApprovalChannelId();
+        gateway.addReaction(channelId, messageId, emoji).exceptionally(error -> {
+            plugin.getLogger().warning("Failed to add reaction " + emoji + " to the approval request of "
+                    + data.getShopName() + ": " + error.getMessage());
+            OutboxEntry entry = new OutboxEntry(OutboxEntry.Type.ADD_REACTION);
+            entry.setShopName(data.getShopName());
+            entry.setMessageId(messageId);
+            entry.setContent(emoji);
+            outbox.enqueue(entry);
+            return null;
+        });
+    }
 
-        String channelId = plugin.getConfigManager().getAdsChannelId();
-        TextChannel channel = DiscordUtil.getTextChannelById(channelId);
+    /**
+     * Deliver a queued approval reaction.
+     */
+    CompletableFuture<String> deliverApprovalReaction(String messageId, String emoji) {
+        return gateway.addReaction(plugin.getConfigManager().getApprovalChannelId(), messageId, emoji)
+                .thenApply(v -> null);
+    }
 
-        if (channel == null) {
-            plugin.getLogger().warning("Ads channel not found: " + channelId);
+    /**
+     * Send advertisement notification to Discord.
+     */
+    public void sendAdsNotification(MarkerData data, String playerName, int days) {
+        if (plugin.getConfigManager().isAdsDigestEnabled()) {
+            adsDigest.recordStarted(data, playerName, days);
             return;
         }
 
         // Generate map URL
-        String mapUrl = String.format(MAP_URL_FORMAT,
-                data.getWorld(), data.getX(), data.getY(), data.getZ());
+        String mapUrl = formatMapUrl(data.getWorld(), data.getX(), data.getY(), data.getZ());
 
         // Build plain text message
+        ConfigManager config = plugin.getConfigManager();
         StringBuilder message = new StringBuilder();
-        message.append("📢 **広告掲載開始**\n\n");
-        message.append("**店名:** ").append(data.getShopName()).append("\n");
-        message.append("**オーナー:** ").append(playerName).append("\n");
-        message.append("**掲載期間:** ").append(days).append("日間\n");
-        message.append("**説明:** ").append(data.getDescription()).append("\n");
+        message.append(config.text("discord-ads-started", "shop", data.getShopName(), "owner", playerName,
+                "days", days, "description", data.getDescription())).append("\n");
 
         if (data.getPrMessage() != null && !data.getPrMessage().isEmpty()) {
-            message.append("**PR:** ").append(data.getPrMessage()).append("\n");
+            message.append(config.text("discord-ads-pr", "pr", data.getPrMessage())).append("\n");
         }
 
-        message.append("**座標:** ").append(String.format("%s: %.0f, %.0f, %.0f",
-                data.getWorld(), data.getX(), data.getY(), data.getZ())).append("\n");
-        message.append("\n🗺️ **店舗周辺地図を見る:** ").append(mapUrl);
+        message.append(config.text("discord-ads-location", "location", formatLocation(data), "url", mapUrl));
 
-        channel.sendMessage(message.toString()).queue(
-                success -> plugin.getLogger().info("Ads notification sent: " + data.getShopName()),
-                error -> plugin.getLogger().severe("Failed to send ads notification: " + error.getMessage()));
+        OutboxEntry entry = new OutboxEntry(OutboxEntry.Type.ADS_NOTIFICATION);
+        entry.setShopName(data.getShopName());
+        entry.setContent(message.toString());
+        outbox.enqueue(entry);
     }
 
     /**
-     * Delete an approval message and send a history log.
+     * Deliver a queued advertisement notification.
      */
-    public void deleteApprovalMessage(String messageId, String shopName, String reason) {
-        if (!isReady()) {
-            return;
+    CompletableFuture<String> deliverAdsNotification(String content) {
+        return gateway.sendMessage(plugin.getConfigManager().getAdsChannelId(), content);
+    }
+
+    /**
+     * Record an expired advertisement in the digest when digest mode is enabled.
+     * Expirations are not announced individually.
+     */
+    public void onAdExpired(MarkerData data, String ownerName) {
+        if (plugin.getConfigManager().isAdsDigestEnabled()) {
+            adsDigest.recordExpired(data, ownerName);
         }
+    }
 
-        String channelId = plugin.getConfigManager().getApprovalChannelId();
-        TextChannel channel = DiscordUtil.getTextChannelById(channelId);
+    /**
+     * Queue one page of the ads digest.
+     */
+    void enqueueAdsDigestPage(String title, String content, int color) {
+        OutboxEntry entry = new OutboxEntry(OutboxEntry.Type.ADS_DIGEST);
+        entry.setTitle(title);
+        entry.setContent(content);
+        entry.setColor(color);
+        outbox.enqueue(entry);
+    }
 
-        if (channel == null) {
-            return;
-        }
+    /**
+     * Deliver a queued ads digest page.
+     */
+    CompletableFuture<String> deliverAdsDigestPage(String title, String content, int color, long createdAt) {
+        DiscordEmbed embed = new DiscordEmbed()
+                .setTitle(title)
+                .setColor(color)
+                .setDescription(content)
+                .setTimestamp(Instant.ofEpochMilli(createdAt));
 
-        // Delete the message
-        channel.deleteMessageById(messageId).queue();
+        return gateway.sendEmbed(plugin.getConfigManager().getAdsChannelId(), embed);
+    }
 
-        // Send history log
-        sendHistoryMessage(shopName, "取消", reason, Color.GRAY);
+    /**
+     * Withdraw a pending application from Discord: delete its approval message,
+     * or drop the request if it was never delivered, and log the cancellation.
+     */
+    public void cancelApprovalRequest(MarkerData data, String reason) {
+        String messageId = data.getDiscordMessageId();
+        if (messageId != null && !messageId.isEmpty()) {
+            outbox.enqueueDeletion(messageId);
+        } else {
+            outbox.cancelApprovalRequest(data.getShopName());
+        }
+
+        if (isDashboardEnabled()) {
+            dashboard.recordDecision(ApprovalDashboard.Decision.CANCELLED, data.getShopName(), reason);
+        } else {
+            // Send history log
+            sendHistoryMessage(data.getShopName(), ApprovalDashboard.Decision.CANCELLED, reason, Color.GRAY);
+        }
     }
 
     /**
-     * Send approval history message to the approval channel.
+     * Deliver a queued approval message deletion.
      */
-    public void sendApprovalHistory(String shopName, String ownerName, String approverName) {
-        sendHistoryMessage(shopName, "承認",
-                "店主: " + ownerName + "\n承認者: " + approverName,
-                Color.GREEN);
+    CompletableFuture<String> deliverApprovalDeletion(String messageId) {
+        return gateway.deleteMessage(plugin.getConfigManager().getApprovalChannelId(), messageId)
+                .thenApply(v -> null);
     }
 
     /**
-     * Send rejection history message to the approval channel.
+     * Remove a decided approval message without leaving a history entry.
      */
-    public void sendRejectionHistory(String shopName, String ownerName, String rejectorName) {
-        sendHistoryMessage(shopName, "却下",
-                "店主: " + ownerName + "\n却下者: " + rejectorName + "\n※料金は返金されました",
-                Color.RED);
+    public void removeApprovalMessage(String messageId) {
+        outbox.enqueueDeletion(messageId);
     }
 
     /**
-     * Send a history message to the approval channel.
+     * Record an approval on the dashboard, or send a history message to the
+     * approval channel when the dashboard is disabled.
      */
-    private void sendHistoryMessage(String shopName, String action, String details, Color color) {
-        if (!isReady()) {
+    public void sendApprovalHistory(String shopName, String ownerName, String approverName) {
+        if (isDashboardEnabled()) {
+            dashboard.recordDecision(ApprovalDashboard.Decision.APPROVED, shopName, approverName);
             return;
         }
+        sendHistoryMessage(shopName, ApprovalDashboard.Decision.APPROVED, plugin.getConfigManager().text(
+                "discord-history-approved", "owner", ownerName, "moderator", approverName), Color.GREEN);
+    }
 
-        String channelId = plugin.getConfigManager().getApprovalChannelId();
-        TextChannel channel = DiscordUtil.getTextChannelById(channelId);
-
-        if (channel == null) {
+    /**
+     * Record a rejection on the dashboard, or send a history message to the
+     * approval channel when the dashboard is disabled.
+     */
+    public void sendRejectionHistory(String shopName, String ownerName, String rejectorName) {
+        if (isDashboardEnabled()) {
+            dashboard.recordDecision(ApprovalDashboard.Decision.REJECTED, shopName, rejectorName);
             return;
         }
+        sendHistoryMessage(shopName, ApprovalDashboard.Decision.REJECTED, plugin.getConfigManager().text(
+                "discord-history-rejected", "owner", ownerName, "moderator", rejectorName), Color.RED);
+    }
 
-        EmbedBuilder embed = new EmbedBuilder()
-                .setTitle("📋 " + action + ": " + shopName)
+    /**
+     * Send a history message to the approval channel.
+     */
+    private void sendHistoryMessage(String shopName, ApprovalDashboard.Decision action, String details,
+            Color color) {
+        OutboxEntry entry = new OutboxEntry(OutboxEntry.Type.HISTORY);
+        entry.setShopName(shopName);
+        entry.setTitle(plugin.getConfigManager().text("discord-history-title",
+                "action", plugin.getConfigManager().text(action.getLabelKey()), "shop", shopName));
+        entry.setContent(details);
+        entry.setColor(color.getRGB());
+        outbox.enqueue(entry);
+    }
+
+    /**
+     * Deliver a queued history message.
+     */
+    CompletableFuture<String> deliverHistoryMessage(String title, String details, int color, long createdAt) {
+        DiscordEmbed embed = new DiscordEmbed()
+                .setTitle(title)
                 .setColor(color)
                 .setDescription(details)
-                .setTimestamp(java.time.Instant.now());
+                .setTimestamp(Instant.ofEpochMilli(createdAt));
 
-        channel.sendMessageEmbeds(embed.build()).queue();
+        return gateway.sendEmbed(plugin.getConfigManager().getApprovalChannelId(), embed);
     }
 }
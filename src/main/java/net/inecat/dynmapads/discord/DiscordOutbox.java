@@ -0,0 +1,430 @@
+package net.inecat.dynmapads.discord;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.discord.gateway.DiscordGatewayException;
+import net.inecat.dynmapads.metrics.Metric;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Durable queue of Discord sends persisted to outbox.yml.
+ * Entries survive restarts and Discord outages and are retried with
+ * exponential backoff until they are delivered, or moved to a dead-letter
+ * section after the configured number of attempts. Changes are written by a
+ * coalesced save on a worker thread, replacing the file atomically. A
+ * delivered approval request stays in the file until its message ID is saved
+ * with the marker, so a restart in between does not lose the message.
+ */
+public class DiscordOutbox {
+    private final DynmapAdsPlugin plugin;
+    private final DiscordManager discordManager;
+    private final File dataFile;
+    private final Map<String, OutboxEntry> entries;
+    private final Map<String, OutboxEntry> deadLetters;
+    private final Set<String> inFlight;
+    private final AtomicBoolean saveQueued;
+    private final Object fileLock;
+    private long changes;
+    private long written;
+
+    public DiscordOutbox(DynmapAdsPlugin plugin, DiscordManager discordManager) {
+        this.plugin = plugin;
+        this.discordManager = discordManager;
+        this.dataFile = new File(plugin.getDataFolder(), "outbox.yml");
+        this.entries = new LinkedHashMap<>();
+        this.deadLetters = new LinkedHashMap<>();
+        this.inFlight = new HashSet<>();
+        this.saveQueued = new AtomicBoolean();
+        this.fileLock = new Object();
+    }
+
+    /**
+     * Load pending entries from file, and finish linking approval messages
+     * that were delivered before the restart.
+     */
+    public void load() {
+        List<OutboxEntry> delivered = new ArrayList<>();
+        synchronized (this) {
+            loadEntries();
+            for (OutboxEntry entry : entries.values()) {
+                if (entry.isDelivered()) {
+                    delivered.add(entry);
+                }
+            }
+        }
+        for (OutboxEntry entry : delivered) {
+            plugin.getPluginScheduler().runGlobal(() -> attachApprovalMessage(entry));
+        }
+    }
+
+    private void loadEntries() {
+        entries.clear();
+        deadLetters.clear();
+
+        if (!dataFile.exists()) {
+            return;
+        }
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+        ConfigurationSection entriesSection = config.getConfigurationSection("entries");
+
+        readEntries(entriesSection, entries);
+        readEntries(config.getConfigurationSection("dead-letter"), deadLetters);
+
+        if (!entries.isEmpty()) {
+            plugin.getLogger().info("Loaded " + entries.size() + " pending Discord sends from outbox.");
+        }
+    }
+
+    private void readEntries(ConfigurationSection entriesSection, Map<String, OutboxEntry> target) {
+        if (entriesSection == null) {
+            return;
+        }
+
+        for (String id : entriesSection.getKeys(false)) {
+            ConfigurationSection section = entriesSection.getConfigurationSection(id);
+            if (section == null)
+                continue;
+
+            try {
+                OutboxEntry.Type type = OutboxEntry.Type.valueOf(section.getString("type", ""));
+                OutboxEntry entry = new OutboxEntry(id, type, section.getLong("created-at"));
+                entry.setShopName(section.getString("shop-name"));
+                entry.setPlayerName(section.getString("player-name"));
+                entry.setContent(section.getString("content"));
+                entry.setTitle(section.getString("title"));
+                entry.setColor(section.getInt("color"));
+                entry.setMessageId(section.getString("message-id"));
+                entry.setAttempts(section.getInt("attempts"));
+                // Retry everything immediately after a restart
+                entry.setNextAttemptAt(0);
+                target.put(id, entry);
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to load outbox entry: " + id + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Save all pending entries to file. The entries are serialized under the
+     * monitor and written outside it; a write is skipped once a later one is
+     * on disk.
+     */
+    public void save() {
+        long change;
+        String content;
+        synchronized (this) {
+            content = serialize();
+            change = ++changes;
+        }
+
+        synchronized (fileLock) {
+            if (change <= written) {
+                return;
+            }
+            // A crash or full disk mid-write must not truncate the queue
+            File tempFile = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+            try {
+                Files.writeString(tempFile.toPath(), content, StandardCharsets.UTF_8);
+                Files.move(tempFile.toPath(), dataFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written = change;
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to save Discord outbox: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queue a save on a worker thread, coalescing repeated requests.
+     */
+    private void saveAsync() {
+        if (!plugin.isEnabled()) {
+            save();
+            return;
+        }
+        if (saveQueued.compareAndSet(false, true)) {
+            plugin.getIoExecutor().run("outbox-save", () -> {
+                saveQueued.set(false);
+                save();
+            });
+        }
+    }
+
+    private String serialize() {
+        YamlConfiguration config = new YamlConfiguration();
+        writeEntries(config.createSection("entries"), entries);
+        if (!deadLetters.isEmpty()) {
+            writeEntries(config.createSection("dead-letter"), deadLetters);
+        }
+        return config.saveToString();
+    }
+
+    private static void writeEntries(ConfigurationSection entriesSection, Map<String, OutboxEntry> source) {
+        for (OutboxEntry entry : source.values()) {
+            ConfigurationSection section = entriesSection.createSection(entry.getId());
+            section.set("type", entry.getType().name());
+            section.set("created-at", entry.getCreatedAt());
+            section.set("attempts", entry.getAttempts());
+
+            if (entry.getShopName() != null) {
+                section.set("shop-name", entry.getShopName());
+            }
+            if (entry.getPlayerName() != null) {
+                section.set("player-name", entry.getPlayerName());
+            }
+            if (entry.getContent() != null) {
+                section.set("content", entry.getContent());
+            }
+            if (entry.getTitle() != null) {
+                section.set("title", entry.getTitle());
+                section.set("color", entry.getColor());
+            }
+            if (entry.getMessageId() != null) {
+                section.set("message-id", entry.getMessageId());
+            }
+        }
+    }
+
+    /**
+     * Add an entry, queue a save and try to deliver it right away.
+     */
+    public void enqueue(OutboxEntry entry) {
+        synchronized (this) {
+            entries.put(entry.getId(), entry);
+        }
+        saveAsync();
+        flush();
+    }
+
+    /**
+     * Drop a queued approval request for a shop that was cancelled before it
+     * reached Discord.
+     *
+     * @return true if an undelivered request was removed
+     */
+    public boolean cancelApprovalRequest(String shopName) {
+        boolean removed;
+        synchronized (this) {
+            // A delivered request is removed from Discord once its message ID is linked
+            removed = entries.values().removeIf(entry -> entry.getType() == OutboxEntry.Type.APPROVAL_REQUEST
+                    && shopName.equals(entry.getShopName())
+                    && !entry.isDelivered()
+                    && !inFlight.contains(entry.getId()));
+        }
+        if (removed) {
+            saveAsync();
+        }
+        return removed;
+    }
+
+    /**
+     * Check whether an approval request for a shop is still waiting to be sent.
+     */
+    public synchronized boolean hasPendingApproval(String shopName) {
+        return entries.values().stream()
+                .anyMatch(entry -> entry.getType() == OutboxEntry.Type.APPROVAL_REQUEST
+                        && shopName.equals(entry.getShopName()));
+    }
+
+    /**
+     * Number of entries waiting for delivery.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Attempt delivery of every entry whose backoff has elapsed.
+     * Sends are queued through JDA, so this never blocks on Discord.
+     */
+    public void flush() {
+        // Entries queued during shutdown stay in the file for the next start
+        if (!discordManager.isReady() || plugin.getShutdownCoordinator().isShuttingDown()) {
+            return;
+        }
+
+        List<OutboxEntry> due = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            for (OutboxEntry entry : entries.values()) {
+                if (entry.isDue(now) && inFlight.add(entry.getId())) {
+                    due.add(entry);
+                }
+            }
+        }
+
+        for (OutboxEntry entry : due) {
+            long start = System.nanoTime();
+            String type = entry.getType().name().toLowerCase(Locale.ROOT);
+            CompletableFuture<String> delivery;
+            try {
+                delivery = deliver(entry);
+            } catch (Exception e) {
+                delivery = CompletableFuture.failedFuture(e);
+            }
+
+            // Record the outcome on an I/O thread rather than a JDA callback thread
+            CompletableFuture<String> recorded = delivery.whenCompleteAsync((messageId, error) -> {
+                if (error == null) {
+                    plugin.getMetrics().recordSince(Metric.DISCORD_SEND, type, start);
+                    onDelivered(entry, messageId);
+                } else {
+                    plugin.getMetrics().increment(Metric.DISCORD_SEND_FAILURES, type);
+                    onFailed(entry, error);
+                }
+            }, plugin.getIoExecutor().executor());
+            plugin.getShutdownCoordinator().track("Discord " + entry.getType() + " " + entry.getId()
+                    + (entry.getShopName() != null ? " (" + entry.getShopName() + ")" : ""), recorded);
+        }
+    }
+
+    private CompletableFuture<String> deliver(OutboxEntry entry) {
+        return switch (entry.getType()) {
+            case APPROVAL_REQUEST -> {
+                MarkerData data = plugin.getMarkerStorage().getMarker(entry.getShopName());
+                if (data == null || data.getStatus() != MarkerStatus.PENDING) {
+                    // Application was cancelled or decided while queued
+                    yield CompletableFuture.completedFuture(null);
+                }
+                yield discordManager.sendApprovalRequest(data, entry.getPlayerName());
+            }
+            case ADS_NOTIFICATION -> discordManager.deliverAdsNotification(entry.getContent());
+            case ADS_DIGEST -> discordManager.deliverAdsDigestPage(entry.getTitle(), entry.getContent(),
+                    entry.getColor(), entry.getCreatedAt());
+            case HISTORY -> discordManager.deliverHistoryMessage(entry.getTitle(), entry.getContent(),
+                    entry.getColor(), entry.getCreatedAt());
+            case DELETE_MESSAGE -> discordManager.deliverApprovalDeletion(entry.getMessageId());
+            case ADD_REACTION -> {
+                MarkerData data = plugin.getMarkerStorage().getMarker(entry.getShopName());
+                if (data == null || data.getStatus() != MarkerStatus.PENDING) {
+                    // Application was cancelled or decided meanwhile
+                    yield CompletableFuture.completedFuture(null);
+                }
+                yield discordManager.deliverApprovalReaction(entry.getMessageId(), entry.getContent());
+            }
+        };
+    }
+
+    private void onDelivered(OutboxEntry entry, String messageId) {
+        boolean attach = entry.getType() == OutboxEntry.Type.APPROVAL_REQUEST && messageId != null;
+        synchronized (this) {
+            inFlight.remove(entry.getId());
+            if (attach) {
+                // Kept until the marker with the message ID is saved
+                entry.setMessageId(messageId);
+            } else {
+                entries.remove(entry.getId());
+            }
+        }
+        saveAsync();
+
+        if (attach) {
+            plugin.getPluginScheduler().runGlobal(() -> attachApprovalMessage(entry));
+        }
+    }
+
+    private void onFailed(OutboxEntry entry, Throwable error) {
+        int attempts = entry.getAttempts() + 1;
+        long delaySeconds = backoffSeconds(attempts);
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof DiscordGatewayException gatewayError && gatewayError.isRateLimited()) {
+            // Never retry before Discord allows it
+            delaySeconds = Math.max(delaySeconds, (gatewayError.getRetryAfterMillis() + 999) / 1000);
+        }
+
+        int maxAttempts = plugin.getConfigManager().getOutboxMaxAttempts();
+        boolean dead = maxAttempts > 0 && attempts >= maxAttempts;
+
+        synchronized (this) {
+            inFlight.remove(entry.getId());
+            if (!entries.containsKey(entry.getId())) {
+                return;
+            }
+            entry.setAttempts(attempts);
+            entry.setNextAttemptAt(System.currentTimeMillis() + delaySeconds * 1000L);
+            if (dead) {
+                // Kept in the file for inspection, but never retried
+                entries.remove(entry.getId());
+                deadLetters.put(entry.getId(), entry);
+            }
+        }
+        saveAsync();
+
+        if (dead) {
+            plugin.getLogger().severe("[Outbox] Giving up on " + entry.getType() + " " + entry.getId()
+                    + (entry.getShopName() != null ? " (" + entry.getShopName() + ")" : "") + " after "
+                    + attempts + " attempts, moved to the dead-letter section of outbox.yml: "
+                    + error.getMessage());
+            return;
+        }
+        plugin.getLogger().warning("[Outbox] Failed to deliver " + entry.getType() + " (attempt " + attempts
+                + "), retrying in " + delaySeconds + "s: " + error.getMessage());
+    }
+
+    private long backoffSeconds(int attempts) {
+        long base = plugin.getConfigManager().getOutboxRetryBaseSeconds();
+        long max = plugin.getConfigManager().getOutboxRetryMaxSeconds();
+        int exponent = Math.min(attempts - 1, 20);
+        return Math.min(max, base << exponent);
+    }
+
+    /**
+     * Link a delivered approval message to its marker, or remove the message if
+     * the application disappeared while the request was in flight. The entry
+     * is dropped once the marker is saved. Must be called on the main thread.
+     */
+    private void attachApprovalMessage(OutboxEntry entry) {
+        String messageId = entry.getMessageId();
+        MarkerData data = plugin.getMarkerStorage().getMarker(entry.getShopName());
+
+        if (data == null || data.getStatus() != MarkerStatus.PENDING) {
+            enqueueDeletion(messageId);
+            remove(entry);
+            return;
+        }
+
+        plugin.getMarkerStorage().batch(() -> {
+            data.setDiscordMessageId(messageId);
+            plugin.getMarkerStorage().updateMarker(data);
+        }, () -> remove(entry));
+        discordManager.onQueueChanged();
+
+        Player owner = Bukkit.getPlayer(data.getOwnerUUID());
+        if (owner != null && entry.getAttempts() > 0) {
+            plugin.getPluginScheduler().message(owner,
+                    plugin.getConfigManager().message("commercial-pending", "shop", data.getShopName()));
+        }
+    }
+
+    private void remove(OutboxEntry entry) {
+        synchronized (this) {
+            entries.remove(entry.getId());
+        }
+        saveAsync();
+    }
+
+    /**
+     * Queue deletion of a message in the approval channel.
+     */
+    public void enqueueDeletion(String messageId) {
+        OutboxEntry entry = new OutboxEntry(OutboxEntry.Type.DELETE_MESSAGE);
+        entry.setMessageId(messageId);
+        enqueue(entry);
+    }
+}
@@ -0,0 +1,156 @@
+package net.inecat.dynmapads.discord;
+
+import java.util.UUID;
+
+/**
+ * A pending Discord send persisted in the outbox.
+ */
+public class OutboxEntry {
+    /**
+     * Kind of Discord operation an entry represents.
+     */
+    public enum Type {
+        /**
+         * Approval request embed for a pending commercial facility.
+         */
+        APPROVAL_REQUEST,
+
+        /**
+         * Plain text advertisement notification.
+         */
+        ADS_NOTIFICATION,
+
+        /**
+         * Page of the ads digest embed.
+         */
+        ADS_DIGEST,
+
+        /**
+         * History embed in the approval channel.
+         */
+        HISTORY,
+
+        /**
+         * Deletion of a message in the approval channel.
+         */
+        DELETE_MESSAGE,
+
+        /**
+         * Approve or reject reaction that could not be added to an approval request.
+         */
+        ADD_REACTION
+    }
+
+    private final String id;
+    private final Type type;
+    private final long createdAt;
+    private String shopName;
+    private String playerName;
+    private String content;
+    private String title;
+    private int color;
+    private String messageId;
+    private int attempts;
+    private long nextAttemptAt;
+
+    public OutboxEntry(Type type) {
+        this(UUID.randomUUID().toString(), type, System.currentTimeMillis());
+    }
+
+    // Constructor for loading from storage
+    public OutboxEntry(String id, Type type, long createdAt) {
+        this.id = id;
+        this.type = type;
+        this.createdAt = createdAt;
+        this.attempts = 0;
+        this.nextAttemptAt = 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getShopName() {
+        return shopName;
+    }
+
+    public void setShopName(String shopName) {
+        this.shopName = shopName;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public void setPlayerName(String playerName) {
+        this.playerName = playerName;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public void setColor(int color) {
+        this.color = color;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * Whether this approval request reached Discord and only waits for its
+     * message ID to be stored on the marker.
+     */
+    public boolean isDelivered() {
+        return type == Type.APPROVAL_REQUEST && messageId != null;
+    }
+
+    public boolean isDue(long now) {
+        return !isDelivered() && now >= nextAttemptAt;
+    }
+}
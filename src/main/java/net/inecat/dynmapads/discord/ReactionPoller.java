@@ -0,0 +1,92 @@
+package net.inecat.dynmapads.discord;
+
+import net.inecat.dynmapads.discord.gateway.DiscordGateway;
+import net.inecat.dynmapads.discord.gateway.DiscordMessage;
+import net.inecat.dynmapads.discord.gateway.DiscordUser;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Reads approval decisions from the reactions on an approval message.
+ * Only depends on the gateway, so it can be driven offline.
+ */
+public class ReactionPoller {
+    public static final String APPROVE_EMOJI = "✅";
+    public static final String APPROVE_EMOJI_NAME = "white_check_mark";
+    public static final String REJECT_EMOJI = "❌";
+    public static final String REJECT_EMOJI_NAME = "x";
+
+    private final DiscordGateway gateway;
+    private final Supplier<String> defaultModeratorName;
+
+    /**
+     * @param defaultModeratorName name used when the reacting user cannot be looked up
+     */
+    public ReactionPoller(DiscordGateway gateway, Supplier<String> defaultModeratorName) {
+        this.gateway = gateway;
+        this.defaultModeratorName = defaultModeratorName;
+    }
+
+    /**
+     * A moderator's decision on an approval message.
+     */
+    public record Decision(String messageId, boolean approve, String moderatorName) {
+    }
+
+    /**
+     * Classify an emoji name.
+     *
+     * @return TRUE for approval, FALSE for rejection, null for anything else
+     */
+    public static Boolean classify(String emojiName) {
+        if (APPROVE_EMOJI.equals(emojiName) || APPROVE_EMOJI_NAME.equals(emojiName)) {
+            return Boolean.TRUE;
+        }
+        if (REJECT_EMOJI.equals(emojiName) || REJECT_EMOJI_NAME.equals(emojiName)) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * Check a single approval message for a moderator decision.
+     * Approval wins if both reactions are present.
+     */
+    public CompletableFuture<Optional<Decision>> check(String channelId, String messageId) {
+        return gateway.fetchMessage(channelId, messageId).thenCompose(message -> {
+            // Check reaction count (bot adds 1, so we need more than 1)
+            if (message.getReactionCount(APPROVE_EMOJI, APPROVE_EMOJI_NAME) > 1) {
+                return resolveDecision(channelId, message, APPROVE_EMOJI, true);
+            }
+            if (message.getReactionCount(REJECT_EMOJI, REJECT_EMOJI_NAME) > 1) {
+                return resolveDecision(channelId, message, REJECT_EMOJI, false);
+            }
+            return CompletableFuture.completedFuture(Optional.empty());
+        });
+    }
+
+    private CompletableFuture<Optional<Decision>> resolveDecision(String channelId, DiscordMessage message,
+            String emoji, boolean approve) {
+        return gateway.fetchReactionUsers(channelId, message.id(), emoji)
+                .handle((users, error) -> {
+                    // The user lookup is best effort, the decision stands without it
+                    String name = defaultModeratorName.get();
+                    if (error == null) {
+                        name = firstHumanName(users);
+                    }
+                    return Optional.of(new Decision(message.id(), approve, name));
+                });
+    }
+
+    private String firstHumanName(List<DiscordUser> users) {
+        for (DiscordUser user : users) {
+            if (!user.bot() && user.name() != null) {
+                return user.name();
+            }
+        }
+        return defaultModeratorName.get();
+    }
+}
@@ -0,0 +1,7 @@
+package net.inecat.dynmapads.discord.gateway;
+
+/**
+ * A button click, already acknowledged to Discord by the gateway.
+ */
+public record ButtonEvent(String channelId, String messageId, String buttonId, DiscordUser user) {
+}
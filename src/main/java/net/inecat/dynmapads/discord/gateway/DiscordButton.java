@@ -0,0 +1,20 @@
+package net.inecat.dynmapads.discord.gateway;
+
+/**
+ * Interactive button attached to a message.
+ *
+ * @param id    custom ID delivered back in {@link ButtonEvent#buttonId()}
+ * @param label text shown on the button
+ * @param style visual style
+ */
+public record DiscordButton(String id, String label, Style style) {
+
+    /**
+     * Button colors supported by the plugin.
+     */
+    public enum Style {
+        SUCCESS,
+        DANGER,
+        SECONDARY
+    }
+}
@@ -0,0 +1,83 @@
+package net.inecat.dynmapads.discord.gateway;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Library independent description of a Discord embed.
+ */
+public class DiscordEmbed {
+    private String title;
+    private String description;
+    private int color;
+    private String footer;
+    private Instant timestamp;
+    private final List<Field> fields = new ArrayList<>();
+
+    /**
+     * A single embed field.
+     */
+    public record Field(String name, String value, boolean inline) {
+    }
+
+    public DiscordEmbed setTitle(String title) {
+        this.title = title;
+        return this;
+    }
+
+    public DiscordEmbed setDescription(String description) {
+        this.description = description;
+        return this;
+    }
+
+    public DiscordEmbed setColor(java.awt.Color color) {
+        this.color = color.getRGB() & 0xFFFFFF;
+        return this;
+    }
+
+    public DiscordEmbed setColor(int rgb) {
+        this.color = rgb & 0xFFFFFF;
+        return this;
+    }
+
+    public DiscordEmbed setFooter(String footer) {
+        this.footer = footer;
+        return this;
+    }
+
+    public DiscordEmbed setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+        return this;
+    }
+
+    public DiscordEmbed addField(String name, String value, boolean inline) {
+        fields.add(new Field(name, value, inline));
+        return this;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public String getFooter() {
+        return footer;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public List<Field> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+}
@@ -0,0 +1,105 @@
+package net.inecat.dynmapads.discord.gateway;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Minimal set of Discord operations used by the plugin.
+ * Production uses {@link DiscordSrvGateway}; offline tooling can supply an
+ * in-memory implementation. All futures complete exceptionally with a
+ * {@link DiscordGatewayException} on failure.
+ */
+public interface DiscordGateway {
+    /**
+     * Check whether the gateway can currently reach Discord.
+     */
+    boolean isReady();
+
+    /**
+     * Send a plain text message.
+     *
+     * @return future completed with the new message ID
+     */
+    CompletableFuture<String> sendMessage(String channelId, String content);
+
+    /**
+     * Send an embed message.
+     *
+     * @return future completed with the new message ID
+     */
+    default CompletableFuture<String> sendEmbed(String channelId, DiscordEmbed embed) {
+        return sendEmbed(channelId, embed, List.of());
+    }
+
+    /**
+     * Send an embed message with a row of buttons.
+     *
+     * @return future completed with the new message ID
+     */
+    CompletableFuture<String> sendEmbed(String channelId, DiscordEmbed embed, List<DiscordButton> buttons);
+
+    /**
+     * Replace the buttons of an existing message. An empty list removes them.
+     */
+    CompletableFuture<Void> setButtons(String channelId, String messageId, List<DiscordButton> buttons);
+
+    /**
+     * Replace the embed of an existing message.
+     */
+    CompletableFuture<Void> editEmbed(String channelId, String messageId, DiscordEmbed embed);
+
+    /**
+     * Delete a message. Deleting a message that no longer exists succeeds.
+     */
+    CompletableFuture<Void> deleteMessage(String channelId, String messageId);
+
+    /**
+     * Pin a message in its channel.
+     */
+    CompletableFuture<Void> pinMessage(String channelId, String messageId);
+
+    /**
+     * Fetch a single message with its reaction counts.
+     */
+    CompletableFuture<DiscordMessage> fetchMessage(String channelId, String messageId);
+
+    /**
+     * Fetch the most recent messages of a channel, newest first.
+     */
+    CompletableFuture<List<DiscordMessage>> fetchHistory(String channelId, int limit);
+
+    /**
+     * Add a reaction as the bot user.
+     */
+    CompletableFuture<Void> addReaction(String channelId, String messageId, String emoji);
+
+    /**
+     * Fetch the users that reacted to a message with an emoji.
+     */
+    CompletableFuture<List<DiscordUser>> fetchReactionUsers(String channelId, String messageId, String emoji);
+
+    /**
+     * Register the handler run when the connection to Discord becomes ready,
+     * replacing any previous one. Passing null stops delivery. Not run for a
+     * connection that is already ready; check {@link #isReady()} as well.
+     */
+    void setReadyHandler(Runnable handler);
+
+    /**
+     * Register the handler for reaction add events, replacing any previous one.
+     * Passing null stops event delivery.
+     */
+    void setReactionHandler(Consumer<ReactionEvent> handler);
+
+    /**
+     * Register the handler for button clicks, replacing any previous one.
+     * The handler returns whether this server takes the click; only taken
+     * clicks are acknowledged, so another server can answer the rest.
+     * Passing null stops event delivery.
+     *
+     * @return false if interactions are not supported by the underlying library
+     */
+    boolean setButtonHandler(Predicate<ButtonEvent> handler);
+}
@@ -0,0 +1,66 @@
+package net.inecat.dynmapads.discord.gateway;
+
+/**
+ * Failure of a gateway operation.
+ */
+public class DiscordGatewayException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+    private final boolean notFound;
+
+    public DiscordGatewayException(String message) {
+        this(message, null, -1);
+    }
+
+    public DiscordGatewayException(String message, Throwable cause) {
+        this(message, cause, -1);
+    }
+
+    public DiscordGatewayException(String message, Throwable cause, long retryAfterMillis) {
+        this(message, cause, retryAfterMillis, false);
+    }
+
+    private DiscordGatewayException(String message, Throwable cause, long retryAfterMillis, boolean notFound) {
+        super(message, cause);
+        this.retryAfterMillis = retryAfterMillis;
+        this.notFound = notFound;
+    }
+
+    /**
+     * Create an exception for a 429 response.
+     */
+    public static DiscordGatewayException rateLimited(long retryAfterMillis) {
+        return new DiscordGatewayException("Rate limited, retry after " + retryAfterMillis + "ms", null,
+                retryAfterMillis);
+    }
+
+    /**
+     * Create an exception for a message that does not exist (anymore).
+     */
+    public static DiscordGatewayException notFound(String message, Throwable cause) {
+        return new DiscordGatewayException(message, cause, -1, true);
+    }
+
+    /**
+     * Check whether Discord rejected the request with a rate limit.
+     */
+    public boolean isRateLimited() {
+        return retryAfterMillis >= 0;
+    }
+
+    /**
+     * Delay requested by Discord, or -1 if this is not a rate limit.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Check whether the message the request refers to is unknown to Discord,
+     * for example because a moderator deleted it.
+     */
+    public boolean isNotFound() {
+        return notFound;
+    }
+}
@@ -0,0 +1,34 @@
+package net.inecat.dynmapads.discord.gateway;
+
+import java.util.List;
+
+/**
+ * Snapshot of a Discord message as returned by the gateway.
+ *
+ * @param id        message ID
+ * @param authorBot whether the author is a bot
+ * @param content   raw text content
+ * @param reactions reaction counts including the bot's own reactions
+ */
+public record DiscordMessage(String id, boolean authorBot, String content, List<Reaction> reactions) {
+
+    /**
+     * Count of a single emoji on a message.
+     */
+    public record Reaction(String emoji, int count) {
+    }
+
+    /**
+     * Get the reaction count for any of the given emoji names.
+     */
+    public int getReactionCount(String... emojiNames) {
+        for (Reaction reaction : reactions) {
+            for (String name : emojiNames) {
+                if (name.equals(reaction.emoji())) {
+                    return reaction.count();
+                }
+            }
+        }
+        return 0;
+    }
+}
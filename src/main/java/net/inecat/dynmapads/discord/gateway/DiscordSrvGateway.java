@@ -0,0 +1,385 @@
+package net.inecat.dynmapads.discord.gateway;
+
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.api.Subscribe;
+import github.scarsz.discordsrv.api.events.DiscordReadyEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.EmbedBuilder;
+import github.scarsz.discordsrv.dependencies.jda.api.JDA;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.Message;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.MessageEmbed;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.MessageReaction;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.User;
+import github.scarsz.discordsrv.dependencies.jda.api.events.message.react.MessageReactionAddEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.exceptions.ErrorResponseException;
+import github.scarsz.discordsrv.dependencies.jda.api.exceptions.RateLimitedException;
+import github.scarsz.discordsrv.dependencies.jda.api.hooks.ListenerAdapter;
+import github.scarsz.discordsrv.dependencies.jda.api.requests.ErrorResponse;
+import github.scarsz.discordsrv.dependencies.jda.api.requests.RestAction;
+import github.scarsz.discordsrv.dependencies.jda.api.requests.restaction.MessageAction;
+import github.scarsz.discordsrv.util.DiscordUtil;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Gateway backed by the JDA instance bundled with DiscordSRV. Buttons are
+ * handled by {@link DiscordSrvInteractions}, which is only loaded when the
+ * bundled JDA supports interactions.
+ */
+public class DiscordSrvGateway implements DiscordGateway {
+    private static final String BUTTON_EVENT_CLASS =
+            "github.scarsz.discordsrv.dependencies.jda.api.events.interaction.ButtonClickEvent";
+
+    private final Logger logger;
+    private final JdaListener jdaListener = new JdaListener();
+    private final ReadyListener readyListener = new ReadyListener();
+    private volatile Runnable readyHandler;
+    private boolean readySubscribed;
+    private volatile Consumer<ReactionEvent> reactionHandler;
+    private volatile Predicate<ButtonEvent> buttonHandler;
+    private JDA registeredJda;
+    private Object buttonListener;
+    private JDA registeredButtonJda;
+    private volatile Boolean interactionsSupported;
+
+    public DiscordSrvGateway(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Get JDA instance from DiscordSRV.
+     */
+    private JDA getJda() {
+        try {
+            return DiscordUtil.getJda();
+        } catch (Exception e) {
+            logger.severe("Exception in getJda(): " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return getJda() != null;
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessage(String channelId, String content) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        return toFuture(channel.sendMessage(content)).thenApply(Message::getId);
+    }
+
+    @Override
+    public CompletableFuture<String> sendEmbed(String channelId, DiscordEmbed embed, List<DiscordButton> buttons) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        MessageAction action = channel.sendMessageEmbeds(toJda(embed));
+        if (!buttons.isEmpty() && hasInteractions()) {
+            action = DiscordSrvInteractions.withButtons(action, buttons);
+        }
+        return toFuture(action).thenApply(Message::getId);
+    }
+
+    @Override
+    public CompletableFuture<Void> setButtons(String channelId, String messageId, List<DiscordButton> buttons) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        if (!hasInteractions()) {
+            return CompletableFuture.failedFuture(
+                    new DiscordGatewayException("Bundled JDA has no button interaction support"));
+        }
+        return toFuture(DiscordSrvInteractions.setButtons(channel, messageId, buttons)).thenApply(message -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> editEmbed(String channelId, String messageId, DiscordEmbed embed) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        return toFuture(channel.editMessageEmbedsById(messageId, toJda(embed))).thenApply(message -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMessage(String channelId, String messageId) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        channel.deleteMessageById(messageId).queue(
+                v -> future.complete(null),
+                error -> {
+                    // An already deleted message counts as deleted
+                    if (error instanceof ErrorResponseException e
+                            && e.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(wrap(error));
+                    }
+                });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> pinMessage(String channelId, String messageId) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        return toFuture(channel.pinMessageById(messageId));
+    }
+
+    @Override
+    public CompletableFuture<DiscordMessage> fetchMessage(String channelId, String messageId) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        return toFuture(channel.retrieveMessageById(messageId)).thenApply(this::toMessage);
+    }
+
+    @Override
+    public CompletableFuture<List<DiscordMessage>> fetchHistory(String channelId, int limit) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        return toFuture(channel.getHistory().retrievePast(Math.min(limit, 100)))
+                .thenApply(messages -> messages.stream().map(this::toMessage).toList());
+    }
+
+    @Override
+    public CompletableFuture<Void> addReaction(String channelId, String messageId, String emoji) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        return toFuture(channel.addReactionById(messageId, emoji));
+    }
+
+    @Override
+    public CompletableFuture<List<DiscordUser>> fetchReactionUsers(String channelId, String messageId,
+            String emoji) {
+        TextChannel channel = getChannel(channelId);
+        if (channel == null) {
+            return channelNotFound(channelId);
+        }
+        return toFuture(channel.retrieveMessageById(messageId)).thenCompose(message -> {
+            for (MessageReaction reaction : message.getReactions()) {
+                if (emoji.equals(reaction.getReactionEmote().getName())) {
+                    return toFuture(reaction.retrieveUsers())
+                            .thenApply(users -> users.stream().map(DiscordSrvGateway::toUser).toList());
+                }
+            }
+            return CompletableFuture.completedFuture(List.of());
+        });
+    }
+
+    @Override
+    public synchronized void setReadyHandler(Runnable handler) {
+        this.readyHandler = handler;
+
+        if (handler != null && !readySubscribed) {
+            DiscordSRV.api.subscribe(readyListener);
+            readySubscribed = true;
+        } else if (handler == null && readySubscribed) {
+            DiscordSRV.api.unsubscribe(readyListener);
+            readySubscribed = false;
+        }
+    }
+
+    @Override
+    public synchronized void setReactionHandler(Consumer<ReactionEvent> handler) {
+        this.reactionHandler = handler;
+
+        if (registeredJda != null) {
+            registeredJda.removeEventListener(jdaListener);
+            registeredJda = null;
+        }
+
+        if (handler != null) {
+            JDA jda = getJda();
+            if (jda != null) {
+                jda.addEventListener(jdaListener);
+                registeredJda = jda;
+            } else {
+                logger.warning("JDA is null - reaction events will not be delivered");
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean setButtonHandler(Predicate<ButtonEvent> handler) {
+        this.buttonHandler = handler;
+
+        if (registeredButtonJda != null) {
+            registeredButtonJda.removeEventListener(buttonListener);
+            registeredButtonJda = null;
+        }
+
+        if (handler == null) {
+            return true;
+        }
+
+        if (!hasInteractions()) {
+            logger.warning("Bundled JDA has no button interaction support");
+            return false;
+        }
+
+        JDA jda = getJda();
+        if (jda == null) {
+            logger.warning("JDA is null - button events will not be delivered");
+            return false;
+        }
+
+        if (buttonListener == null) {
+            buttonListener = DiscordSrvInteractions.newButtonListener(() -> buttonHandler, logger);
+        }
+        jda.addEventListener(buttonListener);
+        registeredButtonJda = jda;
+        return true;
+    }
+
+    /**
+     * Whether the bundled JDA has button interactions. Older DiscordSRV builds
+     * bundle a JDA without them.
+     */
+    private boolean hasInteractions() {
+        Boolean supported = interactionsSupported;
+        if (supported == null) {
+            try {
+                Class.forName(BUTTON_EVENT_CLASS, false, getClass().getClassLoader());
+                supported = true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                supported = false;
+            }
+            interactionsSupported = supported;
+        }
+        return supported;
+    }
+
+    private TextChannel getChannel(String channelId) {
+        if (channelId == null || channelId.isEmpty()) {
+            return null;
+        }
+        try {
+            return DiscordUtil.getTextChannelById(channelId);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static <T> CompletableFuture<T> channelNotFound(String channelId) {
+        return CompletableFuture.failedFuture(new DiscordGatewayException("Channel not found: " + channelId));
+    }
+
+    private static <T> CompletableFuture<T> toFuture(RestAction<T> action) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            action.queue(future::complete, error -> future.completeExceptionally(wrap(error)));
+        } catch (Exception e) {
+            future.completeExceptionally(wrap(e));
+        }
+        return future;
+    }
+
+    private static DiscordGatewayException wrap(Throwable error) {
+        if (error instanceof DiscordGatewayException gatewayException) {
+            return gatewayException;
+        }
+        if (error instanceof RateLimitedException rateLimited) {
+            return new DiscordGatewayException(error.getMessage(), error, rateLimited.getRetryAfter());
+        }
+        if (error instanceof ErrorResponseException e && e.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
+            return DiscordGatewayException.notFound(error.getMessage(), error);
+        }
+        return new DiscordGatewayException(String.valueOf(error.getMessage()), error);
+    }
+
+    private static MessageEmbed toJda(DiscordEmbed embed) {
+        EmbedBuilder builder = new EmbedBuilder()
+                .setTitle(embed.getTitle())
+                .setColor(new Color(embed.getColor()))
+                .setDescription(embed.getDescription())
+                .setFooter(embed.getFooter());
+        for (DiscordEmbed.Field field : embed.getFields()) {
+            builder.addField(field.name(), field.value(), field.inline());
+        }
+        if (embed.getTimestamp() != null) {
+            builder.setTimestamp(embed.getTimestamp());
+        }
+        return builder.build();
+    }
+
+    private DiscordMessage toMessage(Message message) {
+        List<DiscordMessage.Reaction> reactions = new ArrayList<>();
+        for (MessageReaction reaction : message.getReactions()) {
+            try {
+                reactions.add(new DiscordMessage.Reaction(reaction.getReactionEmote().getName(), reaction.getCount()));
+            } catch (Exception e) {
+                // Custom emotes without a name are irrelevant here
+            }
+        }
+        return new DiscordMessage(message.getId(), message.getAuthor().isBot(), message.getContentRaw(), reactions);
+    }
+
+    static DiscordUser toUser(User user) {
+        return new DiscordUser(user.getId(), user.getName(), user.isBot());
+    }
+
+    /**
+     * Forwards DiscordSRV's ready event to the registered handler. Public so
+     * DiscordSRV's API can invoke it reflectively.
+     */
+    public class ReadyListener {
+
+        @Subscribe
+        public void onDiscordReady(DiscordReadyEvent event) {
+            Runnable handler = readyHandler;
+            if (handler != null) {
+                handler.run();
+            }
+        }
+    }
+
+    /**
+     * Forwards JDA reaction events to the registered handler.
+     */
+    private class JdaListener extends ListenerAdapter {
+
+        @Override
+        public void onMessageReactionAdd(MessageReactionAddEvent event) {
+            Consumer<ReactionEvent> handler = reactionHandler;
+            if (handler == null) {
+                return;
+            }
+
+            String emojiName;
+            try {
+                emojiName = event.getReactionEmote().getName();
+            } catch (Exception e) {
+                return;
+            }
+
+            User user = event.getUser();
+            DiscordUser discordUser = user != null ? toUser(user) : new DiscordUser(event.getUserId(), null, false);
+            handler.accept(new ReactionEvent(event.getChannel().getId(), event.getMessageId(), emojiName,
+                    discordUser));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package net.inecat.dynmapads.discord.gateway;
+
+import github.scarsz.discordsrv.dependencies.jda.api.entities.Message;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
+import github.scarsz.discordsrv.dependencies.jda.api.events.interaction.ButtonClickEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.hooks.ListenerAdapter;
+import github.scarsz.discordsrv.dependencies.jda.api.interactions.components.ActionRow;
+import github.scarsz.discordsrv.dependencies.jda.api.interactions.components.Button;
+import github.scarsz.discordsrv.dependencies.jda.api.requests.RestAction;
+import github.scarsz.discordsrv.dependencies.jda.api.requests.restaction.MessageAction;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Button support of {@link DiscordSrvGateway}. Every reference to JDA's
+ * interaction classes lives here, so this class is only loaded once the
+ * gateway has checked that the bundled JDA has them.
+ */
+final class DiscordSrvInteractions {
+
+    private DiscordSrvInteractions() {
+    }
+
+    /**
+     * Attach a row of buttons to a message being sent.
+     */
+    static MessageAction withButtons(MessageAction action, List<DiscordButton> buttons) {
+        return action.setActionRows(ActionRow.of(toJda(buttons)));
+    }
+
+    /**
+     * Replace the buttons of a sent message; an empty list removes them.
+     */
+    static RestAction<Message> setButtons(TextChannel channel, String messageId, List<DiscordButton> buttons) {
+        ActionRow[] rows = buttons.isEmpty() ? new ActionRow[0] : new ActionRow[] { ActionRow.of(toJda(buttons)) };
+        return channel.editMessageComponentsById(messageId, rows);
+    }
+
+    /**
+     * Create a JDA listener that forwards button clicks to the handler
+     * current at the time of the click and acknowledges those it takes.
+     */
+    static Object newButtonListener(Supplier<Predicate<ButtonEvent>> handler, Logger logger) {
+        return new JdaButtonListener(handler, logger);
+    }
+
+    private static Button[] toJda(List<DiscordButton> buttons) {
+        Button[] result = new Button[buttons.size()];
+        for (int i = 0; i < buttons.size(); i++) {
+            DiscordButton button = buttons.get(i);
+            result[i] = switch (button.style()) {
+                case SUCCESS -> Button.success(button.id(), button.label());
+                case DANGER -> Button.danger(button.id(), button.label());
+                case SECONDARY -> Button.secondary(button.id(), button.label());
+            };
+        }
+        return result;
+    }
+
+    /**
+     * Forwards button clicks to the registered handler and acknowledges the
+     * clicks it takes.
+     */
+    private static class JdaButtonListener extends ListenerAdapter {
+        private final Supplier<Predicate<ButtonEvent>> handler;
+        private final Logger logger;
+
+        JdaButtonListener(Supplier<Predicate<ButtonEvent>> handler, Logger logger) {
+            this.handler = handler;
+            this.logger = logger;
+        }
+
+        @Override
+        public void onButtonClick(ButtonClickEvent event) {
+            Predicate<ButtonEvent> current = handler.get();
+            if (current == null) {
+                return;
+            }
+
+            // The handler only queues the decision, so this stays within Discord's 3 second window
+            boolean taken = current.test(new ButtonEvent(event.getChannel().getId(), event.getMessageId(),
+                    event.getComponentId(), DiscordSrvGateway.toUser(event.getUser())));
+            if (taken) {
+                event.deferEdit().queue(null, error -> logger.warning(
+                        "Failed to acknowledge button click: " + error.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package net.inecat.dynmapads.discord.gateway;
+
+/**
+ * Discord user as seen by the gateway.
+ */
+public record DiscordUser(String id, String name, boolean bot) {
+}
@@ -0,0 +1,7 @@
+package net.inecat.dynmapads.discord.gateway;
+
+/**
+ * A reaction added to a message, delivered by the gateway's event path.
+ */
+public record ReactionEvent(String channelId, String messageId, String emoji, DiscordUser user) {
+}
@@ -3,8 +3,7 @@ package net.inecat.dynmapads.dynmap;
 import net.inecat.dynmapads.DynmapAdsPlugin;
 import net.inecat.dynmapads.data.MarkerData;
 import net.inecat.dynmapads.data.MarkerStatus;
-import org.bukkit.Bukkit;
-import org.dynmap.DynmapAPI;
+import net.inecat.dynmapads.metrics.Metric;
 import org.dynmap.markers.Marker;
 import org.dynmap.markers.MarkerAPI;
 import org.dynmap.markers.MarkerSet;
@@ -14,7 +13,6 @@ import org.dynmap.markers.MarkerSet;
  */
 public class DynmapManager {
     private final DynmapAdsPlugin plugin;
-    private DynmapAPI dynmapAPI;
     private MarkerAPI markerAPI;
     private MarkerSet commercialSet;
     private MarkerSet adsSet;
@@ -26,17 +24,11 @@ public class DynmapManager {
     /**
      * Setup Dynmap integration.
      * 
+     * @param markerAPI Dynmap's marker API, or null if it is not available
      * @return true if setup was successful
      */
-    public boolean setup() {
-        org.bukkit.plugin.Plugin dynmapPlugin = Bukkit.getPluginManager().getPlugin("dynmap");
-        if (dynmapPlugin == null) {
-            plugin.getLogger().severe("Dynmap not found!");
-            return false;
-        }
-
-        dynmapAPI = (DynmapAPI) dynmapPlugin;
-        markerAPI = dynmapAPI.getMarkerAPI();
+    public boolean setup(MarkerAPI markerAPI) {
+        this.markerAPI = markerAPI;
 
         if (markerAPI == null) {
             plugin.getLogger().severe("Dynmap Marker API not available!");
@@ -49,7 +41,8 @@ public class DynmapManager {
 
         commercialSet = markerAPI.getMarkerSet(commercialSetId);
         if (commercialSet == null) {
-            commercialSet = markerAPI.createMarkerSet(commercialSetId, "商業施設", null, false);
+            commercialSet = markerAPI.createMarkerSet(commercialSetId,
+                    plugin.getConfigManager().text("dynmap-commercial-set"), null, false);
             if (commercialSet != null) {
                 commercialSet.setHideByDefault(false);
                 commercialSet.setLayerPriority(10);
@@ -58,7 +51,7 @@ public class DynmapManager {
 
         adsSet = markerAPI.getMarkerSet(adsSetId);
         if (adsSet == null) {
-            adsSet = markerAPI.createMarkerSet(adsSetId, "広告", null, false);
+            adsSet = markerAPI.createMarkerSet(adsSetId, plugin.getConfigManager().text("dynmap-ads-set"), null, false);
             if (adsSet != null) {
                 adsSet.setHideByDefault(false);
                 adsSet.setLayerPriority(20);
@@ -78,40 +71,26 @@ public class DynmapManager {
      * Create a marker for a commercial facility.
      */
     public boolean createCommercialMarker(MarkerData data, String ownerName) {
-        if (commercialSet == null)
-            return false;
-
-        String markerId = sanitizeMarkerId(data.getShopName());
-        String html = buildHtml(data, ownerName, false);
-
-        Marker marker = commercialSet.createMarker(
-                markerId,
-                data.getShopName(),
-                data.getWorld(),
-                data.getX(),
-                data.getY(),
-                data.getZ(),
-                markerAPI.getMarkerIcon("default"),
-                false);
-
-        if (marker != null) {
-            marker.setDescription(html);
-            return true;
-        }
-        return false;
+        return plugin.getTickWatchdog().measure("dynmap:create",
+                () -> createMarker(commercialSet, data, ownerName, false));
     }
 
     /**
      * Create a marker for an advertisement.
      */
     public boolean createAdsMarker(MarkerData data, String ownerName) {
-        if (adsSet == null)
+        return plugin.getTickWatchdog().measure("dynmap:create",
+                () -> createMarker(adsSet, data, ownerName, true));
+    }
+
+    private boolean createMarker(MarkerSet set, MarkerData data, String ownerName, boolean includeAds) {
+        if (set == null)
             return false;
 
         String markerId = sanitizeMarkerId(data.getShopName());
-        String html = buildHtml(data, ownerName, true);
+        String html = buildHtml(data, ownerName, includeAds);
 
-        Marker marker = adsSet.createMarker(
+        Marker marker = set.createMarker(
                 markerId,
                 data.getShopName(),
                 data.getWorld(),
@@ -123,6 +102,7 @@ public class DynmapManager {
 
         if (marker != null) {
             marker.setDescription(html);
+            plugin.getMetrics().increment(Metric.DYNMAP_MUTATIONS, "create");
             return true;
         }
         return false;
@@ -132,29 +112,25 @@ public class DynmapManager {
      * Delete a marker from commercial set.
      */
     public boolean deleteCommercialMarker(String shopName) {
-        if (commercialSet == null)
-            return false;
-
-        String markerId = sanitizeMarkerId(shopName);
-        Marker marker = commercialSet.findMarker(markerId);
-        if (marker != null) {
-            marker.deleteMarker();
-            return true;
-        }
-        return false;
+        return plugin.getTickWatchdog().measure("dynmap:delete", () -> removeMarker(commercialSet, shopName));
     }
 
     /**
      * Delete a marker from ads set.
      */
     public boolean deleteAdsMarker(String shopName) {
-        if (adsSet == null)
+        return plugin.getTickWatchdog().measure("dynmap:delete", () -> removeMarker(adsSet, shopName));
+    }
+
+    private boolean removeMarker(MarkerSet set, String shopName) {
+        if (set == null)
             return false;
 
         String markerId = sanitizeMarkerId(shopName);
-        Marker marker = adsSet.findMarker(markerId);
+        Marker marker = set.findMarker(markerId);
         if (marker != null) {
             marker.deleteMarker();
+            plugin.getMetrics().increment(Metric.DYNMAP_MUTATIONS, "delete");
             return true;
         }
         return false;
@@ -188,9 +164,10 @@ public class DynmapManager {
     }
 
     /**
-     * Build HTML description for marker popup.
+     * Build HTML description for marker popup. Package-private for the
+     * benchmarks.
      */
-    private String buildHtml(MarkerData data, String ownerName, boolean includeAds) {
+    static String buildHtml(MarkerData data, String ownerName, boolean includeAds) {
         StringBuilder html = new StringBuilder();
         html.append("<div class=\"shop-entry");
         if (includeAds && data.getStatus() == MarkerStatus.ADS) {
@@ -213,7 +190,7 @@ public class DynmapManager {
     /**
      * Escape HTML special characters.
      */
-    private String escapeHtml(String text) {
+    private static String escapeHtml(String text) {
         if (text == null)
             return "";
         return text
@@ -225,9 +202,10 @@ public class DynmapManager {
     }
 
     /**
-     * Sanitize shop name for use as marker ID.
+     * Sanitize shop name for use as marker ID. Package-private for the
+     * benchmarks.
      */
-    private String sanitizeMarkerId(String shopName) {
+    static String sanitizeMarkerId(String shopName) {
         return shopName.toLowerCase()
                 .replaceAll("[^a-z0-9_-]", "_")
                 .replaceAll("_+", "_");
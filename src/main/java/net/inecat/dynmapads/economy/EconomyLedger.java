@@ -0,0 +1,407 @@
+package net.inecat.dynmapads.economy;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Local journal of every charge and refund. Each state change is appended as
+ * one JSON line to ledger.jsonl and forced to disk before the pipeline moves
+ * on, so a change costs one short write however many entries are retained,
+ * and a transaction reported as applied survives a power loss. Refunds are
+ * journaled as soon as they are queued, so a crash never loses one.
+ * <p>
+ * Once the journal grows past the number of entries, it is compacted on an
+ * I/O thread: the journal is set aside, every entry is written to ledger.yml,
+ * replaced atomically, and the old journal is deleted. Lines carry a sequence
+ * number, so on load a line only replaces an entry it is newer than.
+ */
+public class EconomyLedger {
+    private static final int MIN_COMPACT_LINES = 1_000;
+
+    private final DynmapAdsPlugin plugin;
+    private final File dataFile;
+    private final File journalFile;
+    private final File oldJournalFile;
+    private final Map<String, LedgerEntry> entries;
+    private final Map<String, Long> sequences;
+    private final Object fileLock;
+    private final Object compactLock;
+    private final AtomicBoolean compactQueued;
+    private long sequence;
+    private FileChannel journal;
+    private int journalLines;
+
+    public EconomyLedger(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "ledger.yml");
+        this.journalFile = new File(plugin.getDataFolder(), "ledger.jsonl");
+        this.oldJournalFile = new File(plugin.getDataFolder(), "ledger.jsonl.old");
+        this.entries = new LinkedHashMap<>();
+        this.sequences = new HashMap<>();
+        this.fileLock = new Object();
+        this.compactQueued = new AtomicBoolean();
+        this.compactLock = new Object();
+    }
+
+    /**
+     * Load the ledger from file and replay the journal, dropping settled and
+     * claimed entries older than the configured retention. The result is
+     * compacted into ledger.yml right away.
+     */
+    public void load() {
+        synchronized (this) {
+            entries.clear();
+            sequences.clear();
+            sequence = 0;
+
+            if (dataFile.exists()) {
+                loadSnapshot();
+            }
+            // A journal set aside by an interrupted compaction is older than the current one
+            replay(oldJournalFile);
+            replay(journalFile);
+
+            long retentionMillis = plugin.getConfigManager().getLedgerRetentionDays() * 86_400_000L;
+            long cutoff = System.currentTimeMillis() - retentionMillis;
+            entries.values().removeIf(entry -> {
+                boolean expired = entry.getState().isSettled() && entry.isClaimed()
+                        && entry.getUpdatedAt() < cutoff;
+                if (expired) {
+                    sequences.remove(entry.getKey());
+                }
+                return expired;
+            });
+        }
+
+        save();
+    }
+
+    private void loadSnapshot() {
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+        ConfigurationSection entriesSection = config.getConfigurationSection("entries");
+
+        if (entriesSection == null) {
+            return;
+        }
+
+        for (String key : entriesSection.getKeys(false)) {
+            ConfigurationSection section = entriesSection.getConfigurationSection(key);
+            if (section == null)
+                continue;
+
+            try {
+                LedgerEntry entry = new LedgerEntry(
+                        section.getString("key", key),
+                        TransactionKind.valueOf(section.getString("kind", "")),
+                        UUID.fromString(section.getString("player", "")),
+                        section.getDouble("amount"),
+                        section.getString("reason"),
+                        section.getLong("created-at"),
+                        LedgerEntry.State.valueOf(section.getString("state", "")),
+                        section.getLong("updated-at"),
+                        // Entries written before charges were claimed are taken as claimed
+                        section.getBoolean("claimed", true));
+                put(entry, section.getLong("sequence"));
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to load ledger entry: " + key + " - " + e.getMessage());
+            }
+        }
+    }
+
+    private void replay(File file) {
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                    LedgerEntry entry = new LedgerEntry(
+                            json.get("key").getAsString(),
+                            TransactionKind.valueOf(json.get("kind").getAsString()),
+                            UUID.fromString(json.get("player").getAsString()),
+                            json.get("amount").getAsDouble(),
+                            json.has("reason") ? json.get("reason").getAsString() : null,
+                            json.get("created-at").getAsLong(),
+                            LedgerEntry.State.valueOf(json.get("state").getAsString()),
+                            json.get("updated-at").getAsLong(),
+                            json.get("claimed").getAsBoolean());
+                    long lineSequence = json.get("sequence").getAsLong();
+                    if (lineSequence > sequences.getOrDefault(entry.getKey(), -1L)) {
+                        put(entry, lineSequence);
+                    }
+                } catch (Exception e) {
+                    // A line cut short by a crash is the last one and never reached the economy
+                    plugin.getLogger().warning("Skipping unreadable ledger journal line in " + file.getName()
+                            + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to read ledger journal " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void put(LedgerEntry entry, long entrySequence) {
+        entries.put(entry.getKey(), entry);
+        sequences.put(entry.getKey(), entrySequence);
+        sequence = Math.max(sequence, entrySequence);
+    }
+
+    /**
+     * Compact the ledger: set the journal aside, write every entry to
+     * ledger.yml, replacing it atomically, and delete the old journal.
+     * Changes made meanwhile go to a new journal. Returns once the current
+     * state of every entry is on disk.
+     */
+    public void save() {
+        synchronized (compactLock) {
+            synchronized (fileLock) {
+                closeJournal();
+                try {
+                    if (journalFile.exists()) {
+                        if (oldJournalFile.exists()) {
+                            // The previous compaction failed; keep both journals for the next load
+                            Files.write(oldJournalFile.toPath(), Files.readAllBytes(journalFile.toPath()),
+                                    StandardOpenOption.APPEND);
+                            Files.delete(journalFile.toPath());
+                        } else {
+                            Files.move(journalFile.toPath(), oldJournalFile.toPath(),
+                                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        }
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().severe("Failed to set the ledger journal aside: " + e.getMessage());
+                    return;
+                }
+                journalLines = 0;
+            }
+
+            // Every line of the old journal was numbered before it was written, so the copy covers it
+            List<LedgerEntry> snapshot = new ArrayList<>();
+            List<Long> snapshotSequences = new ArrayList<>();
+            synchronized (this) {
+                for (LedgerEntry entry : entries.values()) {
+                    snapshot.add(copy(entry));
+                    snapshotSequences.add(sequences.getOrDefault(entry.getKey(), 0L));
+                }
+            }
+
+            if (writeFile(snapshot, snapshotSequences)) {
+                try {
+                    Files.deleteIfExists(oldJournalFile.toPath());
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Failed to delete the old ledger journal: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static LedgerEntry copy(LedgerEntry entry) {
+        return new LedgerEntry(entry.getKey(), entry.getKind(), entry.getPlayerUUID(), entry.getAmount(),
+                entry.getReason(), entry.getCreatedAt(), entry.getState(), entry.getUpdatedAt(), entry.isClaimed());
+    }
+
+    private boolean writeFile(List<LedgerEntry> snapshot, List<Long> snapshotSequences) {
+        YamlConfiguration config = new YamlConfiguration();
+        ConfigurationSection entriesSection = config.createSection("entries");
+
+        for (int index = 0; index < snapshot.size(); index++) {
+            LedgerEntry entry = snapshot.get(index);
+            // Keys may contain characters that YAML paths treat specially
+            ConfigurationSection section = entriesSection.createSection(String.valueOf(index));
+            section.set("key", entry.getKey());
+            section.set("kind", entry.getKind().name());
+            section.set("player", entry.getPlayerUUID().toString());
+            section.set("amount", entry.getAmount());
+            if (entry.getReason() != null) {
+                section.set("reason", entry.getReason());
+            }
+            section.set("created-at", entry.getCreatedAt());
+            section.set("state", entry.getState().name());
+            section.set("updated-at", entry.getUpdatedAt());
+            if (!entry.isClaimed()) {
+                section.set("claimed", false);
+            }
+            section.set("sequence", snapshotSequences.get(index));
+        }
+
+        File tempFile = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+        try {
+            Files.writeString(tempFile.toPath(), config.saveToString(), StandardCharsets.UTF_8);
+            Files.move(tempFile.toPath(), dataFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save economy ledger: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Number the current state of an entry and render it as a journal line.
+     * Must be called under the ledger's monitor.
+     */
+    private String journalLine(LedgerEntry entry) {
+        long lineSequence = ++sequence;
+        sequences.put(entry.getKey(), lineSequence);
+
+        JsonObject json = new JsonObject();
+        json.addProperty("sequence", lineSequence);
+        json.addProperty("key", entry.getKey());
+        json.addProperty("kind", entry.getKind().name());
+        json.addProperty("player", entry.getPlayerUUID().toString());
+        json.addProperty("amount", entry.getAmount());
+        if (entry.getReason() != null) {
+            json.addProperty("reason", entry.getReason());
+        }
+        json.addProperty("created-at", entry.getCreatedAt());
+        json.addProperty("state", entry.getState().name());
+        json.addProperty("updated-at", entry.getUpdatedAt());
+        json.addProperty("claimed", entry.isClaimed());
+        return json.toString();
+    }
+
+    /**
+     * Append a line to the journal and return once it is on disk. Queues a
+     * compaction once the journal outgrows the entries it describes.
+     */
+    private void append(String line) {
+        int lines;
+        synchronized (fileLock) {
+            try {
+                if (journal == null) {
+                    journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    journal.write(buffer);
+                }
+                // Without this the line may only reach the OS cache; timestamps need not be synced
+                journal.force(false);
+                journalLines++;
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to write economy ledger journal: " + e.getMessage());
+                closeJournal();
+            }
+            lines = journalLines;
+        }
+
+        // Checked outside the file lock, which is always taken after the ledger's monitor
+        if (lines >= MIN_COMPACT_LINES && lines >= size() && plugin.isEnabled()
+                && compactQueued.compareAndSet(false, true)) {
+            plugin.getIoExecutor().run("ledger-compact", () -> {
+                compactQueued.set(false);
+                save();
+            });
+        }
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to close economy ledger journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    /**
+     * Get an entry by its idempotency key.
+     */
+    public synchronized LedgerEntry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Add a new entry. A refund is journaled right away, so one queued
+     * before a crash is replayed on the next start. A charge is journaled
+     * with its first state change on a pipeline thread, before the economy
+     * backend is called.
+     */
+    public void add(LedgerEntry entry) {
+        String line = null;
+        synchronized (this) {
+            entries.put(entry.getKey(), entry);
+            if (entry.getKind().isDeposit()) {
+                line = journalLine(entry);
+            }
+        }
+        if (line != null) {
+            append(line);
+        }
+    }
+
+    /**
+     * Change the state of an entry and journal it.
+     */
+    public void update(LedgerEntry entry, LedgerEntry.State state) {
+        String line;
+        synchronized (this) {
+            entry.setState(state);
+            line = journalLine(entry);
+        }
+        append(line);
+    }
+
+    /**
+     * Mark a charge as claimed by what it paid for and journal it.
+     */
+    public void claim(String key) {
+        String line;
+        synchronized (this) {
+            LedgerEntry entry = entries.get(key);
+            if (entry == null || entry.isClaimed()) {
+                return;
+            }
+            entry.setClaimed(true);
+            line = journalLine(entry);
+        }
+        append(line);
+    }
+
+    /**
+     * Get all entries in a given state.
+     */
+    public synchronized List<LedgerEntry> getByState(LedgerEntry.State state) {
+        List<LedgerEntry> result = new ArrayList<>();
+        for (LedgerEntry entry : entries.values()) {
+            if (entry.getState() == state) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+}
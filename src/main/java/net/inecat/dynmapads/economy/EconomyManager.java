@@ -55,6 +55,8 @@ public class EconomyManager {
 
     /**
      * Withdraw amount from player.
+     * May block on the economy backend; use {@link EconomyPipeline} instead of
+     * calling this from the main thread.
      * 
      * @return true if withdrawal was successful
      */
@@ -68,6 +70,8 @@ public class EconomyManager {
 
     /**
      * Deposit amount to player.
+     * May block on the economy backend; use {@link EconomyPipeline} instead of
+     * calling this from the main thread.
      * 
      * @return true if deposit was successful
      */
@@ -0,0 +1,326 @@
+package net.inecat.dynmapads.economy;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.audit.AuditEventType;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.metrics.Metric;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs economy transactions off the main thread.
+ * Transactions of one player run strictly in submission order, different
+ * players run in parallel on the plugin's virtual I/O threads. Every transaction is journaled in the
+ * {@link EconomyLedger} under an idempotency key before Vault is called, so a
+ * key is applied at most once, and results are completed on the main thread.
+ */
+public class EconomyPipeline {
+    private final DynmapAdsPlugin plugin;
+    private final EconomyManager economyManager;
+    private final EconomyLedger ledger;
+    private final Executor executor;
+    private final Map<UUID, CompletableFuture<?>> playerQueues;
+    private final Map<String, CompletableFuture<TransactionResult>> inFlight;
+
+    public EconomyPipeline(DynmapAdsPlugin plugin, EconomyManager economyManager) {
+        this.plugin = plugin;
+        this.economyManager = economyManager;
+        this.ledger = new EconomyLedger(plugin);
+        this.playerQueues = new ConcurrentHashMap<>();
+        this.inFlight = new ConcurrentHashMap<>();
+        // Vault calls are not given a timeout: interrupting one halfway would
+        // leave the transaction in doubt
+        this.executor = plugin.getIoExecutor().executor();
+    }
+
+    /**
+     * Get the transaction journal.
+     */
+    public EconomyLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Create a new idempotency key for a transaction.
+     */
+    public static String newKey(TransactionKind kind) {
+        return kind.name().toLowerCase() + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Idempotency key of the refund for a charge. Every refund path uses it,
+     * so one charge is refunded at most once.
+     */
+    public static String refundKey(String chargeKey) {
+        return "refund:" + chargeKey;
+    }
+
+    /**
+     * Ledger key of the commercial fee paid for a marker. Markers created
+     * before fees were journaled get a stable key derived from the marker.
+     */
+    public static String commercialChargeId(MarkerData data) {
+        if (data.getChargeId() != null) {
+            return data.getChargeId();
+        }
+        return "legacy:" + data.getOwnerUUID() + ":" + data.getShopName();
+    }
+
+    /**
+     * Check if a charge id belongs to the commercial fee of an application
+     * rather than to an ad fee or bid.
+     */
+    public static boolean isCommercialChargeId(String chargeId) {
+        return chargeId.startsWith(TransactionKind.COMMERCIAL_FEE.name().toLowerCase() + ":")
+                || chargeId.startsWith("legacy:");
+    }
+
+    /**
+     * Load the ledger and finish transactions interrupted by a restart.
+     * Refunds that never reached Vault or that Vault refused are replayed
+     * under their key. Charges that never reached Vault are dropped, because
+     * the command waiting for them is gone.
+     * Transactions interrupted while Vault was applying them are reported for
+     * manual review instead of being applied twice.
+     */
+    public void load() {
+        ledger.load();
+
+        // A failed refund moved nothing, so it is queued again instead of being lost
+        for (LedgerEntry entry : ledger.getByState(LedgerEntry.State.FAILED)) {
+            if (entry.getKind().isDeposit()) {
+                ledger.update(entry, LedgerEntry.State.PENDING);
+            }
+        }
+
+        for (LedgerEntry entry : ledger.getByState(LedgerEntry.State.PENDING)) {
+            if (entry.getKind().isDeposit()) {
+                plugin.getLogger().info("Replaying interrupted refund " + entry.getKey() + " ("
+                        + entry.getAmount() + " to " + entry.getPlayerUUID() + ")");
+                schedule(entry);
+            } else {
+                ledger.update(entry, LedgerEntry.State.FAILED);
+            }
+        }
+
+        for (LedgerEntry entry : ledger.getByState(LedgerEntry.State.APPLYING)) {
+            ledger.update(entry, LedgerEntry.State.IN_DOUBT);
+        }
+
+        List<LedgerEntry> inDoubt = ledger.getByState(LedgerEntry.State.IN_DOUBT);
+        for (LedgerEntry entry : inDoubt) {
+            plugin.getLogger().severe("[Ledger] Transaction " + entry.getKey() + " (" + entry.getKind() + " "
+                    + entry.getAmount() + " for " + entry.getPlayerUUID()
+                    + ") was interrupted by a shutdown. Check the player's balance manually.");
+        }
+    }
+
+    /**
+     * Refund fees whose application, ad or bid was lost because the server
+     * stopped after the fee was charged but before what it paid for was
+     * saved. Fees held in escrow are left to the escrow, which returns the
+     * holds of applications that were not saved. Must be called on the main
+     * thread once markers, escrow and bids are loaded.
+     */
+    public void reconcileCharges() {
+        EscrowManager escrow = plugin.getEscrowManager();
+        for (LedgerEntry entry : ledger.getByState(LedgerEntry.State.COMMITTED)) {
+            if (entry.isClaimed()) {
+                continue;
+            }
+            String key = entry.getKey();
+            String shopName = shopOf(entry);
+            MarkerData data = plugin.getMarkerStorage().getMarker(shopName);
+
+            EscrowHold hold = escrow.getHold(key);
+            if (hold != null) {
+                boolean saved = data != null && key.equals(commercialChargeId(data));
+                if (hold.getState() == EscrowHold.State.HELD && isCommercialChargeId(key) && !saved) {
+                    plugin.getLogger().warning("[Ledger] Returning the held fee " + key + " of " + shopName
+                            + ": the application was not saved before the shutdown.");
+                    escrow.release(key);
+                }
+                ledger.claim(key);
+                continue;
+            }
+
+            // Already refunded by the command that charged it, or paid for something that was saved
+            if (ledger.get(refundKey(key)) != null || isPaidFor(entry, data)) {
+                ledger.claim(key);
+                continue;
+            }
+
+            plugin.getLogger().warning("[Ledger] Refunding charge " + key + " (" + entry.getAmount() + " from "
+                    + entry.getPlayerUUID() + "): what it paid for was not saved before the shutdown.");
+            UUID playerUUID = entry.getPlayerUUID();
+            double amount = entry.getAmount();
+            refund(playerUUID, amount, refundKey(key), "lost:" + shopName).thenAccept(result -> {
+                if (result.success()) {
+                    plugin.getAuditLog().record(AuditEventType.REFUNDED, shopName, playerUUID, null,
+                            "amount", amount, "cause", "lost");
+                }
+            });
+            ledger.claim(key);
+        }
+    }
+
+    /**
+     * Mark a charge as claimed once what it paid for is saved, so it is not
+     * refunded after a restart. May be called on any thread.
+     */
+    public void claim(String key) {
+        ledger.claim(key);
+    }
+
+    /**
+     * Check if a charge without an escrow hold paid for a marker that was saved.
+     */
+    private static boolean isPaidFor(LedgerEntry entry, MarkerData data) {
+        if (data == null) {
+            return false;
+        }
+        return switch (entry.getKind()) {
+            case COMMERCIAL_FEE -> entry.getKey().equals(commercialChargeId(data));
+            // A flat-fee ad is claimed once saved, so a running ad here is the one it paid for
+            case ADS_FEE -> data.getStatus() == MarkerStatus.ADS;
+            case REFUND -> true;
+        };
+    }
+
+    /**
+     * Shop a charge was made for, taken from its reason such as "ads:shop".
+     */
+    private static String shopOf(LedgerEntry entry) {
+        String reason = entry.getReason() != null ? entry.getReason() : "";
+        return reason.substring(reason.indexOf(':') + 1);
+    }
+
+    /**
+     * Withdraw a fee from a player. The charge stays unclaimed until
+     * {@link #claim(String)} is called or a hold is placed for it.
+     */
+    public CompletableFuture<TransactionResult> charge(OfflinePlayer player, TransactionKind kind, double amount,
+            String key, String reason) {
+        return submit(new LedgerEntry(key, kind, player.getUniqueId(), amount, reason));
+    }
+
+    /**
+     * Return money to a player. Submitting the same key twice pays only once.
+     */
+    public CompletableFuture<TransactionResult> refund(UUID playerUUID, double amount, String key, String reason) {
+        return submit(new LedgerEntry(key, TransactionKind.REFUND, playerUUID, amount, reason));
+    }
+
+    /**
+     * Register a transaction and queue it behind the player's earlier ones.
+     * A key that was already committed or is in doubt returns that outcome;
+     * a key that failed moved nothing and is queued again.
+     * Refunds are journaled right away, charges by the pipeline thread before
+     * Vault is called.
+     */
+    private CompletableFuture<TransactionResult> submit(LedgerEntry entry) {
+        synchronized (ledger) {
+            CompletableFuture<TransactionResult> running = inFlight.get(entry.getKey());
+            if (running != null) {
+                return running;
+            }
+
+            LedgerEntry existing = ledger.get(entry.getKey());
+            if (existing != null) {
+                if (existing.getState() == LedgerEntry.State.FAILED) {
+                    ledger.update(existing, LedgerEntry.State.PENDING);
+                    return schedule(existing);
+                }
+                boolean applied = existing.getState() == LedgerEntry.State.COMMITTED;
+                return completeOnMainThread(new TransactionResult(existing.getKey(), applied, existing.getAmount()));
+            }
+
+            ledger.add(entry);
+            return schedule(entry);
+        }
+    }
+
+    private CompletableFuture<TransactionResult> schedule(LedgerEntry entry) {
+        CompletableFuture<TransactionResult> result = new CompletableFuture<>();
+        inFlight.put(entry.getKey(), result);
+        plugin.getShutdownCoordinator().track("economy " + entry.getKind() + " " + entry.getKey() + " ("
+                + entry.getAmount() + " for " + entry.getPlayerUUID() + ")", result);
+
+        CompletableFuture<?> tail = playerQueues.compute(entry.getPlayerUUID(), (uuid, previous) ->
+                (previous == null ? CompletableFuture.completedFuture(null) : previous)
+                        .handleAsync((ignored, error) -> apply(entry), executor)
+                        .thenAccept(outcome -> {
+                            inFlight.remove(entry.getKey());
+                            completeOnMainThread(result, outcome);
+                        }));
+
+        // Forget the queue once it drains so idle players hold no memory
+        tail.whenComplete((ignored, error) -> playerQueues.remove(entry.getPlayerUUID(), tail));
+        return result;
+    }
+
+    /**
+     * Apply a journaled transaction against Vault. Runs on a pipeline thread.
+     */
+    private TransactionResult apply(LedgerEntry entry) {
+        ledger.update(entry, LedgerEntry.State.APPLYING);
+
+        boolean success;
+        long start = System.nanoTime();
+        try {
+            OfflinePlayer player = Bukkit.getOfflinePlayer(entry.getPlayerUUID());
+            if (entry.getKind().isDeposit()) {
+                success = economyManager.deposit(player, entry.getAmount());
+            } else {
+                success = economyManager.hasBalance(player, entry.getAmount())
+                        && economyManager.withdraw(player, entry.getAmount());
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("[Ledger] Economy backend error for " + entry.getKey() + ": " + e.getMessage());
+            success = false;
+        }
+        plugin.getMetrics().recordSince(Metric.ECONOMY_CALL, entry.getKind().name().toLowerCase(Locale.ROOT), start);
+
+        ledger.update(entry, success ? LedgerEntry.State.COMMITTED : LedgerEntry.State.FAILED);
+        if (success) {
+            plugin.getRevenueAggregator().record(entry);
+        }
+        if (!success && entry.getKind().isDeposit()) {
+            plugin.getLogger().severe("[Ledger] Refund " + entry.getKey() + " of " + entry.getAmount() + " to "
+                    + entry.getPlayerUUID() + " failed.");
+        }
+        return new TransactionResult(entry.getKey(), success, entry.getAmount());
+    }
+
+    private CompletableFuture<TransactionResult> completeOnMainThread(TransactionResult outcome) {
+        CompletableFuture<TransactionResult> result = new CompletableFuture<>();
+        completeOnMainThread(result, outcome);
+        return result;
+    }
+
+    private void completeOnMainThread(CompletableFuture<TransactionResult> result, TransactionResult outcome) {
+        if (!plugin.isEnabled()) {
+            // The scheduler refuses tasks while disabling
+            result.complete(outcome);
+            return;
+        }
+        plugin.getPluginScheduler().runGlobal(() -> result.complete(outcome));
+    }
+
+    /**
+     * Persist the ledger. Queued transactions have been drained by the
+     * shutdown coordinator; any still running are reviewed on next start.
+     */
+    public void shutdown() {
+        ledger.save();
+    }
+}
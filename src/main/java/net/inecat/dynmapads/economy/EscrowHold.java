@@ -0,0 +1,101 @@
+package net.inecat.dynmapads.economy;
+
+import java.util.UUID;
+
+/**
+ * Fee held for a pending commercial application until it is decided, or the
+ * amount of an ad bid until the auction is settled.
+ */
+public class EscrowHold {
+    /**
+     * Lifecycle of a hold.
+     */
+    public enum State {
+        /**
+         * Fee withdrawn, application not yet decided.
+         */
+        HELD,
+
+        /**
+         * Application approved, the fee is kept.
+         */
+        SETTLED,
+
+        /**
+         * Application rejected or cancelled, the fee is returned.
+         */
+        RELEASED
+    }
+
+    private final String chargeId;
+    private final String shopName;
+    private final UUID ownerUUID;
+    private final double amount;
+    private final long createdAt;
+    private State state;
+    private long updatedAt;
+    private String releaseKey;
+
+    public EscrowHold(String chargeId, String shopName, UUID ownerUUID, double amount) {
+        this(chargeId, shopName, ownerUUID, amount, System.currentTimeMillis(), State.HELD,
+                System.currentTimeMillis(), null);
+    }
+
+    // Constructor for loading from storage
+    public EscrowHold(String chargeId, String shopName, UUID ownerUUID, double amount, long createdAt,
+            State state, long updatedAt, String releaseKey) {
+        this.chargeId = chargeId;
+        this.shopName = shopName;
+        this.ownerUUID = ownerUUID;
+        this.amount = amount;
+        this.createdAt = createdAt;
+        this.state = state;
+        this.updatedAt = updatedAt;
+        this.releaseKey = releaseKey;
+    }
+
+    public String getChargeId() {
+        return chargeId;
+    }
+
+    public String getShopName() {
+        return shopName;
+    }
+
+    public UUID getOwnerUUID() {
+        return ownerUUID;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Ledger key of the batched refund that returns this hold, or null while
+     * the release is still waiting for its batch.
+     */
+    public String getReleaseKey() {
+        return releaseKey;
+    }
+
+    public void setReleaseKey(String releaseKey) {
+        this.releaseKey = releaseKey;
+    }
+}
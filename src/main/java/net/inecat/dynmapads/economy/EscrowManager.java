@@ -0,0 +1,411 @@
+package net.inecat.dynmapads.economy;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.audit.AuditEventType;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.data.MarkerData;
+import net.inecat.dynmapads.data.MarkerStatus;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds commercial fees in escrow until the application is decided, and ad
+ * bids until the auction is settled, persisted to escrow.yml. Approval or a
+ * won bid settles the hold and keeps the fee, rejection, cancellation or a
+ * lost bid releases it and returns exactly the amount that was paid.
+ * Releases landing close together are paid out as one refund per player.
+ * <p>
+ * Holds stay with the server that took the money, also when several servers
+ * share the markers. Decisions another server makes on an application are
+ * followed through the change feed of the shared store, so the fee is kept
+ * or refunded by the server that charged it.
+ */
+public class EscrowManager {
+    private static final long BATCH_DELAY_TICKS = 20L;
+
+    private final DynmapAdsPlugin plugin;
+    private final EconomyPipeline pipeline;
+    private final File dataFile;
+    private final Map<String, EscrowHold> holds;
+    private final Map<String, CompletableFuture<TransactionResult>> waiting;
+    private final AtomicBoolean saveQueued;
+    private final Object fileLock;
+    private long changes;
+    private long written;
+    private PluginScheduler.Task scheduledFlush;
+
+    public EscrowManager(DynmapAdsPlugin plugin, EconomyPipeline pipeline) {
+        this.plugin = plugin;
+        this.pipeline = pipeline;
+        this.dataFile = new File(plugin.getDataFolder(), "escrow.yml");
+        this.holds = new LinkedHashMap<>();
+        this.waiting = new HashMap<>();
+        this.saveQueued = new AtomicBoolean();
+        this.fileLock = new Object();
+    }
+
+    /**
+     * Load holds from file, settle or release the holds of applications that
+     * were decided or removed while escrow.yml was not yet written, and resume
+     * releases interrupted by a restart. Without shared storage, holds are
+     * also created for pending applications made before escrow existed.
+     */
+    public void load() {
+        holds.clear();
+
+        if (dataFile.exists()) {
+            YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+            ConfigurationSection holdsSection = config.getConfigurationSection("holds");
+            long cutoff = System.currentTimeMillis()
+                    - plugin.getConfigManager().getLedgerRetentionDays() * 86_400_000L;
+
+            if (holdsSection != null) {
+                for (String key : holdsSection.getKeys(false)) {
+                    ConfigurationSection section = holdsSection.getConfigurationSection(key);
+                    if (section == null)
+                        continue;
+
+                    try {
+                        EscrowHold hold = new EscrowHold(
+                                section.getString("charge-id", key),
+                                section.getString("shop-name"),
+                                UUID.fromString(section.getString("owner-uuid", "")),
+                                section.getDouble("amount"),
+                                section.getLong("created-at"),
+                                EscrowHold.State.valueOf(section.getString("state", "")),
+                                section.getLong("updated-at"),
+                                section.getString("release-key"));
+
+                        boolean resolved = hold.getState() == EscrowHold.State.SETTLED
+                                || (hold.getState() == EscrowHold.State.RELEASED && hold.getReleaseKey() != null
+                                        && isRefundSettled(hold.getReleaseKey()));
+                        if (resolved && hold.getUpdatedAt() < cutoff) {
+                            continue;
+                        }
+                        holds.put(hold.getChargeId(), hold);
+                    } catch (Exception e) {
+                        plugin.getLogger().warning("Failed to load escrow hold: " + key + " - " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        // Decisions saved to the markers just before a crash may not have reached escrow.yml
+        followDecisions();
+
+        // Pending applications of other servers were charged there
+        if (!plugin.getConfigManager().isSharedStorage()) {
+            // Applications submitted before escrow existed were charged the fee of that time;
+            // the current fee is the best available estimate
+            for (MarkerData data : plugin.getMarkerStorage().getByStatus(MarkerStatus.PENDING)) {
+                String chargeId = EconomyPipeline.commercialChargeId(data);
+                if (!holds.containsKey(chargeId)) {
+                    holds.put(chargeId, new EscrowHold(chargeId, data.getShopName(), data.getOwnerUUID(),
+                            plugin.getConfigManager().getCommercialFee()));
+                }
+            }
+        }
+
+        save();
+        resumeReleases();
+    }
+
+    /**
+     * Settle the held fees of applications that were approved, and release
+     * those of applications that were rejected or cancelled.
+     */
+    private void followDecisions() {
+        for (EscrowHold hold : holds.values()) {
+            if (hold.getState() != EscrowHold.State.HELD || !EconomyPipeline.isCommercialChargeId(hold.getChargeId())) {
+                continue;
+            }
+            MarkerData data = plugin.getMarkerStorage().getMarker(hold.getShopName());
+            if (data == null || !hold.getChargeId().equals(EconomyPipeline.commercialChargeId(data))) {
+                hold.setState(EscrowHold.State.RELEASED);
+            } else if (data.getStatus() != MarkerStatus.PENDING) {
+                hold.setState(EscrowHold.State.SETTLED);
+            }
+        }
+    }
+
+    /**
+     * Follow a change another server made to a shop. If it decided an
+     * application this server holds the fee of, keep or refund the fee.
+     * Must be called on the main thread.
+     */
+    public void onRemoteChange(MarkerData previous, MarkerData current) {
+        if (previous == null || previous.getStatus() != MarkerStatus.PENDING) {
+            return;
+        }
+
+        String chargeId = EconomyPipeline.commercialChargeId(previous);
+        if (current != null && chargeId.equals(EconomyPipeline.commercialChargeId(current))) {
+            if (current.getStatus() != MarkerStatus.PENDING) {
+                settle(chargeId);
+            }
+            return;
+        }
+
+        // Rejected or cancelled; holds of other servers are not found here
+        release(chargeId).thenAccept(result -> {
+            Player player = Bukkit.getPlayer(previous.getOwnerUUID());
+            if (result.success() && player != null) {
+                ConfigManager config = plugin.getConfigManager();
+                plugin.getPluginScheduler().message(player, config.message("pending-refunded",
+                        "amount", String.format("%.0f", result.amount()), "currency", config.getCurrencyName()));
+            }
+        });
+    }
+
+    private boolean isRefundSettled(String releaseKey) {
+        LedgerEntry entry = pipeline.getLedger().get(releaseKey);
+        return entry == null || entry.getState().isSettled();
+    }
+
+    /**
+     * Resubmit refunds whose batch was formed but may not have reached the
+     * ledger, and pay out releases that were still waiting for a batch.
+     * Refund keys are idempotent, so finished batches are not paid again.
+     */
+    private void resumeReleases() {
+        Map<String, List<EscrowHold>> batches = new LinkedHashMap<>();
+        boolean unbatched = false;
+        for (EscrowHold hold : holds.values()) {
+            if (hold.getState() != EscrowHold.State.RELEASED) {
+                continue;
+            }
+            if (hold.getReleaseKey() == null) {
+                unbatched = true;
+            } else if (pipeline.getLedger().get(hold.getReleaseKey()) == null) {
+                batches.computeIfAbsent(hold.getReleaseKey(), key -> new ArrayList<>()).add(hold);
+            }
+        }
+
+        for (Map.Entry<String, List<EscrowHold>> batch : batches.entrySet()) {
+            submitBatch(batch.getKey(), batch.getValue());
+        }
+        if (unbatched) {
+            flush();
+        }
+    }
+
+    /**
+     * Save all holds, replacing the previous file atomically. The holds are
+     * serialized under the monitor and written outside it, so the main thread
+     * never waits for the disk; a write is skipped once a later one is on disk.
+     */
+    public void save() {
+        long change;
+        String content;
+        synchronized (this) {
+            content = serialize();
+            change = ++changes;
+        }
+
+        synchronized (fileLock) {
+            if (change <= written) {
+                return;
+            }
+            File tempFile = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+            try {
+                Files.writeString(tempFile.toPath(), content, StandardCharsets.UTF_8);
+                Files.move(tempFile.toPath(), dataFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written = change;
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to save escrow: " + e.getMessage());
+            }
+        }
+    }
+
+    private String serialize() {
+        YamlConfiguration config = new YamlConfiguration();
+        ConfigurationSection holdsSection = config.createSection("holds");
+
+        int index = 0;
+        for (EscrowHold hold : holds.values()) {
+            ConfigurationSection section = holdsSection.createSection(String.valueOf(index++));
+            section.set("charge-id", hold.getChargeId());
+            section.set("shop-name", hold.getShopName());
+            section.set("owner-uuid", hold.getOwnerUUID().toString());
+            section.set("amount", hold.getAmount());
+            section.set("created-at", hold.getCreatedAt());
+            section.set("state", hold.getState().name());
+            section.set("updated-at", hold.getUpdatedAt());
+            if (hold.getReleaseKey() != null) {
+                section.set("release-key", hold.getReleaseKey());
+            }
+        }
+        return config.saveToString();
+    }
+
+    /**
+     * Queue a save on a worker thread, coalescing repeated requests.
+     */
+    private void saveAsync() {
+        if (!plugin.isEnabled()) {
+            save();
+            return;
+        }
+        if (saveQueued.compareAndSet(false, true)) {
+            plugin.getIoExecutor().run("escrow-save", () -> {
+                saveQueued.set(false);
+                save();
+            });
+        }
+    }
+
+    /**
+     * Record the fee paid for a new application, or the amount of a bid.
+     */
+    public synchronized void hold(String chargeId, MarkerData data, double amount) {
+        holds.put(chargeId, new EscrowHold(chargeId, data.getShopName(), data.getOwnerUUID(), amount));
+        saveAsync();
+    }
+
+    /**
+     * Get the holds of bids that are still held, i.e. every held hold that is
+     * not the fee of an application.
+     */
+    public synchronized List<EscrowHold> getHeldBids() {
+        List<EscrowHold> held = new ArrayList<>();
+        for (EscrowHold hold : holds.values()) {
+            if (hold.getState() == EscrowHold.State.HELD && !EconomyPipeline.isCommercialChargeId(hold.getChargeId())) {
+                held.add(hold);
+            }
+        }
+        return held;
+    }
+
+    /**
+     * Get the hold for a charge, or null if none exists.
+     */
+    public synchronized EscrowHold getHold(String chargeId) {
+        return holds.get(chargeId);
+    }
+
+    /**
+     * Keep the fee of an approved application.
+     *
+     * @return false if the hold was already settled or released
+     */
+    public synchronized boolean settle(String chargeId) {
+        EscrowHold hold = holds.get(chargeId);
+        if (hold == null || hold.getState() != EscrowHold.State.HELD) {
+            return false;
+        }
+        hold.setState(EscrowHold.State.SETTLED);
+        saveAsync();
+        return true;
+    }
+
+    /**
+     * Return the fee of a rejected or cancelled application. The refund is
+     * paid with the next batch and the future completes on the main thread
+     * once it is applied. Releasing a hold that is no longer held completes
+     * with an unsuccessful result.
+     */
+    public CompletableFuture<TransactionResult> release(String chargeId) {
+        synchronized (this) {
+            EscrowHold hold = holds.get(chargeId);
+            if (hold == null || hold.getState() != EscrowHold.State.HELD) {
+                return CompletableFuture.completedFuture(new TransactionResult(chargeId, false, 0));
+            }
+            hold.setState(EscrowHold.State.RELEASED);
+            saveAsync();
+
+            CompletableFuture<TransactionResult> result = new CompletableFuture<>();
+            waiting.put(chargeId, result);
+            scheduleFlush();
+            return result;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (scheduledFlush != null || !plugin.isEnabled()) {
+            return;
+        }
+        scheduledFlush = plugin.getPluginScheduler().runAsyncLater(
+                () -> plugin.getIoExecutor().run("escrow-flush", this::flush), BATCH_DELAY_TICKS);
+    }
+
+    /**
+     * Pay out all releases waiting for a batch, one refund per player.
+     * The batch assignment is written synchronously before the refunds are
+     * submitted.
+     */
+    public void flush() {
+        Map<UUID, List<EscrowHold>> byOwner = new LinkedHashMap<>();
+        Map<String, List<EscrowHold>> batches = new LinkedHashMap<>();
+
+        synchronized (this) {
+            scheduledFlush = null;
+            for (EscrowHold hold : holds.values()) {
+                if (hold.getState() == EscrowHold.State.RELEASED && hold.getReleaseKey() == null) {
+                    byOwner.computeIfAbsent(hold.getOwnerUUID(), uuid -> new ArrayList<>()).add(hold);
+                }
+            }
+            if (byOwner.isEmpty()) {
+                return;
+            }
+
+            // Persist the batch assignment before any money moves
+            for (List<EscrowHold> ownerHolds : byOwner.values()) {
+                String releaseKey = EconomyPipeline.newKey(TransactionKind.REFUND);
+                for (EscrowHold hold : ownerHolds) {
+                    hold.setReleaseKey(releaseKey);
+                }
+                batches.put(releaseKey, ownerHolds);
+            }
+        }
+        save();
+
+        for (Map.Entry<String, List<EscrowHold>> batch : batches.entrySet()) {
+            submitBatch(batch.getKey(), batch.getValue());
+        }
+    }
+
+    private void submitBatch(String releaseKey, List<EscrowHold> batch) {
+        double total = 0;
+        List<String> chargeIds = new ArrayList<>();
+        for (EscrowHold hold : batch) {
+            total += hold.getAmount();
+            chargeIds.add(hold.getChargeId());
+        }
+
+        pipeline.refund(batch.get(0).getOwnerUUID(), total, releaseKey, "escrow:" + String.join(",", chargeIds))
+                .thenAccept(result -> {
+                    for (EscrowHold hold : batch) {
+                        if (result.success()) {
+                            plugin.getAuditLog().record(AuditEventType.REFUNDED, hold.getShopName(),
+                                    hold.getOwnerUUID(), null, "amount", hold.getAmount(), "cause", "released");
+                        }
+                        CompletableFuture<TransactionResult> future;
+                        synchronized (this) {
+                            future = waiting.remove(hold.getChargeId());
+                        }
+                        if (future != null) {
+                            future.complete(new TransactionResult(hold.getChargeId(), result.success(),
+                                    hold.getAmount()));
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,120 @@
+package net.inecat.dynmapads.economy;
+
+import java.util.UUID;
+
+/**
+ * A single journaled economy transaction, identified by its idempotency key.
+ */
+public class LedgerEntry {
+    /**
+     * Progress of a transaction against the economy backend.
+     */
+    public enum State {
+        /**
+         * Journaled but not yet sent to the economy backend.
+         */
+        PENDING,
+
+        /**
+         * Sent to the economy backend; the outcome is not yet recorded.
+         */
+        APPLYING,
+
+        /**
+         * Applied by the economy backend.
+         */
+        COMMITTED,
+
+        /**
+         * Refused by the economy backend, nothing was moved.
+         */
+        FAILED,
+
+        /**
+         * Interrupted while applying; needs to be checked by an administrator.
+         */
+        IN_DOUBT;
+
+        public boolean isSettled() {
+            return this == COMMITTED || this == FAILED;
+        }
+    }
+
+    private final String key;
+    private final TransactionKind kind;
+    private final UUID playerUUID;
+    private final double amount;
+    private final String reason;
+    private final long createdAt;
+    private State state;
+    private long updatedAt;
+    private boolean claimed;
+
+    public LedgerEntry(String key, TransactionKind kind, UUID playerUUID, double amount, String reason) {
+        this(key, kind, playerUUID, amount, reason, System.currentTimeMillis(), State.PENDING,
+                System.currentTimeMillis(), kind.isDeposit());
+    }
+
+    // Constructor for loading from storage
+    public LedgerEntry(String key, TransactionKind kind, UUID playerUUID, double amount, String reason,
+            long createdAt, State state, long updatedAt, boolean claimed) {
+        this.key = key;
+        this.kind = kind;
+        this.playerUUID = playerUUID;
+        this.amount = amount;
+        this.reason = reason;
+        this.createdAt = createdAt;
+        this.state = state;
+        this.updatedAt = updatedAt;
+        this.claimed = claimed;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public TransactionKind getKind() {
+        return kind;
+    }
+
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Whether what a charge paid for is saved, so a restart cannot lose it.
+     * Refunds pay for nothing and are always claimed.
+     */
+    public boolean isClaimed() {
+        return claimed;
+    }
+
+    public void setClaimed(boolean claimed) {
+        this.claimed = claimed;
+    }
+}
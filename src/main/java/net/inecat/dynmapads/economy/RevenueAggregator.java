@@ -0,0 +1,313 @@
+package net.inecat.dynmapads.economy;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Rolling hourly and daily totals of fees and refunds, plus lifetime totals per
+ * player, persisted to revenue.yml. Updated as each transaction commits, so
+ * reports never replay the ledger or query Vault. Changes are written by a
+ * periodic save on a worker thread rather than once per transaction.
+ */
+public class RevenueAggregator {
+    /**
+     * Hourly buckets kept; shorter report periods are answered from them.
+     */
+    public static final int HOURLY_RETENTION = 48;
+
+    /**
+     * Daily buckets kept; the longest report period in days.
+     */
+    public static final int DAILY_RETENTION = 400;
+
+    private static final long SAVE_INTERVAL_TICKS = 100L;
+
+    /**
+     * Sums of fees and refunds in one bucket.
+     */
+    public static final class Totals {
+        private double commercialFees;
+        private double adsFees;
+        private double refunds;
+        private int commercialCount;
+        private int adsCount;
+        private int refundCount;
+
+        public double getCommercialFees() {
+            return commercialFees;
+        }
+
+        public double getAdsFees() {
+            return adsFees;
+        }
+
+        public double getRefunds() {
+            return refunds;
+        }
+
+        public int getCommercialCount() {
+            return commercialCount;
+        }
+
+        public int getAdsCount() {
+            return adsCount;
+        }
+
+        public int getRefundCount() {
+            return refundCount;
+        }
+
+        /**
+         * Fees collected minus refunds paid.
+         */
+        public double getNet() {
+            return commercialFees + adsFees - refunds;
+        }
+
+        void add(TransactionKind kind, double amount) {
+            switch (kind) {
+                case COMMERCIAL_FEE -> {
+                    commercialFees += amount;
+                    commercialCount++;
+                }
+                case ADS_FEE -> {
+                    adsFees += amount;
+                    adsCount++;
+                }
+                case REFUND -> {
+                    refunds += amount;
+                    refundCount++;
+                }
+            }
+        }
+
+        void addAll(Totals other) {
+            commercialFees += other.commercialFees;
+            adsFees += other.adsFees;
+            refunds += other.refunds;
+            commercialCount += other.commercialCount;
+            adsCount += other.adsCount;
+            refundCount += other.refundCount;
+        }
+
+        void load(ConfigurationSection section) {
+            commercialFees = section.getDouble("commercial");
+            adsFees = section.getDouble("ads");
+            refunds = section.getDouble("refunds");
+            commercialCount = section.getInt("commercial-count");
+            adsCount = section.getInt("ads-count");
+            refundCount = section.getInt("refund-count");
+        }
+
+        void save(ConfigurationSection section) {
+            section.set("commercial", commercialFees);
+            section.set("ads", adsFees);
+            section.set("refunds", refunds);
+            section.set("commercial-count", commercialCount);
+            section.set("ads-count", adsCount);
+            section.set("refund-count", refundCount);
+        }
+    }
+
+    private final DynmapAdsPlugin plugin;
+    private final File dataFile;
+    private final TreeMap<Long, Totals> hourly;
+    private final TreeMap<LocalDate, Totals> daily;
+    private final Map<UUID, Totals> byPlayer;
+    private final Object fileLock;
+    private boolean dirty;
+    private long changes;
+    private long written;
+    private PluginScheduler.Task saveTask;
+
+    public RevenueAggregator(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "revenue.yml");
+        this.hourly = new TreeMap<>();
+        this.daily = new TreeMap<>();
+        this.byPlayer = new HashMap<>();
+        this.fileLock = new Object();
+    }
+
+    /**
+     * Start saving changed totals periodically.
+     */
+    public void start() {
+        saveTask = plugin.getPluginScheduler().runAsyncTimer(
+                () -> plugin.getIoExecutor().run("revenue-save", this::saveIfDirty),
+                SAVE_INTERVAL_TICKS, SAVE_INTERVAL_TICKS);
+    }
+
+    /**
+     * Stop the periodic save and write the totals.
+     */
+    public void stop() {
+        if (saveTask != null) {
+            saveTask.cancel();
+            saveTask = null;
+        }
+        save();
+    }
+
+    private void saveIfDirty() {
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+        }
+        save();
+    }
+
+    /**
+     * Load buckets from file.
+     */
+    public synchronized void load() {
+        hourly.clear();
+        daily.clear();
+        byPlayer.clear();
+
+        if (!dataFile.exists()) {
+            return;
+        }
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+        try {
+            ConfigurationSection hourlySection = config.getConfigurationSection("hourly");
+            if (hourlySection != null) {
+                for (String key : hourlySection.getKeys(false)) {
+                    hourly.put(Long.parseLong(key), loadTotals(hourlySection.getConfigurationSection(key)));
+                }
+            }
+            ConfigurationSection dailySection = config.getConfigurationSection("daily");
+            if (dailySection != null) {
+                for (String key : dailySection.getKeys(false)) {
+                    daily.put(LocalDate.parse(key), loadTotals(dailySection.getConfigurationSection(key)));
+                }
+            }
+            ConfigurationSection playersSection = config.getConfigurationSection("players");
+            if (playersSection != null) {
+                for (String key : playersSection.getKeys(false)) {
+                    byPlayer.put(UUID.fromString(key), loadTotals(playersSection.getConfigurationSection(key)));
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to load revenue totals: " + e.getMessage());
+        }
+        trim(currentHour());
+    }
+
+    private static Totals loadTotals(ConfigurationSection section) {
+        Totals totals = new Totals();
+        if (section != null) {
+            totals.load(section);
+        }
+        return totals;
+    }
+
+    /**
+     * Save all buckets to file, replacing the previous file atomically. The
+     * totals are serialized under the monitor and written outside it; a write
+     * is skipped once a later one is on disk.
+     */
+    public void save() {
+        long change;
+        String content;
+        synchronized (this) {
+            YamlConfiguration config = new YamlConfiguration();
+            ConfigurationSection hourlySection = config.createSection("hourly");
+            hourly.forEach((hour, totals) -> totals.save(hourlySection.createSection(String.valueOf(hour))));
+            ConfigurationSection dailySection = config.createSection("daily");
+            daily.forEach((date, totals) -> totals.save(dailySection.createSection(date.toString())));
+            ConfigurationSection playersSection = config.createSection("players");
+            byPlayer.forEach((uuid, totals) -> totals.save(playersSection.createSection(uuid.toString())));
+            content = config.saveToString();
+            change = ++changes;
+            dirty = false;
+        }
+
+        synchronized (fileLock) {
+            if (change <= written) {
+                return;
+            }
+            File tempFile = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+            try {
+                Files.writeString(tempFile.toPath(), content, StandardCharsets.UTF_8);
+                Files.move(tempFile.toPath(), dataFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written = change;
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                plugin.getLogger().severe("Failed to save revenue totals: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Add a committed transaction to the buckets. Called once per ledger
+     * entry, from the economy pipeline thread.
+     */
+    public synchronized void record(LedgerEntry entry) {
+        long hour = currentHour();
+        hourly.computeIfAbsent(hour, key -> new Totals()).add(entry.getKind(), entry.getAmount());
+        daily.computeIfAbsent(LocalDate.now(), key -> new Totals()).add(entry.getKind(), entry.getAmount());
+        byPlayer.computeIfAbsent(entry.getPlayerUUID(), key -> new Totals()).add(entry.getKind(), entry.getAmount());
+        trim(hour);
+        dirty = true;
+    }
+
+    private void trim(long hour) {
+        hourly.headMap(hour - HOURLY_RETENTION + 1).clear();
+        daily.headMap(LocalDate.now().minusDays(DAILY_RETENTION - 1)).clear();
+    }
+
+    /**
+     * Totals of the last given number of hours, including the current one.
+     */
+    public synchronized Totals getLastHours(int hours) {
+        Totals result = new Totals();
+        long from = currentHour() - Math.min(hours, HOURLY_RETENTION) + 1;
+        hourly.tailMap(from).values().forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * Totals of the last given number of days, including today.
+     */
+    public synchronized Totals getLastDays(int days) {
+        Totals result = new Totals();
+        LocalDate from = LocalDate.now().minusDays(Math.min(days, DAILY_RETENTION) - 1);
+        daily.tailMap(from).values().forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * Lifetime totals of one player.
+     */
+    public synchronized Totals getPlayerTotals(UUID playerUUID) {
+        Totals result = new Totals();
+        Totals totals = byPlayer.get(playerUUID);
+        if (totals != null) {
+            result.addAll(totals);
+        }
+        return result;
+    }
+
+    private static long currentHour() {
+        return System.currentTimeMillis() / 3_600_000L;
+    }
+}
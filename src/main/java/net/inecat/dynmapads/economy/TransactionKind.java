@@ -0,0 +1,34 @@
+package net.inecat.dynmapads.economy;
+
+/**
+ * Kind of money movement recorded in the economy ledger.
+ */
+public enum TransactionKind {
+    /**
+     * Fee withdrawn for a commercial facility application.
+     */
+    COMMERCIAL_FEE(false),
+
+    /**
+     * Fee withdrawn for an advertisement.
+     */
+    ADS_FEE(false),
+
+    /**
+     * Money returned to a player.
+     */
+    REFUND(true);
+
+    private final boolean deposit;
+
+    TransactionKind(boolean deposit) {
+        this.deposit = deposit;
+    }
+
+    /**
+     * Check if this kind pays money to the player rather than charging it.
+     */
+    public boolean isDeposit() {
+        return deposit;
+    }
+}
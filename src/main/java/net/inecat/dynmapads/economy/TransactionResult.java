@@ -0,0 +1,11 @@
+package net.inecat.dynmapads.economy;
+
+/**
+ * Outcome of a transaction submitted to the economy pipeline.
+ *
+ * @param key     idempotency key of the transaction
+ * @param success true if the money was moved
+ * @param amount  amount of the transaction
+ */
+public record TransactionResult(String key, boolean success, double amount) {
+}
@@ -0,0 +1,106 @@
+package net.inecat.dynmapads.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values with log-linear buckets,
+ * in the style of HdrHistogram: every power of two is split into eight
+ * buckets, so a reported percentile is within 12.5% of the recorded value
+ * across the whole long range. Recording is a few atomic increments and
+ * never allocates, so it can sit on the main thread's hot paths.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Recorded values at one point in time. Percentiles are the upper edge
+     * of the bucket they fall in, capped at the maximum.
+     */
+    public record Snapshot(long count, long sum, long max, long p50, long p90, long p99) {
+        public double average() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+    }
+
+    /**
+     * Record a value. Negative values are recorded as zero.
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(clamped));
+        sum.add(clamped);
+        max.accumulateAndGet(clamped, Math::max);
+    }
+
+    /**
+     * Take a snapshot. Values recorded while it is taken may be partly
+     * included.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long maxValue = max.get();
+        return new Snapshot(total, sum.sum(), maxValue, percentile(counts, total, 50, maxValue),
+                percentile(counts, total, 90, maxValue), percentile(counts, total, 99, maxValue));
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    private static long percentile(long[] counts, long total, double percentile, long maxValue) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperEdge(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Largest value that falls in a bucket.
+     */
+    private static long upperEdge(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,82 @@
+package net.inecat.dynmapads.metrics;
+
+/**
+ * Everything the plugin measures. Timers are recorded in nanoseconds and
+ * exported in seconds; sizes and counters are exported as recorded.
+ */
+public enum Metric {
+    STORAGE_SAVE("dynmapads_storage_save_seconds", "Time to write markers.yml.", Kind.TIMER, null),
+    STORAGE_SAVE_BYTES("dynmapads_storage_save_bytes", "Size of markers.yml per save.", Kind.SIZE, null),
+    STORAGE_LOAD("dynmapads_storage_load_seconds", "Time to read markers.yml.", Kind.TIMER, null),
+    POLL_CYCLE("dynmapads_poll_cycle_seconds", "Time for a reaction polling cycle to get every answer.",
+            Kind.TIMER, null),
+    POLL_REST_CALLS("dynmapads_poll_rest_calls", "Discord REST calls made per reaction polling cycle.",
+            Kind.SIZE, null),
+    DISCORD_SEND("dynmapads_discord_send_seconds", "Time for an outbox delivery to reach Discord.",
+            Kind.TIMER, "type"),
+    DISCORD_SEND_FAILURES("dynmapads_discord_send_failures_total", "Outbox deliveries that failed.",
+            Kind.COUNTER, "type"),
+    TICK_OVERRUNS("dynmapads_tick_budget_overruns_total",
+            "Ticks in which plugin work held the main thread longer than the watchdog budget.",
+            Kind.COUNTER, null),
+    DYNMAP_MUTATIONS("dynmapads_dynmap_mutations_total", "Markers created or deleted on Dynmap.",
+            Kind.COUNTER, "operation"),
+    ECONOMY_CALL("dynmapads_economy_call_seconds", "Time spent in the economy backend per transaction.",
+            Kind.TIMER, "kind"),
+    COMMAND("dynmapads_command_seconds", "Main thread time spent handling a command.", Kind.TIMER, "command"),
+    COMMAND_COMPLETION("dynmapads_command_completion_seconds",
+            "Time from a command to its last stage, for commands that continue off the main thread.",
+            Kind.TIMER, "command"),
+    COMMAND_STAGE("dynmapads_command_stage_seconds", "Time spent in one stage of a command.",
+            Kind.TIMER, "stage");
+
+    /**
+     * How values are recorded and exported.
+     */
+    public enum Kind {
+        TIMER,
+        SIZE,
+        COUNTER
+    }
+
+    private final String exportName;
+    private final String help;
+    private final Kind kind;
+    private final String label;
+
+    Metric(String exportName, String help, Kind kind, String label) {
+        this.exportName = exportName;
+        this.help = help;
+        this.kind = kind;
+        this.label = label;
+    }
+
+    /**
+     * Name in the Prometheus exposition format.
+     */
+    public String getExportName() {
+        return exportName;
+    }
+
+    /**
+     * Short name for chat.
+     */
+    public String getDisplayName() {
+        return exportName.substring("dynmapads_".length());
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Name of the label that splits this metric, or null.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,104 @@
+package net.inecat.dynmapads.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+import net.inecat.dynmapads.tasks.PluginScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Publishes the plugin metrics in the Prometheus text format, on a local
+ * HTTP endpoint, as a file for node-exporter's textfile collector, or both.
+ * Both are off unless configured.
+ */
+public class MetricsExporter {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final DynmapAdsPlugin plugin;
+    private HttpServer server;
+    private PluginScheduler.Task textfileTask;
+
+    public MetricsExporter(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Start the exporters enabled in the current configuration.
+     */
+    public synchronized void start() {
+        ConfigManager config = plugin.getConfigManager();
+
+        if (config.isMetricsHttpEnabled()) {
+            try {
+                server = HttpServer.create(new InetSocketAddress(config.getMetricsHttpBind(),
+                        config.getMetricsHttpPort()), 0);
+                server.createContext("/metrics", this::handle);
+                server.setExecutor(plugin.getIoExecutor().executor());
+                server.start();
+                plugin.getLogger().info("Serving metrics on http://" + config.getMetricsHttpBind() + ":"
+                        + config.getMetricsHttpPort() + "/metrics");
+            } catch (IOException e) {
+                server = null;
+                plugin.getLogger().warning("Failed to start the metrics endpoint: " + e.getMessage());
+            }
+        }
+
+        if (!config.getMetricsTextfile().isEmpty()) {
+            File file = new File(config.getMetricsTextfile());
+            long periodTicks = config.getMetricsTextfileIntervalSeconds() * 20L;
+            textfileTask = plugin.getPluginScheduler().runGlobalTimer(() -> plugin.getIoExecutor()
+                    .run("metrics-textfile", () -> writeTextfile(file)), periodTicks, periodTicks);
+        }
+    }
+
+    /**
+     * Stop the exporters.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (textfileTask != null) {
+            textfileTask.cancel();
+            textfileTask = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = plugin.getMetrics().toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Replace the file atomically, so the collector never reads half of it.
+     */
+    private void writeTextfile(File file) {
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.writeString(tempFile.toPath(), plugin.getMetrics().toPrometheus(), StandardCharsets.UTF_8);
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+}
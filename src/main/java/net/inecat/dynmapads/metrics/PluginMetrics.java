@@ -0,0 +1,145 @@
+package net.inecat.dynmapads.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograms and counters for every {@link Metric}, split by label value.
+ * Safe to record from any thread.
+ */
+public class PluginMetrics {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99"};
+
+    private final Map<Metric, Map<String, Histogram>> histograms = new EnumMap<>(Metric.class);
+    private final Map<Metric, Map<String, LongAdder>> counters = new EnumMap<>(Metric.class);
+
+    public PluginMetrics() {
+        for (Metric metric : Metric.values()) {
+            if (metric.getKind() == Metric.Kind.COUNTER) {
+                counters.put(metric, new ConcurrentHashMap<>());
+            } else {
+                histograms.put(metric, new ConcurrentHashMap<>());
+            }
+        }
+    }
+
+    /**
+     * Record a value of an unlabelled timer or size.
+     */
+    public void record(Metric metric, long value) {
+        record(metric, "", value);
+    }
+
+    /**
+     * Record a value of a timer or size.
+     */
+    public void record(Metric metric, String labelValue, long value) {
+        histograms.get(metric).computeIfAbsent(labelValue, v -> new Histogram()).record(value);
+    }
+
+    /**
+     * Record the nanoseconds elapsed since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(Metric metric, String labelValue, long startNanos) {
+        record(metric, labelValue, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add one to a counter.
+     */
+    public void increment(Metric metric, String labelValue) {
+        counters.get(metric).computeIfAbsent(labelValue, v -> new LongAdder()).increment();
+    }
+
+    /**
+     * Snapshots of a timer or size, by label value.
+     */
+    public SortedMap<String, Histogram.Snapshot> snapshots(Metric metric) {
+        Map<String, Histogram> byLabel = histograms.get(metric);
+        if (byLabel == null) {
+            return Collections.emptySortedMap();
+        }
+        SortedMap<String, Histogram.Snapshot> snapshots = new TreeMap<>();
+        byLabel.forEach((label, histogram) -> snapshots.put(label, histogram.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * Values of a counter, by label value.
+     */
+    public SortedMap<String, Long> counts(Metric metric) {
+        Map<String, LongAdder> byLabel = counters.get(metric);
+        if (byLabel == null) {
+            return Collections.emptySortedMap();
+        }
+        SortedMap<String, Long> counts = new TreeMap<>();
+        byLabel.forEach((label, counter) -> counts.put(label, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * Clear all metrics.
+     */
+    public void reset() {
+        histograms.values().forEach(byLabel -> byLabel.values().forEach(Histogram::reset));
+        counters.values().forEach(byLabel -> byLabel.values().forEach(LongAdder::reset));
+    }
+
+    /**
+     * Render all metrics in the Prometheus text exposition format. Timers
+     * and sizes are exported as summaries.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : Metric.values()) {
+            String name = metric.getExportName();
+            boolean counter = metric.getKind() == Metric.Kind.COUNTER;
+            out.append("# HELP ").append(name).append(' ').append(metric.getHelp()).append('\n');
+            out.append("# TYPE ").append(name).append(counter ? " counter" : " summary").append('\n');
+
+            if (counter) {
+                counts(metric).forEach((label, value) ->
+                        out.append(name).append(labels(metric, label, null)).append(' ').append(value).append('\n'));
+                continue;
+            }
+
+            double scale = metric.getKind() == Metric.Kind.TIMER ? NANOS_PER_SECOND : 1;
+            snapshots(metric).forEach((label, snapshot) -> {
+                long[] quantiles = {snapshot.p50(), snapshot.p90(), snapshot.p99()};
+                for (int i = 0; i < QUANTILES.length; i++) {
+                    out.append(name).append(labels(metric, label, QUANTILES[i])).append(' ')
+                            .append(quantiles[i] / scale).append('\n');
+                }
+                out.append(name).append("_sum").append(labels(metric, label, null)).append(' ')
+                        .append(snapshot.sum() / scale).append('\n');
+                out.append(name).append("_count").append(labels(metric, label, null)).append(' ')
+                        .append(snapshot.count()).append('\n');
+            });
+        }
+        return out.toString();
+    }
+
+    private static String labels(Metric metric, String labelValue, String quantile) {
+        StringBuilder labels = new StringBuilder();
+        if (metric.getLabel() != null) {
+            labels.append(metric.getLabel()).append("=\"").append(escape(labelValue)).append('"');
+        }
+        if (quantile != null) {
+            if (!labels.isEmpty()) {
+                labels.append(',');
+            }
+            labels.append("quantile=\"").append(quantile).append('"');
+        }
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
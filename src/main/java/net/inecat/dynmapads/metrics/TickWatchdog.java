@@ -0,0 +1,126 @@
+package net.inecat.dynmapads.metrics;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.config.ConfigManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures how long the plugin's entry points hold the main thread (the
+ * global region on Folia) and warns when their total within one tick exceeds
+ * the configured budget, with a breakdown by operation. Nested operations
+ * count only their own time, so a Dynmap mutation inside a command is not
+ * charged to the command as well. Warnings are rate limited; overruns in
+ * between are counted and mentioned in the next warning.
+ * <p>
+ * All state is touched only on the main thread, so it needs no locking.
+ * Work on other threads is not measured.
+ */
+public class TickWatchdog {
+    private static final int MAX_DEPTH = 16;
+
+    private final DynmapAdsPlugin plugin;
+    private final Map<String, long[]> breakdown;
+    private final long[] startNanos;
+    private final long[] childNanos;
+    private int depth;
+    private long tickNanos;
+    private long lastWarningNanos;
+    private boolean warned;
+    private int suppressed;
+
+    public TickWatchdog(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.breakdown = new HashMap<>();
+        this.startNanos = new long[MAX_DEPTH];
+        this.childNanos = new long[MAX_DEPTH];
+    }
+
+    /**
+     * Run an entry point, charging its main thread time to an operation.
+     */
+    public void measure(String operation, Runnable action) {
+        measure(operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run an entry point, charging its main thread time to an operation.
+     */
+    public <T> T measure(String operation, Supplier<T> action) {
+        if (depth == MAX_DEPTH || !plugin.getConfigManager().isWatchdogEnabled()
+                || !plugin.getPluginScheduler().isGlobalThread()) {
+            return action.get();
+        }
+
+        int level = depth++;
+        startNanos[level] = System.nanoTime();
+        childNanos[level] = 0;
+        try {
+            return action.get();
+        } finally {
+            long elapsed = System.nanoTime() - startNanos[level];
+            long self = elapsed - childNanos[level];
+            depth = level;
+            if (level > 0) {
+                childNanos[level - 1] += elapsed;
+            }
+
+            long[] stat = breakdown.computeIfAbsent(operation, k -> new long[2]);
+            stat[0] += self;
+            stat[1]++;
+            tickNanos += self;
+        }
+    }
+
+    /**
+     * Close the current tick and check it against the budget. Runs once per
+     * tick on the main thread.
+     */
+    public void endTick() {
+        if (tickNanos > 0) {
+            ConfigManager config = plugin.getConfigManager();
+            if (tickNanos > TimeUnit.MILLISECONDS.toNanos(config.getWatchdogTickBudgetMillis())) {
+                overrun(config);
+            }
+            breakdown.clear();
+            tickNanos = 0;
+        }
+    }
+
+    private void overrun(ConfigManager config) {
+        plugin.getMetrics().increment(Metric.TICK_OVERRUNS, "");
+
+        long now = System.nanoTime();
+        if (warned && now - lastWarningNanos < TimeUnit.SECONDS.toNanos(config.getWatchdogWarnIntervalSeconds())) {
+            suppressed++;
+            return;
+        }
+        warned = true;
+        lastWarningNanos = now;
+
+        List<Map.Entry<String, long[]>> operations = new ArrayList<>(breakdown.entrySet());
+        operations.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        List<String> parts = new ArrayList<>();
+        for (Map.Entry<String, long[]> operation : operations) {
+            parts.add(operation.getKey() + " " + millis(operation.getValue()[0]) + "ms x" + operation.getValue()[1]);
+        }
+
+        plugin.getLogger().warning("[Watchdog] Plugin work held the main thread for " + millis(tickNanos)
+                + "ms in one tick (budget " + config.getWatchdogTickBudgetMillis() + "ms): "
+                + String.join(", ", parts)
+                + (suppressed > 0 ? " (" + suppressed + " more overruns since the last warning)" : ""));
+        suppressed = 0;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+}
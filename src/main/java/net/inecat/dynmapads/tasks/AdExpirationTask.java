@@ -1,11 +1,11 @@
 package net.inecat.dynmapads.tasks;
 
 import net.inecat.dynmapads.DynmapAdsPlugin;
+import net.inecat.dynmapads.audit.AuditEventType;
 import net.inecat.dynmapads.data.MarkerData;
 import net.inecat.dynmapads.data.MarkerStatus;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.entity.Player;
 
 import java.util.List;
 
@@ -13,7 +13,7 @@ import java.util.List;
  * Scheduled task to check for expired advertisements and revert them to
  * commercial.
  */
-public class AdExpirationTask extends BukkitRunnable {
+public class AdExpirationTask implements Runnable {
     private final DynmapAdsPlugin plugin;
 
     public AdExpirationTask(DynmapAdsPlugin plugin) {
@@ -22,6 +22,11 @@ public class AdExpirationTask extends BukkitRunnable {
 
     @Override
     public void run() {
+        // One server expires ads for all servers sharing the markers
+        if (!plugin.isLeader()) {
+            return;
+        }
+
         List<MarkerData> expiredAds = plugin.getMarkerStorage().getExpiredAds();
 
         for (MarkerData data : expiredAds) {
@@ -29,27 +34,30 @@ public class AdExpirationTask extends BukkitRunnable {
         }
     }
 
-    private void expireAd(MarkerData data) {
-        OfflinePlayer owner = Bukkit.getOfflinePlayer(data.getOwnerUUID());
-        String ownerName = owner.getName() != null ? owner.getName() : "Unknown";
+    /**
+     * Revert an advertisement to a plain commercial marker.
+     */
+    public void expireAd(MarkerData data) {
+        String ownerName = plugin.getOwnerNameCache().getName(data);
 
         // Clear ads-specific data
         data.setStatus(MarkerStatus.COMMERCIAL);
         data.setAdsEndTime(null);
         data.setPrMessage(null);
         plugin.getMarkerStorage().updateMarker(data);
+        plugin.getAuditLog().record(AuditEventType.EXPIRED, data, null);
 
         // Move marker from ads to commercial
         plugin.getDynmapManager().moveToCommercial(data, ownerName);
 
         plugin.getLogger().info("Advertisement expired: " + data.getShopName());
+        plugin.getDiscordManager().onAdExpired(data, ownerName);
 
         // Notify player if online
-        if (owner.isOnline() && owner.getPlayer() != null) {
-            String message = plugin.getConfigManager().formatMessage(
-                    plugin.getConfigManager().getAdsExpired(),
-                    "%shop%", data.getShopName());
-            owner.getPlayer().sendMessage(message);
+        Player owner = Bukkit.getPlayer(data.getOwnerUUID());
+        if (owner != null) {
+            plugin.getPluginScheduler().message(owner,
+                    plugin.getConfigManager().message("ads-expired", "shop", data.getShopName()));
         }
     }
 }
@@ -0,0 +1,108 @@
+package net.inecat.dynmapads.tasks;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the plugin's blocking I/O (data file writes, economy calls, profile
+ * lookups and Discord completions) on virtual threads, so a slow disk,
+ * database or REST call never holds a server or JDA thread. Tasks that run
+ * longer than their timeout are interrupted. Once shut down, new tasks run on
+ * the calling thread so late saves from onDisable still reach the disk.
+ */
+public class IoExecutor {
+    private final DynmapAdsPlugin plugin;
+    private final ExecutorService executor;
+
+    public IoExecutor(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("DynmapAds-IO-", 0).factory());
+    }
+
+    /**
+     * Executor for CompletableFuture stages. Stages run without a timeout,
+     * for work that must not be interrupted halfway.
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Run a task with the configured timeout. Failures are logged.
+     */
+    public CompletableFuture<Void> run(String name, Runnable task) {
+        return supply(name, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Compute a value with the configured timeout. Failures are logged.
+     */
+    public <T> CompletableFuture<T> supply(String name, Callable<T> task) {
+        return supply(name, task, plugin.getConfigManager().getIoTaskTimeoutSeconds());
+    }
+
+    /**
+     * Compute a value, interrupting the task if it takes longer than the
+     * timeout. The future then fails with a TimeoutException.
+     */
+    public <T> CompletableFuture<T> supply(String name, Callable<T> task, long timeoutSeconds) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> complete(result, task));
+        } catch (RejectedExecutionException e) {
+            complete(result, task);
+            return result;
+        }
+
+        result.orTimeout(timeoutSeconds, TimeUnit.SECONDS).whenComplete((value, error) -> {
+            if (error instanceof TimeoutException) {
+                running.cancel(true);
+                plugin.getLogger().warning("I/O task " + name + " timed out after " + timeoutSeconds
+                        + "s and was interrupted.");
+            } else if (error != null) {
+                plugin.getLogger().warning("I/O task " + name + " failed: " + error.getMessage());
+            }
+        });
+        return result;
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, Callable<T> task) {
+        try {
+            result.complete(task.call());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Stop accepting tasks, wait for running ones up to the configured grace
+     * period, then interrupt whatever is left.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        long graceSeconds = plugin.getConfigManager().getIoShutdownTimeoutSeconds();
+        try {
+            if (!executor.awaitTermination(graceSeconds, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+                plugin.getLogger().warning("I/O tasks still running after " + graceSeconds
+                        + "s at shutdown were interrupted.");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.inecat.dynmapads.tasks;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+
+/**
+ * Periodically retries Discord sends that are waiting in the outbox.
+ */
+public class OutboxRetryTask implements Runnable {
+    private final DynmapAdsPlugin plugin;
+
+    public OutboxRetryTask(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void run() {
+        plugin.getDiscordManager().getOutbox().flush();
+    }
+}
@@ -0,0 +1,283 @@
+package net.inecat.dynmapads.tasks;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Schedules the plugin's work on Paper and on Folia. On Paper everything goes
+ * through the Bukkit scheduler. On Folia there is no main thread: marker,
+ * storage and Dynmap work runs on the global region, player messages and
+ * teleports on the player's entity scheduler, and background work on the
+ * async scheduler. Delays and periods are given in ticks on both.
+ * One-shot global tasks that have not run yet are remembered, so shutdown can
+ * run them itself instead of losing them when the scheduler stops. Delayed,
+ * repeating and async tasks requested while the plugin is disabling are
+ * dropped.
+ */
+public class PluginScheduler {
+    private static final long MILLIS_PER_TICK = 50L;
+    private static final Task NOT_SCHEDULED = () -> {
+    };
+
+    private final DynmapAdsPlugin plugin;
+    private final boolean folia;
+    private final Executor globalExecutor;
+    private final Set<PendingTask> pending;
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public interface Task {
+        void cancel();
+    }
+
+    /**
+     * A one-shot global task that runs exactly once, either from the
+     * scheduler or from {@link #runPending()}.
+     */
+    private final class PendingTask implements Task, Runnable {
+        private final Runnable task;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile Task scheduled;
+
+        PendingTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (claimed.compareAndSet(false, true)) {
+                pending.remove(this);
+                task.run();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                pending.remove(this);
+                if (scheduled != null) {
+                    scheduled.cancel();
+                }
+            }
+        }
+    }
+
+    public PluginScheduler(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.folia = detectFolia();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.globalExecutor = runnable -> {
+            if (isGlobalThread()) {
+                runnable.run();
+            } else {
+                runGlobal(runnable);
+            }
+        };
+    }
+
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the server is running Folia's regionised scheduler.
+     */
+    public boolean isFolia() {
+        return folia;
+    }
+
+    /**
+     * Whether the current thread may touch markers, storage and Dynmap
+     * directly: the main thread on Paper, the global region thread on Folia.
+     */
+    public boolean isGlobalThread() {
+        return folia ? Bukkit.isGlobalTickThread() : Bukkit.isPrimaryThread();
+    }
+
+    /**
+     * Executor for CompletableFuture stages that do marker work. Runs
+     * inline when already on the global thread.
+     */
+    public Executor globalExecutor() {
+        return globalExecutor;
+    }
+
+    /**
+     * Run on the next tick of the main thread or global region. While the
+     * plugin is disabling, the task waits for {@link #runPending()}.
+     */
+    public Task runGlobal(Runnable task) {
+        PendingTask pendingTask = new PendingTask(task);
+        pending.add(pendingTask);
+        if (!plugin.isEnabled()) {
+            return pendingTask;
+        }
+        try {
+            if (folia) {
+                pendingTask.scheduled = wrap(Bukkit.getGlobalRegionScheduler().run(plugin,
+                        scheduled -> pendingTask.run()));
+            } else {
+                pendingTask.scheduled = wrap(Bukkit.getScheduler().runTask(plugin, pendingTask));
+            }
+        } catch (IllegalPluginAccessException e) {
+            // Disabled between the check and the call; runPending picks it up
+        }
+        return pendingTask;
+    }
+
+    /**
+     * Run global tasks that have not run yet on the calling thread. Used on
+     * shutdown, when the scheduler no longer runs them.
+     *
+     * @return the number of tasks that were run
+     */
+    public int runPending() {
+        int count = 0;
+        for (PendingTask pendingTask : List.copyOf(pending)) {
+            if (pendingTask.scheduled != null) {
+                pendingTask.scheduled.cancel();
+            }
+            pendingTask.run();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Number of global tasks that have not run yet.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Run on the main thread or global region after a delay.
+     */
+    public Task runGlobalLater(Runnable task, long delayTicks) {
+        if (!plugin.isEnabled()) {
+            return NOT_SCHEDULED;
+        }
+        if (folia) {
+            return wrap(Bukkit.getGlobalRegionScheduler().runDelayed(plugin, scheduled -> task.run(),
+                    Math.max(1, delayTicks)));
+        }
+        return wrap(Bukkit.getScheduler().runTaskLater(plugin, task, delayTicks));
+    }
+
+    /**
+     * Repeat on the main thread or global region.
+     */
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        if (!plugin.isEnabled()) {
+            return NOT_SCHEDULED;
+        }
+        if (folia) {
+            return wrap(Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, scheduled -> task.run(),
+                    Math.max(1, delayTicks), periodTicks));
+        }
+        return wrap(Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks));
+    }
+
+    /**
+     * Run on a worker thread.
+     */
+    public Task runAsync(Runnable task) {
+        if (!plugin.isEnabled()) {
+            return NOT_SCHEDULED;
+        }
+        if (folia) {
+            return wrap(Bukkit.getAsyncScheduler().runNow(plugin, scheduled -> task.run()));
+        }
+        return wrap(Bukkit.getScheduler().runTaskAsynchronously(plugin, task));
+    }
+
+    /**
+     * Run on a worker thread after a delay.
+     */
+    public Task runAsyncLater(Runnable task, long delayTicks) {
+        if (!plugin.isEnabled()) {
+            return NOT_SCHEDULED;
+        }
+        if (folia) {
+            return wrap(Bukkit.getAsyncScheduler().runDelayed(plugin, scheduled -> task.run(),
+                    delayTicks * MILLIS_PER_TICK, TimeUnit.MILLISECONDS));
+        }
+        return wrap(Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, task, delayTicks));
+    }
+
+    /**
+     * Repeat on a worker thread.
+     */
+    public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        if (!plugin.isEnabled()) {
+            return NOT_SCHEDULED;
+        }
+        if (folia) {
+            return wrap(Bukkit.getAsyncScheduler().runAtFixedRate(plugin, scheduled -> task.run(),
+                    delayTicks * MILLIS_PER_TICK, periodTicks * MILLIS_PER_TICK, TimeUnit.MILLISECONDS));
+        }
+        return wrap(Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks));
+    }
+
+    /**
+     * Run on the thread that owns an entity. The task is dropped if the
+     * entity is removed (for players, when they log out) before it runs.
+     * While the plugin is disabling the task runs on the calling thread.
+     */
+    public void runFor(Entity entity, Runnable task) {
+        if (!plugin.isEnabled()) {
+            task.run();
+        } else if (folia) {
+            if (Bukkit.isOwnedByCurrentRegion(entity)) {
+                task.run();
+            } else {
+                entity.getScheduler().run(plugin, scheduled -> task.run(), null);
+            }
+        } else if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    /**
+     * Send a message from any thread. Players receive it on their own
+     * entity scheduler, the console on the global region.
+     */
+    public void message(CommandSender sender, String message) {
+        if (sender instanceof Player player) {
+            runFor(player, () -> player.sendMessage(message));
+        } else if (isGlobalThread()) {
+            sender.sendMessage(message);
+        } else {
+            runGlobal(() -> sender.sendMessage(message));
+        }
+    }
+
+    private static Task wrap(BukkitTask task) {
+        return task::cancel;
+    }
+
+    private static Task wrap(ScheduledTask task) {
+        return task::cancel;
+    }
+}
@@ -0,0 +1,138 @@
+package net.inecat.dynmapads.tasks;
+
+import net.inecat.dynmapads.DynmapAdsPlugin;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shuts the plugin down in a fixed order: stop taking new work, drain the
+ * operations still in flight (command chains, economy transactions, Discord
+ * deliveries and the main-thread callbacks they queue) up to a deadline, and
+ * leave the final storage flush to the caller. Operations that did not finish
+ * in time are written to abandoned.yml and reported again on the next start.
+ */
+public class ShutdownCoordinator {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final DynmapAdsPlugin plugin;
+    private final File abandonedFile;
+    private final Map<CompletableFuture<?>, String> inFlight;
+    private volatile boolean shuttingDown;
+
+    public ShutdownCoordinator(DynmapAdsPlugin plugin) {
+        this.plugin = plugin;
+        this.abandonedFile = new File(plugin.getDataFolder(), "abandoned.yml");
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Whether shutdown has started and new work should be refused.
+     */
+    public boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    /**
+     * Register an operation that shutdown should wait for.
+     *
+     * @param description what the operation is, for the log if it is abandoned
+     * @return the same future
+     */
+    public <T> CompletableFuture<T> track(String description, CompletableFuture<T> operation) {
+        if (!operation.isDone()) {
+            inFlight.put(operation, description);
+            operation.whenComplete((result, error) -> inFlight.remove(operation));
+        }
+        return operation;
+    }
+
+    /**
+     * Log what the previous shutdown had to abandon, so it can be checked
+     * against the ledger and the outbox.
+     */
+    public void reportPrevious() {
+        if (!abandonedFile.exists()) {
+            return;
+        }
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(abandonedFile);
+        for (String line : config.getStringList("operations")) {
+            plugin.getLogger().warning("[Shutdown] Abandoned by an earlier shutdown: " + line);
+        }
+        if (!abandonedFile.delete()) {
+            plugin.getLogger().warning("Failed to delete " + abandonedFile.getName());
+        }
+    }
+
+    /**
+     * Stop taking new work.
+     */
+    public void begin() {
+        shuttingDown = true;
+    }
+
+    /**
+     * Wait for in-flight operations, running the main-thread callbacks they
+     * queue on the calling thread, until all are done or the configured
+     * deadline passes. Must be called on the main thread.
+     */
+    public void drain() {
+        int timeoutSeconds = plugin.getConfigManager().getShutdownDrainTimeoutSeconds();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        PluginScheduler scheduler = plugin.getPluginScheduler();
+
+        while (true) {
+            int ran = scheduler.runPending();
+            if (inFlight.isEmpty() && scheduler.getPendingCount() == 0) {
+                return;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            if (ran == 0) {
+                LockSupport.parkNanos(POLL_NANOS);
+            }
+        }
+
+        List<String> abandoned = new ArrayList<>(inFlight.values());
+        int callbacks = scheduler.getPendingCount();
+        if (callbacks > 0) {
+            abandoned.add(callbacks + " queued main-thread callbacks");
+        }
+        plugin.getLogger().severe("[Shutdown] " + abandoned.size() + " operations did not finish within "
+                + timeoutSeconds + "s and were abandoned:");
+        for (String description : abandoned) {
+            plugin.getLogger().severe("[Shutdown]   " + description);
+        }
+        recordAbandoned(abandoned);
+    }
+
+    private void recordAbandoned(List<String> abandoned) {
+        YamlConfiguration config = abandonedFile.exists()
+                ? YamlConfiguration.loadConfiguration(abandonedFile)
+                : new YamlConfiguration();
+        List<String> operations = new ArrayList<>(config.getStringList("operations"));
+        String time = LocalDateTime.now().format(TIME_FORMAT);
+        for (String description : abandoned) {
+            operations.add(time + " " + description);
+        }
+        config.set("operations", operations);
+
+        try {
+            config.save(abandonedFile);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save abandoned operations: " + e.getMessage());
+        }
+    }
+}